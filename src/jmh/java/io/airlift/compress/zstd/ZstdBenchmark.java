@@ -0,0 +1,96 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.airlift.compress.zstd;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import static java.lang.String.format;
+
+/**
+ * Compression and decompression throughput of 16MiB of moderately compressible
+ * data, for comparing the memory access backends. Each backend is a value of the
+ * {@code backend} parameter, so it shows up in the results next to the scores; as
+ * the backend is fixed once {@link MemoryAccess} is loaded, every value needs a
+ * fork of its own. Scores are in operations per second; multiply by 16.78 for MB/s.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class ZstdBenchmark
+{
+    private static final int SIZE = 16 << 20;
+
+    @Param({"unsafe", "varhandle"})
+    public String backend;
+
+    private ZstdCompressor compressor;
+    private ZstdDecompressor decompressor;
+
+    private byte[] data;
+    private byte[] compressed;
+    private int compressedLength;
+    private byte[] decompressed;
+
+    @Setup
+    public void setup()
+    {
+        // must happen before anything touches MemoryAccess
+        System.setProperty("unbted.zstdMemoryAccess", backend);
+        if (!MemoryAccess.getBackendName().equals(backend)) {
+            throw new IllegalStateException(format("Backend %s was already selected, so %s needs a fork of its own",
+                    MemoryAccess.getBackendName(), backend));
+        }
+        compressor = new ZstdCompressor();
+        decompressor = new ZstdDecompressor();
+
+        // the same seed every time, so runs with either backend see the same input
+        Random random = new Random(3);
+        data = new byte[SIZE];
+        for (int i = 0; i < data.length; i++) {
+            data[i] = (byte) (random.nextInt(20) + (i / 5000 % 7) * (i % 3));
+        }
+        compressed = new byte[compressor.maxCompressedLength(SIZE)];
+        compressedLength = compressor.compress(data, 0, SIZE, compressed, 0, compressed.length);
+        decompressed = new byte[SIZE];
+    }
+
+    @Benchmark
+    public int compress()
+    {
+        return compressor.compress(data, 0, SIZE, compressed, 0, compressed.length);
+    }
+
+    @Benchmark
+    public int decompress()
+    {
+        return decompressor.decompress(compressed, 0, compressedLength, decompressed, 0, SIZE);
+    }
+}
@@ -0,0 +1,150 @@
+/*
+ * unbted - Una's NBT Editor
+ * Copyright (C) 2018 - 2023 Una Thompson (unascribed)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package com.unascribed.nbted;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Writes to a temporary file next to the target, which only replaces the
+ * target once {@link #commit} is called. Until then, the original file is
+ * left untouched, so a failure partway through writing can't corrupt it.
+ * <p>
+ * Closing the stream flushes it and forces it to disk, but doesn't commit
+ * it; {@link #discard} must be called if the write is abandoned.
+ */
+public class AtomicFileOutputStream extends FilterOutputStream {
+
+	private static final int BUFFER_SIZE = 65536;
+	
+	private final Path target;
+	private final Path temp;
+	private final FileChannel channel;
+	private boolean closed = false;
+	private boolean committed = false;
+	
+	public AtomicFileOutputStream(File file) throws IOException {
+		this(file.toPath());
+	}
+	
+	public AtomicFileOutputStream(Path target) throws IOException {
+		super(null);
+		target = target.toAbsolutePath();
+		if (Files.isSymbolicLink(target)) {
+			// replace what the link points to, not the link itself
+			target = target.toRealPath();
+		}
+		this.target = target;
+		String name = "."+target.getFileName()+"."+Long.toHexString(ThreadLocalRandom.current().nextLong() >>> 1)+".tmp";
+		this.temp = target.resolveSibling(name);
+		this.channel = FileChannel.open(temp, StandardOpenOption.WRITE, StandardOpenOption.CREATE_NEW);
+		this.out = new BufferedOutputStream(Channels.newOutputStream(channel), BUFFER_SIZE);
+		if (Files.exists(target)) {
+			try {
+				Files.setPosixFilePermissions(temp, Files.getPosixFilePermissions(target));
+			} catch (UnsupportedOperationException | IOException e) {
+				// best effort
+			}
+		}
+	}
+	
+	/**
+	 * @return {@code true} if the given file can be replaced atomically,
+	 * 		i.e. it's a regular file or doesn't exist yet
+	 */
+	public static boolean isSupported(File file) {
+		return !file.exists() || Files.isRegularFile(file.toPath());
+	}
+	
+	@Override
+	public void write(byte[] b, int off, int len) throws IOException {
+		out.write(b, off, len);
+	}
+	
+	@Override
+	public void close() throws IOException {
+		if (closed) return;
+		closed = true;
+		try {
+			out.flush();
+			channel.force(true);
+		} finally {
+			out.close();
+		}
+	}
+	
+	/**
+	 * Close this stream if needed, then replace the target file with what
+	 * was written.
+	 *
+	 * @param backup if {@code true}, copy the file being replaced to a
+	 * 		sibling with {@code .bak} appended to its name first, replacing
+	 * 		any previous backup
+	 */
+	public void commit(boolean backup) throws IOException {
+		close();
+		if (backup && Files.exists(target)) {
+			Path bak = target.resolveSibling(target.getFileName()+".bak");
+			Files.copy(target, bak, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.COPY_ATTRIBUTES);
+		}
+		try {
+			Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+		} catch (AtomicMoveNotSupportedException e) {
+			Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING);
+		}
+		committed = true;
+		// make the rename itself durable; not possible on all platforms
+		try (FileChannel dir = FileChannel.open(target.getParent(), StandardOpenOption.READ)) {
+			dir.force(true);
+		} catch (IOException e) {
+			// the file itself is already safely in place
+		}
+	}
+	
+	/**
+	 * Close this stream if needed and delete the temporary file, leaving
+	 * the target untouched. Does nothing if this stream was committed.
+	 */
+	public void discard() {
+		if (committed) return;
+		try {
+			close();
+		} catch (IOException e) {
+			// we're throwing it away anyway
+		}
+		try {
+			Files.deleteIfExists(temp);
+		} catch (IOException e) {
+			NBTEd.log("Failed to delete temporary file {}", temp, e);
+		}
+	}
+	
+}
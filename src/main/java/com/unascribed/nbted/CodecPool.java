@@ -0,0 +1,211 @@
+/*
+ * unbted - Una's NBT Editor
+ * Copyright (C) 2018 - 2023 Una Thompson (unascribed)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.unascribed.nbted;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+import com.google.common.base.Preconditions;
+
+import io.airlift.compress.zstd.CompressionContext;
+import io.airlift.compress.zstd.ZstdIncrementalFrameDecompressor;
+
+/**
+ * Per-thread pools of the codec state behind {@link Compression#wrap}.
+ * <p>
+ * Every Inflater and Deflater owns native zlib memory that is only freed by
+ * {@code end()} or, eventually, the GC, and a zstd context carries megabytes
+ * of tables. Allocating them per stream adds up when info recompresses the
+ * tree or thousands of region chunks are read, so streams return their codecs
+ * and I/O buffers here when closed. Released codecs are reset and handed to
+ * the next stream opened on the same thread; beyond {@link #MAX_POOLED} of a
+ * kind, they're ended right away.
+ */
+public final class CodecPool {
+
+	/**
+	 * The most codecs of each kind that one thread keeps around.
+	 */
+	public static final int MAX_POOLED = 4;
+	
+	private static volatile int bufferSize = Integer.getInteger("unbted.bufferSize", 65536);
+	
+	private static final byte[] EMPTY = new byte[0];
+	private static final ThreadLocal<CodecPool> POOLS = ThreadLocal.withInitial(CodecPool::new);
+	
+	private final Deque<Inflater> inflaters = new ArrayDeque<>();
+	private final Deque<Inflater> rawInflaters = new ArrayDeque<>();
+	private final Deque<Deflater> deflaters = new ArrayDeque<>();
+	private final Deque<Deflater> rawDeflaters = new ArrayDeque<>();
+	private final Deque<ZstdIncrementalFrameDecompressor> zstdDecompressors = new ArrayDeque<>();
+	private final Deque<CompressionContext> zstdContexts = new ArrayDeque<>();
+	private final Deque<byte[]> buffers = new ArrayDeque<>();
+	
+	private CodecPool() {}
+	
+	/**
+	 * @return the size of the buffers that streams from {@link Compression#wrap}
+	 * 		read and write compressed data in; 64KiB unless overridden by the
+	 * 		{@code unbted.bufferSize} system property or {@link #setBufferSize}
+	 */
+	public static int getBufferSize() {
+		return bufferSize;
+	}
+	
+	public static void setBufferSize(int bufferSize) {
+		Preconditions.checkArgument(bufferSize > 0, "buffer size must be positive");
+		CodecPool.bufferSize = bufferSize;
+	}
+	
+	/**
+	 * @return a buffer of {@link #getBufferSize()} bytes, with unspecified contents
+	 */
+	public static byte[] acquireBuffer() {
+		Deque<byte[]> buffers = POOLS.get().buffers;
+		byte[] buf;
+		while ((buf = buffers.poll()) != null) {
+			// drop any left over from before the size was changed
+			if (buf.length == bufferSize) return buf;
+		}
+		return new byte[bufferSize];
+	}
+	
+	public static void releaseBuffer(byte[] buf) {
+		offer(POOLS.get().buffers, buf);
+	}
+	
+	/**
+	 * @param nowrap {@code true} for raw deflate data, as found in gzip members,
+	 * 		rather than zlib-wrapped data
+	 */
+	public static Inflater acquireInflater(boolean nowrap) {
+		CodecPool pool = POOLS.get();
+		Inflater inf = (nowrap ? pool.rawInflaters : pool.inflaters).poll();
+		return inf == null ? new Inflater(nowrap) : inf;
+	}
+	
+	/**
+	 * @param nowrap must match what the Inflater was acquired with
+	 */
+	public static void release(Inflater inf, boolean nowrap) {
+		CodecPool pool = POOLS.get();
+		inf.reset();
+		if (!offer(nowrap ? pool.rawInflaters : pool.inflaters, inf)) {
+			inf.end();
+		}
+	}
+	
+	public static Deflater acquireDeflater(boolean nowrap) {
+		return acquireDeflater(Deflater.DEFAULT_COMPRESSION, nowrap);
+	}
+	
+	public static Deflater acquireDeflater(int level, boolean nowrap) {
+		return acquireDeflater(level, Deflater.DEFAULT_STRATEGY, nowrap);
+	}
+	
+	/**
+	 * @param nowrap {@code true} to write raw deflate data, as gzip needs,
+	 * 		rather than zlib-wrapped data
+	 */
+	public static Deflater acquireDeflater(int level, int strategy, boolean nowrap) {
+		CodecPool pool = POOLS.get();
+		Deflater def = (nowrap ? pool.rawDeflaters : pool.deflaters).poll();
+		if (def == null) def = new Deflater(level, nowrap);
+		def.setLevel(level);
+		def.setStrategy(strategy);
+		// Deflater applies new parameters lazily, on a deflate call that then
+		// does nothing else; do it now while there's no input or dictionary
+		def.deflate(EMPTY);
+		return def;
+	}
+	
+	/**
+	 * @param nowrap must match what the Deflater was acquired with
+	 */
+	public static void release(Deflater def, boolean nowrap) {
+		CodecPool pool = POOLS.get();
+		def.reset();
+		def.setLevel(Deflater.DEFAULT_COMPRESSION);
+		def.setStrategy(Deflater.DEFAULT_STRATEGY);
+		if (!offer(nowrap ? pool.rawDeflaters : pool.deflaters, def)) {
+			def.end();
+		}
+	}
+	
+	public static ZstdIncrementalFrameDecompressor acquireZstdDecompressor() {
+		ZstdIncrementalFrameDecompressor dec = POOLS.get().zstdDecompressors.poll();
+		return dec == null ? new ZstdIncrementalFrameDecompressor() : dec;
+	}
+	
+	public static void release(ZstdIncrementalFrameDecompressor dec) {
+		dec.reset();
+		offer(POOLS.get().zstdDecompressors, dec);
+	}
+	
+	public static CompressionContext acquireZstdContext() {
+		return acquireZstdContext(0, false);
+	}
+	
+	/**
+	 * @param windowLog the window log, or 0 for the default
+	 * @see CompressionContext#CompressionContext(int, boolean)
+	 */
+	public static CompressionContext acquireZstdContext(int windowLog, boolean longDistanceMatching) {
+		Deque<CompressionContext> contexts = POOLS.get().zstdContexts;
+		CompressionContext ctx;
+		while ((ctx = contexts.poll()) != null) {
+			// drop any left over from before the settings were changed
+			if (ctx.isConfiguredFor(windowLog, longDistanceMatching)) return ctx;
+		}
+		return new CompressionContext(windowLog, longDistanceMatching);
+	}
+	
+	public static void release(CompressionContext ctx) {
+		// clearing the tables isn't free, and ZstdOutputStream does it anyway
+		offer(POOLS.get().zstdContexts, ctx);
+	}
+	
+	/**
+	 * Ends and forgets every codec pooled by the current thread, freeing their
+	 * native memory now rather than whenever the GC gets to it.
+	 */
+	public static void clear() {
+		CodecPool pool = POOLS.get();
+		pool.inflaters.forEach(Inflater::end);
+		pool.rawInflaters.forEach(Inflater::end);
+		pool.deflaters.forEach(Deflater::end);
+		pool.rawDeflaters.forEach(Deflater::end);
+		pool.inflaters.clear();
+		pool.rawInflaters.clear();
+		pool.deflaters.clear();
+		pool.rawDeflaters.clear();
+		pool.zstdDecompressors.clear();
+		pool.zstdContexts.clear();
+		pool.buffers.clear();
+	}
+	
+	private static <T> boolean offer(Deque<T> deque, T t) {
+		if (deque.size() >= MAX_POOLED) return false;
+		deque.push(t);
+		return true;
+	}
+	
+}
@@ -24,10 +24,14 @@ import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.io.OutputStreamWriter;
+import java.io.StringWriter;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
 import java.text.DecimalFormat;
 import java.text.NumberFormat;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.List;
 import java.util.Map;
 import java.util.UUID;
@@ -53,6 +57,7 @@ import org.jline.utils.AttributedStyle;
 import com.google.common.base.Charsets;
 import com.google.common.base.Joiner;
 import com.google.common.base.MoreObjects;
+import com.google.common.base.Objects;
 import com.google.common.base.Strings;
 import com.google.common.collect.Iterables;
 import com.google.common.collect.Lists;
@@ -63,10 +68,16 @@ import com.google.common.io.CountingOutputStream;
 import com.google.common.primitives.Ints;
 
 import com.google.gson.JsonObject;
+import com.google.gson.stream.JsonWriter;
 import com.unascribed.miniansi.AnsiCode;
+import com.unascribed.nbted.Compression.Strategy;
 import com.unascribed.nbted.TagPrinter.RecurseMode;
 
+import io.airlift.compress.MalformedInputException;
+import io.airlift.compress.zstd.ZstdSeekTable;
+import io.github.steveice10.opennbt.NBTDataOutput;
 import io.github.steveice10.opennbt.NBTIO;
+import io.github.steveice10.opennbt.NBTInterner;
 import io.github.steveice10.opennbt.NBTRegistry;
 import io.github.steveice10.opennbt.SNBTIO.StringifiedNBTReader;
 import io.github.steveice10.opennbt.tag.NBTCompound;
@@ -104,7 +115,9 @@ public class CommandProcessor implements Completer, Highlighter {
 	
 	private static final Pattern ECHO_ESCAPE = Pattern.compile("(?:\\\\0([0-7]{1,3})|\\\\x([0-9a-fA-F]{1,2})|\\\\u([0-9a-fA-F]{1,4})|\\\\U([0-9a-fA-F]{1,8}))");
 	
-	private static final Pattern PATH_SEGMENT = Pattern.compile("(?:^|\\/)([^\\[\\]\\/]*?)(?:$|\\/)|\\[([^\\[\\]]*?)\\]");
+	private static final Pattern RANGE = Pattern.compile("([0-9]*)\\.\\.([0-9]*)");
+	
+	private static final int MAX_UNDO = 100;
 	
 	private boolean running = false;
 	
@@ -121,6 +134,14 @@ public class CommandProcessor implements Completer, Highlighter {
 	
 	private boolean dirty = false;
 	
+	// snapshots are shared (and therefore frozen) roots; the live tree is a
+	// copy of the latest one that only unshares the paths commands walk into
+	private final List<NBTTag> undo = Lists.newArrayList();
+	private final List<NBTTag> redo = Lists.newArrayList();
+	private final Map<String, NBTTag> checkpoints = Maps.newTreeMap();
+	private NBTTag beforeCommand;
+	private boolean recording = false;
+	
 	public CommandProcessor(NBTTag _root, TagPrinter _printer, FileInfo _fileInfo) {
 		this.root = _root;
 		this.cursor = root;
@@ -235,6 +256,10 @@ public class CommandProcessor implements Completer, Highlighter {
 				parser.acceptsAll(Arrays.asList("s", "include-self"), "print the tag in addition to children");
 				parser.acceptsAll(Arrays.asList("r", "raw"), "do not infer types");
 				parser.acceptsAll(Arrays.asList("base64"), "print byte arrays as base64");
+				parser.accepts("max-depth", "summarize compounds and lists nested deeper than this").withRequiredArg().ofType(Integer.class);
+				parser.accepts("max-lines", "stop printing after this many lines").withRequiredArg().ofType(Integer.class);
+				parser.accepts("range", "only list children from index a up to but not including b").withRequiredArg().describedAs("a..b");
+				parser.accepts("page", "view the children in a pager");
 				parser.acceptsAll(Arrays.asList("l", "1", "a", "A"), "ignored");
 			})
 			.action((alias, set, args) -> {
@@ -242,15 +267,29 @@ public class CommandProcessor implements Completer, Highlighter {
 				if (set.has("raw")) {
 					infer = false;
 				}
+				int maxDepth = set.has("max-depth") ? (Integer)set.valueOf("max-depth") : -1;
+				int maxLines = set.has("max-lines") ? (Integer)set.valueOf("max-lines") : -1;
+				int rangeStart = -1;
+				int rangeEnd = -1;
+				if (set.has("range")) {
+					Matcher m = RANGE.matcher((String)set.valueOf("range"));
+					if (!m.matches()) throw new CommandUsageException("Range must be of the form a..b");
+					try {
+						if (!m.group(1).isEmpty()) rangeStart = Integer.parseInt(m.group(1));
+						if (!m.group(2).isEmpty()) rangeEnd = Integer.parseInt(m.group(2));
+					} catch (NumberFormatException e) {
+						throw new CommandUsageException("Range is out of bounds");
+					}
+				}
 				Iterable<NBTTag> tags;
 				if (args.isEmpty()) {
 					tags = Collections.singleton(cursor);
 				} else {
-					tags = Iterables.transform(args, s -> resolvePath(s).leaf);
+					tags = Iterables.concat(Iterables.transform(args, this::resolveAll));
 				}
 				for (NBTTag tag : tags) {
 					if (set.has("directory")) {
-						printer.printTag(tag, "", infer, RecurseMode.NONE, true);
+						printer.printTag(tag, "", infer, RecurseMode.NONE, true, maxDepth, maxLines, rangeStart, rangeEnd);
 					} else {
 						RecurseMode mode = RecurseMode.IMMEDIATE_CHILDREN_ONLY;
 						if (set.has("recursive")) {
@@ -258,7 +297,11 @@ public class CommandProcessor implements Completer, Highlighter {
 						} else if (set.has("include-self") || "get".equals(alias)) {
 							mode = RecurseMode.IMMEDIATE_CHILDREN;
 						}
-						printer.printTag(tag, "", infer, mode, true);
+						if (set.has("page") && NBTEd.isPagerAvailable()) {
+							NBTEd.displayInPager(new TagSource(getPath(tag), tag, infer, mode, maxDepth, rangeStart, rangeEnd));
+						} else {
+							printer.printTag(tag, "", infer, mode, true, maxDepth, maxLines, rangeStart, rangeEnd);
+						}
 					}
 				}
 			}));
@@ -282,42 +325,57 @@ public class CommandProcessor implements Completer, Highlighter {
 						t = asTag(t.getParent());
 					}
 				}
-				for (String s : args) {
+				targets: for (String s : args) {
+					List<NBTTag> matches;
 					try {
-						NBTTag t = resolvePath(s).leaf;
-						if (t instanceof NBTCompound) {
-							NBTCompound ct = (NBTCompound)t;
-							if (!ct.isEmpty() && !set.has("recursive")) {
-								throw new CommandException(VALUE_CMDSPECIFIC_1, "Refusing to delete non-empty compound "+getPath(t)+" - add -r to override");
-							}
+						matches = resolveAll(s);
+					} catch (CommandException e) {
+						if (!set.has("force")) {
+							throw e;
 						}
-						NBTTag parent = asTag(t.getParent());
-						if (parent == null) {
-							if (t != root) {
-								throw new ConsistencyError("Tag has no parent but isn't the root!?");
+						continue;
+					}
+					// array elements are made up on demand and only know their
+					// index, so they go last and back to front, to keep the
+					// indices of the ones still to come valid
+					matches = Lists.newArrayList(matches);
+					matches.sort(Comparator.comparingInt(t -> t instanceof NBTArrayFake ? -((NBTArrayFake)t).getIndex() : Integer.MIN_VALUE));
+					for (NBTTag t : matches) {
+						try {
+							if (t instanceof NBTCompound) {
+								NBTCompound ct = (NBTCompound)t;
+								if (!ct.isEmpty() && !set.has("recursive")) {
+									throw new CommandException(VALUE_CMDSPECIFIC_1, "Refusing to delete non-empty compound "+getPath(t)+" - add -r to override");
+								}
 							}
-							root = null;
-							cursor = null;
-							dirty = true;
-							// no action can possibly be more destructive than deleting the root, so break
-							break;
-						} else {
-							t.removeFromParent();
-							dirty = true;
-						}
-						int idx = contextParents.indexOf(t);
-						if (idx != -1) {
-							NBTEd.log("Deleted parent of current context, walking up to closest non-deleted path");
-							contextParents.subList(0, idx+1).clear();
-							if (contextParents.isEmpty()) {
+							NBTTag parent = asTag(t.getParent());
+							if (parent == null) {
+								if (t != root) {
+									throw new ConsistencyError("Tag has no parent but isn't the root!?");
+								}
+								root = null;
 								cursor = null;
+								dirty = true;
+								// no action can possibly be more destructive than deleting the root, so break
+								break targets;
 							} else {
-								cursor = contextParents.get(0);
+								t.removeFromParent();
+								dirty = true;
+							}
+							int idx = contextParents.indexOf(t);
+							if (idx != -1) {
+								NBTEd.log("Deleted parent of current context, walking up to closest non-deleted path");
+								contextParents.subList(0, idx+1).clear();
+								if (contextParents.isEmpty()) {
+									cursor = null;
+								} else {
+									cursor = contextParents.get(0);
+								}
+							}
+						} catch (Exception e) {
+							if (!set.has("force")) {
+								throw e;
 							}
-						}
-					} catch (Exception e) {
-						if (!set.has("force")) {
-							throw e;
 						}
 					}
 				}
@@ -344,6 +402,7 @@ public class CommandProcessor implements Completer, Highlighter {
 			.usage("{}")
 			.options((parser) -> {
 				parser.acceptsAll(Arrays.asList("si", "s"), "use si units instead of binary");
+				parser.acceptsAll(Arrays.asList("compress", "c"), "recompress the file to measure its compressed size");
 			})
 			.action((set, args) -> {
 				if (!args.isEmpty()) throw new CommandUsageException("Too many arguments");
@@ -365,34 +424,204 @@ public class CommandProcessor implements Completer, Highlighter {
 					System.out.print(" (detected)");
 				}
 				System.out.println();
+				if (fileInfo.compressionLevel != Compression.DEFAULT_LEVEL) {
+					System.out.print("Compression level: ");
+					System.out.println(fileInfo.compressionLevel);
+				}
+				if (fileInfo.compressionStrategy != null) {
+					System.out.print("Compression strategy: ");
+					System.out.println(fileInfo.compressionStrategy);
+				}
+				if (fileInfo.compressionMethod == Compression.ZSTD && fileInfo.sourceFile != FileInfo.STDIN
+						&& fileInfo.sourceFile != null && fileInfo.sourceFile.isFile()) {
+					try (FileChannel ch = FileChannel.open(fileInfo.sourceFile.toPath(), StandardOpenOption.READ)) {
+						ZstdSeekTable seekTable = ZstdSeekTable.read(ch);
+						if (seekTable != null) {
+							System.out.print("Seekable frames: ");
+							System.out.println(seekTable.getFrameCount());
+						}
+					} catch (IOException | MalformedInputException e) {
+						NBTEd.log("Error occurred while reading seek table", e);
+					}
+				}
 				if (!fileInfo.isJson) {
 					System.out.print("Endianness: ");
 					System.out.println(fileInfo.endianness);
 				}
-				System.out.print("File size: ...calculating...");
-				System.out.flush();
-				OutputStream out = ByteStreams.nullOutputStream();
-				CountingOutputStream compressedCounter = null;
-				if (fileInfo.compressionMethod != Compression.NONE && fileInfo.compressionMethod != null) {
-					out = fileInfo.compressionMethod.wrap(compressedCounter = new CountingOutputStream(out));
-				}
-				CountingOutputStream counter = new CountingOutputStream(out);
-				if (root != null) {
-					NBTIO.writeTag(fileInfo.endianness.wrap(counter), root);
-				}
-				System.out.print("\r                            ");
-				System.out.print("\rFile size: ");
-				System.out.print(humanReadableBytes(counter.getCount(), set.has("si")));
-				if (compressedCounter != null) {
-					System.out.print(" (");
-					System.out.print(humanReadableBytes(compressedCounter.getCount(), set.has("si")));
-					double compare = compressedCounter.getCount()/(double)counter.getCount();
-					System.out.print(" compressed, ");
-					System.out.print(TWO_FRAC_FMT.format(compare*100));
-					System.out.print("%)");
+				// sizes of unmodified subtrees are remembered, so this is only
+				// as slow as the amount of the tree that has changed
+				long size = root == null ? 0 : NBTIO.getSerializedSize(root);
+				boolean compressed = fileInfo.compressionMethod != Compression.NONE && fileInfo.compressionMethod != null;
+				long compressedSize = -1;
+				if (compressed && set.has("compress")) {
+					System.out.print("File size: ...calculating...");
+					System.out.flush();
+					CountingOutputStream compressedCounter = new CountingOutputStream(ByteStreams.nullOutputStream());
+					try (OutputStream out = fileInfo.compressionMethod.wrap(compressedCounter, fileInfo.compressionLevel, fileInfo.compressionStrategy)) {
+						if (root != null) {
+							NBTDataOutput dout = fileInfo.endianness.wrap(out);
+							NBTIO.writeTag(dout, root);
+							dout.flush();
+						}
+					}
+					compressedSize = compressedCounter.getCount();
+					System.out.print("\r                            \r");
+				} else if (compressed && !dirty && !fileInfo.isJson) {
+					// what's on disk is exactly what we'd write
+					compressedSize = fileInfo.storedSize;
+				}
+				System.out.print("File size: ");
+				System.out.print(humanReadableBytes(size, set.has("si")));
+				if (compressed) {
+					if (compressedSize >= 0) {
+						System.out.print(" (");
+						System.out.print(humanReadableBytes(compressedSize, set.has("si")));
+						double compare = compressedSize/(double)size;
+						System.out.print(" compressed, ");
+						System.out.print(TWO_FRAC_FMT.format(compare*100));
+						System.out.print("%)");
+					} else {
+						System.out.print(" (compressed size unknown, use info -c to calculate)");
+					}
 				}
 				System.out.println();
 			}));
+		addCommand(Command.create()
+			.name("diff")
+			.description("compare against another file")
+			.usage("{} [path] <file>")
+			.completer(new Completers.FileNameCompleter())
+			.options((parser) -> {
+				parser.acceptsAll(Arrays.asList("json", "j"), "print a JSON Patch instead of a summary");
+				parser.accepts("verify", "compare subtrees with matching hashes in full");
+			})
+			.action((set, args) -> {
+				if (args.isEmpty()) throw new CommandUsageException("Not enough arguments");
+				if (args.size() > 2) throw new CommandUsageException("Too many arguments");
+				if (root == null) {
+					throw new CommandException(VALUE_TAG_NOT_FOUND, "Nothing to compare");
+				}
+				NBTTag here = args.size() > 1 ? resolvePath(args.get(0)).leaf : root;
+				String str = args.get(args.size()-1);
+				File file;
+				if (str.startsWith("~/")) {
+					file = new File(System.getProperty("user.home")+str.substring(1));
+				} else {
+					file = new File(str);
+				}
+				NBTTag other;
+				try {
+					other = NBTEd.loadFile(file, new NBTInterner());
+				} catch (Exception e) {
+					NBTEd.log("Exception while trying to load NBT file", e);
+					throw new CommandException(VALUE_GENERAL_ERROR, "Failed to load "+str);
+				}
+				// compare against the same place in the other file
+				List<Object> path = TagDiff.pathOf(here);
+				NBTTag there = TagDiff.follow(other, path);
+				if (there == null) {
+					throw new CommandException(VALUE_TAG_NOT_FOUND, getPath(here)+" does not exist in "+str);
+				}
+				List<TagDiff.Change> changes = Lists.newArrayList();
+				TagDiff.diff(there, here, path, set.has("verify"), changes::add);
+				if (set.has("json")) {
+					StringWriter sw = new StringWriter();
+					JsonWriter jw = new JsonWriter(sw);
+					jw.setIndent("  ");
+					NBTEd.gson.toJson(TagDiff.toJsonPatch(changes), jw);
+					System.out.println(sw);
+				} else if (changes.isEmpty()) {
+					System.out.println("No differences");
+				} else {
+					TagDiff.print(changes, NBTEd.aout);
+					NBTEd.aout.flush();
+				}
+			}));
+		addCommand(Command.create()
+			.name("find")
+			.description("search for tags")
+			.usage("{} [path]...")
+			.completer(pathCompleter(false))
+			.options((parser) -> {
+				parser.accepts("name", "only find tags with names matching this glob").withRequiredArg();
+				parser.accepts("type", "only find tags of this type").withRequiredArg();
+				parser.accepts("value", "only find values matching this regex or min..max range").withRequiredArg();
+				parser.accepts("exec", "run this command for every match, with {} replaced by its path").withRequiredArg();
+			})
+			.action((set, args) -> {
+				TagFinder finder = new TagFinder();
+				if (set.has("name")) {
+					finder.name((String)set.valueOf("name"));
+				}
+				if (set.has("type")) {
+					Class<? extends NBTTag> type = NBTRegistry.classByTypeName((String)set.valueOf("type"));
+					if (type == null) throw new CommandException(VALUE_BAD_USAGE, "Unrecognized type "+set.valueOf("type"));
+					finder.type(type);
+				}
+				if (set.has("value")) {
+					try {
+						finder.value((String)set.valueOf("value"));
+					} catch (IllegalArgumentException e) {
+						throw new CommandException(VALUE_BAD_USAGE, "Invalid regex: "+e.getMessage());
+					}
+				}
+				List<NBTTag> starts = Lists.newArrayList();
+				if (args.isEmpty()) {
+					if (cursor != null) {
+						starts.add(cursor);
+					}
+				} else {
+					for (String s : args) {
+						starts.addAll(resolveAll(s));
+					}
+				}
+				if (set.has("exec")) {
+					String cmd = (String)set.valueOf("exec");
+					List<String> words = reader == null ? Arrays.asList(cmd.trim().split(" +"))
+							: reader.getParser().parse(cmd, cmd.length(), ParseContext.ACCEPT_LINE).words();
+					if (words.isEmpty() || !commands.containsKey(words.get(0))) {
+						throw new CommandException(VALUE_BAD_USAGE, "Unknown command "+(words.isEmpty() ? "" : words.get(0)));
+					}
+					List<String> found = Lists.newArrayList();
+					for (NBTTag t : starts) {
+						finder.find(t, found::add);
+					}
+					Command command = commands.get(words.get(0));
+					// last first, so deleting a tag doesn't change the paths of
+					// the ones still to come
+					for (String path : Lists.reverse(found)) {
+						List<String> execArgs = Lists.newArrayListWithCapacity(words.size()-1);
+						for (String w : words.subList(1, words.size())) {
+							execArgs.add(w.replace("{}", path));
+						}
+						command.execute(words.get(0), execArgs);
+					}
+				} else {
+					// printed as the search goes, flushing whenever it has to
+					// wait on a subtree that isn't done yet
+					StringBuilder sb = new StringBuilder();
+					TagFinder.Listener printer = new TagFinder.Listener() {
+						@Override
+						public void found(String path) {
+							sb.append(path).append('\n');
+							if (sb.length() > 8192) {
+								waiting();
+							}
+						}
+						
+						@Override
+						public void waiting() {
+							System.out.print(sb);
+							System.out.flush();
+							sb.setLength(0);
+						}
+					};
+					for (NBTTag t : starts) {
+						finder.find(t, printer);
+					}
+					printer.waiting();
+				}
+			}));
 		addCommand(Command.create()
 			.name("save")
 			.description("write the nbt file to disk")
@@ -405,14 +634,18 @@ public class CommandProcessor implements Completer, Highlighter {
 					parser.accepts("little-endian", "write in little-endian format").availableUnless("endian"),
 					parser.accepts("big-endian", "write in big-endian format").availableUnless("endian")
 				);
-				parser.acceptsAll(Arrays.asList("compression", "c"), "write with the given compression format").withRequiredArg().ofType(Compression.class)
-						.withValuesConvertedBy(new CaseInsensitiveEnumConverter<>(Compression.class));
+				parser.acceptsAll(Arrays.asList("compression", "c"), "write with the given compression format, and optionally level and strategy").withRequiredArg().ofType(CompressionSpec.class)
+						.withValuesConvertedBy(new CompressionSpec.Converter());
+				parser.accepts("compression-level", "write with the given deflate or gzip compression level, 0-9").withRequiredArg().ofType(Integer.class);
+				parser.accepts("compression-strategy", "write with the given deflate or gzip compression strategy").withRequiredArg().ofType(Strategy.class)
+						.withValuesConvertedBy(new CaseInsensitiveEnumConverter<>(Strategy.class));
 				parser.acceptsAll(Arrays.asList("default", "d"), "update default file");
 				parser.mutuallyExclusive(
 						parser.acceptsAll(Arrays.asList("roundtrip-json", "json", "j", "J"), "write in roundtrip NBT JSON format"),
 						parser.acceptsAll(Arrays.asList("nbt", "N"), "write in NBT format")
 				);
 				parser.acceptsAll(Arrays.asList("force", "f"), "just do it, don't ask questions");
+				parser.acceptsAll(Arrays.asList("backup", "b"), "keep the previous version of the file as a .bak");
 			})
 			.action((set, args) -> {
 				if (args.size() > 1) throw new CommandUsageException("Too many arguments");
@@ -438,8 +671,13 @@ public class CommandProcessor implements Completer, Highlighter {
 					endianness = fileInfo.endianness == null ? Endianness.BIG : fileInfo.endianness;
 				}
 				Compression compression;
+				int level = Compression.DEFAULT_LEVEL;
+				Strategy strategy = null;
 				if (set.has("compression")) {
-					compression = (Compression)set.valueOf("compression");
+					CompressionSpec spec = (CompressionSpec)set.valueOf("compression");
+					compression = spec.method;
+					level = spec.level;
+					strategy = spec.strategy;
 				} else {
 					compression = fileInfo.compressionMethod;
 				}
@@ -450,6 +688,22 @@ public class CommandProcessor implements Completer, Highlighter {
 						throw new CommandException(VALUE_CMDSPECIFIC_1, "No compression format specified, please specify one with -c");
 					}
 				}
+				if (compression == fileInfo.compressionMethod) {
+					// keep whatever level the file was loaded or last saved with
+					if (level == Compression.DEFAULT_LEVEL) level = fileInfo.compressionLevel;
+					if (strategy == null) strategy = fileInfo.compressionStrategy;
+				}
+				if (set.has("compression-level")) {
+					level = (Integer)set.valueOf("compression-level");
+				}
+				if (set.has("compression-strategy")) {
+					strategy = (Strategy)set.valueOf("compression-strategy");
+				}
+				try {
+					compression.checkLevel(level);
+				} catch (IllegalArgumentException e) {
+					throw new CommandException(VALUE_BAD_USAGE, e.getMessage());
+				}
 				File outFile;
 				if (fileInfo.sourceFile == FileInfo.STDIN) {
 					outFile = null;
@@ -505,6 +759,12 @@ public class CommandProcessor implements Completer, Highlighter {
 									return;
 								}
 							}
+						} else if (compression == Compression.LZ4) {
+							if (outFile.getName().endsWith(".dat") || outFile.getName().endsWith(".nbt")) {
+								if (!prompt("You are saving a non-standard LZ4 NBT file with a standard extension. Are you sure you want to do this?", true)) {
+									return;
+								}
+							}
 						} else if (!outFile.getName().endsWith(".dat") && !outFile.getName().endsWith(".nbt")) {
 							if (!prompt("You are saving an NBT file with a nonstandard extension. Are you sure you want to do this?", true)) {
 								return;
@@ -512,8 +772,18 @@ public class CommandProcessor implements Completer, Highlighter {
 						}
 					}
 				}
+				// write to a temporary file and move it into place, so a failure
+				// partway through can't leave the original half-overwritten
+				AtomicFileOutputStream atomicOut = null;
 				try {
-					try (OutputStream out = compression.wrap(new FileOutputStream(outFile))) {
+					OutputStream fileOut;
+					if (AtomicFileOutputStream.isSupported(outFile)) {
+						fileOut = atomicOut = new AtomicFileOutputStream(outFile);
+					} else {
+						fileOut = new FileOutputStream(outFile);
+					}
+					CountingOutputStream counter = new CountingOutputStream(fileOut);
+					try (OutputStream out = compression.wrap(counter, level, strategy)) {
 						if (json) {
 							try (OutputStreamWriter osw = new OutputStreamWriter(out, Charsets.UTF_8)) {
 								JsonObject obj = new JsonObject();
@@ -527,17 +797,29 @@ public class CommandProcessor implements Completer, Highlighter {
 							if (!(root instanceof NBTCompound)) {
 								System.err.println("unbted: save: warning: NBT files with non-compound roots are poorly supported");
 							}
-							NBTIO.writeTag(endianness.wrap(out), root);
-						}
-						if (fileInfo.sourceFile == null || outFile == fileInfo.sourceFile || set.has("default")) {
-							fileInfo = new FileInfo(outFile, compression, false, endianness, json);
+							NBTDataOutput dout = endianness.wrap(out);
+							NBTIO.writeTag(dout, root);
+							dout.flush();
 						}
-						dirty = false;
 					}
+					if (atomicOut != null) {
+						atomicOut.commit(set.has("backup"));
+					}
+					if (fileInfo.sourceFile == null || outFile == fileInfo.sourceFile || set.has("default")) {
+						fileInfo = new FileInfo(outFile, compression, level, strategy, false, endianness, json, counter.getCount());
+					} else if (dirty) {
+						// the original file no longer matches what's loaded
+						fileInfo = new FileInfo(fileInfo.sourceFile, fileInfo.compressionMethod, fileInfo.compressionLevel, fileInfo.compressionStrategy, fileInfo.compressionAutodetected, fileInfo.endianness, fileInfo.isJson, -1);
+					}
+					dirty = false;
 				} catch (Exception e) {
 					NBTEd.log("Error occurred while writing", e);
 					// TODO detect common exceptions and print useful messages
 					throw new CommandException(VALUE_GENERAL_ERROR, "An error occurred while writing");
+				} finally {
+					if (atomicOut != null) {
+						atomicOut.discard();
+					}
 				}
 			}));
 		addCommand(Command.create()
@@ -613,6 +895,41 @@ public class CommandProcessor implements Completer, Highlighter {
 					}
 				}
 				String str = SPACE_JOINER.join(args.subList(1, args.size()));
+				if (root != null && compilePath(path).isWild()) {
+					// wildcards only ever match tags that already exist
+					if (noOverwrite) {
+						throw new CommandException(VALUE_WONT_OVERWRITE, "Refusing to overwrite existing tags");
+					}
+					if (uuid) {
+						throw new CommandException(VALUE_CMDSPECIFIC_4, "UUIDs cannot be set through a wildcard");
+					}
+					List<NBTTag> matches = resolveAll(path);
+					for (NBTTag t : matches) {
+						Class<? extends NBTTag> type = shift && t instanceof NBTIndexed ? ((NBTIndexed)t).getElementType() : t.getClass();
+						if (explicitType != null && type != null && explicitType != type) {
+							throw new CommandException(VALUE_CMDSPECIFIC_1, "Explicit type "+NBTRegistry.typeNameFromClass(explicitType)+" is incompatible with "+getPath(t)+", which is "+NBTRegistry.typeNameFromClass(type));
+						}
+						if (type == null && explicitType == null) {
+							throw new CommandException(VALUE_CMDSPECIFIC_1, "Must specify an explicit type to add an initial tag to a list");
+						}
+					}
+					for (NBTTag t : matches) {
+						try {
+							if (shift && t instanceof NBTIndexed) {
+								NBTIndexed idx = (NBTIndexed)t;
+								NBTTag tag = NBTRegistry.createInstance(MoreObjects.firstNonNull(idx.getElementType(), explicitType), "");
+								parseAndSet(tag, str);
+								idx.add(tag);
+							} else {
+								parseAndSet(t, str);
+							}
+						} catch (NumberFormatException e) {
+							throw new CommandException(VALUE_CMDSPECIFIC_2, "Invalid number "+str);
+						}
+						dirty = true;
+					}
+					return;
+				}
 				if (root == null) {
 					if (uuid && !newuuid) {
 						throw new CommandException(VALUE_CMDSPECIFIC_4, "Old-style UUIDs are two tags, and cannot be the root of a file");
@@ -700,7 +1017,8 @@ public class CommandProcessor implements Completer, Highlighter {
 					if (explicitType == null) {
 						throw new CommandException(VALUE_CMDSPECIFIC_3, "An explicit type must be specified to create new tags");
 					}
-					String name = path.substring(p.parentPath.length());
+					List<NBTPath.Segment> segs = compilePath(path).getSegments();
+					String name = segs.get(segs.size()-1).key;
 					NBTTag tag = NBTRegistry.createInstance(explicitType, p.immediateParent instanceof NBTIndexed ? "" : name);
 					try {
 						parseAndSet(tag, str);
@@ -709,7 +1027,7 @@ public class CommandProcessor implements Completer, Highlighter {
 					}
 					if (p.immediateParent instanceof NBTIndexed) {
 						NBTIndexed li = (NBTIndexed)p.immediateParent;
-						Integer idx = Ints.tryParse(name.endsWith("]") ? name.substring(0, name.length()-1) : name);
+						Integer idx = Ints.tryParse(name);
 						if (idx == null || idx < 0) {
 							throw new CommandException(VALUE_TAG_NOT_FOUND, name+" is not a valid list index");
 						}
@@ -735,6 +1053,85 @@ public class CommandProcessor implements Completer, Highlighter {
 					throw new CommandException(VALUE_TAG_NOT_FOUND, "Failed to resolve path");
 				}
 			}));
+		addCommand(Command.create()
+			.name("undo")
+			.description("revert the last change")
+			.usage("{} [count]")
+			.action((set, args) -> {
+				if (args.size() > 1) throw new CommandUsageException("Too many arguments");
+				int count = parseCount(args);
+				if (undo.isEmpty()) throw new CommandException(VALUE_CMDSPECIFIC_1, "Nothing to undo");
+				step(undo, redo, count);
+			}));
+		addCommand(Command.create()
+			.name("redo")
+			.description("reapply a reverted change")
+			.usage("{} [count]")
+			.action((set, args) -> {
+				if (args.size() > 1) throw new CommandUsageException("Too many arguments");
+				int count = parseCount(args);
+				if (redo.isEmpty()) throw new CommandException(VALUE_CMDSPECIFIC_1, "Nothing to redo");
+				step(redo, undo, count);
+			}));
+		addCommand(Command.create()
+			.name("checkpoint")
+			.description("name the current state")
+			.usage("{} [name]")
+			.options((parser) -> {
+				parser.acceptsAll(Arrays.asList("d", "delete"), "forget the checkpoint instead");
+			})
+			.action((set, args) -> {
+				if (args.size() > 1) throw new CommandUsageException("Too many arguments");
+				if (args.isEmpty()) {
+					if (set.has("delete")) throw new CommandUsageException("Missing argument");
+					if (checkpoints.isEmpty()) {
+						System.out.println("No checkpoints");
+					}
+					for (String name : checkpoints.keySet()) {
+						System.out.println(name);
+					}
+				} else if (set.has("delete")) {
+					if (!checkpoints.containsKey(args.get(0))) {
+						throw new CommandException(VALUE_CMDSPECIFIC_1, "No checkpoint named "+args.get(0));
+					}
+					checkpoints.remove(args.get(0));
+				} else {
+					// the tree was frozen before this command ran, so keeping
+					// it is free
+					checkpoints.put(args.get(0), beforeCommand);
+				}
+			}));
+		addCommand(Command.create()
+			.name("restore")
+			.description("go back to a checkpoint")
+			.usage("{} <name>")
+			.completer((reader, line, candidates) -> {
+				for (String name : checkpoints.keySet()) {
+					candidates.add(new Candidate(name));
+				}
+			})
+			.action((set, args) -> {
+				if (args.isEmpty()) throw new CommandUsageException("Missing argument");
+				if (args.size() > 1) throw new CommandUsageException("Too many arguments");
+				if (!checkpoints.containsKey(args.get(0))) {
+					throw new CommandException(VALUE_CMDSPECIFIC_1, "No checkpoint named "+args.get(0));
+				}
+				NBTTag snapshot = checkpoints.get(args.get(0));
+				if (!isSameTree(snapshot, root)) {
+					// recorded like any other change, so this can be undone
+					swapIn(snapshot, TagDiff.pathOf(cursor));
+					dirty = true;
+				}
+			}));
+	}
+	
+	private int parseCount(List<String> args) throws CommandException {
+		if (args.isEmpty()) return 1;
+		Integer count = Ints.tryParse(args.get(0));
+		if (count == null || count < 1) {
+			throw new CommandException(VALUE_BAD_USAGE, args.get(0)+" is not a valid count");
+		}
+		return count;
 	}
 	
 	private boolean prompt(String str, boolean def) {
@@ -881,7 +1278,7 @@ public class CommandProcessor implements Completer, Highlighter {
 					}
 				} else if (subject instanceof NBTList) {
 					String parentPath = Strings.nullToEmpty(p.leaf != null ? line.word() : p.parentPath);
-					if (parentPath.endsWith("/")) {
+					if (parentPath.endsWith("/") || parentPath.endsWith("[")) {
 						parentPath = parentPath.substring(0, parentPath.length()-1);
 					}
 					for (int i = 0; i < subject.size(); i++) {
@@ -900,82 +1297,115 @@ public class CommandProcessor implements Completer, Highlighter {
 		};
 	}
 
+	private NBTPath compilePath(String path) throws CommandException {
+		try {
+			return NBTPath.compile(path);
+		} catch (IllegalArgumentException e) {
+			throw new CommandException(VALUE_BAD_USAGE, e.getMessage());
+		}
+	}
+	
+	/**
+	 * Find every tag the given path matches. Paths without wildcards or
+	 * filters are resolved as by {@link #resolvePath}, including its errors.
+	 */
+	private List<NBTTag> resolveAll(String path) throws CommandException {
+		NBTPath compiled = compilePath(path);
+		if (!compiled.isWild()) {
+			return Collections.singletonList(resolvePath(path).leaf);
+		}
+		List<NBTTag> li = compiled.evaluate(compiled.isAbsolute() ? root : cursor);
+		if (li.isEmpty()) {
+			throw new CommandException(VALUE_TAG_NOT_FOUND, path+" did not match anything");
+		}
+		return li;
+	}
+
 	private ResolvedPath resolvePath(String path, ResolvePathOption... optionsArr) throws CommandException {
 		List<ResolvePathOption> options = Arrays.asList(optionsArr);
 		NBTTag cursorWork = cursor;
-		if (path.startsWith("/")) {
-			cursorWork = root;
-		}
 		NBTParent immediateParent = cursorWork == null ? null : cursorWork.getParent();
-		// shhhhhhHHHHHH
-		String slashMagic = "!!@@ThisIsAHopefullyUniqueStringToHackilyFixABugThatIsCausingMajorProblemsRightNow@@!!";
-		path = path.replace("\\/", slashMagic);
-		path = path.replace("/", "//").replace("[", "/[").replace("]//", "]/");
-		Matcher m = PATH_SEGMENT.matcher(path);
 		String parentPath = "";
 		try {
-			while (m.find()) {
-				String seg = MoreObjects.firstNonNull(m.group(1), m.group(2)).replace("//", "/").replace(slashMagic, "/");
-				if (".".equals(seg) || seg.isEmpty()) {
+			NBTPath compiled = compilePath(path);
+			if (compiled.isAbsolute()) {
+				cursorWork = root;
+				immediateParent = null;
+			}
+			if (compiled.isWild()) {
+				List<NBTTag> li = compiled.evaluate(cursorWork);
+				if (li.size() != 1) {
+					throw new CommandException(VALUE_TAG_NOT_FOUND, path+" matched "+li.size()+" tags, rather than one");
+				}
+				cursorWork = li.get(0);
+				immediateParent = cursorWork.getParent();
+				List<NBTPath.Segment> segs = compiled.getSegments();
+				parentPath = path.substring(0, segs.get(segs.size()-1).start);
+			}
+			List<NBTPath.Segment> segs = compiled.isWild() ? Collections.emptyList() : compiled.getSegments();
+			for (int i = 0; i < segs.size(); i++) {
+				NBTPath.Segment seg = segs.get(i);
+				boolean last = i == segs.size()-1;
+				parentPath = path.substring(0, seg.start);
+				if (seg.kind == NBTPath.Kind.SELF) {
 					// this cast is safe due to checks lower in the loop
 					// we'll never reach this point if cursorWork is not
 					// an NBTParent
 					immediateParent = (NBTParent)cursorWork;
-					parentPath = path.substring(0, m.start());
 					continue;
 				}
-				if ("..".equals(seg)) {
+				if (seg.kind == NBTPath.Kind.PARENT) {
 					if (cursorWork == null) throw new CommandException(VALUE_TAG_NOT_FOUND, "Cannot traverse above nothing");
 					if (cursorWork.getParent() == null) throw new CommandException(VALUE_TAG_NOT_FOUND, "Cannot traverse above root");
 					cursorWork = asTag(cursorWork.getParent());
 					immediateParent = cursorWork.getParent();
-					parentPath = path.substring(0, m.start());
 					continue;
 				}
+				String key = seg.key;
 				if (cursorWork instanceof NBTCompound) {
 					NBTCompound c = (NBTCompound)cursorWork;
 					immediateParent = c;
-					parentPath = path.substring(0, m.start());
-					if (c.contains(seg)) {
-						cursorWork = c.get(seg);
+					if (c.contains(key)) {
+						// anything we walk through might be about to change,
+						// so it can't stay shared with an undo snapshot
+						cursorWork = c.unshare(key);
 					} else {
 						if (options.contains(CREATE_PARENTS)) {
-							if (m.hitEnd()) {
-								return new ResolvedPath(immediateParent, null, parentPath.replace("/[", "[").replace("//", "/"), null);
+							if (last) {
+								return new ResolvedPath(immediateParent, null, parentPath, null);
 							}
-							cursorWork = new NBTCompound(seg);
+							cursorWork = new NBTCompound(key);
 							c.put(cursorWork);
 						} else {
-							throw new CommandException(VALUE_TAG_NOT_FOUND, path.substring(0, m.end()).replace("/[", "[").replace("//", "/")+" does not exist");
+							throw new CommandException(VALUE_TAG_NOT_FOUND, path.substring(0, seg.end)+" does not exist");
 						}
 					}
 				} else if (cursorWork instanceof NBTIndexed) {
 					NBTIndexed l = (NBTIndexed)cursorWork;
-					Integer i = Ints.tryParse(seg);
+					Integer idx = Ints.tryParse(key);
 					immediateParent = l;
-					parentPath = path.substring(0, m.start());
-					if (i == null || i < 0) {
-						throw new CommandException(VALUE_TAG_NOT_FOUND, seg+" is not a valid list index");
+					if (idx == null || idx < 0) {
+						throw new CommandException(VALUE_TAG_NOT_FOUND, key+" is not a valid list index");
 					}
-					if (i >= l.size()) {
+					if (idx >= l.size()) {
 						if (options.contains(SOFT_IOOBE)) {
-							return new ResolvedPath(immediateParent, null, parentPath.replace("/[", "[").replace("//", "/"), null);
+							return new ResolvedPath(immediateParent, null, parentPath, null);
 						}
-						throw new CommandException(VALUE_TAG_NOT_FOUND, seg+" is out of bounds");
+						throw new CommandException(VALUE_TAG_NOT_FOUND, key+" is out of bounds");
 					}
-					cursorWork = l.get(i);
+					cursorWork = l instanceof NBTList ? ((NBTList)l).unshare(idx) : l.get(idx);
 				} else {
 					throw new CommandException(VALUE_TAG_NOT_FOUND, "Cannot traverse into "+(cursorWork == null ? "null" : NBTRegistry.typeNameFromClass(cursorWork.getClass())));
 				}
 			}
 			if (!options.contains(PARENTS_ONLY) || cursorWork instanceof NBTParent) {
-				return new ResolvedPath(immediateParent, cursorWork, parentPath.replace("/[", "[").replace("//", "/"), getPath(cursorWork));
+				return new ResolvedPath(immediateParent, cursorWork, parentPath, getPath(cursorWork));
 			} else {
 				throw new CommandException(VALUE_TAG_NOT_FOUND, (cursorWork == null ? "null" : NBTRegistry.typeNameFromClass(cursorWork.getClass()))+" is not valid here");
 			}
 		} catch (CommandException e) {
 			if (!options.contains(NO_ERROR)) throw e;
-			return new ResolvedPath(immediateParent, null, parentPath.replace("/[", "[").replace("//", "/"), null);
+			return new ResolvedPath(immediateParent, null, parentPath, null);
 		}
 	}
 
@@ -1020,6 +1450,7 @@ public class CommandProcessor implements Completer, Highlighter {
 						Command command = commands.get(commandStr);
 						if (command != null) {
 							try {
+								snapshot();
 								command.execute(commandStr, words.subList(1, words.size()));
 							} catch (CommandException e) {
 								if (NBTEd.VERBOSE) {
@@ -1029,6 +1460,10 @@ public class CommandProcessor implements Completer, Highlighter {
 								if (e instanceof CommandUsageException) {
 									System.err.println(reader.getAppName()+": "+commandStr+": usage: "+command.getUsage(commandStr));
 								}
+							} finally {
+								// record even if it failed partway, as it may have
+								// changed something before it did
+								record();
 							}
 						} else {
 							System.err.println(reader.getAppName()+": Unknown command");
@@ -1047,10 +1482,116 @@ public class CommandProcessor implements Completer, Highlighter {
 		}
 	}
 
+	/**
+	 * Freeze the tree as it is now, so the command about to run can be
+	 * undone. Sharing stops at tags that are already shared, and the live
+	 * tree that replaces it is a shallow copy, so this only costs as much
+	 * as the last command touched rather than the size of the file.
+	 */
+	private void snapshot() {
+		List<Object> cursorPath = TagDiff.pathOf(cursor);
+		if (root != null) {
+			root.share();
+		}
+		beforeCommand = root;
+		recording = true;
+		swapIn(root, cursorPath);
+	}
+	
+	/**
+	 * Push the snapshot taken before the last command onto the undo stack,
+	 * if the command changed anything.
+	 */
+	/**
+	 * Run a command as if it had been entered at the prompt, recording it for
+	 * undo, but letting whatever it throws through.
+	 */
+	void execute(String name, String... args) throws Exception {
+		Command command = commands.get(name);
+		if (command == null) throw new CommandException(VALUE_BAD_USAGE, "Unknown command "+name);
+		snapshot();
+		try {
+			command.execute(name, args);
+		} finally {
+			record();
+		}
+	}
+	
+	NBTTag getRoot() {
+		return root;
+	}
+	
+	private void record() {
+		if (!recording) return;
+		recording = false;
+		if (!isSameTree(beforeCommand, root)) {
+			push(undo, beforeCommand);
+			redo.clear();
+		}
+		beforeCommand = null;
+	}
+	
+	/**
+	 * Replace the live tree with a copy of the given snapshot, and put the
+	 * cursor back as close to where it was as still exists.
+	 */
+	private void swapIn(NBTTag snapshot, List<Object> cursorPath) {
+		root = snapshot == null ? null : snapshot.copy();
+		cursor = root;
+		for (Object o : cursorPath) {
+			NBTTag next = null;
+			if (o instanceof String && cursor instanceof NBTCompound) {
+				next = ((NBTCompound)cursor).unshare((String)o);
+			} else if (o instanceof Integer && cursor instanceof NBTIndexed) {
+				int i = (Integer)o;
+				if (i < ((NBTIndexed)cursor).size()) {
+					next = cursor instanceof NBTList ? ((NBTList)cursor).unshare(i) : ((NBTIndexed)cursor).get(i);
+				}
+			}
+			if (!(next instanceof NBTParent)) break;
+			cursor = next;
+		}
+	}
+	
+	private void step(List<NBTTag> from, List<NBTTag> to, int count) {
+		// this command manages the history itself
+		recording = false;
+		List<Object> cursorPath = TagDiff.pathOf(cursor);
+		NBTTag current = beforeCommand;
+		for (int i = 0; i < count && !from.isEmpty(); i++) {
+			push(to, current);
+			current = from.remove(from.size()-1);
+		}
+		swapIn(current, cursorPath);
+		beforeCommand = null;
+		dirty = true;
+	}
+	
+	private static void push(List<NBTTag> stack, NBTTag snapshot) {
+		stack.add(snapshot);
+		if (stack.size() > MAX_UNDO) {
+			stack.remove(0);
+		}
+	}
+	
+	private static boolean isSameTree(NBTTag a, NBTTag b) {
+		if (a == b) return true;
+		if (a == null || b == null) return false;
+		// snapshots share everything a command didn't walk into, so this
+		// stops at the first shared subtree and only compares what's new;
+		// compared as encoded, so e.g. setting -0.0 over 0.0 is still a change
+		return Objects.equal(a.getName(), b.getName()) && a.encodesSameAs(b);
+	}
+
 	private String getPath(NBTTag t) {
 		List<String> parts = Lists.newArrayList();
 		while (t != null) {
 			NBTParent parent = t.getParent();
+			if (parent == null && t != root && t.isShared()) {
+				// shared tags don't know their parent; anything given here
+				// should have been unshared by resolving a path to it
+				throw new ConsistencyError("Can't find the path of a shared tag");
+			}
 			if (t instanceof NBTArrayFake) {
 				parts.add("["+((NBTArrayFake)t).getIndex()+"]");
 			} else if (parent instanceof NBTList) {
@@ -18,50 +18,365 @@
 
 package com.unascribed.nbted;
 
+import java.io.BufferedInputStream;
+import java.io.FileInputStream;
+import java.io.FilterInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
-import java.util.zip.DeflaterOutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.util.Locale;
+import java.util.concurrent.ForkJoinPool;
+import java.util.zip.Deflater;
 import java.util.zip.GZIPInputStream;
-import java.util.zip.GZIPOutputStream;
-import java.util.zip.InflaterInputStream;
 
+import com.google.common.base.Preconditions;
+
+import io.airlift.compress.MalformedInputException;
+import io.airlift.compress.lz4.Lz4FrameInputStream;
+import io.airlift.compress.lz4.Lz4FrameOutputStream;
+import io.airlift.compress.zstd.CompressionContext;
+import io.airlift.compress.zstd.ZstdIncrementalFrameDecompressor;
 import io.airlift.compress.zstd.ZstdInputStream;
 import io.airlift.compress.zstd.ZstdOutputStream;
+import io.airlift.compress.zstd.ZstdParallelInputStream;
+import io.airlift.compress.zstd.ZstdReadableByteChannel;
+import io.airlift.compress.zstd.ZstdSeekTable;
 
 public enum Compression {
 	NONE("None"),
 	DEFLATE("Deflate"),
 	GZIP("GZip"),
 	ZSTD("ZStandard"),
+	LZ4("LZ4"),
 	;
+	
+	/**
+	 * How Deflate and GZip choose matches. {@link #FILTERED} suits data that's
+	 * mostly small values with a somewhat random distribution, such as arrays
+	 * of heights or light levels; {@link #HUFFMAN} skips string matching
+	 * entirely.
+	 */
+	public enum Strategy {
+		DEFAULT(Deflater.DEFAULT_STRATEGY),
+		FILTERED(Deflater.FILTERED),
+		HUFFMAN(Deflater.HUFFMAN_ONLY),
+		;
+		private final int value;
+		Strategy(int value) {
+			this.value = value;
+		}
+		
+		public int getDeflaterValue() {
+			return value;
+		}
+		
+		@Override
+		public String toString() {
+			return name().toLowerCase(Locale.ROOT);
+		}
+	}
+	
+	/**
+	 * Let the method pick its own level; level 6 for Deflate and GZip.
+	 */
+	public static final int DEFAULT_LEVEL = Deflater.DEFAULT_COMPRESSION;
+	
+	// how many bytes of multi-frame ZStandard input, compressed and decompressed, are
+	// held in memory ahead of the reader
+	private static final long ZSTD_READ_AHEAD = Math.min(Runtime.getRuntime().maxMemory()/8,
+			Math.max(2, ForkJoinPool.getCommonPoolParallelism()*2)*8L*1024*1024);
+	
+	private static volatile int zstdFrameSize = Integer.getInteger("unbted.zstdFrameSize", 1024*1024);
+	// 0 leaves the window up to the compression level
+	private static volatile int zstdWindowLog = 0;
+	private static volatile boolean zstdLongDistanceMatching = false;
+	// the same as the decoder's own default
+	private static volatile int zstdMaxWindowLog = CompressionContext.DEFAULT_LONG_DISTANCE_WINDOW_LOG;
+	
 	private final String name;
 	Compression(String name) {
 		this.name = name;
 	}
 	
+	/**
+	 * @return the most uncompressed data ZStandard output puts in one frame; 1MiB
+	 * 		unless overridden by the {@code unbted.zstdFrameSize} system property or
+	 * 		{@link #setZstdFrameSize}. Output is in the seekable format, so readers
+	 * 		can start at any frame. 0 means a single frame, without a seek table.
+	 */
+	public static int getZstdFrameSize() {
+		return zstdFrameSize;
+	}
+	
+	public static void setZstdFrameSize(int zstdFrameSize) {
+		Preconditions.checkArgument(zstdFrameSize >= 0 && zstdFrameSize <= ZstdOutputStream.MAX_SEEKABLE_FRAME_SIZE,
+				"zstd frame size must be between 0 and "+ZstdOutputStream.MAX_SEEKABLE_FRAME_SIZE);
+		Compression.zstdFrameSize = zstdFrameSize;
+	}
+	
+	/**
+	 * @return {@code true} if ZStandard output searches the whole window for
+	 * 		repeated runs, rather than just the last few hundred KiB
+	 */
+	public static boolean isZstdLongDistanceMatching() {
+		return zstdLongDistanceMatching;
+	}
+	
+	/**
+	 * @return the log2 of the largest window ZStandard input may ask for; 27,
+	 * 		or as raised by {@link #setZstdLongDistanceMatching}
+	 */
+	public static int getZstdMaxWindowLog() {
+		return zstdMaxWindowLog;
+	}
+	
+	/**
+	 * Turn on long-distance matching for ZStandard output, like {@code zstd --long}.
+	 * This finds repeats between far apart parts of a large file, such as
+	 * chunks in a region archive, at the cost of a window of memory on both
+	 * ends. Input with windows this large is accepted too.
+	 * 
+	 * @param windowLog the log2 of the window size, or 0 for 27 (128MiB)
+	 */
+	public static void setZstdLongDistanceMatching(int windowLog) {
+		Preconditions.checkArgument(windowLog == 0 || (windowLog >= CompressionContext.MIN_WINDOW_LOG && windowLog <= CompressionContext.MAX_WINDOW_LOG),
+				"zstd window log must be between "+CompressionContext.MIN_WINDOW_LOG+" and "+CompressionContext.MAX_WINDOW_LOG);
+		int effective = windowLog == 0 ? CompressionContext.DEFAULT_LONG_DISTANCE_WINDOW_LOG : windowLog;
+		zstdWindowLog = windowLog;
+		zstdLongDistanceMatching = true;
+		zstdMaxWindowLog = Math.max(zstdMaxWindowLog, effective);
+	}
+	
+	/**
+	 * @return {@code true} if this method accepts a level and strategy when writing
+	 */
+	public boolean supportsLevel() {
+		return this == DEFLATE || this == GZIP;
+	}
+	
+	/**
+	 * @throws IllegalArgumentException if the given level isn't valid for this method
+	 */
+	public void checkLevel(int level) {
+		if (level == DEFAULT_LEVEL) return;
+		if (!supportsLevel()) {
+			throw new IllegalArgumentException(name+" does not support compression levels");
+		}
+		if (level < Deflater.NO_COMPRESSION || level > Deflater.BEST_COMPRESSION) {
+			throw new IllegalArgumentException("Compression level must be between 0 and 9, not "+level);
+		}
+	}
+	
+	/**
+	 * Codec state for the returned stream comes from the {@link CodecPool}, and
+	 * is only returned to it when the stream is closed. ZStandard input made
+	 * of several frames, such as the seekable format, pzstd output, or
+	 * concatenated files, is decompressed a few frames at a time on the common
+	 * pool, ahead of the reader. Other ZStandard files opened with a
+	 * {@link FileInputStream} that are larger than the buffer size are
+	 * memory-mapped.
+	 */
 	public InputStream wrap(InputStream is) throws IOException {
 		if (is == null) return null;
 		switch (this) {
 			case NONE: return is;
-			case DEFLATE: return new InflaterInputStream(is);
-			case GZIP: return new GZIPInputStream(is);
-			case ZSTD: return new ZstdInputStream(is);
+			case DEFLATE: return new PooledInflaterInputStream(is, false);
+			case GZIP: return new PooledGZIPInputStream(is);
+			case ZSTD: {
+				if (is instanceof FileInputStream) {
+					FileChannel ch = ((FileInputStream)is).getChannel();
+					long position = ch.position();
+					long size = ch.size()-position;
+					if (size > CodecPool.getBufferSize()) {
+						if (position == 0 && ForkJoinPool.getCommonPoolParallelism() > 1) {
+							boolean severalFrames = hasSeveralFrames(ch);
+							ch.position(0);
+							if (severalFrames) {
+								return wrapParallelZstd(is);
+							}
+						}
+						// decompress large files straight out of a mapping, instead of copying them through a buffer
+						ZstdIncrementalFrameDecompressor dec = CodecPool.acquireZstdDecompressor();
+						dec.setMaxWindowSize(1 << zstdMaxWindowLog);
+						return new FilterInputStream(Channels.newInputStream(new ZstdReadableByteChannel(ch, position, size, dec))) {
+							private boolean released = false;
+							@Override
+							public void close() throws IOException {
+								try {
+									super.close();
+								} finally {
+									if (!released) {
+										released = true;
+										CodecPool.release(dec);
+									}
+								}
+							}
+						};
+					}
+				} else if (ForkJoinPool.getCommonPoolParallelism() > 1) {
+					// there's no looking ahead in a pipe, but the parallel stream
+					// goes back to one frame at a time by itself when it has to
+					return wrapParallelZstd(is);
+				}
+				ZstdIncrementalFrameDecompressor dec = CodecPool.acquireZstdDecompressor();
+				dec.setMaxWindowSize(1 << zstdMaxWindowLog);
+				return new ZstdInputStream(is, dec, CodecPool.getBufferSize()) {
+					private boolean released = false;
+					@Override
+					public void close() throws IOException {
+						try {
+							super.close();
+						} finally {
+							if (!released) {
+								released = true;
+								CodecPool.release(dec);
+							}
+						}
+					}
+				};
+			}
+			case LZ4: return new Lz4FrameInputStream(is);
 			default: throw new AssertionError("missing case for "+this);
 		}
 	}
 	
+	private static InputStream wrapParallelZstd(InputStream is) {
+		ZstdParallelInputStream zpis = new ZstdParallelInputStream(new BufferedInputStream(is, CodecPool.getBufferSize()), ForkJoinPool.commonPool(), ZSTD_READ_AHEAD);
+		zpis.setMaxWindowSize(1 << zstdMaxWindowLog);
+		return zpis;
+	}
+	
+	/**
+	 * @return {@code true} if the file has a seek table listing more than one
+	 * 		frame, or a second frame starts within {@link #ZSTD_READ_AHEAD}
+	 * 		bytes of the start; leaves the channel's position anywhere
+	 */
+	private static boolean hasSeveralFrames(FileChannel ch) throws IOException {
+		try {
+			ZstdSeekTable table = ZstdSeekTable.read(ch);
+			if (table != null) return table.getFrameCount() > 1;
+		} catch (MalformedInputException e) {
+			// let the regular decoder complain, if there's anything wrong with the frames too
+			return false;
+		}
+		// not closed, as that would close the channel; the payloads are skipped by
+		// moving the channel's position, so only the headers are read
+		ch.position(0);
+		return ZstdParallelInputStream.startsWithSeveralFrames(Channels.newInputStream(ch), ZSTD_READ_AHEAD);
+	}
+	
 	public OutputStream wrap(OutputStream os) throws IOException {
+		return wrap(os, DEFAULT_LEVEL);
+	}
+	
+	public OutputStream wrap(OutputStream os, int level) throws IOException {
+		return wrap(os, level, Strategy.DEFAULT);
+	}
+	
+	/**
+	 * Codec state for the returned stream comes from the {@link CodecPool}, and
+	 * is only returned to it when the stream is closed.
+	 * 
+	 * @param level the compression level, or {@link #DEFAULT_LEVEL}
+	 * @param strategy the compression strategy; ignored by methods that don't
+	 * 		{@link #supportsLevel support levels}
+	 * @throws IllegalArgumentException if the level isn't valid for this method
+	 */
+	public OutputStream wrap(OutputStream os, int level, Strategy strategy) throws IOException {
 		if (os == null) return null;
+		checkLevel(level);
+		int deflaterStrategy = strategy == null ? Deflater.DEFAULT_STRATEGY : strategy.getDeflaterValue();
 		switch (this) {
 			case NONE: return os;
-			case DEFLATE: return new DeflaterOutputStream(os);
-			case GZIP: return new GZIPOutputStream(os);
-			case ZSTD: return new ZstdOutputStream(os);
+			case DEFLATE: return new PooledDeflaterOutputStream(os, level, deflaterStrategy, false);
+			case GZIP:
+				if (ForkJoinPool.getCommonPoolParallelism() > 1) {
+					return new ParallelGZIPOutputStream(os, level, deflaterStrategy);
+				} else {
+					return new PooledGZIPOutputStream(os, level, deflaterStrategy);
+				}
+			case ZSTD: {
+				CompressionContext ctx = CodecPool.acquireZstdContext(zstdWindowLog, zstdLongDistanceMatching);
+				int frameSize = zstdFrameSize;
+				if (frameSize != 0 && ctx.isLongDistanceMatching()) {
+					// matches can't reach into earlier frames, so give each frame a whole window
+					frameSize = Math.min(ZstdOutputStream.MAX_SEEKABLE_FRAME_SIZE, Math.max(frameSize, 1 << ctx.getWindowLog()));
+				}
+				return new ZstdOutputStream(os, ctx, frameSize) {
+					private boolean released = false;
+					@Override
+					public void close() throws IOException {
+						try {
+							super.close();
+						} finally {
+							if (!released) {
+								released = true;
+								CodecPool.release(ctx);
+							}
+						}
+					}
+				};
+			}
+			case LZ4: return new Lz4FrameOutputStream(os);
 			default: throw new AssertionError("missing case for "+this);
 		}
 	}
 	
+	/**
+	 * Guess the compression method of a stream from its first few bytes.
+	 * The stream is left positioned after the bytes that were read.
+	 */
+	public static Compression detect(InputStream is) throws IOException {
+		int magic8 = is.read() & 0xff;
+		int magic16 = magic8 | ((is.read() << 8) & 0xff00);
+		if (magic16 == GZIPInputStream.GZIP_MAGIC) {
+			return GZIP;
+		} else if (magic8 == 0x78) {
+			return DEFLATE;
+		} else if (magic16 == 0xb528) {
+			return ZSTD;
+		} else if (magic16 == 0x2204 || magic16 == 0x5a4c) {
+			// an LZ4 frame, or an lz4-java "LZ4Block" stream
+			return LZ4;
+		} else {
+			return NONE;
+		}
+	}
+	
+	/**
+	 * Guess the level a stream was written with, from the header read by
+	 * {@link #detect}. Only a few levels are recorded: gzip marks levels 1 and
+	 * 9, and zlib distinguishes 1, 2-5, 6 and 7-9, so this is a best guess.
+	 * 
+	 * @param header the first bytes of the stream; 10 is enough for any method
+	 * @return the level, or {@link #DEFAULT_LEVEL} if unknown
+	 */
+	public int detectLevel(byte[] header) {
+		switch (this) {
+			case GZIP:
+				if (header.length < 9) return DEFAULT_LEVEL;
+				// XFL
+				switch (header[8]) {
+					case 2: return Deflater.BEST_COMPRESSION;
+					case 4: return Deflater.BEST_SPEED;
+					default: return DEFAULT_LEVEL;
+				}
+			case DEFLATE:
+				if (header.length < 2) return DEFAULT_LEVEL;
+				// FLEVEL
+				switch ((header[1] >> 6) & 3) {
+					case 0: return Deflater.BEST_SPEED;
+					case 1: return 5;
+					case 3: return Deflater.BEST_COMPRESSION;
+					default: return DEFAULT_LEVEL;
+				}
+			default:
+				return DEFAULT_LEVEL;
+		}
+	}
+	
 	@Override
 	public String toString() {
 		return name;
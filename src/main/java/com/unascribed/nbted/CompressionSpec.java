@@ -0,0 +1,104 @@
+/*
+ * unbted - Una's NBT Editor
+ * Copyright (C) 2018 - 2023 Una Thompson (unascribed)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.unascribed.nbted;
+
+import com.unascribed.nbted.Compression.Strategy;
+
+import joptsimple.ValueConverter;
+
+/**
+ * A compression method as given to -c, optionally followed by a level and a
+ * strategy, as in {@code gzip}, {@code gzip:1} or {@code deflate:9:filtered}.
+ */
+public class CompressionSpec {
+
+	public final Compression method;
+	/**
+	 * The requested level, or {@link Compression#DEFAULT_LEVEL} if none was given.
+	 */
+	public final int level;
+	/**
+	 * The requested strategy, or null if none was given.
+	 */
+	public final Strategy strategy;
+	
+	public CompressionSpec(Compression method, int level, Strategy strategy) {
+		method.checkLevel(level);
+		if (strategy != null && !method.supportsLevel()) {
+			throw new IllegalArgumentException(method+" does not support compression strategies");
+		}
+		this.method = method;
+		this.level = level;
+		this.strategy = strategy;
+	}
+	
+	public static CompressionSpec parse(String str) {
+		String[] parts = str.split(":", -1);
+		if (parts.length > 3) {
+			throw new IllegalArgumentException(str+" is not a valid compression; expected method[:level[:strategy]]");
+		}
+		Compression method = new CaseInsensitiveEnumConverter<>(Compression.class).convert(parts[0]);
+		int level = Compression.DEFAULT_LEVEL;
+		if (parts.length > 1 && !parts[1].isEmpty()) {
+			try {
+				level = Integer.parseInt(parts[1]);
+			} catch (NumberFormatException e) {
+				throw new IllegalArgumentException(parts[1]+" is not a valid compression level");
+			}
+		}
+		Strategy strategy = null;
+		if (parts.length > 2) {
+			strategy = new CaseInsensitiveEnumConverter<>(Strategy.class).convert(parts[2]);
+		}
+		return new CompressionSpec(method, level, strategy);
+	}
+	
+	@Override
+	public String toString() {
+		StringBuilder sb = new StringBuilder(method.toString());
+		if (level != Compression.DEFAULT_LEVEL || strategy != null) {
+			sb.append(":");
+			if (level != Compression.DEFAULT_LEVEL) sb.append(level);
+		}
+		if (strategy != null) {
+			sb.append(":").append(strategy.toString());
+		}
+		return sb.toString();
+	}
+	
+	public static class Converter implements ValueConverter<CompressionSpec> {
+		
+		@Override
+		public CompressionSpec convert(String value) {
+			return parse(value);
+		}
+		
+		@Override
+		public Class<? extends CompressionSpec> valueType() {
+			return CompressionSpec.class;
+		}
+		
+		@Override
+		public String valuePattern() {
+			return "method[:level[:strategy]]";
+		}
+		
+	}
+	
+}
@@ -18,41 +18,38 @@
 
 package com.unascribed.nbted;
 
-import java.io.DataInput;
-import java.io.DataInputStream;
-import java.io.DataOutput;
-import java.io.DataOutputStream;
 import java.io.FilterInputStream;
 import java.io.FilterOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.ByteOrder;
 import java.util.Arrays;
 
 import com.google.common.base.Charsets;
 
-import io.github.steveice10.opennbt.NBTIO.LittleEndianDataInputStream;
-import io.github.steveice10.opennbt.NBTIO.LittleEndianDataOutputStream;
+import io.github.steveice10.opennbt.NBTDataInput;
+import io.github.steveice10.opennbt.NBTDataOutput;
 
 public enum Endianness {
 	BIG,
 	LITTLE,
 	ZZAZZ;
 	
-	public DataInput wrap(InputStream in) {
+	public NBTDataInput wrap(InputStream in) {
 		switch (this) {
-			case BIG: return new DataInputStream(in);
-			case LITTLE: return new LittleEndianDataInputStream(in);
-			case ZZAZZ: return new DataInputStream(new XORInputStream(in, EGG_NOISE));
+			case BIG: return new NBTDataInput(in, ByteOrder.BIG_ENDIAN);
+			case LITTLE: return new NBTDataInput(in, ByteOrder.LITTLE_ENDIAN);
+			case ZZAZZ: return new NBTDataInput(new XORInputStream(in, EGG_NOISE), ByteOrder.BIG_ENDIAN);
 			default: throw new AssertionError("missing case for "+this);
 		}
 	}
 	
-	public DataOutput wrap(OutputStream out) {
+	public NBTDataOutput wrap(OutputStream out) {
 		switch (this) {
-			case BIG: return new DataOutputStream(out);
-			case LITTLE: return new LittleEndianDataOutputStream(out);
-			case ZZAZZ: return new DataOutputStream(new XOROutputStream(out, EGG_NOISE));
+			case BIG: return new NBTDataOutput(out, ByteOrder.BIG_ENDIAN);
+			case LITTLE: return new NBTDataOutput(out, ByteOrder.LITTLE_ENDIAN);
+			case ZZAZZ: return new NBTDataOutput(new XOROutputStream(out, EGG_NOISE), ByteOrder.BIG_ENDIAN);
 			default: throw new AssertionError("missing case for "+this);
 		}
 	}
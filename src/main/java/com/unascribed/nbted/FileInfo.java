@@ -20,22 +20,49 @@ package com.unascribed.nbted;
 
 import java.io.File;
 
+import com.unascribed.nbted.Compression.Strategy;
+
 public class FileInfo {
 
 	public static final File STDIN = new File("/dev/stdin");
 	
 	public final File sourceFile;
 	public final Compression compressionMethod;
+	/**
+	 * The level to save with, or {@link Compression#DEFAULT_LEVEL}. When loaded
+	 * with an autodetected method, this is the level detected from the header.
+	 */
+	public final int compressionLevel;
+	/**
+	 * The strategy to save with, or null for the default.
+	 */
+	public final Strategy compressionStrategy;
 	public final boolean compressionAutodetected;
 	public final Endianness endianness;
 	public final boolean isJson;
+	/**
+	 * The size of the file on disk as of when it was loaded or last saved,
+	 * or -1 if unknown.
+	 */
+	public final long storedSize;
 	
 	public FileInfo(File sourceFile, Compression compressionMethod, boolean compressionAutodetected, Endianness endianness, boolean isJson) {
+		this(sourceFile, compressionMethod, compressionAutodetected, endianness, isJson, -1);
+	}
+	
+	public FileInfo(File sourceFile, Compression compressionMethod, boolean compressionAutodetected, Endianness endianness, boolean isJson, long storedSize) {
+		this(sourceFile, compressionMethod, Compression.DEFAULT_LEVEL, null, compressionAutodetected, endianness, isJson, storedSize);
+	}
+	
+	public FileInfo(File sourceFile, Compression compressionMethod, int compressionLevel, Strategy compressionStrategy, boolean compressionAutodetected, Endianness endianness, boolean isJson, long storedSize) {
 		this.sourceFile = sourceFile;
 		this.compressionMethod = compressionMethod;
+		this.compressionLevel = compressionLevel;
+		this.compressionStrategy = compressionStrategy;
 		this.compressionAutodetected = compressionAutodetected;
 		this.endianness = endianness;
 		this.isJson = isJson;
+		this.storedSize = storedSize;
 	}
 	
 }
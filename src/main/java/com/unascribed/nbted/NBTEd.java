@@ -43,9 +43,9 @@ import java.util.Map;
 import java.util.UUID;
 import java.util.logging.Handler;
 import java.util.logging.Logger;
-import java.util.zip.GZIPInputStream;
 
 import org.jline.builtins.Less;
+import org.jline.builtins.Source;
 import org.jline.builtins.Source.URLSource;
 import org.jline.terminal.Terminal;
 import org.jline.terminal.TerminalBuilder;
@@ -54,6 +54,7 @@ import com.google.common.base.Charsets;
 import com.google.common.collect.Lists;
 import com.google.common.io.BaseEncoding;
 import com.google.common.io.ByteStreams;
+import com.google.common.io.CharStreams;
 import com.google.common.io.Resources;
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
@@ -64,9 +65,14 @@ import com.google.gson.JsonObject;
 import com.google.gson.JsonPrimitive;
 import com.google.gson.stream.JsonWriter;
 import com.unascribed.miniansi.AnsiStream;
+import com.unascribed.nbted.Compression.Strategy;
 import com.unascribed.nbted.TagPrinter.RecurseMode;
 
+import io.github.steveice10.opennbt.NBTDataInput;
+import io.github.steveice10.opennbt.NBTDataOutput;
 import io.github.steveice10.opennbt.NBTIO;
+import io.github.steveice10.opennbt.NBTInterner;
+import io.github.steveice10.opennbt.PathSelector;
 import io.github.steveice10.opennbt.NBTRegistry;
 import io.github.steveice10.opennbt.tag.NBTCompound;
 import io.github.steveice10.opennbt.tag.NBTList;
@@ -75,6 +81,7 @@ import io.github.steveice10.opennbt.tag.NBTTag;
 import io.github.steveice10.opennbt.tag.array.NBTByteArray;
 import io.github.steveice10.opennbt.tag.array.NBTIntArray;
 import io.github.steveice10.opennbt.tag.array.NBTLongArray;
+import io.github.steveice10.opennbt.tag.array.support.NBTArrayFake;
 import io.github.steveice10.opennbt.tag.number.NBTByte;
 import io.github.steveice10.opennbt.tag.number.NBTDouble;
 import io.github.steveice10.opennbt.tag.number.NBTFloat;
@@ -171,8 +178,12 @@ public class NBTEd {
 			parser.accepts("little-endian").availableUnless("endian"),
 			parser.accepts("big-endian").availableUnless("endian")
 		);
-		OptionSpec<Compression> compressionOpt = parser.acceptsAll(Arrays.asList("compression", "c")).withRequiredArg().ofType(Compression.class)
-				.withValuesConvertedBy(new CaseInsensitiveEnumConverter<>(Compression.class));
+		OptionSpec<CompressionSpec> compressionOpt = parser.acceptsAll(Arrays.asList("compression", "c")).withRequiredArg().ofType(CompressionSpec.class)
+				.withValuesConvertedBy(new CompressionSpec.Converter());
+		OptionSpec<Integer> compressionLevelOpt = parser.accepts("compression-level").withRequiredArg().ofType(Integer.class);
+		OptionSpec<Strategy> compressionStrategyOpt = parser.accepts("compression-strategy").withRequiredArg().ofType(Strategy.class)
+				.withValuesConvertedBy(new CaseInsensitiveEnumConverter<>(Strategy.class));
+		OptionSpec<Integer> longOpt = parser.accepts("long").withOptionalArg().ofType(Integer.class);
 		parser.acceptsAll(Arrays.asList("debug", "verbose", "d", "v"));
 		parser.mutuallyExclusive(
 			parser.acceptsAll(Arrays.asList("print", "p")),
@@ -183,7 +194,13 @@ public class NBTEd {
 			parser.acceptsAll(Arrays.asList("roundtrip-json", "J")),
 			parser.acceptsAll(Arrays.asList("convert-nbt", "N"))
 		);
+		parser.acceptsAll(Arrays.asList("diff", "D")).availableUnless("convert-nbt", "roundtrip-json");
+		parser.accepts("verify").availableIf("diff");
 		parser.acceptsAll(Arrays.asList("raw", "r"));
+		OptionSpec<Integer> maxDepthOpt = parser.accepts("max-depth").withRequiredArg().ofType(Integer.class);
+		OptionSpec<Integer> maxLinesOpt = parser.accepts("max-lines").withRequiredArg().ofType(Integer.class);
+		OptionSpec<String> selectOpt = parser.accepts("select").availableIf("print").availableUnless("diff").withRequiredArg();
+		OptionSpec<Long> internOpt = parser.accepts("intern").availableUnless("select", "diff", "convert-nbt").withOptionalArg().ofType(Long.class);
 		parser.acceptsAll(Arrays.asList("no-pager"));
 		parser.acceptsAll(Arrays.asList("version", "V"));
 		parser.posixlyCorrect(System.getenv("POSIXLY_CORRECT") != null);
@@ -219,6 +236,16 @@ public class NBTEd {
 			PAGER = false;
 		}
 		
+		if (set.has(longOpt)) {
+			try {
+				Compression.setZstdLongDistanceMatching(set.valueOf(longOpt) != null ? set.valueOf(longOpt) : 0);
+			} catch (IllegalArgumentException e) {
+				System.err.println("unbted: "+e.getMessage());
+				System.exit(1);
+				return;
+			}
+		}
+		
 		if (set.has("help")) {
 			initializeTerminal();
 			printHelp();
@@ -231,6 +258,30 @@ public class NBTEd {
 				System.exit(1);
 				return;
 			}
+		} else if (set.has("diff")) {
+			if (nonoptions.size() != 2) {
+				System.err.println("unbted: Wrong number of arguments - need the two files to compare");
+				System.exit(1);
+				return;
+			}
+			// identical subtrees in the two files will share memory too
+			NBTInterner interner = new NBTInterner();
+			NBTTag a = loadForDiff(nonoptions.get(0), interner);
+			NBTTag b = loadForDiff(nonoptions.get(1), interner);
+			List<TagDiff.Change> changes = TagDiff.diff(a, b, set.has("verify"));
+			if (set.has("json")) {
+				StringWriter sw = new StringWriter();
+				JsonWriter jw = new JsonWriter(sw);
+				jw.setIndent("  ");
+				gson.toJson(TagDiff.toJsonPatch(changes), jw);
+				System.out.println(sw.toString());
+			} else if (changes.isEmpty()) {
+				System.out.println("No differences");
+			} else {
+				TagDiff.print(changes, aout);
+				aout.flush();
+			}
+			return;
 		} else if (nonoptions.size() > 1) {
 			System.err.println("unbted: Too many arguments - only one argument, the input file, may be specified");
 			System.exit(1);
@@ -238,6 +289,7 @@ public class NBTEd {
 		}
 		File sourceFile;
 		ExceptableSupplier<InputStream, IOException> inSupplier;
+		long storedSize = -1;
 		if (nonoptions.isEmpty()) {
 			sourceFile = null;
 			inSupplier = null;
@@ -247,11 +299,13 @@ public class NBTEd {
 				byte[] bys = ByteStreams.toByteArray(System.in);
 				inSupplier = () -> new ByteArrayInputStream(bys);
 				sourceFile = FileInfo.STDIN;
+				storedSize = bys.length;
 				log("Reading from stdin");
 			} else {
 				File f = new File(in);
 				inSupplier = () -> new FileInputStream(f);
 				sourceFile = f;
+				storedSize = f.length();
 				log("Reading from file {}", f);
 			}
 		}
@@ -262,12 +316,22 @@ public class NBTEd {
 				System.exit(1);
 				return;
 			}
-			Compression compression = set.valueOf(compressionOpt);
-			if (compression == null) {
+			CompressionSpec spec = set.valueOf(compressionOpt);
+			if (spec == null) {
 				System.err.println("unbted: A compression method must be specified for conversion from NBT JSON");
 				System.exit(1);
 				return;
 			}
+			Compression compression = spec.method;
+			int level = set.has(compressionLevelOpt) ? set.valueOf(compressionLevelOpt) : spec.level;
+			Strategy strategy = set.has(compressionStrategyOpt) ? set.valueOf(compressionStrategyOpt) : spec.strategy;
+			try {
+				compression.checkLevel(level);
+			} catch (IllegalArgumentException e) {
+				System.err.println("unbted: "+e.getMessage());
+				System.exit(1);
+				return;
+			}
 			Endianness endianness = Endianness.BIG;
 			if (set.has(endiannessOpt)) {
 				endianness = set.valueOf(endiannessOpt);
@@ -288,8 +352,10 @@ public class NBTEd {
 			}
 			try {
 				NBTTag tag = loadJson(inSupplier.get());
-				try (OutputStream os = compression.wrap(outSupplier.get())) {
-					NBTIO.writeTag(endianness.wrap(os), tag);
+				try (OutputStream os = compression.wrap(outSupplier.get(), level, strategy)) {
+					NBTDataOutput dout = endianness.wrap(os);
+					NBTIO.writeTag(dout, tag);
+					dout.flush();
 				} catch (Exception e) {
 					log("Error occurred while writing", e);
 					System.err.println("unbted: Failed to save "+(sourceFile == FileInfo.STDIN ? "(stdin)" : sourceFile.getAbsolutePath()));
@@ -315,28 +381,38 @@ public class NBTEd {
 		if (set.has("raw")) {
 			INFER = false;
 		}
-		Compression compressionMethod = set.valueOf(compressionOpt);
+		PathSelector selector = null;
+		if (set.has(selectOpt)) {
+			try {
+				selector = new PathSelector(set.valuesOf(selectOpt).toArray(new String[0]));
+			} catch (IllegalArgumentException e) {
+				System.err.println("unbted: "+e.getMessage());
+				System.exit(1);
+				return;
+			}
+		}
+		NBTInterner interner = null;
+		if (set.has(internOpt)) {
+			interner = set.valueOf(internOpt) != null ? new NBTInterner(set.valueOf(internOpt)) : new NBTInterner();
+		}
+		CompressionSpec compressionSpec = set.valueOf(compressionOpt);
+		Compression compressionMethod = compressionSpec == null ? null : compressionSpec.method;
 		Compression detectedCompressionMethod = null;
+		int detectedCompressionLevel = Compression.DEFAULT_LEVEL;
 		if (inSupplier != null) {
 			try (InputStream is = inSupplier.get()) {
-				int magic8 = is.read() & 0xff;
-				int magic16 = magic8 | ((is.read() << 8) & 0xff00);
-				if (magic16 == GZIPInputStream.GZIP_MAGIC) {
-					detectedCompressionMethod = Compression.GZIP;
-				} else if (magic8 == 0x78) {
-					detectedCompressionMethod = Compression.DEFLATE;
-				} else if (magic16 == 0xb528) {
-					detectedCompressionMethod = Compression.ZSTD;
-				} else {
-					detectedCompressionMethod = Compression.NONE;
-				}
+				byte[] header = is.readNBytes(10);
+				detectedCompressionMethod = Compression.detect(new ByteArrayInputStream(header));
+				detectedCompressionLevel = detectedCompressionMethod.detectLevel(header);
 				log("Compression autodetected as {}", detectedCompressionMethod);
 			}
 		}
 		boolean compressionAutodetected;
+		int compressionLevel = Compression.DEFAULT_LEVEL;
 		if (compressionMethod == null) {
 			if (inSupplier != null) {
 				compressionMethod = detectedCompressionMethod;
+				compressionLevel = detectedCompressionLevel;
 				log("Using autodetected compression method");
 				compressionAutodetected = true;
 			} else {
@@ -345,9 +421,32 @@ public class NBTEd {
 				compressionAutodetected = false;
 			}
 		} else {
-			log("Compression set as {}", compressionMethod);
+			log("Compression set as {}", compressionSpec);
+			compressionLevel = compressionSpec.level;
+			if (compressionLevel == Compression.DEFAULT_LEVEL && compressionMethod == detectedCompressionMethod) {
+				compressionLevel = detectedCompressionLevel;
+			}
 			compressionAutodetected = false;
 		}
+		if (set.has(compressionLevelOpt)) {
+			compressionLevel = set.valueOf(compressionLevelOpt);
+		}
+		Strategy compressionStrategy = compressionSpec == null ? null : compressionSpec.strategy;
+		if (set.has(compressionStrategyOpt)) {
+			compressionStrategy = set.valueOf(compressionStrategyOpt);
+		}
+		if (compressionMethod != null) {
+			try {
+				compressionMethod.checkLevel(compressionLevel);
+			} catch (IllegalArgumentException e) {
+				System.err.println("unbted: "+e.getMessage());
+				System.exit(1);
+				return;
+			}
+		}
+		if (compressionLevel != Compression.DEFAULT_LEVEL) {
+			log("Compression level is {}", compressionLevel);
+		}
 		Endianness endianness = null;
 		if (set.has(endiannessOpt)) {
 			endianness = set.valueOf(endiannessOpt);
@@ -372,19 +471,30 @@ public class NBTEd {
 						isJson = true;
 						log("Detected JSON file");
 						tag = loadJson(is);
+						if (selector != null) {
+							tag = selector.select(tag);
+						}
+						if (interner != null) {
+							tag = interner.intern(tag);
+						}
 					} else {
 						log("Detected binary file");
 						if (endianness != null) {
-							tag = NBTIO.readTag(endianness.wrap(is));
+							tag = readTag(endianness.wrap(is), selector, interner);
 						} else {
 							try {
-								tag = NBTIO.readTag(is, false);
+								tag = readTag(Endianness.BIG.wrap(is), selector, interner);
 								if (tag == null) throw new RuntimeException("Got null root tag");
 								endianness = Endianness.BIG;
 								log("Endianness autodetected as big-endian");
 							} catch (Exception e) {
-								try {
-									tag = NBTIO.readTag(is, true);
+								// the big-endian attempt will have read ahead by an unknown amount,
+								// and left whatever garbage it made of the file in the interner
+								if (interner != null) {
+									interner = new NBTInterner(interner.getMaxSize());
+								}
+								try (InputStream is2 = inSupplier.get()) {
+									tag = readTag(Endianness.LITTLE.wrap(is2), selector, interner);
 									if (tag == null) throw new RuntimeException("Got null root tag");
 									endianness = Endianness.LITTLE;
 									log("Endianness autodetected as little-endian");
@@ -447,7 +557,9 @@ public class NBTEd {
 				gson.toJson(e, jw);
 				aout.println(sw.toString());
 			} else {
-				printer.printTag(tag, "", INFER, RecurseMode.FULL);
+				int maxDepth = set.has(maxDepthOpt) ? set.valueOf(maxDepthOpt) : -1;
+				int maxLines = set.has(maxLinesOpt) ? set.valueOf(maxLinesOpt) : -1;
+				printer.printTag(tag, "", INFER, RecurseMode.FULL, true, maxDepth, maxLines);
 			}
 		}
 		if (!set.has("print")) {
@@ -459,7 +571,7 @@ public class NBTEd {
 			System.err.println("conditions; type `copying` for details.");
 			System.err.println();
 			System.err.println("Type `help` for help");
-			CommandProcessor cp = new CommandProcessor(tag, printer, new FileInfo(sourceFile, compressionMethod, compressionAutodetected, endianness, isJson));
+			CommandProcessor cp = new CommandProcessor(tag, printer, new FileInfo(sourceFile, compressionMethod, compressionLevel, compressionStrategy, compressionAutodetected, endianness, isJson, storedSize));
 			cp.run();
 		}
 	}
@@ -476,26 +588,107 @@ public class NBTEd {
 	}
 
 	private static NBTTag loadJson(InputStream is) {
+		try {
+			return parseJson(is);
+		} catch (IOException e) {
+			System.err.println("unbted: "+e.getMessage());
+			System.err.println("unbted: Aborting.");
+			System.exit(2);
+			return null;
+		}
+	}
+	
+	private static NBTTag parseJson(InputStream is) throws IOException {
 		JsonObject json = gson.fromJson(new InputStreamReader(is, Charsets.UTF_8), JsonObject.class);
 		JsonElement unbtedMarker = json.get("_unbted");
 		if (unbtedMarker != null) {
 			int version = unbtedMarker.getAsInt();
 			if (version > 1) {
-				System.err.println("unbted: This looks like an NBT JSON file, but it's of a version newer than I know how to read. ("+version+")");
-				System.err.println("unbted: Aborting.");
-				System.exit(2);
-				return null;
+				throw new IOException("This looks like an NBT JSON file, but it's of a version newer than I know how to read. ("+version+")");
 			} else {
 				log("Looks like NBT JSON");
 				return fromJson(json.get("rootType").getAsString()+":"+json.get("rootName").getAsString(), json.get("root"));
 			}
 		} else {
-			System.err.println("unbted: This looks like a JSON file, but it's not an NBT JSON file.");
-			System.err.println("unbted: Aborting.");
+			throw new IOException("This looks like a JSON file, but it's not an NBT JSON file.");
+		}
+	}
+	
+	private static NBTTag readTag(NBTDataInput in, PathSelector selector, NBTInterner interner) throws IOException {
+		// --select and --intern are mutually exclusive
+		return selector != null ? NBTIO.readTag(in, selector) : NBTIO.readTag(in, interner);
+	}
+	
+	private static NBTTag loadForDiff(String name, NBTInterner interner) {
+		File f = "-".equals(name) ? FileInfo.STDIN : new File(name);
+		try {
+			return loadFile(f, interner);
+		} catch (Exception e) {
+			log("Exception while trying to load NBT file", e);
+			System.err.println("unbted: Failed to load "+(f == FileInfo.STDIN ? "(stdin)" : f.getAbsolutePath()));
+			System.err.println("unbted: Are you sure this is an NBT file?");
 			System.exit(2);
 			return null;
 		}
 	}
+	
+	public static NBTTag loadFile(File f) throws IOException {
+		return loadFile(f, null);
+	}
+	
+	/**
+	 * Load an NBT or NBT JSON file, autodetecting its compression and
+	 * endianness, for when there's no need to remember how it was stored.
+	 * 
+	 * @param f the file to load, or {@link FileInfo#STDIN}
+	 * @param interner the interner to deduplicate the file's tags with, or
+	 * 		null to not
+	 */
+	public static NBTTag loadFile(File f, NBTInterner interner) throws IOException {
+		ExceptableSupplier<InputStream, IOException> rawSupplier;
+		if (f == FileInfo.STDIN) {
+			byte[] bys = ByteStreams.toByteArray(System.in);
+			rawSupplier = () -> new ByteArrayInputStream(bys);
+		} else {
+			rawSupplier = () -> new FileInputStream(f);
+		}
+		Compression compression;
+		try (InputStream is = rawSupplier.get()) {
+			compression = Compression.detect(is);
+		}
+		ExceptableSupplier<InputStream, IOException> inSupplier = () -> compression.wrap(rawSupplier.get());
+		NBTTag tag;
+		try (PushbackInputStream is = new PushbackInputStream(inSupplier.get())) {
+			int firstByte = is.read();
+			is.unread(firstByte);
+			if (firstByte == '{') {
+				tag = parseJson(is);
+				if (interner != null) {
+					tag = interner.intern(tag);
+				}
+			} else {
+				// the interner may be shared with other files, so the first
+				// attempt is kept out of it until it's known to have worked
+				NBTInterner attempt = interner == null ? null : interner.copy();
+				try {
+					tag = NBTIO.readTag(is, false, attempt);
+					if (tag == null) throw new IOException("Got null root tag");
+					if (interner != null) {
+						interner.addAll(attempt);
+					}
+				} catch (IOException | RuntimeException e) {
+					try (InputStream is2 = inSupplier.get()) {
+						tag = NBTIO.readTag(is2, true, interner);
+					} catch (IOException | RuntimeException e2) {
+						e2.addSuppressed(e);
+						throw e2;
+					}
+				}
+			}
+		}
+		if (tag == null) throw new IOException("Got null root tag");
+		return tag;
+	}
 
 	public static String getTypePrefix(NBTTag tag) {
 		if (tag == null) {
@@ -506,6 +699,9 @@ public class NBTEd {
 				return "list<"+getTypePrefix(li.get(0))+">";
 			}
 			return "list<?>";
+		} else if (tag instanceof NBTArrayFake) {
+			// array elements are stand-ins for the real type
+			return NBTRegistry.typeNameFromClass((Class<? extends NBTTag>)tag.getClass().getSuperclass());
 		} else {
 			return NBTRegistry.typeNameForTag(tag);
 		}
@@ -625,23 +821,34 @@ public class NBTEd {
 		} else if (tag instanceof NBTString) {
 			return new JsonPrimitive(((NBTString)tag).stringValue());
 		} else if (tag instanceof NBTByteArray) {
-			return new JsonPrimitive(BaseEncoding.base64().encode(((NBTByteArray)tag).getValue()));
+			return new JsonPrimitive(toBase64((NBTByteArray)tag));
 		} else if (tag instanceof NBTIntArray) {
 			NBTIntArray arr = ((NBTIntArray)tag);
 			if (!roundTrip && arr.size() == 4) {
-				return new JsonPrimitive(UUIDs.fromIntArray(arr.getValue()).toString());
+				return new JsonPrimitive(UUIDs.fromIntArray(arr).toString());
 			}
 			JsonArray out = new JsonArray();
-			for (int v : arr.getValue()) { out.add(v); }
+			arr.forEachValue(v -> out.add(v));
 			return out;
 		} else if (tag instanceof NBTLongArray) {
 			JsonArray out = new JsonArray();
-			for (long v : ((NBTLongArray)tag).getValue()) { out.add(v); }
+			((NBTLongArray)tag).forEachValue(v -> out.add(v));
 			return out;
 		} else {
 			throw new IllegalArgumentException("Don't know how to convert "+tag.getClass().getSimpleName()+" to JSON");
 		}
 	}
+	
+	public static String toBase64(NBTByteArray arr) {
+		// encode straight out of the tag's storage instead of a clone of it
+		StringBuilder sb = new StringBuilder(((arr.size()+2)/3)*4);
+		try (OutputStream out = BaseEncoding.base64().encodingStream(CharStreams.asWriter(sb))) {
+			arr.copyTo(out);
+		} catch (IOException e) {
+			throw new AssertionError(e);
+		}
+		return sb.toString();
+	}
 
 	private static void printUsage() {
 		System.err.println("Usage: unbted [options] [file]");
@@ -652,10 +859,18 @@ public class NBTEd {
 		displayEmbeddedFileInPager("switches-help.txt");
 	}
 	
+	public static boolean isPagerAvailable() {
+		return PAGER && !"dumb".equals(terminal.getType());
+	}
+	
+	public static void displayInPager(Source source) throws Exception {
+		Less less = new Less(NBTEd.terminal, new File("").toPath());
+		less.run(Lists.newArrayList(source));
+	}
+	
 	public static void displayEmbeddedFileInPager(String file) throws Exception {
-		if (PAGER && !"dumb".equals(terminal.getType())) {
-			Less less = new Less(NBTEd.terminal, new File("").toPath());
-			less.run(Lists.newArrayList(new URLSource(ClassLoader.getSystemResource(file), file)));
+		if (isPagerAvailable()) {
+			displayInPager(new URLSource(ClassLoader.getSystemResource(file), file));
 		} else {
 			Resources.copy(ClassLoader.getSystemResource(file), System.err);
 		}
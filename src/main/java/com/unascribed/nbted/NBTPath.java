@@ -0,0 +1,430 @@
+/*
+ * unbted - Una's NBT Editor
+ * Copyright (C) 2018 - 2023 Una Thompson (unascribed)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package com.unascribed.nbted;
+
+import java.util.List;
+import java.util.Set;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+import com.google.common.primitives.Ints;
+
+import io.github.steveice10.opennbt.tag.NBTCompound;
+import io.github.steveice10.opennbt.tag.NBTIndexed;
+import io.github.steveice10.opennbt.tag.NBTList;
+import io.github.steveice10.opennbt.tag.NBTString;
+import io.github.steveice10.opennbt.tag.NBTTag;
+import io.github.steveice10.opennbt.tag.number.NBTDouble;
+import io.github.steveice10.opennbt.tag.number.NBTFloat;
+import io.github.steveice10.opennbt.tag.number.NBTNumber;
+
+/**
+ * A parsed path, as accepted by commands. Paths are made of names separated
+ * by slashes, with list indices in square brackets; a leading slash starts
+ * from the root rather than the current context. Besides . and .., the
+ * following are understood:
+ * <ul>
+ * <li>{@code *} or {@code [*]} - every child</li>
+ * <li>{@code **} - the tag itself and all of its descendants, not counting
+ * 		array elements</li>
+ * <li>{@code [key=value]} - every child that is a compound whose key tag
+ * 		has the given value; the value may be quoted</li>
+ * </ul>
+ * A backslash escapes a following /, [, ], * or backslash.
+ * <p>
+ * Parsing is cached, so paths typed over and over (or completed on every
+ * keystroke) are only parsed once.
+ */
+public final class NBTPath {
+	
+	public enum Kind {
+		/**
+		 * A name in a compound, or an index in a list or array.
+		 */
+		KEY,
+		SELF,
+		PARENT,
+		ANY,
+		DESCENDANTS,
+		FILTER,
+	}
+	
+	public static final class Segment {
+		public final Kind kind;
+		/**
+		 * The key for {@link Kind#KEY}, or the key to check for
+		 * {@link Kind#FILTER}.
+		 */
+		public final String key;
+		/**
+		 * The value to check for, for {@link Kind#FILTER}.
+		 */
+		public final String value;
+		/**
+		 * Where this segment starts and ends in the path, not counting
+		 * slashes and brackets.
+		 */
+		public final int start, end;
+		
+		private Segment(Kind kind, String key, String value, int start, int end) {
+			this.kind = kind;
+			this.key = key;
+			this.value = value;
+			this.start = start;
+			this.end = end;
+		}
+		
+		private boolean matches(NBTTag tag) {
+			if (!(tag instanceof NBTCompound)) return false;
+			NBTTag t = ((NBTCompound)tag).get(key);
+			if (t instanceof NBTString) {
+				return ((NBTString)t).stringValue().equals(value);
+			} else if (t instanceof NBTNumber) {
+				NBTNumber n = (NBTNumber)t;
+				String v = "true".equals(value) ? "1" : "false".equals(value) ? "0" : value.trim();
+				try {
+					if (t instanceof NBTFloat || t instanceof NBTDouble) {
+						return Double.parseDouble(v) == n.doubleValue();
+					} else {
+						return Long.decode(v) == n.longValue();
+					}
+				} catch (NumberFormatException e) {
+					return false;
+				}
+			}
+			return false;
+		}
+	}
+	
+	private static final Cache<String, NBTPath> cache = CacheBuilder.newBuilder()
+			.maximumSize(256)
+			.build();
+	
+	private final String text;
+	private final boolean absolute;
+	private final ImmutableList<Segment> segments;
+	private final boolean wild;
+	
+	private NBTPath(String text) {
+		this.text = text;
+		this.absolute = text.startsWith("/");
+		ImmutableList.Builder<Segment> bldr = ImmutableList.builder();
+		boolean wild = false;
+		int i = 0;
+		while (i < text.length()) {
+			char c = text.charAt(i);
+			if (c == '/') {
+				i++;
+			} else if (c == '[') {
+				int start = i+1;
+				int end = findClose(start);
+				Segment seg = parseBracket(start, end);
+				wild |= seg.kind != Kind.KEY;
+				bldr.add(seg);
+				i = end+1;
+			} else {
+				StringBuilder sb = new StringBuilder();
+				boolean escaped = false;
+				int start = i;
+				for (; i < text.length(); i++) {
+					c = text.charAt(i);
+					if (c == '/' || c == '[') break;
+					if (c == '\\' && i+1 < text.length() && "/[]*.\\".indexOf(text.charAt(i+1)) != -1) {
+						escaped = true;
+						c = text.charAt(++i);
+					}
+					sb.append(c);
+				}
+				String name = sb.toString();
+				Kind kind = Kind.KEY;
+				if (!escaped) {
+					switch (name) {
+						case ".": kind = Kind.SELF; break;
+						case "..": kind = Kind.PARENT; break;
+						case "*": kind = Kind.ANY; break;
+						case "**": kind = Kind.DESCENDANTS; break;
+					}
+				}
+				wild |= kind == Kind.ANY || kind == Kind.DESCENDANTS;
+				bldr.add(new Segment(kind, name, null, start, i));
+			}
+		}
+		this.segments = bldr.build();
+		this.wild = wild;
+	}
+	
+	private int findClose(int start) {
+		char quote = 0;
+		for (int i = start; i < text.length(); i++) {
+			char c = text.charAt(i);
+			if (quote != 0) {
+				if (c == '\\') {
+					i++;
+				} else if (c == quote) {
+					quote = 0;
+				}
+			} else if (c == '"' || c == '\'') {
+				quote = c;
+			} else if (c == ']') {
+				return i;
+			}
+		}
+		throw new IllegalArgumentException("Unclosed [ in "+text);
+	}
+	
+	private Segment parseBracket(int start, int end) {
+		String inner = text.substring(start, end);
+		if ("*".equals(inner)) {
+			return new Segment(Kind.ANY, inner, null, start, end);
+		}
+		int eq = -1;
+		char quote = 0;
+		for (int i = 0; i < inner.length(); i++) {
+			char c = inner.charAt(i);
+			if (quote != 0) {
+				if (c == '\\') {
+					i++;
+				} else if (c == quote) {
+					quote = 0;
+				}
+			} else if (c == '"' || c == '\'') {
+				quote = c;
+			} else if (c == '=') {
+				eq = i;
+				break;
+			}
+		}
+		if (eq == -1) {
+			return new Segment(Kind.KEY, inner, null, start, end);
+		}
+		String key = unquote(inner.substring(0, eq).trim());
+		String value = unquote(inner.substring(eq+1).trim());
+		if (key.isEmpty()) {
+			throw new IllegalArgumentException("Missing key before = in "+text);
+		}
+		return new Segment(Kind.FILTER, key, value, start, end);
+	}
+	
+	private String unquote(String s) {
+		if (s.length() < 2) return s;
+		char q = s.charAt(0);
+		if ((q != '"' && q != '\'') || s.charAt(s.length()-1) != q) return s;
+		StringBuilder sb = new StringBuilder(s.length()-2);
+		for (int i = 1; i < s.length()-1; i++) {
+			char c = s.charAt(i);
+			if (c == '\\' && i+1 < s.length()-1) {
+				c = s.charAt(++i);
+			}
+			sb.append(c);
+		}
+		return sb.toString();
+	}
+	
+	/**
+	 * @throws IllegalArgumentException if the path is malformed
+	 */
+	public static NBTPath compile(String path) {
+		NBTPath p = cache.getIfPresent(path);
+		if (p == null) {
+			p = new NBTPath(path);
+			cache.put(path, p);
+		}
+		return p;
+	}
+	
+	public String getText() {
+		return text;
+	}
+	
+	public boolean isAbsolute() {
+		return absolute;
+	}
+	
+	public ImmutableList<Segment> getSegments() {
+		return segments;
+	}
+	
+	/**
+	 * @return true if this path can match more than one tag
+	 */
+	public boolean isWild() {
+		return wild;
+	}
+	
+	/**
+	 * Find every tag this path matches, going from the given tag. The given
+	 * tag and its parents must not be shared. Tags on the way to each match
+	 * are unshared, so the matches can be modified; nothing else is.
+	 *
+	 * @return the matches, in tree order for each wildcard
+	 */
+	public List<NBTTag> evaluate(NBTTag start) {
+		// walk without touching anything, remembering how we got to each
+		// match, then only unshare the ways to what actually matched
+		Set<Match> frontier = Sets.newLinkedHashSet();
+		if (start != null) frontier.add(new Match(start, null, null));
+		for (Segment seg : segments) {
+			Set<Match> next = Sets.newLinkedHashSet();
+			for (Match m : frontier) {
+				switch (seg.kind) {
+					case SELF:
+						next.add(m);
+						break;
+					case PARENT:
+						if (m.parent != null) {
+							next.add(m.parent);
+						} else if (m.tag.getParent() != null) {
+							next.add(new Match((NBTTag)m.tag.getParent(), null, null));
+						}
+						break;
+					case KEY:
+						m.child(seg.key, next);
+						break;
+					case ANY:
+						m.children(next, null);
+						break;
+					case FILTER:
+						m.children(next, seg);
+						break;
+					case DESCENDANTS:
+						m.descendants(next);
+						break;
+					default: throw new AssertionError("missing case for "+seg.kind);
+				}
+			}
+			frontier = next;
+		}
+		List<NBTTag> out = Lists.newArrayListWithCapacity(frontier.size());
+		for (Match m : frontier) {
+			out.add(m.unshare());
+		}
+		return out;
+	}
+	
+	@Override
+	public String toString() {
+		return text;
+	}
+	
+	private static final class Match {
+		// null for array elements, see element
+		final NBTTag tag;
+		final Match parent;
+		// a String or an Integer, or null if tag is where we started
+		final Object key;
+		final int hash;
+		private NBTTag live;
+		
+		Match(NBTTag tag, Match parent, Object key) {
+			this.tag = tag;
+			this.parent = parent;
+			this.key = key;
+			this.hash = parent == null ? System.identityHashCode(tag) : (parent.hash*31)+key.hashCode();
+		}
+		
+		void child(String key, Set<Match> out) {
+			if (tag instanceof NBTCompound) {
+				NBTTag t = ((NBTCompound)tag).get(key);
+				if (t != null) out.add(new Match(t, this, key));
+			} else if (tag instanceof NBTIndexed) {
+				Integer i = Ints.tryParse(key);
+				NBTIndexed idx = (NBTIndexed)tag;
+				if (i != null && i >= 0 && i < idx.size()) out.add(new Match(element(idx, i), this, i));
+			}
+		}
+		
+		void children(Set<Match> out, Segment filter) {
+			if (tag instanceof NBTCompound) {
+				for (NBTTag t : (NBTCompound)tag) {
+					if (filter == null || filter.matches(t)) out.add(new Match(t, this, t.getName()));
+				}
+			} else if (tag instanceof NBTIndexed) {
+				NBTIndexed idx = (NBTIndexed)tag;
+				// array elements are never compounds
+				if (filter != null && !(idx instanceof NBTList)) return;
+				for (int i = 0; i < idx.size(); i++) {
+					NBTTag t = element(idx, i);
+					if (filter == null || filter.matches(t)) out.add(new Match(t, this, i));
+				}
+			}
+		}
+		
+		/**
+		 * @return the given element of a list, or null for an element of an
+		 * 		array; those are only made into tags by {@link #unshare} once
+		 * 		they've actually matched, rather than one per element walked
+		 */
+		private static NBTTag element(NBTIndexed idx, int i) {
+			return idx instanceof NBTList ? idx.get(i) : null;
+		}
+		
+		void descendants(Set<Match> out) {
+			out.add(this);
+			if (tag instanceof NBTCompound) {
+				for (NBTTag t : (NBTCompound)tag) {
+					new Match(t, this, t.getName()).descendants(out);
+				}
+			} else if (tag instanceof NBTList) {
+				NBTList l = (NBTList)tag;
+				for (int i = 0; i < l.size(); i++) {
+					new Match(l.get(i), this, i).descendants(out);
+				}
+			}
+		}
+		
+		NBTTag unshare() {
+			if (live != null) return live;
+			if (parent == null) {
+				live = tag;
+			} else {
+				NBTTag p = parent.unshare();
+				if (p instanceof NBTCompound) {
+					live = ((NBTCompound)p).unshare((String)key);
+				} else if (p instanceof NBTList) {
+					live = ((NBTList)p).unshare((Integer)key);
+				} else {
+					live = ((NBTIndexed)p).get((Integer)key);
+				}
+			}
+			return live;
+		}
+		
+		@Override
+		public int hashCode() {
+			return hash;
+		}
+		
+		@Override
+		public boolean equals(Object obj) {
+			if (this == obj) return true;
+			if (!(obj instanceof Match)) return false;
+			Match that = (Match)obj;
+			if (hash != that.hash) return false;
+			if (parent == null || that.parent == null) {
+				return parent == that.parent && tag == that.tag;
+			}
+			return key.equals(that.key) && parent.equals(that.parent);
+		}
+	}
+	
+}
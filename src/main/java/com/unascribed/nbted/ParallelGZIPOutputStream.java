@@ -0,0 +1,257 @@
+/*
+ * unbted - Una's NBT Editor
+ * Copyright (C) 2018 - 2023 Una Thompson (unascribed)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.unascribed.nbted;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * Writes a single standard gzip member, compressing it in parallel in the
+ * manner of pigz: the input is cut into independent 128KiB blocks, each
+ * deflated on the common pool with the previous block's last 32KiB as a
+ * preset dictionary, so ratio is nearly unaffected. Every block but the last
+ * ends in a sync flush, which byte-aligns it so the blocks can simply be
+ * concatenated, and the CRC32s of the blocks are combined into the trailer.
+ * <p>
+ * Output that fits in one block is compressed on the calling thread.
+ */
+public class ParallelGZIPOutputStream extends OutputStream {
+
+	public static final int BLOCK_SIZE = 128*1024;
+	private static final int DICTIONARY_SIZE = 32*1024;
+	
+	private static final int MAX_IN_FLIGHT = Math.max(2, ForkJoinPool.getCommonPoolParallelism()*2);
+	
+	private static class Block {
+		final byte[] data;
+		final long crc;
+		final int length;
+		
+		Block(byte[] data, long crc, int length) {
+			this.data = data;
+			this.crc = crc;
+			this.length = length;
+		}
+	}
+	
+	private final OutputStream out;
+	private final int level;
+	private final int strategy;
+	
+	private final ArrayDeque<CompletableFuture<Block>> inFlight = new ArrayDeque<>();
+	
+	private byte[] prev = null;
+	private byte[] cur = new byte[BLOCK_SIZE];
+	private int pos = 0;
+	
+	private long crcValue = 0;
+	private long totalLength = 0;
+	
+	private boolean closed = false;
+	
+	public ParallelGZIPOutputStream(OutputStream out) throws IOException {
+		this(out, Deflater.DEFAULT_COMPRESSION);
+	}
+	
+	public ParallelGZIPOutputStream(OutputStream out, int level) throws IOException {
+		this(out, level, Deflater.DEFAULT_STRATEGY);
+	}
+	
+	public ParallelGZIPOutputStream(OutputStream out, int level, int strategy) throws IOException {
+		this.out = Objects.requireNonNull(out);
+		this.level = level;
+		this.strategy = strategy;
+		out.write(PooledGZIPOutputStream.header(level));
+	}
+	
+	@Override
+	public void write(int b) throws IOException {
+		write(new byte[] {(byte)b}, 0, 1);
+	}
+	
+	@Override
+	public void write(byte[] b, int off, int len) throws IOException {
+		Objects.checkFromIndexSize(off, len, b.length);
+		if (closed) throw new IOException("Stream closed");
+		while (len > 0) {
+			if (pos == BLOCK_SIZE) {
+				// only now do we know this block isn't the last one
+				submit();
+			}
+			int n = Math.min(len, BLOCK_SIZE-pos);
+			System.arraycopy(b, off, cur, pos, n);
+			pos += n;
+			off += n;
+			len -= n;
+		}
+	}
+	
+	/**
+	 * Writes out any blocks that have finished compressing, without waiting
+	 * for the rest.
+	 */
+	@Override
+	public void flush() throws IOException {
+		if (closed) throw new IOException("Stream closed");
+		while (!inFlight.isEmpty() && inFlight.peek().isDone()) {
+			writeBlock(inFlight.poll());
+		}
+		out.flush();
+	}
+	
+	@Override
+	public void close() throws IOException {
+		if (closed) return;
+		closed = true;
+		try (OutputStream out = this.out) {
+			while (!inFlight.isEmpty()) {
+				writeBlock(inFlight.poll());
+			}
+			writeBlock(CompletableFuture.completedFuture(compress(cur, pos, prev, level, strategy, true)));
+			byte[] trailer = new byte[8];
+			writeInt((int)crcValue, trailer, 0);
+			writeInt((int)totalLength, trailer, 4);
+			out.write(trailer);
+		} finally {
+			inFlight.forEach(f -> f.cancel(false));
+			inFlight.clear();
+		}
+	}
+	
+	private void submit() throws IOException {
+		byte[] data = cur;
+		byte[] dict = prev;
+		int level = this.level;
+		int strategy = this.strategy;
+		inFlight.add(CompletableFuture.supplyAsync(() -> compress(data, BLOCK_SIZE, dict, level, strategy, false), ForkJoinPool.commonPool()));
+		prev = cur;
+		cur = new byte[BLOCK_SIZE];
+		pos = 0;
+		while (inFlight.size() >= MAX_IN_FLIGHT || (!inFlight.isEmpty() && inFlight.peek().isDone())) {
+			writeBlock(inFlight.poll());
+		}
+	}
+	
+	private void writeBlock(CompletableFuture<Block> future) throws IOException {
+		Block block;
+		try {
+			block = future.join();
+		} catch (CompletionException e) {
+			if (e.getCause() instanceof RuntimeException) throw (RuntimeException)e.getCause();
+			if (e.getCause() instanceof Error) throw (Error)e.getCause();
+			throw new IOException(e.getCause());
+		}
+		out.write(block.data);
+		crcValue = crc32Combine(crcValue, block.crc, block.length);
+		totalLength += block.length;
+	}
+	
+	private static Block compress(byte[] data, int length, byte[] dict, int level, int strategy, boolean last) {
+		CRC32 crc = new CRC32();
+		crc.update(data, 0, length);
+		Deflater def = CodecPool.acquireDeflater(level, strategy, true);
+		byte[] buf = CodecPool.acquireBuffer();
+		try {
+			if (dict != null) {
+				def.setDictionary(dict, dict.length-DICTIONARY_SIZE, DICTIONARY_SIZE);
+			}
+			def.setInput(data, 0, length);
+			byte[] result = new byte[length/2];
+			int resultLength = 0;
+			if (last) {
+				def.finish();
+			}
+			while (true) {
+				int n = def.deflate(buf, 0, buf.length, last ? Deflater.NO_FLUSH : Deflater.SYNC_FLUSH);
+				if (resultLength+n > result.length) {
+					result = Arrays.copyOf(result, Math.max(result.length*2, resultLength+n));
+				}
+				System.arraycopy(buf, 0, result, resultLength, n);
+				resultLength += n;
+				// a flush is complete once deflate stops filling the buffer
+				if (last ? def.finished() : n < buf.length) break;
+			}
+			return new Block(Arrays.copyOf(result, resultLength), crc.getValue(), length);
+		} finally {
+			CodecPool.release(def, true);
+			CodecPool.releaseBuffer(buf);
+		}
+	}
+	
+	private static void writeInt(int i, byte[] buf, int offset) {
+		buf[offset] = (byte)i;
+		buf[offset + 1] = (byte)(i >> 8);
+		buf[offset + 2] = (byte)(i >> 16);
+		buf[offset + 3] = (byte)(i >> 24);
+	}
+	
+	/**
+	 * @return the CRC32 of the concatenation of two sequences, given the CRC
+	 * 		of each and the length of the second; zlib's crc32_combine
+	 */
+	static long crc32Combine(long crc1, long crc2, long len2) {
+		if (len2 <= 0) return crc1;
+		long[] even = new long[32];
+		long[] odd = new long[32];
+		// operator for a single zero bit
+		odd[0] = 0xedb88320L;
+		long row = 1;
+		for (int n = 1; n < 32; n++) {
+			odd[n] = row;
+			row <<= 1;
+		}
+		// two and then four zero bits
+		gf2MatrixSquare(even, odd);
+		gf2MatrixSquare(odd, even);
+		// apply len2 zero bytes to crc1, squaring up to each set bit of len2
+		do {
+			gf2MatrixSquare(even, odd);
+			if ((len2 & 1) != 0) crc1 = gf2MatrixTimes(even, crc1);
+			len2 >>= 1;
+			if (len2 == 0) break;
+			gf2MatrixSquare(odd, even);
+			if ((len2 & 1) != 0) crc1 = gf2MatrixTimes(odd, crc1);
+			len2 >>= 1;
+		} while (len2 != 0);
+		return crc1 ^ crc2;
+	}
+	
+	private static long gf2MatrixTimes(long[] mat, long vec) {
+		long sum = 0;
+		for (int i = 0; vec != 0; i++, vec >>>= 1) {
+			if ((vec & 1) != 0) sum ^= mat[i];
+		}
+		return sum;
+	}
+	
+	private static void gf2MatrixSquare(long[] square, long[] mat) {
+		for (int n = 0; n < 32; n++) {
+			square[n] = gf2MatrixTimes(mat, mat[n]);
+		}
+	}
+	
+}
@@ -0,0 +1,173 @@
+/*
+ * unbted - Una's NBT Editor
+ * Copyright (C) 2018 - 2023 Una Thompson (unascribed)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.unascribed.nbted;
+
+import java.io.ByteArrayInputStream;
+import java.io.EOFException;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.ZipException;
+
+/**
+ * Equivalent to {@link GZIPInputStream}, including support for concatenated
+ * members, but with a pooled Inflater and a larger buffer.
+ */
+public class PooledGZIPInputStream extends PooledInflaterInputStream {
+
+	private static final int FHCRC = 2;
+	private static final int FEXTRA = 4;
+	private static final int FNAME = 8;
+	private static final int FCOMMENT = 16;
+	
+	private final CRC32 crc = new CRC32();
+	private boolean eos = false;
+	
+	public PooledGZIPInputStream(InputStream in) throws IOException {
+		super(in, true);
+		try {
+			readHeader(in);
+		} catch (IOException | RuntimeException e) {
+			close();
+			throw e;
+		}
+	}
+	
+	@Override
+	public int read(byte[] buf, int off, int len) throws IOException {
+		if (eos) return -1;
+		int n = super.read(buf, off, len);
+		if (n == -1) {
+			if (readTrailer()) {
+				eos = true;
+			} else {
+				return read(buf, off, len);
+			}
+		} else {
+			crc.update(buf, off, n);
+		}
+		return n;
+	}
+	
+	/**
+	 * @return the length of the header
+	 */
+	private int readHeader(InputStream rawIn) throws IOException {
+		CheckedInputStream in = new CheckedInputStream(rawIn, crc);
+		crc.reset();
+		if (readUShort(in) != GZIPInputStream.GZIP_MAGIC) {
+			throw new ZipException("Not in GZIP format");
+		}
+		if (readUByte(in) != 8) {
+			throw new ZipException("Unsupported compression method");
+		}
+		int flg = readUByte(in);
+		// MTIME, XFL, OS
+		skipBytes(in, 6);
+		int n = 2 + 2 + 6;
+		if ((flg & FEXTRA) != 0) {
+			int m = readUShort(in);
+			skipBytes(in, m);
+			n += m + 2;
+		}
+		if ((flg & FNAME) != 0) {
+			do {
+				n++;
+			} while (readUByte(in) != 0);
+		}
+		if ((flg & FCOMMENT) != 0) {
+			do {
+				n++;
+			} while (readUByte(in) != 0);
+		}
+		if ((flg & FHCRC) != 0) {
+			int v = (int)crc.getValue() & 0xffff;
+			if (readUShort(in) != v) {
+				throw new ZipException("Corrupt GZIP header");
+			}
+			n += 2;
+		}
+		crc.reset();
+		return n;
+	}
+	
+	/**
+	 * @return {@code true} if this was the last member
+	 */
+	private boolean readTrailer() throws IOException {
+		InputStream in = this.in;
+		int n = inf.getRemaining();
+		if (n > 0) {
+			in = new SequenceInputStream(new ByteArrayInputStream(buf, len - n, n), new FilterInputStream(in) {
+				@Override
+				public void close() throws IOException {}
+			});
+		}
+		if (readUInt(in) != crc.getValue() || readUInt(in) != (inf.getBytesWritten() & 0xffffffffL)) {
+			throw new ZipException("Corrupt GZIP trailer");
+		}
+		// same heuristic as GZIPInputStream; there may be another member if
+		// there's anything left
+		if (this.in.available() > 0 || n > 26) {
+			int m = 8;
+			try {
+				m += readHeader(in);
+			} catch (IOException e) {
+				// trailing garbage
+				return true;
+			}
+			inf.reset();
+			if (n > m) {
+				inf.setInput(buf, len - n + m, n - m);
+			}
+			return false;
+		}
+		return true;
+	}
+	
+	private static long readUInt(InputStream in) throws IOException {
+		long s = readUShort(in);
+		return ((long)readUShort(in) << 16) | s;
+	}
+	
+	private static int readUShort(InputStream in) throws IOException {
+		int b = readUByte(in);
+		return (readUByte(in) << 8) | b;
+	}
+	
+	private static int readUByte(InputStream in) throws IOException {
+		int b = in.read();
+		if (b == -1) {
+			throw new EOFException();
+		}
+		return b;
+	}
+	
+	private static void skipBytes(InputStream in, int n) throws IOException {
+		while (n > 0) {
+			readUByte(in);
+			n--;
+		}
+	}
+	
+}
@@ -0,0 +1,102 @@
+/*
+ * unbted - Una's NBT Editor
+ * Copyright (C) 2018 - 2023 Una Thompson (unascribed)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.unascribed.nbted;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Equivalent to {@link GZIPOutputStream}, but with a pooled Deflater and a
+ * larger buffer.
+ */
+public class PooledGZIPOutputStream extends PooledDeflaterOutputStream {
+
+	private static final int TRAILER_SIZE = 8;
+	
+	private final CRC32 crc = new CRC32();
+	
+	public PooledGZIPOutputStream(OutputStream out) throws IOException {
+		this(out, Deflater.DEFAULT_COMPRESSION);
+	}
+	
+	public PooledGZIPOutputStream(OutputStream out, int level) throws IOException {
+		this(out, level, Deflater.DEFAULT_STRATEGY);
+	}
+	
+	public PooledGZIPOutputStream(OutputStream out, int level, int strategy) throws IOException {
+		super(out, level, strategy, true);
+		out.write(header(level));
+	}
+	
+	/**
+	 * @return a gzip member header, with XFL recording the level like zlib does
+	 */
+	static byte[] header(int level) {
+		int xfl = level == Deflater.BEST_COMPRESSION ? 2 : level == Deflater.BEST_SPEED ? 4 : 0;
+		return new byte[] {
+				(byte)GZIPInputStream.GZIP_MAGIC, (byte)(GZIPInputStream.GZIP_MAGIC >> 8),
+				Deflater.DEFLATED, 0,
+				0, 0, 0, 0,
+				(byte)xfl, 0
+		};
+	}
+	
+	@Override
+	public void write(byte[] b, int off, int len) throws IOException {
+		super.write(b, off, len);
+		crc.update(b, off, len);
+	}
+	
+	@Override
+	public void finish() throws IOException {
+		if (def.finished()) return;
+		def.finish();
+		while (!def.finished()) {
+			int n = def.deflate(buf, 0, buf.length);
+			if (def.finished() && n <= buf.length - TRAILER_SIZE) {
+				writeTrailer(buf, n);
+				out.write(buf, 0, n + TRAILER_SIZE);
+				return;
+			}
+			if (n > 0) {
+				out.write(buf, 0, n);
+			}
+		}
+		byte[] trailer = new byte[TRAILER_SIZE];
+		writeTrailer(trailer, 0);
+		out.write(trailer);
+	}
+	
+	private void writeTrailer(byte[] buf, int offset) {
+		writeInt((int)crc.getValue(), buf, offset);
+		writeInt((int)def.getBytesRead(), buf, offset + 4);
+	}
+	
+	private static void writeInt(int i, byte[] buf, int offset) {
+		buf[offset] = (byte)i;
+		buf[offset + 1] = (byte)(i >> 8);
+		buf[offset + 2] = (byte)(i >> 16);
+		buf[offset + 3] = (byte)(i >> 24);
+	}
+	
+}
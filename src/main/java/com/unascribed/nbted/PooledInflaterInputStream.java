@@ -0,0 +1,57 @@
+/*
+ * unbted - Una's NBT Editor
+ * Copyright (C) 2018 - 2023 Una Thompson (unascribed)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.unascribed.nbted;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * An InflaterInputStream whose Inflater and buffer are borrowed from the
+ * {@link CodecPool}, and given back when the stream is closed.
+ */
+public class PooledInflaterInputStream extends InflaterInputStream {
+
+	private final boolean nowrap;
+	private boolean released = false;
+	
+	/**
+	 * @param nowrap {@code true} for raw deflate data, {@code false} for zlib
+	 */
+	public PooledInflaterInputStream(InputStream in, boolean nowrap) {
+		super(in, CodecPool.acquireInflater(nowrap), 1);
+		// the superclass insists on allocating a buffer, so give it a tiny one
+		this.buf = CodecPool.acquireBuffer();
+		this.nowrap = nowrap;
+	}
+	
+	@Override
+	public void close() throws IOException {
+		try {
+			super.close();
+		} finally {
+			if (!released) {
+				released = true;
+				CodecPool.release(inf, nowrap);
+				CodecPool.releaseBuffer(buf);
+			}
+		}
+	}
+	
+}
@@ -0,0 +1,335 @@
+/*
+ * unbted - Una's NBT Editor
+ * Copyright (C) 2018 - 2023 Una Thompson (unascribed)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package com.unascribed.nbted;
+
+import java.util.List;
+import java.util.function.Consumer;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import com.unascribed.miniansi.AnsiCode;
+import com.unascribed.miniansi.AnsiStream;
+
+import io.github.steveice10.opennbt.tag.NBTCompound;
+import io.github.steveice10.opennbt.tag.NBTIndexed;
+import io.github.steveice10.opennbt.tag.NBTList;
+import io.github.steveice10.opennbt.tag.NBTParent;
+import io.github.steveice10.opennbt.tag.NBTString;
+import io.github.steveice10.opennbt.tag.NBTTag;
+import io.github.steveice10.opennbt.tag.array.NBTArray;
+import io.github.steveice10.opennbt.tag.array.NBTByteArray;
+import io.github.steveice10.opennbt.tag.array.NBTIntArray;
+import io.github.steveice10.opennbt.tag.array.NBTLongArray;
+import io.github.steveice10.opennbt.tag.array.support.ByteCursor;
+import io.github.steveice10.opennbt.tag.array.support.IntCursor;
+import io.github.steveice10.opennbt.tag.array.support.LongCursor;
+import io.github.steveice10.opennbt.tag.array.support.NBTArrayFake;
+
+/**
+ * Finds the differences between two tag trees. Compounds and lists whose
+ * remembered content hashes match are skipped without being walked, so
+ * only the parts that differ cost anything. Two different subtrees having
+ * the same 64-bit hash is very unlikely, but would hide their differences;
+ * when that isn't acceptable, {@code verify} walks matching subtrees in
+ * full to confirm they really are equal before skipping them.
+ */
+public class TagDiff {
+
+	public enum Kind {
+		ADDED,
+		REMOVED,
+		CHANGED,
+	}
+	
+	public static class Change {
+		public final Kind kind;
+		/**
+		 * The location of the change, as tag names for compound children
+		 * and Integer indices for list and array elements.
+		 */
+		public final List<Object> path;
+		public final NBTTag oldTag;
+		public final NBTTag newTag;
+		
+		public Change(Kind kind, List<Object> path, NBTTag oldTag, NBTTag newTag) {
+			this.kind = kind;
+			this.path = ImmutableList.copyOf(path);
+			this.oldTag = oldTag;
+			this.newTag = newTag;
+		}
+		
+		/**
+		 * @return the path of this change in the same notation as the shell,
+		 * 		escaped so it can be given to commands
+		 */
+		public String getPath() {
+			return TagFinder.toPath(path);
+		}
+		
+		/**
+		 * @return the path of this change as an RFC 6901 JSON Pointer
+		 */
+		public String getPointer() {
+			StringBuilder sb = new StringBuilder();
+			for (Object o : path) {
+				sb.append("/").append(o.toString().replace("~", "~0").replace("/", "~1"));
+			}
+			return sb.toString();
+		}
+	}
+	
+	/**
+	 * Compare two tags, passing each difference to the given consumer.
+	 * Lists and arrays are compared by index, so an insertion shows up as a
+	 * change to every element after it.
+	 * 
+	 * @param base the path the two tags are at, prepended to the paths of
+	 * 		all reported changes
+	 * @param verify {@code true} to confirm that subtrees with matching
+	 * 		hashes are equal, rather than trusting the hash
+	 */
+	public static void diff(NBTTag oldTag, NBTTag newTag, List<Object> base, boolean verify, Consumer<Change> out) {
+		diffInto(oldTag, newTag, Lists.newArrayList(base), verify, out);
+	}
+	
+	public static List<Change> diff(NBTTag oldTag, NBTTag newTag, boolean verify) {
+		List<Change> li = Lists.newArrayList();
+		diff(oldTag, newTag, ImmutableList.of(), verify, li::add);
+		return li;
+	}
+	
+	public static List<Change> diff(NBTTag oldTag, NBTTag newTag) {
+		return diff(oldTag, newTag, false);
+	}
+	
+	private static void diffInto(NBTTag a, NBTTag b, List<Object> path, boolean verify, Consumer<Change> out) {
+		if (a.getClass() == b.getClass()) {
+			if (a instanceof NBTParent) {
+				// remembered, so comparing them is free
+				if (a.getContentHash() == b.getContentHash() && (!verify || a.equals(b))) return;
+			} else if (a.equals(b)) {
+				// leaves are cheaper to compare than to hash
+				return;
+			}
+		}
+		if (a instanceof NBTCompound && b instanceof NBTCompound) {
+			NBTCompound ca = (NBTCompound)a;
+			NBTCompound cb = (NBTCompound)b;
+			for (NBTTag ta : ca) {
+				path.add(ta.getName());
+				NBTTag tb = cb.get(ta.getName());
+				if (tb == null) {
+					out.accept(new Change(Kind.REMOVED, path, ta, null));
+				} else {
+					diffInto(ta, tb, path, verify, out);
+				}
+				path.remove(path.size()-1);
+			}
+			for (NBTTag tb : cb) {
+				if (!ca.contains(tb.getName())) {
+					path.add(tb.getName());
+					out.accept(new Change(Kind.ADDED, path, null, tb));
+					path.remove(path.size()-1);
+				}
+			}
+		} else if (a instanceof NBTIndexed && a.getClass() == b.getClass()) {
+			NBTIndexed ia = (NBTIndexed)a;
+			NBTIndexed ib = (NBTIndexed)b;
+			int common = Math.min(ia.size(), ib.size());
+			if (a instanceof NBTArray) {
+				diffArrayElements((NBTArray)a, (NBTArray)b, common, path, out);
+			} else {
+				for (int i = 0; i < common; i++) {
+					path.add(i);
+					diffInto(ia.get(i), ib.get(i), path, verify, out);
+					path.remove(path.size()-1);
+				}
+			}
+			// removals go from the end so the indices stay valid when applied in order
+			for (int i = ia.size()-1; i >= common; i--) {
+				path.add(i);
+				out.accept(new Change(Kind.REMOVED, path, ia.get(i), null));
+				path.remove(path.size()-1);
+			}
+			for (int i = common; i < ib.size(); i++) {
+				path.add(i);
+				out.accept(new Change(Kind.ADDED, path, null, ib.get(i)));
+				path.remove(path.size()-1);
+			}
+		} else {
+			out.accept(new Change(Kind.CHANGED, path, a, b));
+		}
+	}
+	
+	/**
+	 * Compare the first {@code common} elements of two arrays of the same
+	 * type by value, only making tags out of the ones that differ.
+	 */
+	private static void diffArrayElements(NBTArray a, NBTArray b, int common, List<Object> path, Consumer<Change> out) {
+		if (a instanceof NBTByteArray) {
+			ByteCursor ca = ((NBTByteArray)a).cursor();
+			ByteCursor cb = ((NBTByteArray)b).cursor();
+			for (int i = 0; i < common; i++) {
+				ca.next();
+				cb.next();
+				if (ca.get() != cb.get()) changed(a, b, i, path, out);
+			}
+		} else if (a instanceof NBTIntArray) {
+			IntCursor ca = ((NBTIntArray)a).cursor();
+			IntCursor cb = ((NBTIntArray)b).cursor();
+			for (int i = 0; i < common; i++) {
+				ca.next();
+				cb.next();
+				if (ca.get() != cb.get()) changed(a, b, i, path, out);
+			}
+		} else if (a instanceof NBTLongArray) {
+			LongCursor ca = ((NBTLongArray)a).cursor();
+			LongCursor cb = ((NBTLongArray)b).cursor();
+			for (int i = 0; i < common; i++) {
+				ca.next();
+				cb.next();
+				if (ca.get() != cb.get()) changed(a, b, i, path, out);
+			}
+		} else {
+			for (int i = 0; i < common; i++) {
+				path.add(i);
+				diffInto(a.get(i), b.get(i), path, false, out);
+				path.remove(path.size()-1);
+			}
+		}
+	}
+	
+	private static void changed(NBTIndexed a, NBTIndexed b, int i, List<Object> path, Consumer<Change> out) {
+		path.add(i);
+		out.accept(new Change(Kind.CHANGED, path, a.get(i), b.get(i)));
+		path.remove(path.size()-1);
+	}
+	
+	/**
+	 * Shared tags don't know their parent, so the given tag and its
+	 * ancestors must not be shared, other than the root itself.
+	 * 
+	 * @return the location of the given tag relative to its root, in the
+	 * 		same form as {@link Change#path}
+	 */
+	public static List<Object> pathOf(NBTTag t) {
+		List<Object> li = Lists.newArrayList();
+		while (t != null && t.getParent() != null) {
+			NBTParent parent = t.getParent();
+			if (t instanceof NBTArrayFake) {
+				li.add(((NBTArrayFake)t).getIndex());
+			} else if (parent instanceof NBTList) {
+				li.add(((NBTList)parent).indexOf(t));
+			} else {
+				li.add(t.getName());
+			}
+			t = (NBTTag)parent;
+		}
+		return Lists.reverse(li);
+	}
+	
+	/**
+	 * @return the tag at the given path below the given root, or null if
+	 * 		there isn't one
+	 */
+	public static NBTTag follow(NBTTag root, List<Object> path) {
+		NBTTag t = root;
+		for (Object o : path) {
+			if (o instanceof Integer && t instanceof NBTIndexed) {
+				int i = (Integer)o;
+				if (i >= ((NBTIndexed)t).size()) return null;
+				t = ((NBTIndexed)t).get(i);
+			} else if (o instanceof String && t instanceof NBTCompound) {
+				t = ((NBTCompound)t).get((String)o);
+				if (t == null) return null;
+			} else {
+				return null;
+			}
+		}
+		return t;
+	}
+	
+	/**
+	 * @return the given changes as a JSON Patch. Values are in roundtrip
+	 * 		NBT JSON form, with an extra "type" member giving their NBT type
+	 */
+	public static JsonArray toJsonPatch(List<Change> changes) {
+		JsonArray arr = new JsonArray();
+		for (Change c : changes) {
+			JsonObject op = new JsonObject();
+			switch (c.kind) {
+				case ADDED: op.addProperty("op", "add"); break;
+				case REMOVED: op.addProperty("op", "remove"); break;
+				case CHANGED: op.addProperty("op", "replace"); break;
+				default: throw new AssertionError("missing case for "+c.kind);
+			}
+			op.addProperty("path", c.getPointer());
+			if (c.newTag != null) {
+				op.addProperty("type", NBTEd.getTypePrefix(c.newTag));
+				op.add("value", NBTEd.toJson(c.newTag, true));
+			}
+			arr.add(op);
+		}
+		return arr;
+	}
+	
+	public static void print(List<Change> changes, AnsiStream out) {
+		for (Change c : changes) {
+			switch (c.kind) {
+				case ADDED:
+					out.print("+ ", AnsiCode.FG_GREEN_INTENSE, AnsiCode.BOLD);
+					out.print(c.getPath(), AnsiCode.RESET, AnsiCode.FG_GREEN_INTENSE);
+					out.print(" = ", AnsiCode.RESET);
+					out.println(describe(c.newTag), AnsiCode.RESET);
+					break;
+				case REMOVED:
+					out.print("- ", AnsiCode.FG_RED_INTENSE, AnsiCode.BOLD);
+					out.print(c.getPath(), AnsiCode.RESET, AnsiCode.FG_RED_INTENSE);
+					out.print(" = ", AnsiCode.RESET);
+					out.println(describe(c.oldTag), AnsiCode.RESET);
+					break;
+				case CHANGED:
+					out.print("~ ", AnsiCode.FG_YELLOW_INTENSE, AnsiCode.BOLD);
+					out.print(c.getPath(), AnsiCode.RESET, AnsiCode.FG_YELLOW_INTENSE);
+					out.print(": ", AnsiCode.RESET);
+					out.print(describe(c.oldTag), AnsiCode.RESET);
+					out.print(" -> ");
+					out.println(describe(c.newTag), AnsiCode.RESET);
+					break;
+				default: throw new AssertionError("missing case for "+c.kind);
+			}
+		}
+	}
+	
+	private static String describe(NBTTag tag) {
+		String type = NBTEd.getTypePrefix(tag);
+		if (tag instanceof NBTParent) {
+			int size = ((NBTParent)tag).size();
+			return type+" ("+size+" child"+(size == 1 ? "" : "ren")+")";
+		} else if (tag instanceof NBTString) {
+			return type+" "+NBTEd.gson.toJson(tag.stringValue());
+		} else {
+			return type+" "+tag.stringValue();
+		}
+	}
+
+}
@@ -0,0 +1,297 @@
+/*
+ * unbted - Una's NBT Editor
+ * Copyright (C) 2018 - 2023 Una Thompson (unascribed)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package com.unascribed.nbted;
+
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RecursiveAction;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import com.google.common.base.Throwables;
+import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.Uninterruptibles;
+
+import io.github.steveice10.opennbt.tag.NBTCompound;
+import io.github.steveice10.opennbt.tag.NBTList;
+import io.github.steveice10.opennbt.tag.NBTString;
+import io.github.steveice10.opennbt.tag.NBTTag;
+import io.github.steveice10.opennbt.tag.number.NBTNumber;
+
+/**
+ * Searches a tree for tags by name, type, and value. Big compounds and lists
+ * are searched in parallel, and nothing is formatted except the paths of the
+ * matches. Matches are handed over in tree order as soon as everything
+ * before them has been searched, rather than once the whole search is done.
+ */
+public class TagFinder {
+	
+	/**
+	 * Receives the paths of matches, in tree order, on the thread that
+	 * started the search.
+	 */
+	public interface Listener {
+		void found(String path);
+		/**
+		 * Called when the next match isn't ready yet and the search is
+		 * about to wait for it, such as to flush output buffered so far.
+		 */
+		default void waiting() {}
+	}
+	
+	private static final Pattern RANGE = Pattern.compile("([-+0-9.eE]*)\\.\\.([-+0-9.eE]*)");
+	
+	/**
+	 * Compounds and lists whose encoded payload is smaller than this many
+	 * bytes are searched by whichever thread found them, as splitting them
+	 * off costs more than it saves. Payload sizes are remembered, so this
+	 * sees through a few children holding a lot as well as many children
+	 * holding little.
+	 */
+	private static final long FORK_THRESHOLD = 16384;
+	
+	private static final Object END = new Object();
+	
+	private Pattern name;
+	private String literalName;
+	private Class<? extends NBTTag> type;
+	private Pattern value;
+	private double min = Double.NaN, max = Double.NaN;
+	
+	/**
+	 * Only find tags whose names match the given glob, where * matches
+	 * anything and ? matches any one character.
+	 */
+	public TagFinder name(String glob) {
+		if (glob.indexOf('*') == -1 && glob.indexOf('?') == -1) {
+			this.literalName = glob;
+			this.name = null;
+			return this;
+		}
+		this.literalName = null;
+		StringBuilder sb = new StringBuilder();
+		int literal = 0;
+		for (int i = 0; i < glob.length(); i++) {
+			char c = glob.charAt(i);
+			if (c == '*' || c == '?') {
+				sb.append(Pattern.quote(glob.substring(literal, i)));
+				sb.append(c == '*' ? ".*" : ".");
+				literal = i+1;
+			}
+		}
+		sb.append(Pattern.quote(glob.substring(literal)));
+		this.name = Pattern.compile(sb.toString(), Pattern.DOTALL);
+		return this;
+	}
+	
+	public TagFinder type(Class<? extends NBTTag> type) {
+		this.type = type;
+		return this;
+	}
+	
+	/**
+	 * Only find numbers and strings with the given value. A range of the
+	 * form min..max, where either end may be left off, matches numbers
+	 * between the two, inclusive. Anything else is a regular expression to
+	 * look for in strings and numbers.
+	 *
+	 * @throws IllegalArgumentException if it's not a valid range or regex
+	 */
+	public TagFinder value(String value) {
+		Matcher m = RANGE.matcher(value);
+		if (m.matches() && (!m.group(1).isEmpty() || !m.group(2).isEmpty())) {
+			try {
+				min = m.group(1).isEmpty() ? Double.NEGATIVE_INFINITY : Double.parseDouble(m.group(1));
+				max = m.group(2).isEmpty() ? Double.POSITIVE_INFINITY : Double.parseDouble(m.group(2));
+				this.value = null;
+				return this;
+			} catch (NumberFormatException e) {
+				// not a range after all
+			}
+		}
+		this.value = Pattern.compile(value);
+		min = max = Double.NaN;
+		return this;
+	}
+	
+	/**
+	 * @return the paths of the given tag and its descendants that match,
+	 * 		escaped so they can be given to commands, in tree order
+	 */
+	public List<String> find(NBTTag start) {
+		List<String> out = Lists.newArrayList();
+		find(start, out::add);
+		return out;
+	}
+	
+	/**
+	 * Pass the paths of the given tag and its descendants that match to the
+	 * given listener, escaped so they can be given to commands, in tree
+	 * order. Returns once all of them have been passed on.
+	 */
+	public void find(NBTTag start, Listener out) {
+		Search root = new Search(start, toPath(TagDiff.pathOf(start)));
+		ForkJoinPool.commonPool().execute(root);
+		root.drain(out);
+	}
+	
+	private boolean matches(NBTTag tag) {
+		if (type != null && tag.getClass() != type) return false;
+		if (literalName != null && !literalName.equals(tag.getName())) return false;
+		if (name != null && !name.matcher(tag.getName()).matches()) return false;
+		if (value != null) {
+			String str;
+			if (tag instanceof NBTString) {
+				str = ((NBTString)tag).stringValue();
+			} else if (tag instanceof NBTNumber) {
+				str = ((NBTNumber)tag).numberValue().toString();
+			} else {
+				return false;
+			}
+			if (!value.matcher(str).find()) return false;
+		}
+		if (!Double.isNaN(min)) {
+			if (!(tag instanceof NBTNumber)) return false;
+			double d = ((NBTNumber)tag).doubleValue();
+			if (d < min || d > max) return false;
+		}
+		return true;
+	}
+	
+	/**
+	 * Searches one subtree. Its results are matched paths and the searches
+	 * it split off, in tree order, followed by {@link #END}; nothing ever
+	 * waits on a search but the thread draining them, so a subtree's
+	 * matches can be passed on as soon as everything before it is done.
+	 */
+	private class Search extends RecursiveAction {
+		private final NBTTag tag;
+		private final String path;
+		private final BlockingQueue<Object> results = new LinkedBlockingQueue<>();
+		private volatile Throwable failure;
+		
+		Search(NBTTag tag, String path) {
+			this.tag = tag;
+			this.path = path;
+		}
+		
+		@Override
+		protected void compute() {
+			try {
+				visit(tag, new StringBuilder(path));
+			} catch (RuntimeException | Error e) {
+				failure = e;
+				throw e;
+			} finally {
+				results.add(END);
+			}
+		}
+		
+		void drain(Listener out) {
+			while (true) {
+				Object o = results.poll();
+				if (o == null) {
+					out.waiting();
+					o = Uninterruptibles.takeUninterruptibly(results);
+				}
+				if (o == END) break;
+				if (o instanceof Search) {
+					((Search)o).drain(out);
+				} else {
+					out.found((String)o);
+				}
+			}
+			if (failure != null) {
+				Throwables.throwIfUnchecked(failure);
+				throw new RuntimeException(failure);
+			}
+		}
+		
+		// the path is built up and torn back down in one builder, so only
+		// matches cost a string
+		private void visit(NBTTag t, StringBuilder p) {
+			if (matches(t)) {
+				results.add(p.toString());
+			}
+			int len = p.length();
+			if (t instanceof NBTCompound) {
+				boolean slash = len == 0 || p.charAt(len-1) != '/';
+				for (NBTTag child : (NBTCompound)t) {
+					if (slash) p.append('/');
+					escape(child.getName(), p);
+					descend(child, p);
+					p.setLength(len);
+				}
+			} else if (t instanceof NBTList) {
+				NBTList l = (NBTList)t;
+				for (int i = 0; i < l.size(); i++) {
+					p.append('[').append(i).append(']');
+					descend(l.get(i), p);
+					p.setLength(len);
+				}
+			}
+		}
+		
+		private void descend(NBTTag child, StringBuilder p) {
+			if ((child instanceof NBTCompound || child instanceof NBTList) && child.getPayloadSize() >= FORK_THRESHOLD) {
+				Search s = new Search(child, p.toString());
+				// queued before it starts, so it holds its place in the order
+				results.add(s);
+				s.fork();
+			} else {
+				visit(child, p);
+			}
+		}
+	}
+	
+	/**
+	 * @return the given path from {@link TagDiff#pathOf} as it would be
+	 * 		typed into a command
+	 */
+	public static String toPath(List<Object> path) {
+		StringBuilder sb = new StringBuilder();
+		for (Object o : path) {
+			if (o instanceof Integer) {
+				sb.append('[').append(o).append(']');
+			} else {
+				sb.append('/');
+				escape((String)o, sb);
+			}
+		}
+		return sb.length() == 0 ? "/" : sb.toString();
+	}
+	
+	private static void escape(String name, StringBuilder out) {
+		// would otherwise be read as the tag itself or its parent
+		if (name.equals(".") || name.equals("..")) {
+			out.append('\\');
+		}
+		for (int i = 0; i < name.length(); i++) {
+			char c = name.charAt(i);
+			if ("/[]*\\".indexOf(c) != -1) {
+				out.append('\\');
+			}
+			out.append(c);
+		}
+	}
+	
+}
@@ -20,7 +20,6 @@ package com.unascribed.nbted;
 
 import java.io.PrintStream;
 import java.io.StringWriter;
-import java.util.Comparator;
 import java.util.List;
 import java.util.Locale;
 import java.util.UUID;
@@ -29,11 +28,11 @@ import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Lists;
 import com.google.common.escape.Escaper;
 import com.google.common.escape.Escapers;
-import com.google.common.io.BaseEncoding;
 
 import com.google.gson.Gson;
 import com.google.gson.JsonElement;
 import com.google.gson.stream.JsonWriter;
+import com.unascribed.miniansi.Ansi;
 import com.unascribed.miniansi.AnsiCode;
 import com.unascribed.miniansi.AnsiStream;
 
@@ -42,9 +41,13 @@ import io.github.steveice10.opennbt.tag.NBTCompound;
 import io.github.steveice10.opennbt.tag.NBTList;
 import io.github.steveice10.opennbt.tag.NBTString;
 import io.github.steveice10.opennbt.tag.NBTTag;
+import io.github.steveice10.opennbt.tag.array.NBTArray;
 import io.github.steveice10.opennbt.tag.array.NBTByteArray;
 import io.github.steveice10.opennbt.tag.array.NBTIntArray;
 import io.github.steveice10.opennbt.tag.array.NBTLongArray;
+import io.github.steveice10.opennbt.tag.array.support.ByteCursor;
+import io.github.steveice10.opennbt.tag.array.support.IntCursor;
+import io.github.steveice10.opennbt.tag.array.support.LongCursor;
 import io.github.steveice10.opennbt.tag.number.NBTByte;
 import io.github.steveice10.opennbt.tag.number.NBTLong;
 import io.github.steveice10.opennbt.tag.number.NBTNumber;
@@ -68,9 +71,13 @@ public class TagPrinter {
 		/**
 		 * Print the passed tag and all of its descendants.
 		 */
-		FULL;
+		FULL,
+		/**
+		 * Print all of the passed tag's descendants.
+		 */
+		FULL_CHILDREN_ONLY;
 		public boolean shouldPrintRoot() {
-			return this != IMMEDIATE_CHILDREN_ONLY;
+			return this != IMMEDIATE_CHILDREN_ONLY && this != FULL_CHILDREN_ONLY;
 		}
 		public boolean shouldPrintChildren() {
 			return this != NONE;
@@ -81,6 +88,7 @@ public class TagPrinter {
 				case IMMEDIATE_CHILDREN: return NONE;
 				case IMMEDIATE_CHILDREN_ONLY: return NONE;
 				case FULL: return FULL;
+				case FULL_CHILDREN_ONLY: return FULL;
 				default: throw new AssertionError("missing case for "+this);
 			}
 		}
@@ -90,6 +98,7 @@ public class TagPrinter {
 				case IMMEDIATE_CHILDREN: return NONE;
 				case IMMEDIATE_CHILDREN_ONLY: return IMMEDIATE_CHILDREN;
 				case FULL: return FULL;
+				case FULL_CHILDREN_ONLY: return FULL;
 				default: throw new AssertionError("missing case for "+this);
 			}
 		}
@@ -142,11 +151,38 @@ public class TagPrinter {
 			"ing", "locked", "flag", "boolean", "bool"
 			);
 
+	/**
+	 * Rendered output is accumulated here and handed to the stream once it
+	 * grows past this many chars, rather than issuing a print per fragment.
+	 */
+	private static final int FLUSH_THRESHOLD = 16384;
+	/**
+	 * Buffers that grew past this while rendering a huge value are dropped
+	 * at the end of the call instead of being retained forever.
+	 */
+	private static final int MAX_RETAINED_CAPACITY = 1024*1024;
 	
 	private final AnsiStream aout;
 	
 	private final Gson gson = new Gson();
 	
+	private StringBuilder buf = new StringBuilder(FLUSH_THRESHOLD*2);
+	private final StringBuilder scratch = new StringBuilder();
+	
+	private int maxDepth = -1;
+	private int maxLines = -1;
+	private int rangeStart = -1;
+	private int rangeEnd = -1;
+	private List<NBTTag> rangeChildren;
+	private int lines;
+	/**
+	 * Where in {@link #buf} the line currently being built starts, so a line
+	 * that turns out to be one past the limit can be taken back.
+	 */
+	private int lineStart;
+	private boolean truncated;
+	private int arrayElements;
+	
 	public TagPrinter(PrintStream out) {
 		this(new AnsiStream(out));
 	}
@@ -172,24 +208,109 @@ public class TagPrinter {
 	}
 	
 	public void printTag(NBTTag tag, String prefix, boolean infer, RecurseMode recurse, boolean values) {
-		if (tag == null) {
+		printTag(tag, prefix, infer, recurse, values, -1, -1);
+	}
+	
+	/**
+	 * @param maxDepth how many levels below the given tag to descend into
+	 * 		before summarizing compounds and lists, or -1 for no limit
+	 * @param maxLines how many lines to print before giving up on walking
+	 * 		the tree, or -1 for no limit
+	 */
+	public void printTag(NBTTag tag, String prefix, boolean infer, RecurseMode recurse, boolean values, int maxDepth, int maxLines) {
+		printTag(tag, prefix, infer, recurse, values, maxDepth, maxLines, -1, -1);
+	}
+	
+	/**
+	 * @param rangeStart the index of the first child of the given tag to
+	 * 		print, or -1 to start at the beginning
+	 * @param rangeEnd the index after the last child of the given tag to
+	 * 		print, or -1 to continue to the end
+	 */
+	public void printTag(NBTTag tag, String prefix, boolean infer, RecurseMode recurse, boolean values, int maxDepth, int maxLines, int rangeStart, int rangeEnd) {
+		printTag(tag, prefix, infer, recurse, values, maxDepth, maxLines, rangeStart, rangeEnd, null);
+	}
+	
+	/**
+	 * @param children the given compound's children in iteration order, if
+	 * 		the caller already has them at hand, so a range can be indexed
+	 * 		directly rather than walked to from the first child; or null
+	 */
+	public void printTag(NBTTag tag, String prefix, boolean infer, RecurseMode recurse, boolean values, int maxDepth, int maxLines, int rangeStart, int rangeEnd, List<NBTTag> children) {
+		this.maxDepth = maxDepth;
+		this.maxLines = maxLines;
+		this.rangeStart = rangeStart;
+		this.rangeEnd = rangeEnd;
+		this.rangeChildren = children;
+		this.lines = 0;
+		this.lineStart = buf.length();
+		this.truncated = false;
+		try {
+			// the tag to print comes straight from the caller, who will have
+			// unshared it on the way to it, so it can still find its parent
+			int index = -1;
+			int indexWidth = 0;
+			if (tag != null && tag.getParent() instanceof NBTList) {
+				NBTList parent = (NBTList)tag.getParent();
+				index = parent.indexOf(tag);
+				indexWidth = Integer.toString(parent.size()-1).length();
+			}
+			render(tag, prefix, infer, recurse, values, 0, index, indexWidth);
+			if (truncated) {
+				append("... (output truncated after ", AnsiCode.RESET, AnsiCode.FG_WHITE);
+				buf.append(lines);
+				buf.append(" line");
+				if (lines != 1) {
+					buf.append('s');
+				}
+				buf.append(')');
+				buf.append(AnsiCode.RESET);
+				buf.append('\n');
+			}
+		} finally {
+			rangeChildren = null;
+			flushBuffer();
+			aout.flush();
+			if (buf.capacity() > MAX_RETAINED_CAPACITY) {
+				buf = new StringBuilder(FLUSH_THRESHOLD*2);
+			}
+		}
+	}
+	
+	private void render(NBTTag tag, String prefix, boolean infer, RecurseMode recurse, boolean values, int depth, int index, int indexWidth) {
+		if (tag == null || truncated) {
 			return;
 		}
+		if (maxDepth >= 0 && depth >= maxDepth && recurse.shouldPrintRoot()) {
+			recurse = RecurseMode.NONE;
+		}
 		if (tag instanceof NBTCompound) {
 			NBTCompound ct = (NBTCompound)tag;
 			if (recurse.shouldPrintRoot()) {
-				aout.print(prefix);
-				aout.print("compound ", AnsiCode.FG_WHITE_INTENSE, AnsiCode.BOLD);
-				printName(tag, tag.getName(), false);
+				buf.append(prefix);
+				append("compound ", AnsiCode.FG_WHITE_INTENSE, AnsiCode.BOLD);
+				printName(tag, tag.getName(), false, index, indexWidth);
 			}
 			if (values || (recurse.shouldPrintChildren() && !recurse.shouldPrintRoot())) {
 				if (recurse.shouldPrintChildren()) {
 					if (ct.isEmpty()) {
-						if (recurse.shouldPrintRoot()) aout.println(" {}", AnsiCode.RESET);
+						if (recurse.shouldPrintRoot()) appendLine(" {}", AnsiCode.RESET);
 					} else {
-						if (recurse.shouldPrintRoot()) aout.println(" {", AnsiCode.RESET);
+						if (recurse.shouldPrintRoot()) appendLine(" {", AnsiCode.RESET);
 						String childPrefix = recurse.shouldPrintRoot() ? prefix+"  " : prefix;
-						for (NBTTag t : ct) {
+						int lo = lowerBound(depth);
+						int hi = upperBound(depth, ct.size());
+						Iterable<NBTTag> children = ct;
+						int pos = -1;
+						if (depth == 0 && rangeChildren != null) {
+							children = rangeChildren.subList(Math.min(lo, hi), hi);
+							pos = lo-1;
+						}
+						for (NBTTag t : children) {
+							if (truncated) return;
+							pos++;
+							if (pos < lo) continue;
+							if (pos >= hi) break;
 							if (infer) {
 								if (t.getName().endsWith("Most") && ct.contains(t.getName().replaceFirst("Most$", "Least"))) {
 									NBTTag most = t;
@@ -208,47 +329,48 @@ public class TagPrinter {
 									}
 								}
 							}
-							printTag(t, childPrefix, infer, recurse.degradeForCompound(), values);
+							render(t, childPrefix, infer, recurse.degradeForCompound(), values, depth+1, -1, 0);
 						}
+						if (truncated) return;
 						if (recurse.shouldPrintRoot()) {
-							aout.print(prefix);
-							aout.println("}");
+							buf.append(prefix);
+							appendLine("}");
 						}
 					}
 				} else if (recurse.shouldPrintRoot()) {
-					aout.print(" (", AnsiCode.RESET);
-					aout.print(ct.size());
-					aout.print(" child");
+					append(" (", AnsiCode.RESET);
+					buf.append(ct.size());
+					buf.append(" child");
 					if (ct.size() != 1) {
-						aout.print("ren");
+						buf.append("ren");
 					}
-					aout.println(")");
+					appendLine(")");
 				}
 			} else {
-				aout.println(AnsiCode.RESET);
+				appendLine(AnsiCode.RESET);
 			}
 		} else if (tag instanceof NBTList) {
 			NBTList lt = (NBTList)tag;
 			if (lt.isEmpty()) {
 				if (recurse.shouldPrintRoot()) {
-					aout.print(prefix);
-					aout.print("list ", AnsiCode.FG_WHITE_INTENSE, AnsiCode.BOLD);
-					printName(tag, tag.getName(), false);
+					buf.append(prefix);
+					append("list ", AnsiCode.FG_WHITE_INTENSE, AnsiCode.BOLD);
+					printName(tag, tag.getName(), false, index, indexWidth);
 					if (values) {
 						if (recurse.shouldPrintChildren()) {
-							aout.println(" []", AnsiCode.RESET);
+							appendLine(" []", AnsiCode.RESET);
 						} else {
-							aout.println(" (0 children)", AnsiCode.RESET);
+							appendLine(" (0 children)", AnsiCode.RESET);
 						}
 					} else {
-						aout.println(AnsiCode.RESET);
+						appendLine(AnsiCode.RESET);
 					}
 				}
 			} else {
 				boolean forgeRegistry = true;
 				if (recurse.shouldPrintChildren() && values || (recurse.shouldPrintChildren() && !recurse.shouldPrintRoot())) {
 					Class<?> registryType = null;
-					if (infer) {
+					if (infer && !isRanged(depth)) {
 						for (NBTTag t : lt) {
 							if (t instanceof NBTCompound) {
 								NBTCompound ct = (NBTCompound)t;
@@ -272,69 +394,75 @@ public class TagPrinter {
 				}
 				if (forgeRegistry) {
 					if (recurse.shouldPrintRoot()) {
-						aout.print(prefix);
-						aout.print("~registry ", AnsiCode.FG_WHITE_INTENSE, AnsiCode.BOLD);
-						printName(tag, tag.getName(), false);
-						aout.println(" [", AnsiCode.RESET);
+						buf.append(prefix);
+						append("~registry ", AnsiCode.FG_WHITE_INTENSE, AnsiCode.BOLD);
+						printName(tag, tag.getName(), false, index, indexWidth);
+						appendLine(" [", AnsiCode.RESET);
+					}
+					// sort indices rather than the compounds themselves, so
+					// we don't need an indexOf per entry to print them
+					List<Integer> order = Lists.newArrayListWithCapacity(lt.size());
+					for (int i = 0; i < lt.size(); i++) {
+						order.add(i);
 					}
 					// these assumptions are safe due to the checks above that set the forgeRegistry flag
-					@SuppressWarnings({"unchecked", "rawtypes"})
-					List<NBTCompound> copy = (List)Lists.newArrayList(lt);
-					copy.sort(new Comparator<NBTCompound>() {
-						@Override
+					order.sort((a, b) -> {
 						@SuppressWarnings({"unchecked", "rawtypes"})
-						public int compare(NBTCompound a, NBTCompound b) {
-							return ((Comparable)a.get("V")).compareTo(b.get("V"));
-						}
+						int c = ((Comparable)((NBTCompound)lt.get(a)).get("V")).compareTo(((NBTCompound)lt.get(b)).get("V"));
+						return c;
 					});
 					int indexLength = Integer.toString(lt.size()-1).length();
-					for (NBTTag t : copy) {
-						NBTCompound ct = (NBTCompound)t;
+					for (int i : order) {
+						if (truncated) return;
+						NBTCompound ct = lt.get(i);
 						if (ct.size() == 2 && ct.contains("K") && ct.contains("V")) {
-							aout.print(prefix);
-							if (recurse.shouldPrintRoot()) aout.print("  ");
-							String str = Integer.toString(lt.indexOf(ct));
-							for (int i = str.length(); i < indexLength; i++) {
-								aout.print(" ");
-							}
-							aout.print(str, AnsiCode.RESET);
-							aout.print(": ");
-							printName(tag, ct.get("K").stringValue(), true);
+							buf.append(prefix);
+							if (recurse.shouldPrintRoot()) buf.append("  ");
+							pad(Integer.toString(i), indexLength);
+							append(Integer.toString(i), AnsiCode.RESET);
+							buf.append(": ");
+							printName(tag, ct.get("K").stringValue(), true, -1, 0);
 							printVal(ct.get("V").stringValue());
 							continue;
 						}
 					}
+					if (truncated) return;
 					if (recurse.shouldPrintRoot()) {
-						aout.print(prefix);
-						aout.println("]");
+						buf.append(prefix);
+						appendLine("]");
 					}
 				} else {
 					if (recurse.shouldPrintRoot()) {
-						aout.print(prefix);
-						aout.print("list ", AnsiCode.FG_WHITE_INTENSE, AnsiCode.BOLD);
-						printName(tag, tag.getName(), false);
+						buf.append(prefix);
+						append("list ", AnsiCode.FG_WHITE_INTENSE, AnsiCode.BOLD);
+						printName(tag, tag.getName(), false, index, indexWidth);
 					}
 					if (values || (recurse.shouldPrintChildren() && !recurse.shouldPrintRoot())) {
 						if (recurse.shouldPrintChildren()) {
-							if (recurse.shouldPrintRoot()) aout.println(" [", AnsiCode.RESET);
-							for (NBTTag t : lt) {
-								printTag(t, recurse.shouldPrintRoot() ? prefix+"  " : prefix, infer, recurse.degradeForList(), values);
+							if (recurse.shouldPrintRoot()) appendLine(" [", AnsiCode.RESET);
+							String childPrefix = recurse.shouldPrintRoot() ? prefix+"  " : prefix;
+							int hi = upperBound(depth, lt.size());
+							int indexLength = Integer.toString(lt.size()-1).length();
+							for (int i = lowerBound(depth); i < hi; i++) {
+								if (truncated) return;
+								render(lt.get(i), childPrefix, infer, recurse.degradeForList(), values, depth+1, i, indexLength);
 							}
+							if (truncated) return;
 							if (recurse.shouldPrintRoot()) {
-								aout.print(prefix);
-								aout.println("]");
+								buf.append(prefix);
+								appendLine("]");
 							}
 						} else if (recurse.shouldPrintRoot()) {
-							aout.print(" (", AnsiCode.RESET);
-							aout.print(lt.size());
-							aout.print(" child");
+							append(" (", AnsiCode.RESET);
+							buf.append(lt.size());
+							buf.append(" child");
 							if (lt.size() != 1) {
-								aout.print("ren");
+								buf.append("ren");
 							}
-							aout.println(")");
+							appendLine(")");
 						}
 					} else {
-						aout.println(AnsiCode.RESET);
+						appendLine(AnsiCode.RESET);
 					}
 				}
 			}
@@ -361,13 +489,13 @@ public class TagPrinter {
 					}
 				}
 				if (maybeBoolean) {
-					printBasic(tag, Boolean.toString(((NBTByte)tag).booleanValue()), tag.getName(), "~bool", AnsiCode.FG_YELLOW, prefix, values);
+					printBasic(tag, Boolean.toString(((NBTByte)tag).booleanValue()), tag.getName(), "~bool", AnsiCode.FG_YELLOW, prefix, values, index, indexWidth);
 					return;
 				}
 			}
-			printBasic(tag, tag.stringValue(), tag.getName(), "byte", AnsiCode.FG_YELLOW, prefix, values);
+			printBasic(tag, tag.stringValue(), tag.getName(), "byte", AnsiCode.FG_YELLOW, prefix, values, index, indexWidth);
 		} else if (tag instanceof NBTNumber) {
-			printBasic(tag, tag.stringValue(), tag.getName(), NBTRegistry.typeNameFromClass(tag.getClass()), AnsiCode.FG_YELLOW, prefix, values);
+			printBasic(tag, tag.stringValue(), tag.getName(), NBTRegistry.typeNameFromClass(tag.getClass()), AnsiCode.FG_YELLOW, prefix, values, index, indexWidth);
 		} else if (tag instanceof NBTString) {
 			if (infer) {
 				String str = tag.stringValue();
@@ -375,89 +503,295 @@ public class TagPrinter {
 					try {
 						JsonElement je = gson.fromJson(str, JsonElement.class);
 						if (values) {
-							StringWriter sw = new StringWriter();
-							JsonWriter jw = new JsonWriter(sw);
-							jw.setIndent("  ");
-							jw.setLenient(true);
-							gson.toJson(je, jw);
-							String jstr = sw.toString()
-									.replaceAll("[\\]\\[]", AnsiCode.RESET+"$0")
-									.replace("\n", "\n"+prefix+"  "+AnsiCode.FG_BLUE_INTENSE)
-									.replace(":", AnsiCode.RESET+":"+AnsiCode.FG_GREEN)
-									.replace(",", AnsiCode.RESET+",")
-									.replace("{", AnsiCode.RESET+"{")
-									.replace("}", AnsiCode.RESET+"}")
-									;
-							printBasic(tag, recurse.shouldPrintChildren() ? jstr : "...", tag.getName(), "~json", AnsiCode.FG_RED_INTENSE, prefix, values);
+							CharSequence jstr = "...";
+							if (recurse.shouldPrintChildren()) {
+								StringWriter sw = new StringWriter();
+								JsonWriter jw = new JsonWriter(sw);
+								jw.setIndent("  ");
+								jw.setLenient(true);
+								gson.toJson(je, jw);
+								jstr = colorizeJson(sw.getBuffer(), prefix);
+							}
+							printBasic(tag, jstr, tag.getName(), "~json", AnsiCode.FG_RED_INTENSE, prefix, values, index, indexWidth);
 						} else {
-							printBasic(tag, null, tag.getName(), "~json", AnsiCode.FG_RED_INTENSE, prefix, values);
+							printBasic(tag, null, tag.getName(), "~json", AnsiCode.FG_RED_INTENSE, prefix, values, index, indexWidth);
 						}
 						return;
 					} catch (Exception e) {}
 				}
 			}
-			printBasic(tag, tag.stringValue(), tag.getName(), "string", AnsiCode.FG_RED, prefix, values);
+			printBasic(tag, tag.stringValue(), tag.getName(), "string", AnsiCode.FG_RED, prefix, values, index, indexWidth);
 		} else if (tag instanceof NBTByteArray) {
-			if (infer && ((NBTByteArray)tag).size() > 32) {
-				printBasic(tag, BaseEncoding.base64().encode(((NBTByteArray) tag).getValue()), tag.getName(), "~base64", AnsiCode.FG_YELLOW_INTENSE, prefix, values);
+			NBTByteArray arr = (NBTByteArray)tag;
+			if (infer && arr.size() > 32 && !isRanged(depth)) {
+				printBasic(tag, values ? NBTEd.toBase64(arr) : null, tag.getName(), "~base64", AnsiCode.FG_YELLOW_INTENSE, prefix, values, index, indexWidth);
 			} else {
-				printBasic(tag, colorizeArray(tag.stringValue()), tag.getName(), "byte[]", AnsiCode.FG_YELLOW_INTENSE, prefix, values);
+				scratch.setLength(0);
+				if (values) {
+					int hi = upperBound(depth, arr.size());
+					startArray(lowerBound(depth));
+					ByteCursor c = arr.cursor(Math.min(lowerBound(depth), hi));
+					while (c.next() && c.index() < hi) {
+						nextArrayElement();
+						scratch.append(c.get());
+					}
+					endArray(hi, arr.size());
+				}
+				printBasic(tag, scratch, tag.getName(), "byte[]", AnsiCode.FG_YELLOW_INTENSE, prefix, values, index, indexWidth);
 			}
 		} else if (tag instanceof NBTIntArray) {
 			NBTIntArray arr = (NBTIntArray)tag;
-			if (infer && arr.size() == 4) {
-				printBasic(tag, UUIDs.fromIntArray(arr.getValue()).toString(), tag.getName(), "~uuid", AnsiCode.FG_YELLOW_INTENSE, prefix, values);
+			if (infer && arr.size() == 4 && !isRanged(depth)) {
+				printBasic(tag, UUIDs.fromIntArray(arr).toString(), tag.getName(), "~uuid", AnsiCode.FG_YELLOW_INTENSE, prefix, values, index, indexWidth);
 			} else {
-				printBasic(tag, colorizeArray(tag.stringValue()), tag.getName(), "int[]", AnsiCode.FG_YELLOW_INTENSE, prefix, values);
+				scratch.setLength(0);
+				if (values) {
+					int hi = upperBound(depth, arr.size());
+					startArray(lowerBound(depth));
+					IntCursor c = arr.cursor(Math.min(lowerBound(depth), hi));
+					while (c.next() && c.index() < hi) {
+						nextArrayElement();
+						scratch.append(c.get());
+					}
+					endArray(hi, arr.size());
+				}
+				printBasic(tag, scratch, tag.getName(), "int[]", AnsiCode.FG_YELLOW_INTENSE, prefix, values, index, indexWidth);
 			}
 		} else if (tag instanceof NBTLongArray) {
-			printBasic(tag, colorizeArray(tag.stringValue()), tag.getName(), "long[]", AnsiCode.FG_YELLOW_INTENSE, prefix, values);
+			NBTLongArray arr = (NBTLongArray)tag;
+			scratch.setLength(0);
+			if (values) {
+				int hi = upperBound(depth, arr.size());
+				startArray(lowerBound(depth));
+				LongCursor c = arr.cursor(Math.min(lowerBound(depth), hi));
+				while (c.next() && c.index() < hi) {
+					nextArrayElement();
+					scratch.append(c.get());
+				}
+				endArray(hi, arr.size());
+			}
+			printBasic(tag, scratch, tag.getName(), "long[]", AnsiCode.FG_YELLOW_INTENSE, prefix, values, index, indexWidth);
 		}
 	}
 	
-	private String colorizeArray(String str) {
-		return str
-				.replaceAll("[\\]\\[]", AnsiCode.RESET+"$0"+AnsiCode.FG_GREEN)
-				.replace(",", AnsiCode.RESET+","+AnsiCode.FG_GREEN);
+	/**
+	 * Prints the elements of an array from {@code from} up to {@code to}
+	 * one per line, in the same format as list children.
+	 */
+	public void printArrayElements(NBTArray arr, String prefix, int from, int to) {
+		this.maxLines = -1;
+		this.truncated = false;
+		String type = NBTRegistry.typeNameFromClass(arr.getElementType());
+		int indexLength = Integer.toString(arr.size()-1).length();
+		try {
+			for (int i = from; i < to; i++) {
+				buf.append(prefix);
+				append(type, AnsiCode.FG_YELLOW);
+				buf.append(' ');
+				String str = Integer.toString(i);
+				pad(str, indexLength);
+				append(str, AnsiCode.RESET);
+				buf.append(" = ");
+				buf.append(AnsiCode.FG_GREEN);
+				if (arr instanceof NBTByteArray) {
+					buf.append(((NBTByteArray)arr).getValue(i));
+				} else if (arr instanceof NBTIntArray) {
+					buf.append(((NBTIntArray)arr).getValue(i));
+				} else if (arr instanceof NBTLongArray) {
+					buf.append(((NBTLongArray)arr).getValue(i));
+				}
+				appendLine(AnsiCode.RESET);
+			}
+		} finally {
+			flushBuffer();
+			aout.flush();
+		}
 	}
-
-	public void printBasic(NBTTag tag, String val, String name, String type, AnsiCode color, String prefix, boolean values) {
-		aout.print(prefix);
-		aout.print(type, color);
-		aout.print(" ");
-		printName(tag, name, values);
+	
+	private boolean isRanged(int depth) {
+		return depth == 0 && (rangeStart > 0 || rangeEnd >= 0);
+	}
+	
+	private int lowerBound(int depth) {
+		return depth == 0 ? Math.max(0, rangeStart) : 0;
+	}
+	
+	private int upperBound(int depth, int size) {
+		return depth == 0 && rangeEnd >= 0 ? Math.min(size, rangeEnd) : size;
+	}
+	
+	// these three produce the same thing colorizing Arrays.toString would,
+	// without building the uncolored string first, plus ellipses for
+	// elements left out by a range
+	
+	private void startArray(int from) {
+		scratch.append(AnsiCode.RESET);
+		scratch.append('[');
+		scratch.append(AnsiCode.FG_GREEN);
+		arrayElements = 0;
+		if (from > 0) {
+			nextArrayElement();
+			scratch.append("...");
+		}
+	}
+	
+	private void nextArrayElement() {
+		if (arrayElements++ > 0) {
+			scratch.append(AnsiCode.RESET);
+			scratch.append(',');
+			scratch.append(AnsiCode.FG_GREEN);
+			scratch.append(' ');
+		}
+	}
+	
+	private void endArray(int to, int size) {
+		if (to < size) {
+			nextArrayElement();
+			scratch.append("...");
+		}
+		scratch.append(AnsiCode.RESET);
+		scratch.append(']');
+		scratch.append(AnsiCode.FG_GREEN);
+	}
+	
+	private CharSequence colorizeJson(CharSequence json, String prefix) {
+		scratch.setLength(0);
+		for (int i = 0; i < json.length(); i++) {
+			char c = json.charAt(i);
+			switch (c) {
+				case '[': case ']': case '{': case '}': case ',':
+					scratch.append(AnsiCode.RESET);
+					scratch.append(c);
+					break;
+				case '\n':
+					scratch.append('\n');
+					scratch.append(prefix);
+					scratch.append("  ");
+					scratch.append(AnsiCode.FG_BLUE_INTENSE);
+					break;
+				case ':':
+					scratch.append(AnsiCode.RESET);
+					scratch.append(':');
+					scratch.append(AnsiCode.FG_GREEN);
+					break;
+				default:
+					scratch.append(c);
+					break;
+			}
+		}
+		return scratch;
+	}
+	
+	public void printBasic(NBTTag tag, CharSequence val, String name, String type, AnsiCode color, String prefix, boolean values) {
+		printBasic(tag, val, name, type, color, prefix, values, -1, 0);
+	}
+	
+	private void printBasic(NBTTag tag, CharSequence val, String name, String type, AnsiCode color, String prefix, boolean values, int index, int indexWidth) {
+		buf.append(prefix);
+		append(type, color);
+		buf.append(" ");
+		printName(tag, name, values, index, indexWidth);
 		if (values) printVal(val);
 	}
-
-	public void printVal(String val) {
-		aout.print(AnsiCode.FG_GREEN);
-		aout.print(val);
-		aout.println(AnsiCode.RESET);
+	
+	public void printVal(CharSequence val) {
+		buf.append(AnsiCode.FG_GREEN);
+		if (val != null) {
+			// multi-line values such as ~json count against the limit one
+			// line at a time, same as everything else
+			int start = 0;
+			for (int i = 0; i < val.length(); i++) {
+				if (val.charAt(i) == '\n') {
+					buf.append(val, start, i);
+					endLine();
+					if (truncated) return;
+					start = i+1;
+				}
+			}
+			buf.append(val, start, val.length());
+		} else {
+			buf.append(val);
+		}
+		appendLine(AnsiCode.RESET);
 	}
-
+	
 	public void printName(NBTTag tag, String name, boolean equals) {
+		printName(tag, name, equals, -1, 0);
+	}
+	
+	/**
+	 * @param index the tag's index in the list it's in, or -1 if it isn't
+	 * 		in one. Passed down rather than looked up, as shared tags don't
+	 * 		know their parent
+	 * @param indexWidth how many columns to right-align the index to
+	 */
+	private void printName(NBTTag tag, String name, boolean equals, int index, int indexWidth) {
 		if (name != null && !name.isEmpty()) {
-			aout.print("\"", AnsiCode.FG_BLUE_INTENSE);
-			aout.print(escaper.escape(name));
-			aout.print("\"");
+			append("\"", AnsiCode.FG_BLUE_INTENSE);
+			buf.append(escaper.escape(name));
+			buf.append("\"");
 			if (equals) {
-				aout.print(" = ", AnsiCode.RESET);
+				append(" = ", AnsiCode.RESET);
 			}
 		} else {
-			if (tag.getParent() instanceof NBTList) {
-				String str = Integer.toString(((NBTList)tag.getParent()).indexOf(tag));
-				int maxLen = Integer.toString(((NBTList)tag.getParent()).size()-1).length();
-				for (int i = str.length(); i < maxLen; i++) {
-					aout.print(" ");
-				}
-				aout.print(str, AnsiCode.RESET);
+			if (index >= 0) {
+				String str = Integer.toString(index);
+				pad(str, indexWidth);
+				append(str, AnsiCode.RESET);
 				if (equals) {
-					aout.print(" = ");
+					buf.append(" = ");
 				}
 			} else if (equals) {
-				aout.print(" ");
+				buf.append(" ");
 			}
 		}
 	}
+	
+	private void pad(String str, int len) {
+		for (int i = str.length(); i < len; i++) {
+			buf.append(' ');
+		}
+	}
+	
+	private void append(String str, Ansi... codes) {
+		if (codes.length > 0) {
+			Ansi.Utils.toAppendableUnchecked(buf, codes);
+		}
+		buf.append(str);
+	}
+	
+	private void appendLine(String str, Ansi... codes) {
+		append(str, codes);
+		endLine();
+	}
+	
+	private void appendLine(Ansi code) {
+		buf.append(code);
+		endLine();
+	}
+	
+	private void endLine() {
+		if (maxLines >= 0 && lines >= maxLines) {
+			// this line is one more than we're allowed; output that fits
+			// exactly within the limit was not truncated
+			buf.setLength(lineStart);
+			truncated = true;
+			return;
+		}
+		buf.append('\n');
+		lines++;
+		lineStart = buf.length();
+		if (buf.length() >= FLUSH_THRESHOLD) {
+			flushBuffer();
+		}
+	}
+	
+	private void flushBuffer() {
+		if (buf.length() > 0) {
+			aout.append(buf);
+			buf.setLength(0);
+		}
+		lineStart = 0;
+	}
 
 }
@@ -0,0 +1,137 @@
+/*
+ * unbted - Una's NBT Editor
+ * Copyright (C) 2018 - 2023 Una Thompson (unascribed)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package com.unascribed.nbted;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+
+import org.jline.builtins.Source;
+
+import com.google.common.collect.ImmutableList;
+
+import com.unascribed.miniansi.AnsiStream;
+import com.unascribed.nbted.TagPrinter.RecurseMode;
+
+import io.github.steveice10.opennbt.tag.NBTCompound;
+import io.github.steveice10.opennbt.tag.NBTParent;
+import io.github.steveice10.opennbt.tag.NBTTag;
+import io.github.steveice10.opennbt.tag.array.NBTArray;
+
+/**
+ * A pager source that lists the children of a tag, formatting them only as
+ * the pager reads far enough to need them.
+ */
+public class TagSource implements Source {
+
+	private static final int CHUNK_SIZE = 64;
+	
+	private final String name;
+	private final NBTTag tag;
+	private final boolean infer;
+	private final RecurseMode recurse;
+	private final int maxDepth;
+	private final int from;
+	private final int to;
+	
+	public TagSource(String name, NBTTag tag, boolean infer, RecurseMode recurse, int maxDepth, int from, int to) {
+		this.name = name;
+		this.tag = tag;
+		this.infer = infer;
+		// the root's header and footer would be repeated in every chunk
+		this.recurse = recurse == RecurseMode.FULL ? RecurseMode.FULL_CHILDREN_ONLY : RecurseMode.IMMEDIATE_CHILDREN_ONLY;
+		this.maxDepth = maxDepth;
+		this.from = Math.max(0, from);
+		int size = size(tag);
+		this.to = to < 0 ? size : Math.min(size, to);
+	}
+	
+	private static int size(NBTTag tag) {
+		if (tag instanceof NBTParent) {
+			return ((NBTParent)tag).size();
+		} else if (tag instanceof NBTArray) {
+			return ((NBTArray)tag).size();
+		}
+		return 1;
+	}
+	
+	@Override
+	public String getName() {
+		return name;
+	}
+	
+	@Override
+	public Long lines() {
+		return null;
+	}
+	
+	@Override
+	public InputStream read() throws IOException {
+		return new InputStream() {
+			private final ByteArrayOutputStream baos = new ByteArrayOutputStream();
+			private final TagPrinter printer = new TagPrinter(new AnsiStream(baos));
+			// compounds can only be walked from the start, so take their
+			// children once up front instead of walking past every earlier
+			// chunk again for each new one
+			private final List<NBTTag> children = tag instanceof NBTCompound ? ImmutableList.copyOf((NBTCompound)tag) : null;
+			private int next = from;
+			private byte[] chunk = new byte[0];
+			private int pos;
+			
+			private boolean fill() {
+				while (pos >= chunk.length) {
+					if (next >= to) return false;
+					int end = Math.min(to, next+CHUNK_SIZE);
+					baos.reset();
+					if (tag instanceof NBTArray) {
+						printer.printArrayElements((NBTArray)tag, "", next, end);
+					} else if (tag instanceof NBTParent) {
+						printer.printTag(tag, "", infer, recurse, true, maxDepth, -1, next, end, children);
+					} else {
+						printer.printTag(tag, "", infer, RecurseMode.NONE, true, maxDepth, -1);
+						end = to;
+					}
+					next = end;
+					chunk = baos.toByteArray();
+					pos = 0;
+				}
+				return true;
+			}
+			
+			@Override
+			public int read() throws IOException {
+				if (!fill()) return -1;
+				return chunk[pos++]&0xFF;
+			}
+			
+			@Override
+			public int read(byte[] b, int off, int len) throws IOException {
+				if (len == 0) return 0;
+				if (!fill()) return -1;
+				int n = Math.min(len, chunk.length-pos);
+				System.arraycopy(chunk, pos, b, off, n);
+				pos += n;
+				return n;
+			}
+		};
+	}
+	
+}
@@ -20,6 +20,8 @@ package com.unascribed.nbted;
 
 import java.util.UUID;
 
+import io.github.steveice10.opennbt.tag.array.NBTIntArray;
+
 public class UUIDs {
 
 	public static UUID fromIntArray(int[] arr) {
@@ -29,6 +31,13 @@ public class UUIDs {
 			);
 	}
 	
+	public static UUID fromIntArray(NBTIntArray arr) {
+		return new UUID(
+				(long)arr.getValue(0) << 32 | arr.getValue(1) & 0xFFFFFFFFL,
+				(long)arr.getValue(2) << 32 | arr.getValue(3) & 0xFFFFFFFFL
+			);
+	}
+	
 	public static int[] toIntArray(UUID id) {
 		long msb = id.getMostSignificantBits();
 		long lsb = id.getLeastSignificantBits();
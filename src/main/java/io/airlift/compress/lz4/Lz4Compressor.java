@@ -0,0 +1,90 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.airlift.compress.lz4;
+
+import io.airlift.compress.Compressor;
+
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+
+import static java.lang.String.format;
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Compresses to the raw LZ4 block format, without any framing; see
+ * {@link Lz4FrameOutputStream} for the self-describing stream format.
+ */
+public class Lz4Compressor
+        implements Compressor
+{
+    private final int[] table = new int[Lz4RawCompressor.HASH_TABLE_SIZE];
+
+    @Override
+    public int maxCompressedLength(int uncompressedSize)
+    {
+        return Lz4RawCompressor.maxCompressedLength(uncompressedSize);
+    }
+
+    @Override
+    public int compress(byte[] input, int inputOffset, int inputLength, byte[] output, int outputOffset, int maxOutputLength)
+    {
+        verifyRange(input, inputOffset, inputLength);
+        verifyRange(output, outputOffset, maxOutputLength);
+
+        return Lz4RawCompressor.compress(input, inputOffset, inputLength, output, outputOffset, maxOutputLength, table);
+    }
+
+    @Override
+    public void compress(ByteBuffer inputBuffer, ByteBuffer outputBuffer)
+    {
+        // see ZstdCompressor for why these are accessed through Buffer
+        Buffer input = inputBuffer;
+        Buffer output = outputBuffer;
+
+        byte[] inputBase;
+        int inputOffset;
+        int inputLength = input.remaining();
+        if (input.hasArray()) {
+            inputBase = inputBuffer.array();
+            inputOffset = inputBuffer.arrayOffset() + input.position();
+        }
+        else {
+            inputBase = new byte[inputLength];
+            inputOffset = 0;
+            inputBuffer.duplicate().get(inputBase);
+        }
+
+        if (output.hasArray()) {
+            int outputOffset = outputBuffer.arrayOffset() + output.position();
+            int written = Lz4RawCompressor.compress(inputBase, inputOffset, inputLength, outputBuffer.array(), outputOffset, output.remaining(), table);
+            output.position(output.position() + written);
+        }
+        else {
+            byte[] compressed = new byte[maxCompressedLength(inputLength)];
+            int written = Lz4RawCompressor.compress(inputBase, inputOffset, inputLength, compressed, 0, compressed.length, table);
+            if (written > output.remaining()) {
+                throw new IllegalArgumentException("Max output length must be larger than " + written);
+            }
+            outputBuffer.put(compressed, 0, written);
+        }
+    }
+
+    private static void verifyRange(byte[] data, int offset, int length)
+    {
+        requireNonNull(data, "data is null");
+        if (offset < 0 || length < 0 || offset + length > data.length) {
+            throw new IllegalArgumentException(format("Invalid offset or length (%s, %s) in array of length %s", offset, length, data.length));
+        }
+    }
+}
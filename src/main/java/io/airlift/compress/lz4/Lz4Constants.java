@@ -0,0 +1,49 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.airlift.compress.lz4;
+
+final class Lz4Constants
+{
+    static final int SIZE_OF_SHORT = 2;
+    static final int SIZE_OF_INT = 4;
+    static final int SIZE_OF_LONG = 8;
+
+    static final int MIN_MATCH = 4;
+    // the last 5 bytes of a block are always literals
+    static final int LAST_LITERAL_SIZE = 5;
+    // the last match must start at least 12 bytes before the end of a block
+    static final int MATCH_FIND_LIMIT = 12;
+    static final int MIN_LENGTH = MATCH_FIND_LIMIT + 1;
+    static final int MAX_DISTANCE = (1 << 16) - 1;
+
+    static final int ML_BITS = 4;
+    static final int ML_MASK = (1 << ML_BITS) - 1;
+    static final int RUN_BITS = 8 - ML_BITS;
+    static final int RUN_MASK = (1 << RUN_BITS) - 1;
+
+    static final int FRAME_MAGIC = 0x184D2204;
+    static final int SKIPPABLE_FRAME_MAGIC = 0x184D2A50;
+    static final int SKIPPABLE_FRAME_MAGIC_MASK = 0xFFFFFFF0;
+
+    // "LZ4Block", as written by lz4-java's LZ4BlockOutputStream, read as two little-endian ints
+    static final int BLOCK_STREAM_MAGIC_0 = 0x42345A4C;
+    static final int BLOCK_STREAM_MAGIC_1 = 0x6B636F6C;
+    static final int BLOCK_STREAM_METHOD_RAW = 0x10;
+    static final int BLOCK_STREAM_METHOD_LZ4 = 0x20;
+    static final int BLOCK_STREAM_SEED = 0x9747b28c;
+
+    private Lz4Constants()
+    {
+    }
+}
@@ -0,0 +1,83 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.airlift.compress.lz4;
+
+import io.airlift.compress.Decompressor;
+import io.airlift.compress.MalformedInputException;
+
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+
+import static java.lang.String.format;
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Decompresses the raw LZ4 block format; see {@link Lz4FrameInputStream}
+ * for framed streams.
+ */
+public class Lz4Decompressor
+        implements Decompressor
+{
+    @Override
+    public int decompress(byte[] input, int inputOffset, int inputLength, byte[] output, int outputOffset, int maxOutputLength)
+            throws MalformedInputException
+    {
+        verifyRange(input, inputOffset, inputLength);
+        verifyRange(output, outputOffset, maxOutputLength);
+
+        return Lz4RawDecompressor.decompress(input, inputOffset, inputOffset + inputLength, output, outputOffset, outputOffset, outputOffset + maxOutputLength);
+    }
+
+    @Override
+    public void decompress(ByteBuffer inputBuffer, ByteBuffer outputBuffer)
+            throws MalformedInputException
+    {
+        // see ZstdDecompressor for why these are accessed through Buffer
+        Buffer input = inputBuffer;
+        Buffer output = outputBuffer;
+
+        byte[] inputBase;
+        int inputOffset;
+        int inputLength = input.remaining();
+        if (input.hasArray()) {
+            inputBase = inputBuffer.array();
+            inputOffset = inputBuffer.arrayOffset() + input.position();
+        }
+        else {
+            inputBase = new byte[inputLength];
+            inputOffset = 0;
+            inputBuffer.duplicate().get(inputBase);
+        }
+
+        int written;
+        if (output.hasArray()) {
+            int outputOffset = outputBuffer.arrayOffset() + output.position();
+            written = Lz4RawDecompressor.decompress(inputBase, inputOffset, inputOffset + inputLength, outputBuffer.array(), outputOffset, outputOffset, outputOffset + output.remaining());
+            output.position(output.position() + written);
+        }
+        else {
+            byte[] decompressed = new byte[output.remaining()];
+            written = Lz4RawDecompressor.decompress(inputBase, inputOffset, inputOffset + inputLength, decompressed, 0, 0, decompressed.length);
+            outputBuffer.put(decompressed, 0, written);
+        }
+    }
+
+    private static void verifyRange(byte[] data, int offset, int length)
+    {
+        requireNonNull(data, "data is null");
+        if (offset < 0 || length < 0 || offset + length > data.length) {
+            throw new IllegalArgumentException(format("Invalid offset or length (%s, %s) in array of length %s", offset, length, data.length));
+        }
+    }
+}
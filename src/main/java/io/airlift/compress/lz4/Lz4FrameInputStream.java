@@ -0,0 +1,337 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.airlift.compress.lz4;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Objects;
+
+import static io.airlift.compress.lz4.Lz4Constants.BLOCK_STREAM_MAGIC_0;
+import static io.airlift.compress.lz4.Lz4Constants.BLOCK_STREAM_MAGIC_1;
+import static io.airlift.compress.lz4.Lz4Constants.BLOCK_STREAM_METHOD_LZ4;
+import static io.airlift.compress.lz4.Lz4Constants.BLOCK_STREAM_METHOD_RAW;
+import static io.airlift.compress.lz4.Lz4Constants.BLOCK_STREAM_SEED;
+import static io.airlift.compress.lz4.Lz4Constants.FRAME_MAGIC;
+import static io.airlift.compress.lz4.Lz4Constants.MAX_DISTANCE;
+import static io.airlift.compress.lz4.Lz4Constants.SKIPPABLE_FRAME_MAGIC;
+import static io.airlift.compress.lz4.Lz4Constants.SKIPPABLE_FRAME_MAGIC_MASK;
+import static java.lang.Math.min;
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Reads LZ4 frames, including linked blocks, checksums, skippable frames and
+ * several concatenated frames. Also reads the "LZ4Block" stream format written
+ * by lz4-java's {@code LZ4BlockOutputStream}, which Minecraft uses for
+ * LZ4-compressed chunks.
+ */
+public class Lz4FrameInputStream
+        extends InputStream
+{
+    private static final int HISTORY_SIZE = MAX_DISTANCE + 1;
+    private static final int BLOCK_STREAM_HEADER_SIZE = 21;
+
+    private final InputStream inputStream;
+    private final byte[] header = new byte[BLOCK_STREAM_HEADER_SIZE];
+
+    private byte[] compressed = new byte[0];
+    private byte[] decompressed = new byte[0];
+    private int position;
+    private int limit;
+
+    private boolean inFrame;
+    private boolean independentBlocks;
+    private boolean blockChecksum;
+    private boolean contentChecksum;
+    private int maxBlockSize;
+    private final XxHash32 contentHash = new XxHash32();
+
+    private boolean closed;
+
+    public Lz4FrameInputStream(InputStream inputStream)
+    {
+        this.inputStream = requireNonNull(inputStream, "inputStream is null");
+    }
+
+    @Override
+    public int read()
+            throws IOException
+    {
+        if (!ensureAvailable()) {
+            return -1;
+        }
+        return decompressed[position++] & 0xFF;
+    }
+
+    @Override
+    public int read(byte[] buffer, int offset, int length)
+            throws IOException
+    {
+        Objects.checkFromIndexSize(offset, length, buffer.length);
+        if (length == 0) {
+            return 0;
+        }
+        if (!ensureAvailable()) {
+            return -1;
+        }
+        int size = min(length, limit - position);
+        System.arraycopy(decompressed, position, buffer, offset, size);
+        position += size;
+        return size;
+    }
+
+    @Override
+    public int available()
+            throws IOException
+    {
+        if (closed) {
+            return 0;
+        }
+        return limit - position;
+    }
+
+    @Override
+    public void close()
+            throws IOException
+    {
+        if (!closed) {
+            closed = true;
+            inputStream.close();
+        }
+    }
+
+    private boolean ensureAvailable()
+            throws IOException
+    {
+        if (closed) {
+            throw new IOException("Stream is closed");
+        }
+        while (position == limit) {
+            if (inFrame) {
+                readFrameBlock();
+            }
+            else if (!readMagic()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Reads the magic number opening the next frame and handles anything that
+     * isn't an LZ4 frame. Returns false at a clean end of input.
+     */
+    private boolean readMagic()
+            throws IOException
+    {
+        int first = inputStream.read();
+        if (first == -1) {
+            return false;
+        }
+        header[0] = (byte) first;
+        readFully(header, 1, 3);
+        int magic = readInt(header, 0);
+
+        if (magic == FRAME_MAGIC) {
+            readFrameHeader();
+        }
+        else if ((magic & SKIPPABLE_FRAME_MAGIC_MASK) == SKIPPABLE_FRAME_MAGIC) {
+            readFully(header, 0, 4);
+            skipFully(readInt(header, 0) & 0xFFFFFFFFL);
+        }
+        else if (magic == BLOCK_STREAM_MAGIC_0) {
+            readBlockStreamBlock();
+        }
+        else {
+            throw new IOException("Not an LZ4 frame");
+        }
+        return true;
+    }
+
+    private void readFrameHeader()
+            throws IOException
+    {
+        readFully(header, 0, 2);
+        int flags = header[0] & 0xFF;
+        int descriptor = header[1] & 0xFF;
+        if ((flags >>> 6) != 1) {
+            throw new IOException("Unsupported LZ4 frame version " + (flags >>> 6));
+        }
+        if ((flags & 0b1) != 0) {
+            throw new IOException("LZ4 frames with a dictionary are not supported");
+        }
+        int blockSizeId = (descriptor >>> 4) & 0b111;
+        if (blockSizeId < 4) {
+            throw new IOException("Invalid LZ4 block size " + blockSizeId);
+        }
+        independentBlocks = (flags & 0b10_0000) != 0;
+        blockChecksum = (flags & 0b1_0000) != 0;
+        boolean contentSize = (flags & 0b1000) != 0;
+        contentChecksum = (flags & 0b100) != 0;
+        maxBlockSize = 1 << (8 + 2 * blockSizeId);
+
+        int descriptorSize = 2;
+        if (contentSize) {
+            // only informational; the end mark is what terminates the frame
+            readFully(header, descriptorSize, 8);
+            descriptorSize += 8;
+        }
+        readFully(header, descriptorSize, 1);
+        int checksum = (XxHash32.hash(header, 0, descriptorSize) >>> 8) & 0xFF;
+        if ((header[descriptorSize] & 0xFF) != checksum) {
+            throw new IOException("LZ4 frame descriptor checksum mismatch");
+        }
+
+        int needed = maxBlockSize + (independentBlocks ? 0 : HISTORY_SIZE);
+        if (decompressed.length < needed) {
+            decompressed = new byte[needed];
+        }
+        contentHash.reset();
+        position = 0;
+        limit = 0;
+        inFrame = true;
+    }
+
+    private void readFrameBlock()
+            throws IOException
+    {
+        readFully(header, 0, 4);
+        int blockSize = readInt(header, 0);
+        if (blockSize == 0) {
+            // end mark
+            if (contentChecksum) {
+                readFully(header, 0, 4);
+                if (readInt(header, 0) != contentHash.hash()) {
+                    throw new IOException("LZ4 content checksum mismatch");
+                }
+            }
+            inFrame = false;
+            return;
+        }
+        boolean uncompressed = blockSize < 0;
+        blockSize &= 0x7FFFFFFF;
+        if (blockSize > maxBlockSize) {
+            throw new IOException("LZ4 block of " + blockSize + " bytes exceeds the frame's maximum of " + maxBlockSize);
+        }
+        if (compressed.length < blockSize) {
+            compressed = new byte[maxBlockSize];
+        }
+        readFully(compressed, 0, blockSize);
+        if (blockChecksum) {
+            readFully(header, 0, 4);
+            if (readInt(header, 0) != XxHash32.hash(compressed, 0, blockSize)) {
+                throw new IOException("LZ4 block checksum mismatch");
+            }
+        }
+
+        int start = 0;
+        if (!independentBlocks) {
+            // keep the tail of what has been decoded so far for back-references
+            start = min(limit, HISTORY_SIZE);
+            System.arraycopy(decompressed, limit - start, decompressed, 0, start);
+        }
+        int size;
+        if (uncompressed) {
+            System.arraycopy(compressed, 0, decompressed, start, blockSize);
+            size = blockSize;
+        }
+        else {
+            size = Lz4RawDecompressor.decompress(compressed, 0, blockSize, decompressed, 0, start, start + maxBlockSize);
+        }
+        if (contentChecksum) {
+            contentHash.update(decompressed, start, size);
+        }
+        position = start;
+        limit = start + size;
+    }
+
+    private void readBlockStreamBlock()
+            throws IOException
+    {
+        readFully(header, 4, BLOCK_STREAM_HEADER_SIZE - 4);
+        if (readInt(header, 4) != BLOCK_STREAM_MAGIC_1) {
+            throw new IOException("Not an LZ4 frame");
+        }
+        int token = header[8] & 0xFF;
+        int method = token & 0xF0;
+        int maxSize = 1 << (10 + (token & 0x0F));
+        int compressedSize = readInt(header, 9);
+        int size = readInt(header, 13);
+        int checksum = readInt(header, 17);
+        if (size < 0 || size > maxSize || compressedSize < 0 || compressedSize > Lz4RawCompressor.maxCompressedLength(maxSize)
+                || (method == BLOCK_STREAM_METHOD_RAW && compressedSize != size)
+                || (method != BLOCK_STREAM_METHOD_RAW && method != BLOCK_STREAM_METHOD_LZ4)) {
+            throw new IOException("Corrupt LZ4Block header");
+        }
+
+        if (decompressed.length < size) {
+            decompressed = new byte[maxSize];
+        }
+        if (method == BLOCK_STREAM_METHOD_RAW) {
+            readFully(decompressed, 0, size);
+        }
+        else {
+            if (compressed.length < compressedSize) {
+                compressed = new byte[compressedSize];
+            }
+            readFully(compressed, 0, compressedSize);
+            if (Lz4RawDecompressor.decompress(compressed, 0, compressedSize, decompressed, 0, 0, size) != size) {
+                throw new IOException("Corrupt LZ4Block: decompressed size mismatch");
+            }
+        }
+        // lz4-java truncates its checksum to 28 bits, and writes none for the empty end block
+        int hash = XxHash32.hash(BLOCK_STREAM_SEED, decompressed, 0, size);
+        if (size > 0 && checksum != hash && checksum != (hash & 0x0FFFFFFF)) {
+            throw new IOException("LZ4Block checksum mismatch");
+        }
+        position = 0;
+        limit = size;
+    }
+
+    private void readFully(byte[] buffer, int offset, int length)
+            throws IOException
+    {
+        while (length > 0) {
+            int read = inputStream.read(buffer, offset, length);
+            if (read == -1) {
+                throw new EOFException("Unexpected end of LZ4 stream");
+            }
+            offset += read;
+            length -= read;
+        }
+    }
+
+    private void skipFully(long length)
+            throws IOException
+    {
+        while (length > 0) {
+            long skipped = inputStream.skip(length);
+            if (skipped <= 0) {
+                if (inputStream.read() == -1) {
+                    throw new EOFException("Unexpected end of LZ4 stream");
+                }
+                skipped = 1;
+            }
+            length -= skipped;
+        }
+    }
+
+    private static int readInt(byte[] buffer, int offset)
+    {
+        return (buffer[offset] & 0xFF)
+                | ((buffer[offset + 1] & 0xFF) << 8)
+                | ((buffer[offset + 2] & 0xFF) << 16)
+                | ((buffer[offset + 3] & 0xFF) << 24);
+    }
+}
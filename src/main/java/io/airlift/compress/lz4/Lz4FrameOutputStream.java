@@ -0,0 +1,193 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.airlift.compress.lz4;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.Objects;
+
+import static io.airlift.compress.lz4.Lz4Constants.FRAME_MAGIC;
+import static java.lang.Math.max;
+import static java.lang.Math.min;
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Writes a single LZ4 frame with independent blocks of up to 4 MiB and a
+ * content checksum, readable by the reference {@code lz4} tool.
+ */
+public class Lz4FrameOutputStream
+        extends OutputStream
+{
+    // FLG: version 01, independent blocks, content checksum
+    private static final int FRAME_FLAGS = 0b0110_0100;
+    // BD: 4 MiB maximum block size
+    private static final int BLOCK_DESCRIPTOR = 7 << 4;
+    static final int MAX_BLOCK_SIZE = 4 << 20;
+    private static final int MIN_BUFFER_SIZE = 64 << 10;
+
+    private static final int UNCOMPRESSED_FLAG = 0x80000000;
+
+    private final OutputStream outputStream;
+    private final int[] table = new int[Lz4RawCompressor.HASH_TABLE_SIZE];
+    private final XxHash32 contentHash = new XxHash32();
+
+    private byte[] uncompressed = new byte[0];
+    private int uncompressedPosition;
+    private byte[] compressed = new byte[0];
+
+    private boolean headerWritten;
+    private boolean closed;
+
+    public Lz4FrameOutputStream(OutputStream outputStream)
+    {
+        this.outputStream = requireNonNull(outputStream, "outputStream is null");
+    }
+
+    @Override
+    public void write(int b)
+            throws IOException
+    {
+        if (closed) {
+            throw new IOException("Stream is closed");
+        }
+
+        if (uncompressedPosition == uncompressed.length) {
+            makeRoom(1);
+        }
+        uncompressed[uncompressedPosition++] = (byte) b;
+    }
+
+    @Override
+    public void write(byte[] buffer)
+            throws IOException
+    {
+        write(buffer, 0, buffer.length);
+    }
+
+    @Override
+    public void write(byte[] buffer, int offset, int length)
+            throws IOException
+    {
+        Objects.checkFromIndexSize(offset, length, buffer.length);
+        if (closed) {
+            throw new IOException("Stream is closed");
+        }
+
+        while (length > 0) {
+            if (uncompressedPosition == uncompressed.length) {
+                makeRoom(length);
+            }
+            int writeSize = min(length, uncompressed.length - uncompressedPosition);
+            System.arraycopy(buffer, offset, uncompressed, uncompressedPosition, writeSize);
+
+            uncompressedPosition += writeSize;
+            length -= writeSize;
+            offset += writeSize;
+        }
+    }
+
+    private void makeRoom(int length)
+            throws IOException
+    {
+        if (uncompressed.length < MAX_BLOCK_SIZE) {
+            // grow towards a full block, so small outputs stay cheap
+            int newSize = min(max((uncompressed.length + length) * 2, MIN_BUFFER_SIZE), MAX_BLOCK_SIZE);
+            uncompressed = Arrays.copyOf(uncompressed, newSize);
+        }
+        else {
+            writeBlock();
+        }
+    }
+
+    /**
+     * Writes any buffered data as a block and flushes the underlying stream.
+     */
+    @Override
+    public void flush()
+            throws IOException
+    {
+        if (closed) {
+            throw new IOException("Stream is closed");
+        }
+        if (uncompressedPosition > 0) {
+            writeBlock();
+        }
+        outputStream.flush();
+    }
+
+    @Override
+    public void close()
+            throws IOException
+    {
+        if (closed) {
+            return;
+        }
+        closed = true;
+
+        try (OutputStream out = outputStream) {
+            if (uncompressedPosition > 0 || !headerWritten) {
+                writeBlock();
+            }
+            byte[] trailer = new byte[8];
+            // end mark is a zero block size
+            writeInt(trailer, 4, contentHash.hash());
+            out.write(trailer, 0, 8);
+        }
+    }
+
+    private void writeBlock()
+            throws IOException
+    {
+        if (!headerWritten) {
+            byte[] header = new byte[7];
+            writeInt(header, 0, FRAME_MAGIC);
+            header[4] = (byte) FRAME_FLAGS;
+            header[5] = (byte) BLOCK_DESCRIPTOR;
+            header[6] = (byte) (XxHash32.hash(header, 4, 2) >>> 8);
+            outputStream.write(header);
+            headerWritten = true;
+        }
+        if (uncompressedPosition == 0) {
+            return;
+        }
+
+        contentHash.update(uncompressed, 0, uncompressedPosition);
+
+        int maxCompressedLength = 4 + Lz4RawCompressor.maxCompressedLength(uncompressedPosition);
+        if (compressed.length < maxCompressedLength) {
+            compressed = new byte[maxCompressedLength];
+        }
+        int compressedSize = Lz4RawCompressor.compress(uncompressed, 0, uncompressedPosition, compressed, 4, maxCompressedLength - 4, table);
+        if (compressedSize < uncompressedPosition) {
+            writeInt(compressed, 0, compressedSize);
+            outputStream.write(compressed, 0, 4 + compressedSize);
+        }
+        else {
+            // incompressible; store the block as-is
+            writeInt(compressed, 0, uncompressedPosition | UNCOMPRESSED_FLAG);
+            outputStream.write(compressed, 0, 4);
+            outputStream.write(uncompressed, 0, uncompressedPosition);
+        }
+        uncompressedPosition = 0;
+    }
+
+    private static void writeInt(byte[] buffer, int offset, int value)
+    {
+        buffer[offset] = (byte) value;
+        buffer[offset + 1] = (byte) (value >>> 8);
+        buffer[offset + 2] = (byte) (value >>> 16);
+        buffer[offset + 3] = (byte) (value >>> 24);
+    }
+}
@@ -0,0 +1,198 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.airlift.compress.lz4;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+
+import static io.airlift.compress.lz4.Lz4Constants.LAST_LITERAL_SIZE;
+import static io.airlift.compress.lz4.Lz4Constants.MATCH_FIND_LIMIT;
+import static io.airlift.compress.lz4.Lz4Constants.MAX_DISTANCE;
+import static io.airlift.compress.lz4.Lz4Constants.MIN_LENGTH;
+import static io.airlift.compress.lz4.Lz4Constants.MIN_MATCH;
+import static io.airlift.compress.lz4.Lz4Constants.ML_BITS;
+import static io.airlift.compress.lz4.Lz4Constants.ML_MASK;
+import static io.airlift.compress.lz4.Lz4Constants.RUN_MASK;
+import static io.airlift.compress.lz4.Lz4Constants.SIZE_OF_LONG;
+import static java.lang.Math.min;
+
+/**
+ * Greedy single-pass LZ4 block compressor, equivalent to the reference
+ * implementation's default ("fast", acceleration 1) mode.
+ */
+final class Lz4RawCompressor
+{
+    static final int HASH_LOG = 12;
+    static final int HASH_TABLE_SIZE = 1 << HASH_LOG;
+
+    // skip ahead faster over incompressible data: every 2^SKIP_TRIGGER
+    // failed probes the step size grows by one
+    private static final int SKIP_TRIGGER = 6;
+
+    private static final VarHandle INT = MethodHandles.byteArrayViewVarHandle(int[].class, ByteOrder.LITTLE_ENDIAN);
+    private static final VarHandle LONG = MethodHandles.byteArrayViewVarHandle(long[].class, ByteOrder.LITTLE_ENDIAN);
+
+    private Lz4RawCompressor()
+    {
+    }
+
+    static int maxCompressedLength(int sourceLength)
+    {
+        return sourceLength + sourceLength / 255 + 16;
+    }
+
+    /**
+     * @param table scratch space of {@link #HASH_TABLE_SIZE} entries; its contents are overwritten
+     * @return the number of bytes written to {@code output}
+     */
+    static int compress(byte[] input, int inputOffset, int inputLength, byte[] output, int outputOffset, int maxOutputLength, int[] table)
+    {
+        if (maxOutputLength < maxCompressedLength(inputLength)) {
+            throw new IllegalArgumentException("Max output length must be larger than " + maxCompressedLength(inputLength));
+        }
+
+        int inputLimit = inputOffset + inputLength;
+        int matchFindLimit = inputLimit - MATCH_FIND_LIMIT;
+        int matchLimit = inputLimit - LAST_LITERAL_SIZE;
+
+        int anchor = inputOffset;
+        int op = outputOffset;
+
+        if (inputLength >= MIN_LENGTH) {
+            Arrays.fill(table, -1);
+
+            int next = inputOffset;
+            search:
+            while (true) {
+                // find a 4-byte match
+                int ip;
+                int match;
+                int probes = 1 << SKIP_TRIGGER;
+                int step = 1;
+                while (true) {
+                    ip = next;
+                    next = ip + step;
+                    step = probes++ >>> SKIP_TRIGGER;
+                    if (next > matchFindLimit) {
+                        break search;
+                    }
+                    int sequence = (int) INT.get(input, ip);
+                    int hash = hash(sequence);
+                    match = table[hash];
+                    table[hash] = ip;
+                    if (match >= 0 && ip - match <= MAX_DISTANCE && (int) INT.get(input, match) == sequence) {
+                        break;
+                    }
+                }
+
+                // extend the match backwards over pending literals
+                while (ip > anchor && match > inputOffset && input[ip - 1] == input[match - 1]) {
+                    ip--;
+                    match--;
+                }
+
+                int tokenPosition = op++;
+                int token = min(ip - anchor, RUN_MASK) << ML_BITS;
+                op = writeLength(output, op, ip - anchor, RUN_MASK);
+                System.arraycopy(input, anchor, output, op, ip - anchor);
+                op += ip - anchor;
+
+                while (true) {
+                    int offset = ip - match;
+                    output[op++] = (byte) offset;
+                    output[op++] = (byte) (offset >>> 8);
+
+                    ip += MIN_MATCH;
+                    int matchLength = count(input, ip, match + MIN_MATCH, matchLimit);
+                    ip += matchLength;
+
+                    token |= min(matchLength, ML_MASK);
+                    op = writeLength(output, op, matchLength, ML_MASK);
+                    output[tokenPosition] = (byte) token;
+
+                    anchor = ip;
+                    if (ip > matchFindLimit) {
+                        break search;
+                    }
+
+                    table[hash((int) INT.get(input, ip - 2))] = ip - 2;
+
+                    // an immediate follow-up match needs no literals
+                    int sequence = (int) INT.get(input, ip);
+                    int hash = hash(sequence);
+                    match = table[hash];
+                    table[hash] = ip;
+                    if (match >= 0 && ip - match <= MAX_DISTANCE && (int) INT.get(input, match) == sequence) {
+                        tokenPosition = op++;
+                        token = 0;
+                        continue;
+                    }
+                    next = ip + 1;
+                    break;
+                }
+            }
+        }
+
+        // last literals
+        int literalLength = inputLimit - anchor;
+        output[op++] = (byte) (min(literalLength, RUN_MASK) << ML_BITS);
+        op = writeLength(output, op, literalLength, RUN_MASK);
+        System.arraycopy(input, anchor, output, op, literalLength);
+        op += literalLength;
+
+        return op - outputOffset;
+    }
+
+    /**
+     * Writes the extension bytes of a literal or match length whose token
+     * nibble saturated at {@code mask}.
+     */
+    private static int writeLength(byte[] output, int op, int length, int mask)
+    {
+        if (length >= mask) {
+            length -= mask;
+            while (length >= 255) {
+                output[op++] = (byte) 255;
+                length -= 255;
+            }
+            output[op++] = (byte) length;
+        }
+        return op;
+    }
+
+    private static int count(byte[] input, int ip, int match, int limit)
+    {
+        int start = ip;
+        while (ip <= limit - SIZE_OF_LONG) {
+            long diff = (long) LONG.get(input, ip) ^ (long) LONG.get(input, match);
+            if (diff != 0) {
+                return ip - start + (Long.numberOfTrailingZeros(diff) >>> 3);
+            }
+            ip += SIZE_OF_LONG;
+            match += SIZE_OF_LONG;
+        }
+        while (ip < limit && input[ip] == input[match]) {
+            ip++;
+            match++;
+        }
+        return ip - start;
+    }
+
+    private static int hash(int sequence)
+    {
+        return (sequence * -1640531535) >>> (32 - HASH_LOG);
+    }
+}
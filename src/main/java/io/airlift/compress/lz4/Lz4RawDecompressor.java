@@ -0,0 +1,126 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.airlift.compress.lz4;
+
+import io.airlift.compress.MalformedInputException;
+
+import static io.airlift.compress.lz4.Lz4Constants.MIN_MATCH;
+import static io.airlift.compress.lz4.Lz4Constants.ML_BITS;
+import static io.airlift.compress.lz4.Lz4Constants.ML_MASK;
+import static io.airlift.compress.lz4.Lz4Constants.RUN_MASK;
+import static io.airlift.compress.lz4.Lz4Constants.SIZE_OF_SHORT;
+
+final class Lz4RawDecompressor
+{
+    private Lz4RawDecompressor()
+    {
+    }
+
+    /**
+     * Decodes a single LZ4 block. Matches may refer back as far as {@code outputBase},
+     * which lets linked frame blocks use the tail of the previous block as history.
+     *
+     * @return the number of bytes written at {@code outputOffset}
+     */
+    static int decompress(byte[] input, int inputOffset, int inputLimit, byte[] output, int outputBase, int outputOffset, int outputLimit)
+            throws MalformedInputException
+    {
+        int ip = inputOffset;
+        int op = outputOffset;
+
+        while (true) {
+            if (ip >= inputLimit) {
+                throw new MalformedInputException(ip - inputOffset, "Input is truncated");
+            }
+            int token = input[ip++] & 0xFF;
+
+            int literalLength = token >>> ML_BITS;
+            if (literalLength == RUN_MASK) {
+                int value;
+                do {
+                    if (ip >= inputLimit) {
+                        throw new MalformedInputException(ip - inputOffset, "Input is truncated");
+                    }
+                    value = input[ip++] & 0xFF;
+                    literalLength += value;
+                }
+                while (value == 255 && literalLength > 0);
+                if (literalLength < 0) {
+                    throw new MalformedInputException(ip - inputOffset, "Literal length overflows");
+                }
+            }
+            if (literalLength > inputLimit - ip) {
+                throw new MalformedInputException(ip - inputOffset, "Literal run extends past end of input");
+            }
+            if (literalLength > outputLimit - op) {
+                throw new MalformedInputException(ip - inputOffset, "Output buffer too small");
+            }
+            System.arraycopy(input, ip, output, op, literalLength);
+            ip += literalLength;
+            op += literalLength;
+
+            // the last sequence of a block is literals only
+            if (ip == inputLimit) {
+                break;
+            }
+
+            if (inputLimit - ip < SIZE_OF_SHORT) {
+                throw new MalformedInputException(ip - inputOffset, "Input is truncated");
+            }
+            int offset = (input[ip] & 0xFF) | ((input[ip + 1] & 0xFF) << 8);
+            ip += SIZE_OF_SHORT;
+            int matchStart = op - offset;
+            if (offset == 0 || matchStart < outputBase) {
+                throw new MalformedInputException(ip - inputOffset, "Offset outside of decompressed data");
+            }
+
+            int matchLength = token & ML_MASK;
+            if (matchLength == ML_MASK) {
+                int value;
+                do {
+                    if (ip >= inputLimit) {
+                        throw new MalformedInputException(ip - inputOffset, "Input is truncated");
+                    }
+                    value = input[ip++] & 0xFF;
+                    matchLength += value;
+                }
+                while (value == 255 && matchLength > 0);
+                if (matchLength < 0) {
+                    throw new MalformedInputException(ip - inputOffset, "Match length overflows");
+                }
+            }
+            matchLength += MIN_MATCH;
+            if (matchLength > outputLimit - op) {
+                throw new MalformedInputException(ip - inputOffset, "Output buffer too small");
+            }
+
+            if (offset >= matchLength) {
+                System.arraycopy(output, matchStart, output, op, matchLength);
+            }
+            else {
+                // overlapping copy repeats the last offset bytes; copy in growing
+                // chunks, each of which is already fully written
+                int copied = 0;
+                while (copied < matchLength) {
+                    int chunk = Math.min(offset + copied, matchLength - copied);
+                    System.arraycopy(output, matchStart, output, op + copied, chunk);
+                    copied += chunk;
+                }
+            }
+            op += matchLength;
+        }
+
+        return op - outputOffset;
+    }
+}
@@ -0,0 +1,191 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.airlift.compress.lz4;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+import java.util.Objects;
+
+import static io.airlift.compress.lz4.Lz4Constants.SIZE_OF_INT;
+import static java.lang.Integer.rotateLeft;
+import static java.lang.Math.min;
+
+/**
+ * 32-bit xxHash, as used for LZ4 frame descriptors, block and content checksums.
+ */
+public final class XxHash32
+{
+    private static final int PRIME32_1 = 0x9E3779B1;
+    private static final int PRIME32_2 = 0x85EBCA77;
+    private static final int PRIME32_3 = 0xC2B2AE3D;
+    private static final int PRIME32_4 = 0x27D4EB2F;
+    private static final int PRIME32_5 = 0x165667B1;
+
+    private static final int STRIPE_SIZE = 16;
+
+    private static final VarHandle INT = MethodHandles.byteArrayViewVarHandle(int[].class, ByteOrder.LITTLE_ENDIAN);
+
+    private final int seed;
+
+    private final byte[] buffer = new byte[STRIPE_SIZE];
+    private int bufferSize;
+
+    private long bodyLength;
+
+    private int v1;
+    private int v2;
+    private int v3;
+    private int v4;
+
+    public XxHash32()
+    {
+        this(0);
+    }
+
+    public XxHash32(int seed)
+    {
+        this.seed = seed;
+        reset();
+    }
+
+    public XxHash32 reset()
+    {
+        v1 = seed + PRIME32_1 + PRIME32_2;
+        v2 = seed + PRIME32_2;
+        v3 = seed;
+        v4 = seed - PRIME32_1;
+        bufferSize = 0;
+        bodyLength = 0;
+        return this;
+    }
+
+    public XxHash32 update(byte[] data)
+    {
+        return update(data, 0, data.length);
+    }
+
+    public XxHash32 update(byte[] data, int offset, int length)
+    {
+        Objects.checkFromIndexSize(offset, length, data.length);
+
+        if (bufferSize > 0) {
+            int available = min(STRIPE_SIZE - bufferSize, length);
+            System.arraycopy(data, offset, buffer, bufferSize, available);
+            bufferSize += available;
+            offset += available;
+            length -= available;
+            if (bufferSize == STRIPE_SIZE) {
+                processStripe(buffer, 0);
+                bufferSize = 0;
+            }
+        }
+
+        while (length >= STRIPE_SIZE) {
+            processStripe(data, offset);
+            offset += STRIPE_SIZE;
+            length -= STRIPE_SIZE;
+        }
+
+        if (length > 0) {
+            System.arraycopy(data, offset, buffer, 0, length);
+            bufferSize = length;
+        }
+        return this;
+    }
+
+    public int hash()
+    {
+        int hash;
+        if (bodyLength > 0) {
+            hash = rotateLeft(v1, 1) + rotateLeft(v2, 7) + rotateLeft(v3, 12) + rotateLeft(v4, 18);
+        }
+        else {
+            hash = seed + PRIME32_5;
+        }
+        hash += (int) (bodyLength + bufferSize);
+        return finalize(hash, buffer, 0, bufferSize);
+    }
+
+    public static int hash(byte[] data, int offset, int length)
+    {
+        return hash(0, data, offset, length);
+    }
+
+    public static int hash(int seed, byte[] data, int offset, int length)
+    {
+        Objects.checkFromIndexSize(offset, length, data.length);
+
+        int limit = offset + length;
+        int hash;
+        if (length >= STRIPE_SIZE) {
+            int v1 = seed + PRIME32_1 + PRIME32_2;
+            int v2 = seed + PRIME32_2;
+            int v3 = seed;
+            int v4 = seed - PRIME32_1;
+            do {
+                v1 = round(v1, (int) INT.get(data, offset));
+                v2 = round(v2, (int) INT.get(data, offset + 4));
+                v3 = round(v3, (int) INT.get(data, offset + 8));
+                v4 = round(v4, (int) INT.get(data, offset + 12));
+                offset += STRIPE_SIZE;
+            }
+            while (limit - offset >= STRIPE_SIZE);
+            hash = rotateLeft(v1, 1) + rotateLeft(v2, 7) + rotateLeft(v3, 12) + rotateLeft(v4, 18);
+        }
+        else {
+            hash = seed + PRIME32_5;
+        }
+        hash += length;
+        return finalize(hash, data, offset, limit - offset);
+    }
+
+    private void processStripe(byte[] data, int offset)
+    {
+        v1 = round(v1, (int) INT.get(data, offset));
+        v2 = round(v2, (int) INT.get(data, offset + 4));
+        v3 = round(v3, (int) INT.get(data, offset + 8));
+        v4 = round(v4, (int) INT.get(data, offset + 12));
+        bodyLength += STRIPE_SIZE;
+    }
+
+    private static int finalize(int hash, byte[] data, int offset, int length)
+    {
+        int limit = offset + length;
+        while (limit - offset >= SIZE_OF_INT) {
+            hash += (int) INT.get(data, offset) * PRIME32_3;
+            hash = rotateLeft(hash, 17) * PRIME32_4;
+            offset += SIZE_OF_INT;
+        }
+        while (offset < limit) {
+            hash += (data[offset] & 0xFF) * PRIME32_5;
+            hash = rotateLeft(hash, 11) * PRIME32_1;
+            offset++;
+        }
+
+        hash ^= hash >>> 15;
+        hash *= PRIME32_2;
+        hash ^= hash >>> 13;
+        hash *= PRIME32_3;
+        hash ^= hash >>> 16;
+        return hash;
+    }
+
+    private static int round(int accumulator, int input)
+    {
+        accumulator += input * PRIME32_2;
+        accumulator = rotateLeft(accumulator, 13);
+        return accumulator * PRIME32_1;
+    }
+}
@@ -15,7 +15,7 @@
 package io.airlift.compress.zstd;
 
 import static io.airlift.compress.zstd.Constants.SIZE_OF_LONG;
-import static io.airlift.compress.zstd.UnsafeUtil.UNSAFE;
+import static io.airlift.compress.zstd.MemoryAccess.MEMORY;
 import static io.airlift.compress.zstd.Util.highestBit;
 import static io.airlift.compress.zstd.Util.verify;
 
@@ -39,21 +39,21 @@ class BitInputStream
 
     static long readTail(Object inputBase, long inputAddress, int inputSize)
     {
-        long bits = UNSAFE.getByte(inputBase, inputAddress) & 0xFF;
+        long bits = MEMORY.getByte(inputBase, inputAddress) & 0xFF;
 
         switch (inputSize) {
             case 7:
-                bits |= (UNSAFE.getByte(inputBase, inputAddress + 6) & 0xFFL) << 48;
+                bits |= (MEMORY.getByte(inputBase, inputAddress + 6) & 0xFFL) << 48;
             case 6:
-                bits |= (UNSAFE.getByte(inputBase, inputAddress + 5) & 0xFFL) << 40;
+                bits |= (MEMORY.getByte(inputBase, inputAddress + 5) & 0xFFL) << 40;
             case 5:
-                bits |= (UNSAFE.getByte(inputBase, inputAddress + 4) & 0xFFL) << 32;
+                bits |= (MEMORY.getByte(inputBase, inputAddress + 4) & 0xFFL) << 32;
             case 4:
-                bits |= (UNSAFE.getByte(inputBase, inputAddress + 3) & 0xFFL) << 24;
+                bits |= (MEMORY.getByte(inputBase, inputAddress + 3) & 0xFFL) << 24;
             case 3:
-                bits |= (UNSAFE.getByte(inputBase, inputAddress + 2) & 0xFFL) << 16;
+                bits |= (MEMORY.getByte(inputBase, inputAddress + 2) & 0xFFL) << 16;
             case 2:
-                bits |= (UNSAFE.getByte(inputBase, inputAddress + 1) & 0xFFL) << 8;
+                bits |= (MEMORY.getByte(inputBase, inputAddress + 1) & 0xFFL) << 8;
         }
 
         return bits;
@@ -112,7 +112,7 @@ class BitInputStream
         {
             verify(endAddress - startAddress >= 1, startAddress, "Bitstream is empty");
 
-            int lastByte = UNSAFE.getByte(inputBase, endAddress - 1) & 0xFF;
+            int lastByte = MEMORY.getByte(inputBase, endAddress - 1) & 0xFF;
             verify(lastByte != 0, endAddress, "Bitstream end mark not present");
 
             bitsConsumed = SIZE_OF_LONG - highestBit(lastByte);
@@ -120,7 +120,7 @@ class BitInputStream
             int inputSize = (int) (endAddress - startAddress);
             if (inputSize >= SIZE_OF_LONG) {  /* normal case */
                 currentAddress = endAddress - SIZE_OF_LONG;
-                bits = UNSAFE.getLong(inputBase, currentAddress);
+                bits = MEMORY.getLong(inputBase, currentAddress);
             }
             else {
                 currentAddress = startAddress;
@@ -184,7 +184,7 @@ class BitInputStream
             if (currentAddress >= startAddress + SIZE_OF_LONG) {
                 if (bytes > 0) {
                     currentAddress -= bytes;
-                    bits = UNSAFE.getLong(inputBase, currentAddress);
+                    bits = MEMORY.getLong(inputBase, currentAddress);
                 }
                 bitsConsumed &= 0b111;
             }
@@ -192,13 +192,13 @@ class BitInputStream
                 bytes = (int) (currentAddress - startAddress);
                 currentAddress = startAddress;
                 bitsConsumed -= bytes * SIZE_OF_LONG;
-                bits = UNSAFE.getLong(inputBase, startAddress);
+                bits = MEMORY.getLong(inputBase, startAddress);
                 return true;
             }
             else {
                 currentAddress -= bytes;
                 bitsConsumed -= bytes * SIZE_OF_LONG;
-                bits = UNSAFE.getLong(inputBase, currentAddress);
+                bits = MEMORY.getLong(inputBase, currentAddress);
             }
 
             return false;
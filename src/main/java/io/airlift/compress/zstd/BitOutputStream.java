@@ -15,7 +15,7 @@
 package io.airlift.compress.zstd;
 
 import static io.airlift.compress.zstd.Constants.SIZE_OF_LONG;
-import static io.airlift.compress.zstd.UnsafeUtil.UNSAFE;
+import static io.airlift.compress.zstd.MemoryAccess.MEMORY;
 import static io.airlift.compress.zstd.Util.checkArgument;
 
 class BitOutputStream
@@ -66,7 +66,7 @@ class BitOutputStream
     {
         int bytes = bitCount >>> 3;
 
-        UNSAFE.putLong(outputBase, currentAddress, container);
+        MEMORY.putLong(outputBase, currentAddress, container);
         currentAddress += bytes;
 
         if (currentAddress > outputLimit) {
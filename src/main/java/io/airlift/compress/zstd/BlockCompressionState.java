@@ -47,12 +47,15 @@ class BlockCompressionState
             newValue = newValue & (~(newValue >> 31));
             chainTable[i] = newValue;
         }
+        // the window start moves with the data, or nothing before the old start would match again
+        windowBaseOffset = Math.max(0, windowBaseOffset - slideWindowSize);
     }
 
     public void reset()
     {
         Arrays.fill(hashTable, 0);
         Arrays.fill(chainTable, 0);
+        windowBaseOffset = 0;
     }
 
     public void enforceMaxDistance(long inputLimit, int maxDistance)
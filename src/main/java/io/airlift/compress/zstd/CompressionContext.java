@@ -14,11 +14,24 @@
 
 package io.airlift.compress.zstd;
 
+import static io.airlift.compress.zstd.Constants.DEFAULT_MAX_WINDOW_LOG;
 import static io.airlift.compress.zstd.Constants.MAX_BLOCK_SIZE;
+import static io.airlift.compress.zstd.Constants.MAX_SUPPORTED_WINDOW_LOG;
+import static io.airlift.compress.zstd.MemoryAccess.ARRAY_BYTE_BASE_OFFSET;
 import static io.airlift.compress.zstd.Util.checkArgument;
 
-class CompressionContext
+/**
+ * Tables and scratch space for compressing one frame. Contexts are large, so
+ * a context made for streaming can be {@link #reset() reset} and handed to a
+ * new {@link ZstdOutputStream} instead of allocating another.
+ */
+public class CompressionContext
 {
+    public static final int MIN_WINDOW_LOG = Constants.MIN_WINDOW_LOG;
+    public static final int MAX_WINDOW_LOG = MAX_SUPPORTED_WINDOW_LOG;
+    // as large as decoders accept by default
+    public static final int DEFAULT_LONG_DISTANCE_WINDOW_LOG = DEFAULT_MAX_WINDOW_LOG;
+
     public final CompressionParameters parameters;
     public final RepeatedOffsets offsets = new RepeatedOffsets();
     public final BlockCompressionState blockCompressionState;
@@ -28,9 +41,51 @@ class CompressionContext
 
     public final HuffmanCompressionContext huffmanContext = new HuffmanCompressionContext();
 
-    public CompressionContext(CompressionParameters parameters, long baseAddress, int inputSize)
+    // null unless long-distance matching is enabled
+    public final LongDistanceMatcher longDistanceMatcher;
+
+    // as passed to the public constructor, or -1
+    private final int requestedWindowLog;
+
+    /**
+     * Creates a context for {@link ZstdOutputStream} at the default compression level.
+     */
+    public CompressionContext()
+    {
+        this(0, false);
+    }
+
+    /**
+     * Creates a context for {@link ZstdOutputStream} at the default compression level,
+     * with the given window and optionally long-distance matching. A larger window
+     * lets matches reach further back, at the cost of that much memory for both
+     * compression and decompression; decoders refuse windows over 2^27 bytes unless
+     * their limit is raised, see {@link ZstdIncrementalFrameDecompressor#setMaxWindowSize}.
+     * Long-distance matching finds repeats of 64 bytes or more anywhere in the window,
+     * which the regular match finder misses once they are far apart.
+     *
+     * @param windowLog log2 of the window size, or 0 for the default: 2^20 bytes,
+     * or 2^27 with long-distance matching
+     */
+    public CompressionContext(int windowLog, boolean longDistanceMatching)
+    {
+        this(withWindowLog(CompressionParameters.compute(CompressionParameters.DEFAULT_COMPRESSION_LEVEL, -1), windowLog, longDistanceMatching),
+                ARRAY_BYTE_BASE_OFFSET,
+                Integer.MAX_VALUE,
+                windowLog,
+                longDistanceMatching);
+    }
+
+    CompressionContext(CompressionParameters parameters, long baseAddress, int inputSize)
+    {
+        this(parameters, baseAddress, inputSize, -1, false);
+    }
+
+    private CompressionContext(CompressionParameters parameters, long baseAddress, int inputSize, int requestedWindowLog, boolean longDistanceMatching)
     {
         this.parameters = parameters;
+        this.requestedWindowLog = requestedWindowLog;
+        this.longDistanceMatcher = longDistanceMatching ? new LongDistanceMatcher(parameters.getWindowLog()) : null;
 
         int windowSize = Math.max(1, Math.min(parameters.getWindowSize(), inputSize));
         int blockSize = Math.min(MAX_BLOCK_SIZE, windowSize);
@@ -43,10 +98,44 @@ class CompressionContext
         blockCompressionState = new BlockCompressionState(parameters, baseAddress);
     }
 
+    public int getWindowLog()
+    {
+        return parameters.getWindowLog();
+    }
+
+    public boolean isLongDistanceMatching()
+    {
+        return longDistanceMatcher != null;
+    }
+
+    /**
+     * @return true if this context was made by {@link #CompressionContext(int, boolean)}
+     * with the same arguments, so it can stand in for a new one
+     */
+    public boolean isConfiguredFor(int windowLog, boolean longDistanceMatching)
+    {
+        return requestedWindowLog == windowLog && isLongDistanceMatching() == longDistanceMatching;
+    }
+
+    private static CompressionParameters withWindowLog(CompressionParameters parameters, int windowLog, boolean longDistanceMatching)
+    {
+        if (windowLog == 0) {
+            if (!longDistanceMatching) {
+                return parameters;
+            }
+            windowLog = DEFAULT_LONG_DISTANCE_WINDOW_LOG;
+        }
+        checkArgument(windowLog >= MIN_WINDOW_LOG && windowLog <= MAX_SUPPORTED_WINDOW_LOG, "windowLog must be between " + MIN_WINDOW_LOG + " and " + MAX_SUPPORTED_WINDOW_LOG);
+        return parameters.withWindowLog(windowLog);
+    }
+
     public void slideWindow(int slideWindowSize)
     {
         checkArgument(slideWindowSize > 0, "slideWindowSize must be positive");
         blockCompressionState.slideWindow(slideWindowSize);
+        if (longDistanceMatcher != null) {
+            longDistanceMatcher.slideWindow(slideWindowSize);
+        }
     }
 
     public void commit()
@@ -54,4 +143,17 @@ class CompressionContext
         offsets.commit();
         huffmanContext.saveChanges();
     }
+
+    /**
+     * Forgets everything about previously compressed data, so the context can start a new frame.
+     */
+    public void reset()
+    {
+        offsets.reset();
+        blockCompressionState.reset();
+        huffmanContext.reset();
+        if (longDistanceMatcher != null) {
+            longDistanceMatcher.reset();
+        }
+    }
 }
@@ -253,6 +253,11 @@ class CompressionParameters
         return strategy;
     }
 
+    public CompressionParameters withWindowLog(int windowLog)
+    {
+        return new CompressionParameters(windowLog, chainLog, hashLog, searchLog, searchLength, targetLength, strategy);
+    }
+
     public static CompressionParameters compute(int compressionLevel, int estimatedInputSize)
     {
         CompressionParameters defaultParameters = getDefaultParameters(compressionLevel, estimatedInputSize);
@@ -23,8 +23,24 @@ class Constants
 
     public static final int MAGIC_NUMBER = 0xFD2FB528;
 
+    // skippable frames use any magic number from 0x184D2A50 to 0x184D2A5F
+    public static final int SKIPPABLE_MAGIC_NUMBER = 0x184D2A50;
+    public static final int SKIPPABLE_MAGIC_NUMBER_MASK = 0xFFFFFFF0;
+    public static final int SIZE_OF_SKIPPABLE_FRAME_HEADER = 8;
+
+    // seekable format: a skippable frame holding the seek table, ending with a footer
+    public static final int SEEK_TABLE_MAGIC_NUMBER = 0x184D2A5E;
+    public static final int SEEKABLE_MAGIC_NUMBER = 0x8F92EAB1;
+    public static final int SIZE_OF_SEEK_TABLE_FOOTER = 9;
+    public static final int SEEK_TABLE_CHECKSUM_FLAG = 0x80;
+    public static final int SEEK_TABLE_RESERVED_MASK = 0x7C;
+
     public static final int MIN_WINDOW_LOG = 10;
     public static final int MAX_WINDOW_LOG = 31;
+    // windows are held in a byte[], so one of 2^31 bytes doesn't fit
+    public static final int MAX_SUPPORTED_WINDOW_LOG = 30;
+    // like the reference decoder, larger windows need the memory limit raised
+    public static final int DEFAULT_MAX_WINDOW_LOG = 27;
 
     public static final int SIZE_OF_BLOCK_HEADER = 3;
 
@@ -16,8 +16,8 @@ package io.airlift.compress.zstd;
 
 import java.util.Arrays;
 
-import static io.airlift.compress.zstd.UnsafeUtil.UNSAFE;
-import static sun.misc.Unsafe.ARRAY_BYTE_BASE_OFFSET;
+import static io.airlift.compress.zstd.MemoryAccess.ARRAY_BYTE_BASE_OFFSET;
+import static io.airlift.compress.zstd.MemoryAccess.MEMORY;
 
 class Histogram
 {
@@ -33,7 +33,7 @@ class Histogram
         Arrays.fill(counts, 0);
 
         for (int i = 0; i < inputSize; i++) {
-            int symbol = UNSAFE.getByte(inputBase, input) & 0xFF;
+            int symbol = MEMORY.getByte(inputBase, input) & 0xFF;
             input++;
             counts[symbol]++;
         }
@@ -50,6 +50,15 @@ class HuffmanCompressionContext
         previousTable = previousCandidate;
     }
 
+    public void reset()
+    {
+        // a new frame can't repeat the last frame's table
+        previousTable.reset();
+        temporaryTable.reset();
+        previousCandidate = previousTable;
+        temporaryCandidate = temporaryTable;
+    }
+
     public HuffmanCompressionTableWorkspace getCompressionTableWorkspace()
     {
         return compressionTableWorkspace;
@@ -0,0 +1,194 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.airlift.compress.zstd;
+
+import java.util.Arrays;
+
+import static io.airlift.compress.zstd.Constants.REPEATED_OFFSET_COUNT;
+import static io.airlift.compress.zstd.MemoryAccess.MEMORY;
+import static io.airlift.compress.zstd.Util.mask;
+import static java.lang.Math.max;
+
+/**
+ * Long-distance matching, as in the reference implementation's {@code --long}: finds
+ * long matches anywhere in a large window, and leaves the data between them to the
+ * regular block compressor, whose hash tables only cover nearby repeats.
+ * <p>
+ * Positions are sampled with a rolling gear hash, so repeated content is sampled
+ * at the same places wherever it occurs, and each sampled position is indexed by
+ * a hash of the {@link #MIN_MATCH_LENGTH} bytes before it.
+ */
+class LongDistanceMatcher
+{
+    static final int MIN_MATCH_LENGTH = 64;
+
+    private static final int MIN_MATCH = 3;
+    private static final int REP_MOVE = REPEATED_OFFSET_COUNT - 1;
+
+    private static final int BUCKET_SIZE_LOG = 3;
+    private static final int MIN_HASH_LOG = 6 + BUCKET_SIZE_LOG;
+    // sample one position in 2^7, on average
+    private static final int HASH_RATE_LOG = 7;
+
+    private static final long[] GEAR_TABLE = new long[256];
+
+    static {
+        // splitmix64, so the table is fixed but has no structure
+        long seed = 0;
+        for (int i = 0; i < GEAR_TABLE.length; i++) {
+            seed += 0x9E3779B97F4A7C15L;
+            long value = seed;
+            value = (value ^ (value >>> 30)) * 0xBF58476D1CE4E5B9L;
+            value = (value ^ (value >>> 27)) * 0x94D049BB133111EBL;
+            GEAR_TABLE[i] = value ^ (value >>> 31);
+        }
+    }
+
+    private final int bucketBits;
+    private final long stopMask;
+
+    // positions relative to the base address and checksums, in buckets of 2^BUCKET_SIZE_LOG
+    private final int[] positions;
+    private final int[] checksums;
+    private final byte[] nextInBucket;
+
+    private final RepeatedOffsets scratchOffsets = new RepeatedOffsets();
+
+    public LongDistanceMatcher(int windowLog)
+    {
+        int hashLog = max(MIN_HASH_LOG, windowLog - HASH_RATE_LOG);
+        this.bucketBits = hashLog - BUCKET_SIZE_LOG;
+        this.stopMask = ((long) mask(HASH_RATE_LOG)) << (Long.SIZE - HASH_RATE_LOG);
+        this.positions = new int[1 << hashLog];
+        this.checksums = new int[1 << hashLog];
+        this.nextInBucket = new byte[1 << bucketBits];
+    }
+
+    public void slideWindow(int slideWindowSize)
+    {
+        for (int i = 0; i < positions.length; i++) {
+            int newValue = positions[i] - slideWindowSize;
+            // if new value is negative, set it to zero branchless
+            newValue = newValue & (~(newValue >> 31));
+            positions[i] = newValue;
+        }
+    }
+
+    public void reset()
+    {
+        Arrays.fill(positions, 0);
+        Arrays.fill(checksums, 0);
+        Arrays.fill(nextInBucket, (byte) 0);
+    }
+
+    /**
+     * Compresses a block like {@link BlockCompressor#compressBlock}, passing the
+     * literals between long matches to the given compressor.
+     */
+    public int compressBlock(Object inputBase, final long inputAddress, int inputSize, SequenceStore output, BlockCompressionState state, RepeatedOffsets offsets, CompressionParameters parameters, BlockCompressor compressor)
+    {
+        final long baseAddress = state.getBaseAddress();
+        final long windowBaseAddress = baseAddress + state.getWindowBaseOffset();
+        final long inputEnd = inputAddress + inputSize;
+
+        RepeatedOffsets localOffsets = scratchOffsets;
+        localOffsets.copyFrom(offsets);
+
+        // the gear hash only depends on the last 64 bytes, so start it that far back
+        long hashStart = max(inputAddress - Long.SIZE, baseAddress);
+        long hash = 0;
+        for (long input = hashStart; input < inputAddress; input++) {
+            hash = (hash << 1) + GEAR_TABLE[MEMORY.getByte(inputBase, input) & 0xFF];
+        }
+
+        long anchor = inputAddress;
+        for (long input = inputAddress; input < inputEnd; input++) {
+            hash = (hash << 1) + GEAR_TABLE[MEMORY.getByte(inputBase, input) & 0xFF];
+            long split = input + 1 - MIN_MATCH_LENGTH;
+            if ((hash & stopMask) != 0 || split < hashStart) {
+                continue;
+            }
+
+            long fingerprint = XxHash64.hash(0, inputBase, split, MIN_MATCH_LENGTH);
+            int bucket = ((int) fingerprint & mask(bucketBits)) << BUCKET_SIZE_LOG;
+            int checksum = (int) (fingerprint >>> 32);
+
+            if (split >= anchor) {
+                long bestStart = 0;
+                long bestMatch = 0;
+                int bestForward = 0;
+                int bestLength = 0;
+                for (int i = bucket; i < bucket + (1 << BUCKET_SIZE_LOG); i++) {
+                    long match = baseAddress + positions[i];
+                    if (checksums[i] != checksum || match <= windowBaseAddress || match >= split) {
+                        continue;
+                    }
+                    int forward = DoubleFastBlockCompressor.count(inputBase, split, inputEnd, match);
+                    if (forward < MIN_MATCH_LENGTH) {
+                        continue;
+                    }
+                    int backward = 0;
+                    while (split - backward > anchor && match - backward > windowBaseAddress &&
+                            MEMORY.getByte(inputBase, split - backward - 1) == MEMORY.getByte(inputBase, match - backward - 1)) {
+                        backward++;
+                    }
+                    if (forward + backward > bestLength) {
+                        bestStart = split - backward;
+                        bestMatch = match - backward;
+                        bestForward = forward;
+                        bestLength = forward + backward;
+                    }
+                }
+
+                if (bestLength > 0) {
+                    int literalsSize = compressLiterals(inputBase, anchor, (int) (bestStart - anchor), output, state, localOffsets, parameters, compressor);
+                    int offset = (int) (bestStart - bestMatch);
+                    output.storeSequence(inputBase, bestStart - literalsSize, literalsSize, offset + REP_MOVE, bestLength - MIN_MATCH);
+
+                    localOffsets.saveOffset1(localOffsets.getOffset0());
+                    localOffsets.saveOffset0(offset);
+                    localOffsets.commit();
+
+                    anchor = split + bestForward;
+                }
+            }
+
+            int slot = bucket + nextInBucket[bucket >>> BUCKET_SIZE_LOG];
+            positions[slot] = (int) (split - baseAddress);
+            checksums[slot] = checksum;
+            nextInBucket[bucket >>> BUCKET_SIZE_LOG] = (byte) ((slot + 1) & mask(BUCKET_SIZE_LOG));
+        }
+
+        int lastLiteralsSize = compressLiterals(inputBase, anchor, (int) (inputEnd - anchor), output, state, localOffsets, parameters, compressor);
+        offsets.saveOffset0(localOffsets.getOffset0());
+        offsets.saveOffset1(localOffsets.getOffset1());
+        return lastLiteralsSize;
+    }
+
+    /**
+     * Runs the regular compressor over the data before a long match.
+     *
+     * @return the size of the literals left at the end, for the next sequence
+     */
+    private static int compressLiterals(Object inputBase, long inputAddress, int inputSize, SequenceStore output, BlockCompressionState state, RepeatedOffsets offsets, CompressionParameters parameters, BlockCompressor compressor)
+    {
+        if (inputSize == 0) {
+            return 0;
+        }
+        int lastLiteralsSize = compressor.compressBlock(inputBase, inputAddress, inputSize, output, state, offsets, parameters);
+        offsets.commit();
+        return lastLiteralsSize;
+    }
+}
@@ -0,0 +1,99 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.airlift.compress.zstd;
+
+import io.airlift.compress.IncompatibleJvmException;
+
+import java.nio.Buffer;
+
+import static java.lang.String.format;
+
+/**
+ * Little-endian reads and writes addressed as a base object plus an offset, in
+ * the style of {@code sun.misc.Unsafe}. Heap arrays are addressed from
+ * {@link #ARRAY_BYTE_BASE_OFFSET}; direct buffers from {@link #getBase(Buffer)}
+ * and {@link #getAddress(Buffer)}.
+ * <p>
+ * The backend is picked once, when this class is initialized, from the
+ * {@code unbted.zstdMemoryAccess} system property: {@code unsafe} (the default)
+ * uses {@code sun.misc.Unsafe}, falling back to {@code varhandle} if it isn't
+ * accessible; {@code varhandle} uses bounds-checked {@link java.lang.invoke.VarHandle}
+ * views and needs nothing outside of {@code java.base}. Only one implementation
+ * is ever loaded, so calls through {@link #MEMORY} are monomorphic.
+ */
+abstract class MemoryAccess
+{
+    public static final MemoryAccess MEMORY = select(System.getProperty("unbted.zstdMemoryAccess", "unsafe"));
+    public static final int ARRAY_BYTE_BASE_OFFSET = MEMORY.arrayByteBaseOffset();
+
+    private static MemoryAccess select(String name)
+    {
+        switch (name) {
+            case "unsafe":
+                try {
+                    return new UnsafeMemoryAccess();
+                }
+                catch (IncompatibleJvmException | LinkageError e) {
+                    // jdk.unsupported is missing, or Unsafe's initializer failed
+                    return new VarHandleMemoryAccess();
+                }
+            case "varhandle":
+                return new VarHandleMemoryAccess();
+            default:
+                throw new IncompatibleJvmException(format("Unknown zstd memory access backend %s, expected unsafe or varhandle", name));
+        }
+    }
+
+    /**
+     * @return the name of the selected backend, as accepted by the {@code unbted.zstdMemoryAccess}
+     * system property
+     */
+    public static String getBackendName()
+    {
+        return MEMORY.name();
+    }
+
+    abstract String name();
+
+    abstract int arrayByteBaseOffset();
+
+    /**
+     * @return the base object to address the contents of the given direct buffer with
+     */
+    public abstract Object getBase(Buffer buffer);
+
+    /**
+     * @return the address of the start of the given direct buffer, relative to {@link #getBase(Buffer)}
+     */
+    public abstract long getAddress(Buffer buffer);
+
+    public abstract byte getByte(Object base, long address);
+
+    public abstract short getShort(Object base, long address);
+
+    public abstract int getInt(Object base, long address);
+
+    public abstract long getLong(Object base, long address);
+
+    public abstract void putByte(Object base, long address, byte value);
+
+    public abstract void putShort(Object base, long address, short value);
+
+    public abstract void putInt(Object base, long address, int value);
+
+    public abstract void putLong(Object base, long address, long value);
+
+    public abstract void copyMemory(Object srcBase, long srcAddress, Object destBase, long destAddress, long length);
+}
@@ -42,9 +42,23 @@ class RepeatedOffsets
         tempOffset1 = offset;
     }
 
+    public void copyFrom(RepeatedOffsets other)
+    {
+        offset0 = other.offset0;
+        offset1 = other.offset1;
+    }
+
     public void commit()
     {
         offset0 = tempOffset0;
         offset1 = tempOffset1;
     }
+
+    public void reset()
+    {
+        offset0 = 1;
+        offset1 = 4;
+        tempOffset0 = 0;
+        tempOffset1 = 0;
+    }
 }
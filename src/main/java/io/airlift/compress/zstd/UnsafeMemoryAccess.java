@@ -23,13 +23,12 @@ import java.nio.ByteOrder;
 
 import static java.lang.String.format;
 
-final class UnsafeUtil
+final class UnsafeMemoryAccess
+        extends MemoryAccess
 {
-    public static final Unsafe UNSAFE;
+    private static final Unsafe UNSAFE;
     private static final long ADDRESS_OFFSET;
 
-    private UnsafeUtil() {}
-
     static {
         ByteOrder order = ByteOrder.nativeOrder();
         if (!order.equals(ByteOrder.LITTLE_ENDIAN)) {
@@ -54,7 +53,30 @@ final class UnsafeUtil
         }
     }
 
-    public static long getAddress(Buffer buffer)
+    @Override
+    String name()
+    {
+        return "unsafe";
+    }
+
+    @Override
+    int arrayByteBaseOffset()
+    {
+        return Unsafe.ARRAY_BYTE_BASE_OFFSET;
+    }
+
+    @Override
+    public Object getBase(Buffer buffer)
+    {
+        if (!buffer.isDirect()) {
+            throw new IllegalArgumentException("buffer is not direct");
+        }
+
+        return null;
+    }
+
+    @Override
+    public long getAddress(Buffer buffer)
     {
         if (!buffer.isDirect()) {
             throw new IllegalArgumentException("buffer is not direct");
@@ -62,4 +84,58 @@ final class UnsafeUtil
 
         return UNSAFE.getLong(buffer, ADDRESS_OFFSET);
     }
+
+    @Override
+    public byte getByte(Object base, long address)
+    {
+        return UNSAFE.getByte(base, address);
+    }
+
+    @Override
+    public short getShort(Object base, long address)
+    {
+        return UNSAFE.getShort(base, address);
+    }
+
+    @Override
+    public int getInt(Object base, long address)
+    {
+        return UNSAFE.getInt(base, address);
+    }
+
+    @Override
+    public long getLong(Object base, long address)
+    {
+        return UNSAFE.getLong(base, address);
+    }
+
+    @Override
+    public void putByte(Object base, long address, byte value)
+    {
+        UNSAFE.putByte(base, address, value);
+    }
+
+    @Override
+    public void putShort(Object base, long address, short value)
+    {
+        UNSAFE.putShort(base, address, value);
+    }
+
+    @Override
+    public void putInt(Object base, long address, int value)
+    {
+        UNSAFE.putInt(base, address, value);
+    }
+
+    @Override
+    public void putLong(Object base, long address, long value)
+    {
+        UNSAFE.putLong(base, address, value);
+    }
+
+    @Override
+    public void copyMemory(Object srcBase, long srcAddress, Object destBase, long destAddress, long length)
+    {
+        UNSAFE.copyMemory(srcBase, srcAddress, destBase, destAddress, length);
+    }
 }
@@ -17,7 +17,7 @@ package io.airlift.compress.zstd;
 import io.airlift.compress.MalformedInputException;
 
 import static io.airlift.compress.zstd.Constants.SIZE_OF_SHORT;
-import static io.airlift.compress.zstd.UnsafeUtil.UNSAFE;
+import static io.airlift.compress.zstd.MemoryAccess.MEMORY;
 
 final class Util
 {
@@ -110,14 +110,14 @@ final class Util
 
     public static int get24BitLittleEndian(Object inputBase, long inputAddress)
     {
-        return (UNSAFE.getShort(inputBase, inputAddress) & 0xFFFF)
-                | ((UNSAFE.getByte(inputBase, inputAddress + SIZE_OF_SHORT) & 0xFF) << Short.SIZE);
+        return (MEMORY.getShort(inputBase, inputAddress) & 0xFFFF)
+                | ((MEMORY.getByte(inputBase, inputAddress + SIZE_OF_SHORT) & 0xFF) << Short.SIZE);
     }
 
     public static void put24BitLittleEndian(Object outputBase, long outputAddress, int value)
     {
-        UNSAFE.putShort(outputBase, outputAddress, (short) value);
-        UNSAFE.putByte(outputBase, outputAddress + SIZE_OF_SHORT, (byte) (value >>> Short.SIZE));
+        MEMORY.putShort(outputBase, outputAddress, (short) value);
+        MEMORY.putByte(outputBase, outputAddress + SIZE_OF_SHORT, (byte) (value >>> Short.SIZE));
     }
 
     // provides the minimum logSize to safely represent a distribution
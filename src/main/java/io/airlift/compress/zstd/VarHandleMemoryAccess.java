@@ -0,0 +1,184 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.airlift.compress.zstd;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+
+import static java.nio.ByteOrder.LITTLE_ENDIAN;
+
+/**
+ * Backs {@link MemoryAccess} with byte array and byte buffer {@link VarHandle} views.
+ * Bases are either a {@code byte[]} or, for direct buffers, the {@link ByteBuffer}
+ * itself, so every access is bounds checked and there are no raw addresses.
+ */
+final class VarHandleMemoryAccess
+        extends MemoryAccess
+{
+    // any value works, as long as it's the same everywhere; this is what Unsafe
+    // reports on common JVMs, so addresses look the same under either backend
+    private static final int BASE_OFFSET = 16;
+
+    private static final VarHandle SHORT_ARRAY = MethodHandles.byteArrayViewVarHandle(short[].class, LITTLE_ENDIAN);
+    private static final VarHandle INT_ARRAY = MethodHandles.byteArrayViewVarHandle(int[].class, LITTLE_ENDIAN);
+    private static final VarHandle LONG_ARRAY = MethodHandles.byteArrayViewVarHandle(long[].class, LITTLE_ENDIAN);
+
+    private static final VarHandle SHORT_BUFFER = MethodHandles.byteBufferViewVarHandle(short[].class, LITTLE_ENDIAN);
+    private static final VarHandle INT_BUFFER = MethodHandles.byteBufferViewVarHandle(int[].class, LITTLE_ENDIAN);
+    private static final VarHandle LONG_BUFFER = MethodHandles.byteBufferViewVarHandle(long[].class, LITTLE_ENDIAN);
+
+    @Override
+    String name()
+    {
+        return "varhandle";
+    }
+
+    @Override
+    int arrayByteBaseOffset()
+    {
+        return BASE_OFFSET;
+    }
+
+    @Override
+    public Object getBase(Buffer buffer)
+    {
+        if (!buffer.isDirect()) {
+            throw new IllegalArgumentException("buffer is not direct");
+        }
+
+        return buffer;
+    }
+
+    @Override
+    public long getAddress(Buffer buffer)
+    {
+        if (!buffer.isDirect()) {
+            throw new IllegalArgumentException("buffer is not direct");
+        }
+
+        return BASE_OFFSET;
+    }
+
+    private static int index(long address)
+    {
+        return (int) (address - BASE_OFFSET);
+    }
+
+    // byte[] is checked first everywhere, since that's all the streams ever use
+
+    @Override
+    public byte getByte(Object base, long address)
+    {
+        if (base instanceof byte[]) {
+            return ((byte[]) base)[index(address)];
+        }
+        return ((ByteBuffer) base).get(index(address));
+    }
+
+    @Override
+    public short getShort(Object base, long address)
+    {
+        if (base instanceof byte[]) {
+            return (short) SHORT_ARRAY.get((byte[]) base, index(address));
+        }
+        return (short) SHORT_BUFFER.get((ByteBuffer) base, index(address));
+    }
+
+    @Override
+    public int getInt(Object base, long address)
+    {
+        if (base instanceof byte[]) {
+            return (int) INT_ARRAY.get((byte[]) base, index(address));
+        }
+        return (int) INT_BUFFER.get((ByteBuffer) base, index(address));
+    }
+
+    @Override
+    public long getLong(Object base, long address)
+    {
+        if (base instanceof byte[]) {
+            return (long) LONG_ARRAY.get((byte[]) base, index(address));
+        }
+        return (long) LONG_BUFFER.get((ByteBuffer) base, index(address));
+    }
+
+    @Override
+    public void putByte(Object base, long address, byte value)
+    {
+        if (base instanceof byte[]) {
+            ((byte[]) base)[index(address)] = value;
+        }
+        else {
+            ((ByteBuffer) base).put(index(address), value);
+        }
+    }
+
+    @Override
+    public void putShort(Object base, long address, short value)
+    {
+        if (base instanceof byte[]) {
+            SHORT_ARRAY.set((byte[]) base, index(address), value);
+        }
+        else {
+            SHORT_BUFFER.set((ByteBuffer) base, index(address), value);
+        }
+    }
+
+    @Override
+    public void putInt(Object base, long address, int value)
+    {
+        if (base instanceof byte[]) {
+            INT_ARRAY.set((byte[]) base, index(address), value);
+        }
+        else {
+            INT_BUFFER.set((ByteBuffer) base, index(address), value);
+        }
+    }
+
+    @Override
+    public void putLong(Object base, long address, long value)
+    {
+        if (base instanceof byte[]) {
+            LONG_ARRAY.set((byte[]) base, index(address), value);
+        }
+        else {
+            LONG_BUFFER.set((ByteBuffer) base, index(address), value);
+        }
+    }
+
+    @Override
+    public void copyMemory(Object srcBase, long srcAddress, Object destBase, long destAddress, long length)
+    {
+        int srcIndex = index(srcAddress);
+        int destIndex = index(destAddress);
+        int size = Math.toIntExact(length);
+        if (srcBase instanceof byte[]) {
+            if (destBase instanceof byte[]) {
+                System.arraycopy((byte[]) srcBase, srcIndex, (byte[]) destBase, destIndex, size);
+            }
+            else {
+                ((ByteBuffer) destBase).put(destIndex, (byte[]) srcBase, srcIndex, size);
+            }
+        }
+        else if (destBase instanceof byte[]) {
+            ((ByteBuffer) srcBase).get(srcIndex, (byte[]) destBase, destIndex, size);
+        }
+        else {
+            ((ByteBuffer) destBase).put(destIndex, ((ByteBuffer) srcBase).slice(srcIndex, size), 0, size);
+        }
+    }
+}
@@ -18,14 +18,14 @@ import java.io.IOException;
 import java.io.InputStream;
 
 import static io.airlift.compress.zstd.Constants.SIZE_OF_LONG;
-import static io.airlift.compress.zstd.UnsafeUtil.UNSAFE;
+import static io.airlift.compress.zstd.MemoryAccess.ARRAY_BYTE_BASE_OFFSET;
+import static io.airlift.compress.zstd.MemoryAccess.MEMORY;
 import static io.airlift.compress.zstd.Util.checkPositionIndexes;
 import static java.lang.Long.rotateLeft;
 import static java.lang.Math.min;
-import static sun.misc.Unsafe.ARRAY_BYTE_BASE_OFFSET;
 
 // forked from https://github.com/airlift/slice
-final class XxHash64
+public final class XxHash64
 {
     private static final long PRIME64_1 = 0x9E3779B185EBCA87L;
     private static final long PRIME64_2 = 0xC2B2AE3D27D4EB4FL;
@@ -53,7 +53,7 @@ final class XxHash64
         this(DEFAULT_SEED);
     }
 
-    private XxHash64(long seed)
+    public XxHash64(long seed)
     {
         this.seed = seed;
         this.v1 = seed + PRIME64_1 + PRIME64_2;
@@ -106,7 +106,7 @@ final class XxHash64
         if (bufferSize > 0) {
             int available = min(32 - bufferSize, length);
 
-            UNSAFE.copyMemory(base, address, buffer, BUFFER_ADDRESS + bufferSize, available);
+            MEMORY.copyMemory(base, address, buffer, BUFFER_ADDRESS + bufferSize, available);
 
             bufferSize += available;
             address += available;
@@ -125,7 +125,7 @@ final class XxHash64
         }
 
         if (length > 0) {
-            UNSAFE.copyMemory(base, address, buffer, BUFFER_ADDRESS, length);
+            MEMORY.copyMemory(base, address, buffer, BUFFER_ADDRESS, length);
             bufferSize = length;
         }
     }
@@ -134,10 +134,10 @@ final class XxHash64
     {
         int remaining = length;
         while (remaining >= 32) {
-            v1 = mix(v1, UNSAFE.getLong(base, address));
-            v2 = mix(v2, UNSAFE.getLong(base, address + 8));
-            v3 = mix(v3, UNSAFE.getLong(base, address + 16));
-            v4 = mix(v4, UNSAFE.getLong(base, address + 24));
+            v1 = mix(v1, MEMORY.getLong(base, address));
+            v2 = mix(v2, MEMORY.getLong(base, address + 8));
+            v3 = mix(v3, MEMORY.getLong(base, address + 16));
+            v4 = mix(v4, MEMORY.getLong(base, address + 24));
 
             address += 32;
             remaining -= 32;
@@ -200,17 +200,17 @@ final class XxHash64
     private static long updateTail(long hash, Object base, long address, int index, int length)
     {
         while (index <= length - 8) {
-            hash = updateTail(hash, UNSAFE.getLong(base, address + index));
+            hash = updateTail(hash, MEMORY.getLong(base, address + index));
             index += 8;
         }
 
         if (index <= length - 4) {
-            hash = updateTail(hash, UNSAFE.getInt(base, address + index));
+            hash = updateTail(hash, MEMORY.getInt(base, address + index));
             index += 4;
         }
 
         while (index < length) {
-            hash = updateTail(hash, UNSAFE.getByte(base, address + index));
+            hash = updateTail(hash, MEMORY.getByte(base, address + index));
             index++;
         }
 
@@ -228,10 +228,10 @@ final class XxHash64
 
         int remaining = length;
         while (remaining >= 32) {
-            v1 = mix(v1, UNSAFE.getLong(base, address));
-            v2 = mix(v2, UNSAFE.getLong(base, address + 8));
-            v3 = mix(v3, UNSAFE.getLong(base, address + 16));
-            v4 = mix(v4, UNSAFE.getLong(base, address + 24));
+            v1 = mix(v1, MEMORY.getLong(base, address));
+            v2 = mix(v2, MEMORY.getLong(base, address + 8));
+            v3 = mix(v3, MEMORY.getLong(base, address + 16));
+            v4 = mix(v4, MEMORY.getLong(base, address + 24));
 
             address += 32;
             remaining -= 32;
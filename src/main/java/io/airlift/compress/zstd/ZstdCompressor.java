@@ -20,10 +20,10 @@ import java.nio.Buffer;
 import java.nio.ByteBuffer;
 
 import static io.airlift.compress.zstd.Constants.MAX_BLOCK_SIZE;
-import static io.airlift.compress.zstd.UnsafeUtil.getAddress;
+import static io.airlift.compress.zstd.MemoryAccess.ARRAY_BYTE_BASE_OFFSET;
+import static io.airlift.compress.zstd.MemoryAccess.MEMORY;
 import static java.lang.String.format;
 import static java.util.Objects.requireNonNull;
-import static sun.misc.Unsafe.ARRAY_BYTE_BASE_OFFSET;
 
 public class ZstdCompressor
         implements Compressor
@@ -66,8 +66,8 @@ public class ZstdCompressor
         long inputAddress;
         long inputLimit;
         if (input.isDirect()) {
-            inputBase = null;
-            long address = getAddress(input);
+            inputBase = MEMORY.getBase(input);
+            long address = MEMORY.getAddress(input);
             inputAddress = address + input.position();
             inputLimit = address + input.limit();
         }
@@ -84,8 +84,8 @@ public class ZstdCompressor
         long outputAddress;
         long outputLimit;
         if (output.isDirect()) {
-            outputBase = null;
-            long address = getAddress(output);
+            outputBase = MEMORY.getBase(output);
+            long address = MEMORY.getAddress(output);
             outputAddress = address + output.position();
             outputLimit = address + output.limit();
         }
@@ -20,10 +20,10 @@ import io.airlift.compress.MalformedInputException;
 import java.nio.Buffer;
 import java.nio.ByteBuffer;
 
-import static io.airlift.compress.zstd.UnsafeUtil.getAddress;
+import static io.airlift.compress.zstd.MemoryAccess.ARRAY_BYTE_BASE_OFFSET;
+import static io.airlift.compress.zstd.MemoryAccess.MEMORY;
 import static java.lang.String.format;
 import static java.util.Objects.requireNonNull;
-import static sun.misc.Unsafe.ARRAY_BYTE_BASE_OFFSET;
 
 public class ZstdDecompressor
         implements Decompressor
@@ -60,8 +60,8 @@ public class ZstdDecompressor
         long inputAddress;
         long inputLimit;
         if (input.isDirect()) {
-            inputBase = null;
-            long address = getAddress(input);
+            inputBase = MEMORY.getBase(input);
+            long address = MEMORY.getAddress(input);
             inputAddress = address + input.position();
             inputLimit = address + input.limit();
         }
@@ -78,8 +78,8 @@ public class ZstdDecompressor
         long outputAddress;
         long outputLimit;
         if (output.isDirect()) {
-            outputBase = null;
-            long address = getAddress(output);
+            outputBase = MEMORY.getBase(output);
+            long address = MEMORY.getAddress(output);
             outputAddress = address + output.position();
             outputLimit = address + output.limit();
         }
@@ -19,32 +19,35 @@ import io.airlift.compress.MalformedInputException;
 import java.util.Arrays;
 
 import static io.airlift.compress.zstd.Constants.COMPRESSED_BLOCK;
+import static io.airlift.compress.zstd.Constants.DEFAULT_MAX_WINDOW_LOG;
 import static io.airlift.compress.zstd.Constants.MAX_BLOCK_SIZE;
 import static io.airlift.compress.zstd.Constants.RAW_BLOCK;
 import static io.airlift.compress.zstd.Constants.RLE_BLOCK;
 import static io.airlift.compress.zstd.Constants.SIZE_OF_BLOCK_HEADER;
 import static io.airlift.compress.zstd.Constants.SIZE_OF_INT;
-import static io.airlift.compress.zstd.UnsafeUtil.UNSAFE;
+import static io.airlift.compress.zstd.MemoryAccess.ARRAY_BYTE_BASE_OFFSET;
+import static io.airlift.compress.zstd.MemoryAccess.MEMORY;
 import static io.airlift.compress.zstd.Util.checkArgument;
 import static io.airlift.compress.zstd.Util.checkState;
 import static io.airlift.compress.zstd.Util.fail;
 import static io.airlift.compress.zstd.Util.verify;
-import static io.airlift.compress.zstd.ZstdFrameDecompressor.MAX_WINDOW_SIZE;
 import static io.airlift.compress.zstd.ZstdFrameDecompressor.decodeRawBlock;
 import static io.airlift.compress.zstd.ZstdFrameDecompressor.decodeRleBlock;
+import static io.airlift.compress.zstd.ZstdFrameDecompressor.isSkippableMagic;
 import static io.airlift.compress.zstd.ZstdFrameDecompressor.readFrameHeader;
 import static io.airlift.compress.zstd.ZstdFrameDecompressor.verifyMagic;
 import static java.lang.Math.max;
 import static java.lang.Math.min;
 import static java.lang.Math.toIntExact;
 import static java.lang.String.format;
-import static sun.misc.Unsafe.ARRAY_BYTE_BASE_OFFSET;
 
 public class ZstdIncrementalFrameDecompressor
 {
     private enum State {
         INITIAL,
         READ_FRAME_MAGIC,
+        READ_SKIPPABLE_FRAME_SIZE,
+        SKIP_FRAME,
         READ_FRAME_HEADER,
         READ_BLOCK_HEADER,
         READ_BLOCK,
@@ -57,6 +60,7 @@ public class ZstdIncrementalFrameDecompressor
     private State state = State.INITIAL;
     private FrameHeader frameHeader;
     private int blockHeader = -1;
+    private long skipRemaining;
 
     private int inputConsumed;
     private int outputBufferUsed;
@@ -72,6 +76,27 @@ public class ZstdIncrementalFrameDecompressor
 
     private XxHash64 partialHash;
 
+    private int maxWindowSize = 1 << DEFAULT_MAX_WINDOW_LOG;
+
+    /**
+     * @return the largest window a frame may need, which bounds the memory used for
+     * decompression; 128MiB unless changed with {@link #setMaxWindowSize}
+     */
+    public int getMaxWindowSize()
+    {
+        return maxWindowSize;
+    }
+
+    /**
+     * Frames that need a larger window, such as ones written with a large window log
+     * for long-distance matching, fail with a {@link MalformedInputException}.
+     */
+    public void setMaxWindowSize(int maxWindowSize)
+    {
+        checkArgument(maxWindowSize > 0, "maxWindowSize must be positive");
+        this.maxWindowSize = maxWindowSize;
+    }
+
     public boolean isAtStoppingPoint()
     {
         return state == State.READ_FRAME_MAGIC;
@@ -104,6 +129,22 @@ public class ZstdIncrementalFrameDecompressor
             final byte[] outputArray,
             final int outputOffset,
             final int outputLimit)
+    {
+        long outputAddress = (long) outputOffset + ARRAY_BYTE_BASE_OFFSET;
+        partialDecompress(inputBase, inputAddress, inputLimit, outputArray, outputAddress, outputAddress + (outputLimit - outputOffset));
+    }
+
+    /**
+     * Like {@link #partialDecompress(Object, long, long, byte[], int, int)}, but the output
+     * is addressed the same way as the input, so it can be a direct buffer too.
+     */
+    public void partialDecompress(
+            final Object inputBase,
+            final long inputAddress,
+            final long inputLimit,
+            final Object outputBase,
+            final long outputAddress,
+            final long outputLimit)
     {
         if (inputRequired > inputLimit - inputAddress) {
             throw new IllegalArgumentException(format(
@@ -111,31 +152,31 @@ public class ZstdIncrementalFrameDecompressor
                     inputRequired,
                     inputLimit - inputAddress));
         }
-        if (requestedOutputSize > 0 && outputOffset >= outputLimit) {
+        if (requestedOutputSize > 0 && outputAddress >= outputLimit) {
             throw new IllegalArgumentException("Not enough space in output buffer to output");
         }
 
         long input = inputAddress;
-        int output = outputOffset;
+        long output = outputAddress;
 
         while (true) {
             // Flush ready output
             {
                 int flushableOutputSize = computeFlushableOutputSize(frameHeader);
                 if (flushableOutputSize > 0) {
-                    int freeOutputSize = outputLimit - output;
+                    long freeOutputSize = outputLimit - output;
                     if (freeOutputSize > 0) {
-                        int copySize = min(freeOutputSize, flushableOutputSize);
-                        System.arraycopy(windowBase, toIntExact(windowAddress - ARRAY_BYTE_BASE_OFFSET), outputArray, output, copySize);
+                        int copySize = (int) min(freeOutputSize, flushableOutputSize);
+                        MEMORY.copyMemory(windowBase, windowAddress, outputBase, output, copySize);
                         if (partialHash != null) {
-                            partialHash.update(outputArray, output, copySize);
+                            partialHash.update(windowBase, toIntExact(windowAddress - ARRAY_BYTE_BASE_OFFSET), copySize);
                         }
                         windowAddress += copySize;
                         output += copySize;
                         flushableOutputSize -= copySize;
                     }
                     if (flushableOutputSize > 0) {
-                        requestOutput(inputAddress, outputOffset, input, output, flushableOutputSize);
+                        requestOutput(inputAddress, outputAddress, input, output, flushableOutputSize);
                         return;
                     }
                 }
@@ -145,29 +186,62 @@ public class ZstdIncrementalFrameDecompressor
 
             if (state == State.READ_FRAME_MAGIC || state == State.INITIAL) {
                 if (inputLimit - input < 4) {
-                    inputRequired(inputAddress, outputOffset, input, output, 4);
+                    inputRequired(inputAddress, outputAddress, input, output, 4);
                     return;
                 }
-                input += verifyMagic(inputBase, input, inputLimit);
-                state = State.READ_FRAME_HEADER;
+                if (isSkippableMagic(MEMORY.getInt(inputBase, input))) {
+                    input += SIZE_OF_INT;
+                    state = State.READ_SKIPPABLE_FRAME_SIZE;
+                }
+                else {
+                    input += verifyMagic(inputBase, input, inputLimit);
+                    state = State.READ_FRAME_HEADER;
+                }
+            }
+
+            if (state == State.READ_SKIPPABLE_FRAME_SIZE) {
+                if (inputLimit - input < SIZE_OF_INT) {
+                    inputRequired(inputAddress, outputAddress, input, output, SIZE_OF_INT);
+                    return;
+                }
+                skipRemaining = MEMORY.getInt(inputBase, input) & 0xFFFF_FFFFL;
+                input += SIZE_OF_INT;
+                state = State.SKIP_FRAME;
+            }
+
+            if (state == State.SKIP_FRAME) {
+                // skippable frames, such as a seek table, may be larger than the input buffer
+                long skipSize = min(skipRemaining, inputLimit - input);
+                input += skipSize;
+                skipRemaining -= skipSize;
+                if (skipRemaining > 0) {
+                    inputRequired(inputAddress, outputAddress, input, output, 1);
+                    return;
+                }
+                state = State.READ_FRAME_MAGIC;
+                continue;
             }
 
             if (state == State.READ_FRAME_HEADER) {
                 if (inputLimit - input < 1) {
-                    inputRequired(inputAddress, outputOffset, input, output, 1);
+                    inputRequired(inputAddress, outputAddress, input, output, 1);
                     return;
                 }
                 int frameHeaderSize = determineFrameHeaderSize(inputBase, input, inputLimit);
                 if (inputLimit - input < frameHeaderSize) {
-                    inputRequired(inputAddress, outputOffset, input, output, frameHeaderSize);
+                    inputRequired(inputAddress, outputAddress, input, output, frameHeaderSize);
                     return;
                 }
                 frameHeader = readFrameHeader(inputBase, input, inputLimit);
                 verify(frameHeaderSize == frameHeader.headerSize, input, "Unexpected frame header size");
+                long requiredWindowSize = frameHeader.windowSize < 0 ? frameHeader.contentSize : frameHeader.contentSize < 0 ? frameHeader.windowSize : min(frameHeader.windowSize, frameHeader.contentSize);
+                if (requiredWindowSize > maxWindowSize) {
+                    throw new MalformedInputException(input, format("Frame needs a window of %s bytes, larger than the limit of %s", requiredWindowSize, maxWindowSize));
+                }
                 input += frameHeaderSize;
                 state = State.READ_BLOCK_HEADER;
 
-                reset();
+                resetFrame();
                 if (frameHeader.hasChecksum) {
                     partialHash = new XxHash64();
                 }
@@ -179,18 +253,16 @@ public class ZstdIncrementalFrameDecompressor
             if (state == State.READ_BLOCK_HEADER) {
                 long inputBufferSize = inputLimit - input;
                 if (inputBufferSize < SIZE_OF_BLOCK_HEADER) {
-                    inputRequired(inputAddress, outputOffset, input, output, SIZE_OF_BLOCK_HEADER);
+                    inputRequired(inputAddress, outputAddress, input, output, SIZE_OF_BLOCK_HEADER);
                     return;
                 }
                 if (inputBufferSize >= SIZE_OF_INT) {
-                    blockHeader = UNSAFE.getInt(inputBase, input) & 0xFF_FFFF;
+                    blockHeader = MEMORY.getInt(inputBase, input) & 0xFF_FFFF;
                 }
                 else {
-                    blockHeader = UNSAFE.getByte(inputBase, input) & 0xFF |
-                            (UNSAFE.getByte(inputBase, input + 1) & 0xFF) << 8 |
-                            (UNSAFE.getByte(inputBase, input + 2) & 0xFF) << 16;
-                    int expected = UNSAFE.getInt(inputBase, input) & 0xFF_FFFF;
-                    verify(blockHeader == expected, input, "oops");
+                    blockHeader = MEMORY.getByte(inputBase, input) & 0xFF |
+                            (MEMORY.getByte(inputBase, input + 1) & 0xFF) << 8 |
+                            (MEMORY.getByte(inputBase, input + 2) & 0xFF) << 16;
                 }
                 input += SIZE_OF_BLOCK_HEADER;
                 state = State.READ_BLOCK;
@@ -210,7 +282,7 @@ public class ZstdIncrementalFrameDecompressor
                 switch (blockType) {
                     case RAW_BLOCK: {
                         if (inputLimit - input < blockSize) {
-                            inputRequired(inputAddress, outputOffset, input, output, blockSize);
+                            inputRequired(inputAddress, outputAddress, input, output, blockSize);
                             return;
                         }
                         verify(windowLimit - windowPosition >= blockSize, input, "window buffer is too small");
@@ -220,7 +292,7 @@ public class ZstdIncrementalFrameDecompressor
                     }
                     case RLE_BLOCK: {
                         if (inputLimit - input < 1) {
-                            inputRequired(inputAddress, outputOffset, input, output, 1);
+                            inputRequired(inputAddress, outputAddress, input, output, 1);
                             return;
                         }
                         verify(windowLimit - windowPosition >= blockSize, input, "window buffer is too small");
@@ -230,11 +302,11 @@ public class ZstdIncrementalFrameDecompressor
                     }
                     case COMPRESSED_BLOCK: {
                         if (inputLimit - input < blockSize) {
-                            inputRequired(inputAddress, outputOffset, input, output, blockSize);
+                            inputRequired(inputAddress, outputAddress, input, output, blockSize);
                             return;
                         }
                         verify(windowLimit - windowPosition >= MAX_BLOCK_SIZE, input, "window buffer is too small");
-                        decodedSize = frameDecompressor.decodeCompressedBlock(inputBase, input, blockSize, windowBase, windowPosition, windowLimit, frameHeader.windowSize, windowAddress);
+                        decodedSize = frameDecompressor.decodeCompressedBlock(inputBase, input, blockSize, windowBase, windowPosition, windowLimit, windowAddress);
                         input += blockSize;
                         break;
                     }
@@ -253,12 +325,12 @@ public class ZstdIncrementalFrameDecompressor
             if (state == State.READ_BLOCK_CHECKSUM) {
                 if (frameHeader.hasChecksum) {
                     if (inputLimit - input < SIZE_OF_INT) {
-                        inputRequired(inputAddress, outputOffset, input, output, SIZE_OF_INT);
+                        inputRequired(inputAddress, outputAddress, input, output, SIZE_OF_INT);
                         return;
                     }
 
                     // read checksum
-                    int checksum = UNSAFE.getInt(inputBase, input);
+                    int checksum = MEMORY.getInt(inputBase, input);
                     input += SIZE_OF_INT;
 
                     checkState(partialHash != null, "Partial hash not set");
@@ -280,7 +352,25 @@ public class ZstdIncrementalFrameDecompressor
         }
     }
 
-    private void reset()
+    /**
+     * Returns to the initial state, ready for a new stream, keeping any window buffer
+     * already allocated. Needed when a stream was abandoned partway through a frame.
+     */
+    public void reset()
+    {
+        state = State.INITIAL;
+        frameHeader = null;
+        blockHeader = -1;
+        skipRemaining = 0;
+        inputConsumed = 0;
+        outputBufferUsed = 0;
+        inputRequired = 0;
+        requestedOutputSize = 0;
+        partialHash = null;
+        resetFrame();
+    }
+
+    private void resetFrame()
     {
         frameDecompressor.reset();
 
@@ -329,13 +419,13 @@ public class ZstdIncrementalFrameDecompressor
                 }
                 else {
                     // double the current necessary window size
-                    newWindowSize = (windowContentsSize + maxBlockOutput) * 2;
+                    long size = (windowContentsSize + (long) maxBlockOutput) * 2;
                     // limit to 4x the required window size (or block size if larger)
-                    newWindowSize = min(newWindowSize, max(requiredWindowSize, MAX_BLOCK_SIZE) * 4);
+                    size = min(size, max(requiredWindowSize, MAX_BLOCK_SIZE) * 4L);
                     // limit to the max window size with one max sized block
-                    newWindowSize = min(newWindowSize, MAX_WINDOW_SIZE + MAX_BLOCK_SIZE);
+                    size = min(size, (long) maxWindowSize + MAX_BLOCK_SIZE);
                     // must allocate at least enough space for a max sized block
-                    newWindowSize = max(windowContentsSize + maxBlockOutput, newWindowSize);
+                    newWindowSize = toIntExact(max(windowContentsSize + maxBlockOutput, size));
                     checkState(windowContentsSize + maxBlockOutput <= newWindowSize, "Computed new window size buffer is not large enough");
                 }
                 windowBase = Arrays.copyOf(windowBase, newWindowSize);
@@ -346,11 +436,11 @@ public class ZstdIncrementalFrameDecompressor
         }
     }
 
-    private static int determineFrameHeaderSize(final Object inputBase, final long inputAddress, final long inputLimit)
+    static int determineFrameHeaderSize(final Object inputBase, final long inputAddress, final long inputLimit)
     {
         verify(inputAddress < inputLimit, inputAddress, "Not enough input bytes");
 
-        int frameHeaderDescriptor = UNSAFE.getByte(inputBase, inputAddress) & 0xFF;
+        int frameHeaderDescriptor = MEMORY.getByte(inputBase, inputAddress) & 0xFF;
         boolean singleSegment = (frameHeaderDescriptor & 0b100000) != 0;
         int dictionaryDescriptor = frameHeaderDescriptor & 0b11;
         int contentSizeDescriptor = frameHeaderDescriptor >>> 6;
@@ -361,9 +451,9 @@ public class ZstdIncrementalFrameDecompressor
                 (contentSizeDescriptor == 0 ? (singleSegment ? 1 : 0) : (1 << contentSizeDescriptor));
     }
 
-    private void requestOutput(long inputAddress, int outputOffset, long input, int output, int requestedOutputSize)
+    private void requestOutput(long inputAddress, long outputAddress, long input, long output, int requestedOutputSize)
     {
-        updateInputOutputState(inputAddress, outputOffset, input, output);
+        updateInputOutputState(inputAddress, outputAddress, input, output);
 
         checkArgument(requestedOutputSize >= 0, "requestedOutputSize is negative");
         this.requestedOutputSize = requestedOutputSize;
@@ -371,9 +461,9 @@ public class ZstdIncrementalFrameDecompressor
         this.inputRequired = 0;
     }
 
-    private void inputRequired(long inputAddress, int outputOffset, long input, int output, int inputRequired)
+    private void inputRequired(long inputAddress, long outputAddress, long input, long output, int inputRequired)
     {
-        updateInputOutputState(inputAddress, outputOffset, input, output);
+        updateInputOutputState(inputAddress, outputAddress, input, output);
 
         checkState(inputRequired >= 0, "inputRequired is negative");
         this.inputRequired = inputRequired;
@@ -381,11 +471,11 @@ public class ZstdIncrementalFrameDecompressor
         this.requestedOutputSize = 0;
     }
 
-    private void updateInputOutputState(long inputAddress, int outputOffset, long input, int output)
+    private void updateInputOutputState(long inputAddress, long outputAddress, long input, long output)
     {
         inputConsumed = (int) (input - inputAddress);
         checkState(inputConsumed >= 0, "inputConsumed is negative");
-        outputBufferUsed = output - outputOffset;
+        outputBufferUsed = (int) (output - outputAddress);
         checkState(outputBufferUsed >= 0, "outputBufferUsed is negative");
     }
 }
@@ -18,11 +18,11 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.util.Arrays;
 
+import static io.airlift.compress.zstd.MemoryAccess.ARRAY_BYTE_BASE_OFFSET;
 import static io.airlift.compress.zstd.Util.checkPositionIndexes;
 import static io.airlift.compress.zstd.Util.checkState;
 import static java.lang.Math.max;
 import static java.util.Objects.requireNonNull;
-import static sun.misc.Unsafe.ARRAY_BYTE_BASE_OFFSET;
 
 public class ZstdInputStream
         extends InputStream
@@ -30,9 +30,10 @@ public class ZstdInputStream
     private static final int MIN_BUFFER_SIZE = 4096;
 
     private final InputStream inputStream;
-    private final ZstdIncrementalFrameDecompressor decompressor = new ZstdIncrementalFrameDecompressor();
+    private final ZstdIncrementalFrameDecompressor decompressor;
+    private final int minBufferSize;
 
-    private byte[] inputBuffer = new byte[decompressor.getInputRequired()];
+    private byte[] inputBuffer;
     private int inputBufferOffset;
     private int inputBufferLimit;
 
@@ -41,8 +42,31 @@ public class ZstdInputStream
     private boolean closed;
 
     public ZstdInputStream(InputStream inputStream)
+    {
+        this(inputStream, new ZstdIncrementalFrameDecompressor(), MIN_BUFFER_SIZE);
+    }
+
+    /**
+     * Decompresses with a caller-supplied decompressor, which is reset first, reading
+     * the compressed input in chunks of at least {@code bufferSize} bytes. The
+     * decompressor must not be used by anything else until this stream is closed.
+     */
+    public ZstdInputStream(InputStream inputStream, ZstdIncrementalFrameDecompressor decompressor, int bufferSize)
     {
         this.inputStream = requireNonNull(inputStream, "inputStream is null");
+        this.decompressor = requireNonNull(decompressor, "decompressor is null");
+        this.minBufferSize = max(bufferSize, MIN_BUFFER_SIZE);
+        decompressor.reset();
+        this.inputBuffer = new byte[decompressor.getInputRequired()];
+    }
+
+    /**
+     * Limits the window a frame may need, and so the memory used to decompress it;
+     * see {@link ZstdIncrementalFrameDecompressor#setMaxWindowSize}.
+     */
+    public void setMaxWindowSize(int maxWindowSize)
+    {
+        decompressor.setMaxWindowSize(maxWindowSize);
     }
 
     @Override
@@ -117,7 +141,7 @@ public class ZstdInputStream
         }
 
         if (inputBuffer.length < requiredSize) {
-            inputBuffer = Arrays.copyOf(inputBuffer, max(requiredSize, MIN_BUFFER_SIZE));
+            inputBuffer = Arrays.copyOf(inputBuffer, max(requiredSize, minBufferSize));
         }
 
         while (inputBufferLimit < inputBuffer.length) {
@@ -18,21 +18,48 @@ import java.io.IOException;
 import java.io.OutputStream;
 import java.util.Arrays;
 
-import static io.airlift.compress.zstd.CompressionParameters.DEFAULT_COMPRESSION_LEVEL;
+import static io.airlift.compress.zstd.Constants.SEEKABLE_MAGIC_NUMBER;
+import static io.airlift.compress.zstd.Constants.SEEK_TABLE_CHECKSUM_FLAG;
+import static io.airlift.compress.zstd.Constants.SEEK_TABLE_MAGIC_NUMBER;
 import static io.airlift.compress.zstd.Constants.SIZE_OF_BLOCK_HEADER;
+import static io.airlift.compress.zstd.Constants.SIZE_OF_INT;
 import static io.airlift.compress.zstd.Constants.SIZE_OF_LONG;
+import static io.airlift.compress.zstd.Constants.SIZE_OF_SEEK_TABLE_FOOTER;
+import static io.airlift.compress.zstd.Constants.SIZE_OF_SKIPPABLE_FRAME_HEADER;
+import static io.airlift.compress.zstd.MemoryAccess.ARRAY_BYTE_BASE_OFFSET;
+import static io.airlift.compress.zstd.MemoryAccess.MEMORY;
+import static io.airlift.compress.zstd.Util.checkArgument;
+import static io.airlift.compress.zstd.Util.checkPositionIndexes;
 import static io.airlift.compress.zstd.Util.checkState;
 import static java.lang.Math.max;
 import static java.lang.Math.min;
+import static java.lang.Math.toIntExact;
 import static java.util.Objects.requireNonNull;
-import static sun.misc.Unsafe.ARRAY_BYTE_BASE_OFFSET;
 
 public class ZstdOutputStream
         extends OutputStream
 {
+    /**
+     * The largest frame the seekable format allows.
+     */
+    public static final int MAX_SEEKABLE_FRAME_SIZE = 1 << 30;
+
+    private static final int SIZE_OF_SEEK_TABLE_ENTRY = 3 * SIZE_OF_INT;
+    private static final int MAX_ARRAY_SIZE = Integer.MAX_VALUE - 8;
+
     private final OutputStream outputStream;
     private final CompressionContext context;
     private final int maxBufferSize;
+    // zero if writing a single frame
+    private final int maxFrameSize;
+
+    // uncompressed and compressed size of the current frame so far
+    private int frameSize;
+    private long frameCompressedSize;
+
+    // compressed size, uncompressed size and checksum of each finished frame
+    private int[] seekTable = new int[0];
+    private int frameCount;
 
     private XxHash64 partialHash;
 
@@ -49,9 +76,42 @@ public class ZstdOutputStream
     public ZstdOutputStream(OutputStream outputStream)
             throws IOException
     {
+        this(outputStream, new CompressionContext());
+    }
+
+    /**
+     * Compresses with a caller-supplied context, which is reset first. The context
+     * must not be used by anything else until this stream is closed.
+     */
+    public ZstdOutputStream(OutputStream outputStream, CompressionContext context)
+            throws IOException
+    {
+        this(outputStream, context, 0);
+    }
+
+    /**
+     * Writes the <a href="https://github.com/facebook/zstd/blob/dev/contrib/seekable_format/zstd_seekable_compression_format.md">seekable format</a>
+     * if {@code maxFrameSize} is positive: independent frames of at most that many
+     * uncompressed bytes each, followed by a seek table in a skippable frame, which
+     * {@link ZstdSeekableInputStream} uses for random access. Any zstd decoder can still
+     * read the output from start to end. A smaller frame size makes seeking cheaper,
+     * at some cost in compression ratio.
+     */
+    public ZstdOutputStream(OutputStream outputStream, CompressionContext context, int maxFrameSize)
+            throws IOException
+    {
+        checkArgument(maxFrameSize >= 0 && maxFrameSize <= MAX_SEEKABLE_FRAME_SIZE, "maxFrameSize must be between 0 and " + MAX_SEEKABLE_FRAME_SIZE);
         this.outputStream = requireNonNull(outputStream, "outputStream is null");
-        this.context = new CompressionContext(CompressionParameters.compute(DEFAULT_COMPRESSION_LEVEL, -1), ARRAY_BYTE_BASE_OFFSET, Integer.MAX_VALUE);
-        this.maxBufferSize = context.parameters.getWindowSize() * 4;
+        this.context = requireNonNull(context, "context is null");
+        this.maxFrameSize = maxFrameSize;
+        context.reset();
+        // the window and three times as much new data, within what an array can hold
+        int maxBufferSize = (int) min(context.parameters.getWindowSize() * 4L, MAX_ARRAY_SIZE);
+        if (maxFrameSize > 0) {
+            // no point buffering more than a frame
+            maxBufferSize = min(maxBufferSize, max(maxFrameSize, context.parameters.getBlockSize()));
+        }
+        this.maxBufferSize = maxBufferSize;
 
         // create output buffer large enough for a single block
         int bufferSize = context.parameters.getBlockSize() + SIZE_OF_BLOCK_HEADER;
@@ -68,9 +128,13 @@ public class ZstdOutputStream
             throw new IOException("Stream is closed");
         }
 
+        if (maxFrameSize > 0 && frameSize == maxFrameSize) {
+            finishFrame();
+        }
         growBufferIfNecessary(1);
 
         uncompressed[uncompressedPosition++] = (byte) b;
+        frameSize++;
 
         compressIfNecessary();
     }
@@ -85,6 +149,15 @@ public class ZstdOutputStream
     @Override
     public void write(byte[] buffer, int offset, int length)
             throws IOException
+    {
+        checkPositionIndexes(offset, offset + length, buffer.length);
+        long inputAddress = ARRAY_BYTE_BASE_OFFSET + offset;
+        write(buffer, inputAddress, length);
+    }
+
+    // also used by ZstdWritableByteChannel, for direct buffers
+    void write(Object inputBase, long inputAddress, int length)
+            throws IOException
     {
         if (closed) {
             throw new IOException("Stream is closed");
@@ -94,11 +167,18 @@ public class ZstdOutputStream
 
         while (length > 0) {
             int writeSize = min(length, uncompressed.length - uncompressedPosition);
-            System.arraycopy(buffer, offset, uncompressed, uncompressedPosition, writeSize);
+            if (maxFrameSize > 0) {
+                if (frameSize == maxFrameSize) {
+                    finishFrame();
+                }
+                writeSize = min(writeSize, maxFrameSize - frameSize);
+            }
+            MEMORY.copyMemory(inputBase, inputAddress, uncompressed, ARRAY_BYTE_BASE_OFFSET + uncompressedPosition, writeSize);
 
             uncompressedPosition += writeSize;
+            frameSize += writeSize;
             length -= writeSize;
-            offset += writeSize;
+            inputAddress += writeSize;
 
             compressIfNecessary();
         }
@@ -111,12 +191,12 @@ public class ZstdOutputStream
         }
 
         // assume we will need double the current required space
-        int newSize = (uncompressed.length + length) * 2;
+        long newSize = (uncompressed.length + (long) length) * 2;
         // limit to max buffer size
         newSize = min(newSize, maxBufferSize);
         // allocate at least a minimal buffer to start;
         newSize = max(newSize, context.parameters.getBlockSize());
-        uncompressed = Arrays.copyOf(uncompressed, newSize);
+        uncompressed = Arrays.copyOf(uncompressed, (int) newSize);
     }
 
     private void compressIfNecessary()
@@ -134,18 +214,88 @@ public class ZstdOutputStream
     void finishWithoutClosingSource()
             throws IOException
     {
-        writeChunk(true);
+        finish();
         closed = true;
     }
 
     @Override
     public void close()
             throws IOException
+    {
+        if (closed) {
+            return;
+        }
+        closed = true;
+
+        try {
+            finish();
+        }
+        finally {
+            outputStream.close();
+        }
+    }
+
+    private void finish()
+            throws IOException
+    {
+        if (maxFrameSize == 0) {
+            writeChunk(true);
+            return;
+        }
+
+        // an empty stream still gets one (empty) frame, so it's valid zstd
+        if (frameSize > 0 || frameCount == 0) {
+            finishFrame();
+        }
+        writeSeekTable();
+    }
+
+    private void finishFrame()
+            throws IOException
     {
         writeChunk(true);
 
-        closed = true;
-        outputStream.close();
+        if (seekTable.length < (frameCount + 1) * 3) {
+            seekTable = Arrays.copyOf(seekTable, max(16, seekTable.length * 2));
+        }
+        seekTable[frameCount * 3] = toIntExact(frameCompressedSize);
+        seekTable[frameCount * 3 + 1] = frameSize;
+        seekTable[frameCount * 3 + 2] = (int) partialHash.hash();
+        frameCount++;
+
+        // the next frame starts from scratch, so it can be decompressed on its own
+        context.reset();
+        partialHash = null;
+        uncompressedOffset = 0;
+        uncompressedPosition = 0;
+        frameSize = 0;
+        frameCompressedSize = 0;
+    }
+
+    private void writeSeekTable()
+            throws IOException
+    {
+        int tableSize = frameCount * SIZE_OF_SEEK_TABLE_ENTRY + SIZE_OF_SEEK_TABLE_FOOTER;
+        byte[] table = new byte[SIZE_OF_SKIPPABLE_FRAME_HEADER + tableSize];
+        long address = ARRAY_BYTE_BASE_OFFSET;
+        MEMORY.putInt(table, address, SEEK_TABLE_MAGIC_NUMBER);
+        MEMORY.putInt(table, address + SIZE_OF_INT, tableSize);
+        address += SIZE_OF_SKIPPABLE_FRAME_HEADER;
+        for (int i = 0; i < frameCount * 3; i++) {
+            MEMORY.putInt(table, address, seekTable[i]);
+            address += SIZE_OF_INT;
+        }
+        MEMORY.putInt(table, address, frameCount);
+        MEMORY.putByte(table, address + SIZE_OF_INT, (byte) SEEK_TABLE_CHECKSUM_FLAG);
+        MEMORY.putInt(table, address + SIZE_OF_INT + 1, SEEKABLE_MAGIC_NUMBER);
+        outputStream.write(table);
+    }
+
+    private void writeOutput(byte[] buffer, int offset, int length)
+            throws IOException
+    {
+        outputStream.write(buffer, offset, length);
+        frameCompressedSize += length;
     }
 
     private void writeChunk(boolean lastChunk)
@@ -174,7 +324,7 @@ public class ZstdOutputStream
             int outputAddress = ARRAY_BYTE_BASE_OFFSET;
             outputAddress += ZstdFrameCompressor.writeMagic(compressed, outputAddress, outputAddress + 4);
             outputAddress += ZstdFrameCompressor.writeFrameHeader(compressed, outputAddress, outputAddress + 14, inputSize, context.parameters.getWindowSize());
-            outputStream.write(compressed, 0, outputAddress - ARRAY_BYTE_BASE_OFFSET);
+            writeOutput(compressed, 0, outputAddress - ARRAY_BYTE_BASE_OFFSET);
         }
 
         partialHash.update(uncompressed, uncompressedOffset, chunkSize);
@@ -192,7 +342,7 @@ public class ZstdOutputStream
                     compressed.length,
                     context,
                     lastChunk && blockSize == chunkSize);
-            outputStream.write(compressed, 0, compressedSize);
+            writeOutput(compressed, 0, compressedSize);
             uncompressedOffset += blockSize;
             chunkSize -= blockSize;
         }
@@ -200,11 +350,8 @@ public class ZstdOutputStream
 
         if (lastChunk) {
             // write checksum
-            int hash = (int) partialHash.hash();
-            outputStream.write(hash);
-            outputStream.write(hash >> 8);
-            outputStream.write(hash >> 16);
-            outputStream.write(hash >> 24);
+            MEMORY.putInt(compressed, ARRAY_BYTE_BASE_OFFSET, (int) partialHash.hash());
+            writeOutput(compressed, 0, SIZE_OF_INT);
         }
         else {
             // slide window forward, leaving the entire window and the unprocessed data
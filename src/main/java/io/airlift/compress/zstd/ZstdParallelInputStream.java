@@ -0,0 +1,482 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.airlift.compress.zstd;
+
+import io.airlift.compress.MalformedInputException;
+
+import java.io.ByteArrayInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+
+import static io.airlift.compress.zstd.Constants.COMPRESSED_BLOCK;
+import static io.airlift.compress.zstd.Constants.DEFAULT_MAX_WINDOW_LOG;
+import static io.airlift.compress.zstd.Constants.MAGIC_NUMBER;
+import static io.airlift.compress.zstd.Constants.MAX_BLOCK_SIZE;
+import static io.airlift.compress.zstd.Constants.RAW_BLOCK;
+import static io.airlift.compress.zstd.Constants.RLE_BLOCK;
+import static io.airlift.compress.zstd.Constants.SIZE_OF_BLOCK_HEADER;
+import static io.airlift.compress.zstd.Constants.SIZE_OF_INT;
+import static io.airlift.compress.zstd.MemoryAccess.ARRAY_BYTE_BASE_OFFSET;
+import static io.airlift.compress.zstd.Util.checkArgument;
+import static io.airlift.compress.zstd.Util.checkPositionIndexes;
+import static io.airlift.compress.zstd.Util.checkState;
+import static io.airlift.compress.zstd.Util.fail;
+import static io.airlift.compress.zstd.ZstdFrameCompressor.MAX_FRAME_HEADER_SIZE;
+import static io.airlift.compress.zstd.ZstdFrameDecompressor.isSkippableMagic;
+import static io.airlift.compress.zstd.ZstdFrameDecompressor.readFrameHeader;
+import static io.airlift.compress.zstd.ZstdFrameDecompressor.verifyMagic;
+import static io.airlift.compress.zstd.ZstdIncrementalFrameDecompressor.determineFrameHeaderSize;
+import static java.lang.Math.max;
+import static java.lang.Math.min;
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Decompresses a multi-frame zstd stream, such as pzstd output, concatenated streams, or
+ * the seekable format, several frames at a time. The reading thread only finds where each
+ * frame ends, by walking the frame and block headers, and hands the frame to the executor;
+ * frames are decompressed ahead of the reader and returned in order.
+ * <p>
+ * Each frame in flight is held in memory whole, compressed and decompressed, so frames
+ * are read ahead until about {@code maxReadAhead} bytes are in flight. A frame that would
+ * take more than that on its own, going by its header's content size or the most its
+ * blocks can hold, ends the parallel part: it and everything after it are decompressed
+ * incrementally on the reading thread instead, once the frames before it are done.
+ */
+public class ZstdParallelInputStream
+        extends InputStream
+{
+    // what a frame's output buffer starts out as at most, when the header gives its size
+    private static final int MAX_INITIAL_OUTPUT_SIZE = 1 << 26;
+
+    private final InputStream inputStream;
+    private final Executor executor;
+    private final long maxReadAhead;
+
+    private final ArrayDeque<PendingFrame> inFlight = new ArrayDeque<>();
+    private long inFlightSize;
+    // shared by the frames being decompressed, so at most one per frame in flight is ever made
+    private final Queue<ZstdIncrementalFrameDecompressor> decompressors = new ConcurrentLinkedQueue<>();
+    private volatile int maxWindowSize = 1 << DEFAULT_MAX_WINDOW_LOG;
+
+    private final byte[] header = new byte[SIZE_OF_INT];
+    private long inputPosition;
+    private boolean inputFinished;
+
+    private byte[] output = new byte[0];
+    private int outputPosition;
+
+    // the rest of the input, from a frame too big to read ahead on
+    private InputStream sequential;
+
+    private boolean closed;
+
+    public ZstdParallelInputStream(InputStream inputStream, Executor executor, long maxReadAhead)
+    {
+        checkArgument(maxReadAhead > 0, "maxReadAhead must be positive");
+        this.inputStream = requireNonNull(inputStream, "inputStream is null");
+        this.executor = requireNonNull(executor, "executor is null");
+        this.maxReadAhead = maxReadAhead;
+    }
+
+    /**
+     * Finds out whether the given input has a second frame starting within {@code limit}
+     * bytes, walking the frame and block headers of the first without decompressing it,
+     * and skipping skippable frames such as the ones pzstd puts before each frame.
+     * Reads the input up to there.
+     *
+     * @return {@code true} if the input is worth decompressing with this class, or
+     * {@code false} if it's a single frame, doesn't get to a second frame soon enough,
+     * or isn't valid zstd
+     */
+    public static boolean startsWithSeveralFrames(InputStream inputStream, long limit)
+            throws IOException
+    {
+        byte[] buffer = new byte[MAX_FRAME_HEADER_SIZE];
+        long position = 0;
+        boolean first = true;
+        try {
+            while (position <= limit) {
+                if (inputStream.readNBytes(buffer, 0, SIZE_OF_INT) < SIZE_OF_INT) {
+                    return false;
+                }
+                position += SIZE_OF_INT;
+                int magic = getInt(buffer, 0);
+                if (isSkippableMagic(magic)) {
+                    if (inputStream.readNBytes(buffer, 0, SIZE_OF_INT) < SIZE_OF_INT) {
+                        return false;
+                    }
+                    long skipSize = getInt(buffer, 0) & 0xFFFF_FFFFL;
+                    inputStream.skipNBytes(skipSize);
+                    position += SIZE_OF_INT + skipSize;
+                    continue;
+                }
+                if (magic != MAGIC_NUMBER) {
+                    return false;
+                }
+                if (!first) {
+                    return true;
+                }
+                first = false;
+
+                if (inputStream.readNBytes(buffer, 0, 1) < 1) {
+                    return false;
+                }
+                int headerSize = determineFrameHeaderSize(buffer, ARRAY_BYTE_BASE_OFFSET, ARRAY_BYTE_BASE_OFFSET + 1);
+                if (inputStream.readNBytes(buffer, 1, headerSize - 1) < headerSize - 1) {
+                    return false;
+                }
+                FrameHeader frameHeader = readFrameHeader(buffer, ARRAY_BYTE_BASE_OFFSET, ARRAY_BYTE_BASE_OFFSET + headerSize);
+                position += headerSize;
+
+                boolean lastBlock;
+                do {
+                    if (inputStream.readNBytes(buffer, 0, SIZE_OF_BLOCK_HEADER) < SIZE_OF_BLOCK_HEADER) {
+                        return false;
+                    }
+                    position += SIZE_OF_BLOCK_HEADER;
+                    int blockHeader = getBlockHeader(buffer, 0);
+                    lastBlock = (blockHeader & 1) != 0;
+                    int payloadSize = getBlockPayloadSize(blockHeader, position);
+                    inputStream.skipNBytes(payloadSize);
+                    position += payloadSize;
+                }
+                while (!lastBlock && position <= limit);
+                if (!lastBlock) {
+                    return false;
+                }
+
+                if (frameHeader.hasChecksum) {
+                    inputStream.skipNBytes(SIZE_OF_INT);
+                    position += SIZE_OF_INT;
+                }
+            }
+            return false;
+        }
+        catch (EOFException | MalformedInputException e) {
+            // let the regular decoder complain
+            return false;
+        }
+    }
+
+    /**
+     * Limits the window a frame may need, and so the memory used to decompress it;
+     * see {@link ZstdIncrementalFrameDecompressor#setMaxWindowSize}.
+     */
+    public void setMaxWindowSize(int maxWindowSize)
+    {
+        checkArgument(maxWindowSize > 0, "maxWindowSize must be positive");
+        this.maxWindowSize = maxWindowSize;
+    }
+
+    @Override
+    public int read()
+            throws IOException
+    {
+        if (!fillOutputIfNecessary()) {
+            return sequential == null ? -1 : sequential.read();
+        }
+        return output[outputPosition++] & 0xFF;
+    }
+
+    @Override
+    public int read(byte[] buffer, int offset, int length)
+            throws IOException
+    {
+        checkPositionIndexes(offset, offset + length, buffer.length);
+        if (length == 0) {
+            return 0;
+        }
+        if (!fillOutputIfNecessary()) {
+            return sequential == null ? -1 : sequential.read(buffer, offset, length);
+        }
+        int readSize = min(length, output.length - outputPosition);
+        System.arraycopy(output, outputPosition, buffer, offset, readSize);
+        outputPosition += readSize;
+        return readSize;
+    }
+
+    @Override
+    public int available()
+            throws IOException
+    {
+        if (closed) {
+            return 0;
+        }
+        if (outputPosition == output.length && inFlight.isEmpty() && sequential != null) {
+            return sequential.available();
+        }
+        return output.length - outputPosition;
+    }
+
+    private boolean fillOutputIfNecessary()
+            throws IOException
+    {
+        if (closed) {
+            throw new IOException("Stream is closed");
+        }
+        // frames can be empty, so keep going until one isn't
+        while (outputPosition == output.length) {
+            submitFrames();
+            if (inFlight.isEmpty()) {
+                return false;
+            }
+            PendingFrame frame = inFlight.poll();
+            inFlightSize -= frame.size;
+            output = join(frame.output);
+            outputPosition = 0;
+        }
+        return true;
+    }
+
+    private void submitFrames()
+            throws IOException
+    {
+        while ((inFlight.isEmpty() || inFlightSize < maxReadAhead) && !inputFinished) {
+            if (!submitFrame()) {
+                inputFinished = true;
+            }
+        }
+    }
+
+    private static byte[] join(CompletableFuture<byte[]> future)
+            throws IOException
+    {
+        try {
+            return future.join();
+        }
+        catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            if (e.getCause() instanceof Error) {
+                throw (Error) e.getCause();
+            }
+            throw new IOException(e.getCause());
+        }
+    }
+
+    /**
+     * Reads the next frame, from its magic number to its checksum, and starts decompressing it.
+     *
+     * @return {@code false} at the end of the input, or if the rest of it is to be read
+     * from {@link #sequential}
+     */
+    private boolean submitFrame()
+            throws IOException
+    {
+        while (true) {
+            int magicSize = inputStream.readNBytes(header, 0, SIZE_OF_INT);
+            inputPosition += magicSize;
+            if (magicSize == 0) {
+                return false;
+            }
+            if (magicSize < SIZE_OF_INT) {
+                throw new EOFException("Not enough input bytes");
+            }
+            if (!isSkippableMagic(getInt(header, 0))) {
+                break;
+            }
+            readFully(header, 0, SIZE_OF_INT);
+            long skipSize = getInt(header, 0) & 0xFFFF_FFFFL;
+            inputStream.skipNBytes(skipSize);
+            inputPosition += skipSize;
+        }
+        long frameStart = inputPosition - SIZE_OF_INT;
+        verifyMagic(header, ARRAY_BYTE_BASE_OFFSET, ARRAY_BYTE_BASE_OFFSET + SIZE_OF_INT);
+
+        byte[] frame = Arrays.copyOf(header, SIZE_OF_INT + 1 + MAX_BLOCK_SIZE);
+        int frameSize = SIZE_OF_INT;
+        readFully(frame, frameSize, 1);
+        int headerSize = determineFrameHeaderSize(frame, ARRAY_BYTE_BASE_OFFSET + frameSize, ARRAY_BYTE_BASE_OFFSET + frameSize + 1);
+        readFully(frame, frameSize + 1, headerSize - 1);
+        FrameHeader frameHeader = readFrameHeader(frame, ARRAY_BYTE_BASE_OFFSET + frameSize, ARRAY_BYTE_BASE_OFFSET + frameSize + headerSize);
+        frameSize += headerSize;
+
+        // the most the frame can decompress to, so far
+        long outputSize = max(frameHeader.contentSize, 0);
+        boolean lastBlock;
+        do {
+            if (frameSize + outputSize > maxReadAhead) {
+                startSequential(frame, frameSize);
+                return false;
+            }
+            frame = ensureCapacity(frame, frameSize + SIZE_OF_BLOCK_HEADER);
+            readFully(frame, frameSize, SIZE_OF_BLOCK_HEADER);
+            int blockHeader = getBlockHeader(frame, frameSize);
+            frameSize += SIZE_OF_BLOCK_HEADER;
+
+            lastBlock = (blockHeader & 1) != 0;
+            int payloadSize = getBlockPayloadSize(blockHeader, inputPosition);
+            if (frameHeader.contentSize < 0) {
+                // raw and RLE blocks hold as much as their size says, compressed ones up to a full block
+                outputSize += ((blockHeader >>> 1) & 0b11) == COMPRESSED_BLOCK ? MAX_BLOCK_SIZE : (blockHeader >>> 3) & 0x1F_FFFF;
+            }
+            frame = ensureCapacity(frame, frameSize + payloadSize);
+            readFully(frame, frameSize, payloadSize);
+            frameSize += payloadSize;
+        }
+        while (!lastBlock);
+
+        if (frameHeader.hasChecksum) {
+            frame = ensureCapacity(frame, frameSize + SIZE_OF_INT);
+            readFully(frame, frameSize, SIZE_OF_INT);
+            frameSize += SIZE_OF_INT;
+        }
+        checkState(inputPosition - frameStart == frameSize, "Frame size doesn't match the input read");
+
+        byte[] input = Arrays.copyOf(frame, frameSize);
+        long size = frameSize + outputSize;
+        inFlight.add(new PendingFrame(CompletableFuture.supplyAsync(() -> decompressFrame(input), executor), size));
+        inFlightSize += size;
+        return true;
+    }
+
+    /**
+     * Hands the rest of the input, starting with the part of a frame read so far, to an
+     * incremental decompressor, to be read once the frames before it are done.
+     */
+    private void startSequential(byte[] frame, int frameSize)
+    {
+        ZstdIncrementalFrameDecompressor decompressor = new ZstdIncrementalFrameDecompressor();
+        decompressor.setMaxWindowSize(maxWindowSize);
+        InputStream rest = new SequenceInputStream(new ByteArrayInputStream(frame, 0, frameSize), inputStream);
+        sequential = new ZstdInputStream(rest, decompressor, MAX_BLOCK_SIZE);
+    }
+
+    private static int getBlockHeader(byte[] buffer, int offset)
+    {
+        return (buffer[offset] & 0xFF) | (buffer[offset + 1] & 0xFF) << 8 | (buffer[offset + 2] & 0xFF) << 16;
+    }
+
+    /**
+     * @return how many bytes follow the given block header, which ends at {@code position}
+     */
+    private static int getBlockPayloadSize(int blockHeader, long position)
+    {
+        int blockType = (blockHeader >>> 1) & 0b11;
+        int blockSize = (blockHeader >>> 3) & 0x1F_FFFF; // 21 bits
+        if (blockSize > MAX_BLOCK_SIZE) {
+            throw fail(position - SIZE_OF_BLOCK_HEADER, "Block size too large");
+        }
+        switch (blockType) {
+            case RAW_BLOCK:
+            case COMPRESSED_BLOCK:
+                return blockSize;
+            case RLE_BLOCK:
+                return 1;
+            default:
+                throw fail(position - SIZE_OF_BLOCK_HEADER, "Invalid block type");
+        }
+    }
+
+    private void readFully(byte[] buffer, int offset, int length)
+            throws IOException
+    {
+        int readSize = inputStream.readNBytes(buffer, offset, length);
+        inputPosition += readSize;
+        if (readSize < length) {
+            throw new EOFException("Not enough input bytes");
+        }
+    }
+
+    private static byte[] ensureCapacity(byte[] buffer, int size)
+    {
+        if (size <= buffer.length) {
+            return buffer;
+        }
+        return Arrays.copyOf(buffer, max(size, buffer.length * 2));
+    }
+
+    private static int getInt(byte[] buffer, int offset)
+    {
+        return (buffer[offset] & 0xFF) |
+                (buffer[offset + 1] & 0xFF) << 8 |
+                (buffer[offset + 2] & 0xFF) << 16 |
+                (buffer[offset + 3] & 0xFF) << 24;
+    }
+
+    private byte[] decompressFrame(byte[] frame)
+    {
+        ZstdIncrementalFrameDecompressor decompressor = decompressors.poll();
+        if (decompressor == null) {
+            decompressor = new ZstdIncrementalFrameDecompressor();
+        }
+        try {
+            decompressor.reset();
+            decompressor.setMaxWindowSize(maxWindowSize);
+
+            long contentSize = ZstdFrameDecompressor.getDecompressedSize(frame, ARRAY_BYTE_BASE_OFFSET, ARRAY_BYTE_BASE_OFFSET + frame.length);
+            byte[] result = new byte[contentSize >= 0 ? (int) min(contentSize, MAX_INITIAL_OUTPUT_SIZE) : MAX_BLOCK_SIZE];
+            int resultSize = 0;
+
+            long input = ARRAY_BYTE_BASE_OFFSET;
+            long inputLimit = ARRAY_BYTE_BASE_OFFSET + frame.length;
+            while (true) {
+                if (resultSize == result.length && decompressor.getRequestedOutputSize() > 0) {
+                    result = Arrays.copyOf(result, (int) min(result.length * 2L + decompressor.getRequestedOutputSize(), Integer.MAX_VALUE - 8));
+                }
+                decompressor.partialDecompress(frame, input, inputLimit, result, resultSize, result.length);
+                input += decompressor.getInputConsumed();
+                resultSize += decompressor.getOutputBufferUsed();
+
+                if (decompressor.getInputRequired() > inputLimit - input) {
+                    // the whole frame was given, so the only input it can want is the next magic number
+                    if (!decompressor.isAtStoppingPoint()) {
+                        throw new MalformedInputException(input - ARRAY_BYTE_BASE_OFFSET, "Not enough input bytes");
+                    }
+                    break;
+                }
+            }
+            return resultSize == result.length ? result : Arrays.copyOf(result, resultSize);
+        }
+        finally {
+            decompressors.add(decompressor);
+        }
+    }
+
+    @Override
+    public void close()
+            throws IOException
+    {
+        if (!closed) {
+            closed = true;
+            inFlight.forEach(frame -> frame.output.cancel(false));
+            inFlight.clear();
+            inputStream.close();
+        }
+    }
+
+    private static final class PendingFrame
+    {
+        final CompletableFuture<byte[]> output;
+        // compressed plus the most it can decompress to
+        final long size;
+
+        PendingFrame(CompletableFuture<byte[]> output, long size)
+        {
+            this.output = output;
+            this.size = size;
+        }
+    }
+}
@@ -0,0 +1,220 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.airlift.compress.zstd;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ReadOnlyBufferException;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+
+import static io.airlift.compress.zstd.MemoryAccess.ARRAY_BYTE_BASE_OFFSET;
+import static io.airlift.compress.zstd.MemoryAccess.MEMORY;
+import static io.airlift.compress.zstd.Util.checkArgument;
+import static java.lang.Math.max;
+import static java.lang.Math.min;
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Decompresses a zstd stream from a channel into heap or direct buffers. Compressed
+ * input is read into a direct buffer, or, for a region of a {@link FileChannel},
+ * memory-mapped and decompressed straight from the mapping with no copy at all.
+ * Decompressed output is copied from the window once, into the caller's buffer.
+ * <p>
+ * The source channel must be blocking; reads fill the given buffer completely
+ * unless the end of the stream is reached.
+ */
+public class ZstdReadableByteChannel
+        implements ReadableByteChannel
+{
+    private static final int MIN_BUFFER_SIZE = 4096;
+    // keep well within what a ByteBuffer can index; a block never needs more than 128KiB
+    private static final long MAX_MAPPING_SIZE = 1 << 30;
+
+    private final ReadableByteChannel channel;
+    private final ZstdIncrementalFrameDecompressor decompressor;
+    private final int minBufferSize;
+
+    // only for mapped input: the end of the compressed region, and the file position of the current mapping
+    private final boolean mapped;
+    private final long mappedLimit;
+    private long mappedPosition;
+
+    // unconsumed input is between position and limit
+    private ByteBuffer input;
+
+    private boolean closed;
+
+    public ZstdReadableByteChannel(ReadableByteChannel channel)
+    {
+        this(channel, new ZstdIncrementalFrameDecompressor(), MIN_BUFFER_SIZE);
+    }
+
+    /**
+     * Decompresses with a caller-supplied decompressor, which is reset first, reading
+     * the compressed input in chunks of at least {@code bufferSize} bytes. The
+     * decompressor must not be used by anything else until this channel is closed.
+     */
+    public ZstdReadableByteChannel(ReadableByteChannel channel, ZstdIncrementalFrameDecompressor decompressor, int bufferSize)
+    {
+        this.channel = requireNonNull(channel, "channel is null");
+        this.decompressor = requireNonNull(decompressor, "decompressor is null");
+        this.minBufferSize = max(bufferSize, MIN_BUFFER_SIZE);
+        this.mapped = false;
+        this.mappedLimit = 0;
+        decompressor.reset();
+        this.input = ByteBuffer.allocateDirect(minBufferSize).limit(0);
+    }
+
+    /**
+     * Decompresses the {@code size} bytes of the given file starting at {@code position},
+     * by mapping them into memory, up to 1GiB at a time. The file must not be truncated
+     * while this channel is open. Closing this channel closes the file channel too.
+     */
+    public ZstdReadableByteChannel(FileChannel channel, long position, long size, ZstdIncrementalFrameDecompressor decompressor)
+            throws IOException
+    {
+        checkArgument(position >= 0 && size >= 0, "position and size must not be negative");
+        this.channel = requireNonNull(channel, "channel is null");
+        this.decompressor = requireNonNull(decompressor, "decompressor is null");
+        this.minBufferSize = 0;
+        this.mapped = true;
+        this.mappedLimit = position + size;
+        this.mappedPosition = position;
+        decompressor.reset();
+        this.input = channel.map(FileChannel.MapMode.READ_ONLY, position, min(size, MAX_MAPPING_SIZE));
+    }
+
+    /**
+     * Limits the window a frame may need, and so the memory used to decompress it;
+     * see {@link ZstdIncrementalFrameDecompressor#setMaxWindowSize}.
+     */
+    public void setMaxWindowSize(int maxWindowSize)
+    {
+        decompressor.setMaxWindowSize(maxWindowSize);
+    }
+
+    @Override
+    public int read(ByteBuffer output)
+            throws IOException
+    {
+        if (closed) {
+            throw new ClosedChannelException();
+        }
+        if (output.isReadOnly()) {
+            throw new ReadOnlyBufferException();
+        }
+
+        int outputLength = output.remaining();
+        if (outputLength == 0) {
+            return 0;
+        }
+
+        Object outputBase;
+        long outputAddress;
+        if (output.isDirect()) {
+            outputBase = MEMORY.getBase(output);
+            outputAddress = MEMORY.getAddress(output) + output.position();
+        }
+        else {
+            outputBase = output.array();
+            outputAddress = ARRAY_BYTE_BASE_OFFSET + output.arrayOffset() + output.position();
+        }
+        long outputLimit = outputAddress + outputLength;
+
+        int outputUsed = 0;
+        while (outputUsed < outputLength) {
+            boolean enoughInput = fillInputBufferIfNecessary(decompressor.getInputRequired());
+            if (!enoughInput) {
+                if (decompressor.isAtStoppingPoint()) {
+                    if (outputUsed == 0) {
+                        return -1;
+                    }
+                    break;
+                }
+                throw new IOException("Not enough input bytes");
+            }
+
+            long inputAddress = MEMORY.getAddress(input) + input.position();
+            decompressor.partialDecompress(
+                    MEMORY.getBase(input),
+                    inputAddress,
+                    inputAddress + input.remaining(),
+                    outputBase,
+                    outputAddress + outputUsed,
+                    outputLimit);
+
+            input.position(input.position() + decompressor.getInputConsumed());
+            outputUsed += decompressor.getOutputBufferUsed();
+        }
+        output.position(output.position() + outputUsed);
+        return outputUsed;
+    }
+
+    private boolean fillInputBufferIfNecessary(int requiredSize)
+            throws IOException
+    {
+        if (input.remaining() >= requiredSize) {
+            return true;
+        }
+
+        if (mapped) {
+            // move the mapping up to the unconsumed input
+            long start = mappedPosition + input.position();
+            long size = min(mappedLimit - start, MAX_MAPPING_SIZE);
+            if (size < requiredSize) {
+                return false;
+            }
+            input = ((FileChannel) channel).map(FileChannel.MapMode.READ_ONLY, start, size);
+            mappedPosition = start;
+            return true;
+        }
+
+        if (input.capacity() < requiredSize) {
+            ByteBuffer larger = ByteBuffer.allocateDirect(max(requiredSize, minBufferSize));
+            larger.put(input);
+            input = larger;
+        }
+        else {
+            // move the unconsumed input to the front of the buffer
+            input.compact();
+        }
+
+        while (input.hasRemaining()) {
+            if (channel.read(input) < 0) {
+                break;
+            }
+        }
+        input.flip();
+        return input.remaining() >= requiredSize;
+    }
+
+    @Override
+    public boolean isOpen()
+    {
+        return !closed;
+    }
+
+    @Override
+    public void close()
+            throws IOException
+    {
+        if (!closed) {
+            closed = true;
+            channel.close();
+        }
+    }
+}
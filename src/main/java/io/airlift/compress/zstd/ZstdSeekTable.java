@@ -0,0 +1,212 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.airlift.compress.zstd;
+
+import io.airlift.compress.MalformedInputException;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.SeekableByteChannel;
+import java.util.Arrays;
+
+import static io.airlift.compress.zstd.Constants.SEEKABLE_MAGIC_NUMBER;
+import static io.airlift.compress.zstd.Constants.SEEK_TABLE_CHECKSUM_FLAG;
+import static io.airlift.compress.zstd.Constants.SEEK_TABLE_MAGIC_NUMBER;
+import static io.airlift.compress.zstd.Constants.SEEK_TABLE_RESERVED_MASK;
+import static io.airlift.compress.zstd.Constants.SIZE_OF_INT;
+import static io.airlift.compress.zstd.Constants.SIZE_OF_SEEK_TABLE_FOOTER;
+import static io.airlift.compress.zstd.Constants.SIZE_OF_SKIPPABLE_FRAME_HEADER;
+import static io.airlift.compress.zstd.Util.checkArgument;
+import static java.lang.String.format;
+
+/**
+ * The seek table at the end of a file in the zstd seekable format, as written by
+ * {@link ZstdOutputStream} when given a maximum frame size. Maps uncompressed
+ * offsets to the independent frame holding them.
+ */
+public final class ZstdSeekTable
+{
+    private final long[] compressedOffsets;
+    private final long[] decompressedOffsets;
+    private final int[] checksums;
+    private final long tableOffset;
+
+    private ZstdSeekTable(long[] compressedOffsets, long[] decompressedOffsets, int[] checksums, long tableOffset)
+    {
+        this.compressedOffsets = compressedOffsets;
+        this.decompressedOffsets = decompressedOffsets;
+        this.checksums = checksums;
+        this.tableOffset = tableOffset;
+    }
+
+    /**
+     * Reads the seek table from the end of the channel, leaving the channel's
+     * position unspecified.
+     *
+     * @return the seek table, or null if the channel doesn't end with one
+     * @throws MalformedInputException if the seek table is corrupt
+     */
+    public static ZstdSeekTable read(SeekableByteChannel channel)
+            throws IOException
+    {
+        long size = channel.size();
+        if (size < SIZE_OF_SKIPPABLE_FRAME_HEADER + SIZE_OF_SEEK_TABLE_FOOTER) {
+            return null;
+        }
+
+        ByteBuffer footer = readFully(channel, size - SIZE_OF_SEEK_TABLE_FOOTER, SIZE_OF_SEEK_TABLE_FOOTER);
+        int frameCount = footer.getInt();
+        int descriptor = footer.get() & 0xFF;
+        if (footer.getInt() != SEEKABLE_MAGIC_NUMBER) {
+            return null;
+        }
+        long footerOffset = size - SIZE_OF_SEEK_TABLE_FOOTER;
+        if ((descriptor & SEEK_TABLE_RESERVED_MASK) != 0) {
+            throw new MalformedInputException(footerOffset, "Reserved seek table descriptor bits are set");
+        }
+        boolean hasChecksums = (descriptor & SEEK_TABLE_CHECKSUM_FLAG) != 0;
+        int entrySize = hasChecksums ? 3 * SIZE_OF_INT : 2 * SIZE_OF_INT;
+
+        long tableSize = (frameCount & 0xFFFF_FFFFL) * entrySize + SIZE_OF_SEEK_TABLE_FOOTER;
+        long tableOffset = size - SIZE_OF_SKIPPABLE_FRAME_HEADER - tableSize;
+        if (frameCount < 0 || tableOffset < 0 || tableSize > Integer.MAX_VALUE - SIZE_OF_SKIPPABLE_FRAME_HEADER) {
+            throw new MalformedInputException(footerOffset, format("Seek table with %s frames is larger than the input", frameCount & 0xFFFF_FFFFL));
+        }
+
+        ByteBuffer table = readFully(channel, tableOffset, (int) (tableSize - SIZE_OF_SEEK_TABLE_FOOTER + SIZE_OF_SKIPPABLE_FRAME_HEADER));
+        if (table.getInt() != SEEK_TABLE_MAGIC_NUMBER || (table.getInt() & 0xFFFF_FFFFL) != tableSize) {
+            throw new MalformedInputException(tableOffset, "Seek table frame header does not match its footer");
+        }
+
+        long[] compressedOffsets = new long[frameCount + 1];
+        long[] decompressedOffsets = new long[frameCount + 1];
+        int[] checksums = hasChecksums ? new int[frameCount] : null;
+        for (int i = 0; i < frameCount; i++) {
+            compressedOffsets[i + 1] = compressedOffsets[i] + (table.getInt() & 0xFFFF_FFFFL);
+            decompressedOffsets[i + 1] = decompressedOffsets[i] + (table.getInt() & 0xFFFF_FFFFL);
+            if (hasChecksums) {
+                checksums[i] = table.getInt();
+            }
+        }
+        if (compressedOffsets[frameCount] > tableOffset) {
+            throw new MalformedInputException(tableOffset, "Seek table frames extend past the seek table");
+        }
+        return new ZstdSeekTable(compressedOffsets, decompressedOffsets, checksums, tableOffset);
+    }
+
+    private static ByteBuffer readFully(SeekableByteChannel channel, long position, int length)
+            throws IOException
+    {
+        ByteBuffer buffer = ByteBuffer.allocate(length).order(ByteOrder.LITTLE_ENDIAN);
+        channel.position(position);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer) < 0) {
+                throw new MalformedInputException(position + buffer.position(), "Not enough input bytes");
+            }
+        }
+        buffer.flip();
+        return buffer;
+    }
+
+    public int getFrameCount()
+    {
+        return compressedOffsets.length - 1;
+    }
+
+    /**
+     * @return the total uncompressed size of all frames
+     */
+    public long getDecompressedSize()
+    {
+        return decompressedOffsets[getFrameCount()];
+    }
+
+    /**
+     * @return the offset of the seek table's skippable frame, which is where the
+     * compressed frames end
+     */
+    public long getTableOffset()
+    {
+        return tableOffset;
+    }
+
+    public long getCompressedOffset(int frame)
+    {
+        checkFrame(frame);
+        return compressedOffsets[frame];
+    }
+
+    public long getCompressedSize(int frame)
+    {
+        checkFrame(frame);
+        return compressedOffsets[frame + 1] - compressedOffsets[frame];
+    }
+
+    public long getDecompressedOffset(int frame)
+    {
+        checkFrame(frame);
+        return decompressedOffsets[frame];
+    }
+
+    public long getDecompressedSize(int frame)
+    {
+        checkFrame(frame);
+        return decompressedOffsets[frame + 1] - decompressedOffsets[frame];
+    }
+
+    public boolean hasChecksums()
+    {
+        return checksums != null;
+    }
+
+    /**
+     * @return the low 32 bits of the XXH64 of the frame's uncompressed data
+     */
+    public int getChecksum(int frame)
+    {
+        checkFrame(frame);
+        checkArgument(checksums != null, "Seek table has no checksums");
+        return checksums[frame];
+    }
+
+    /**
+     * @return the frame containing the given uncompressed offset, or the frame count
+     * if the offset is at or past the end
+     */
+    public int getFrameIndex(long decompressedOffset)
+    {
+        checkArgument(decompressedOffset >= 0, "decompressedOffset is negative");
+        if (decompressedOffset >= getDecompressedSize()) {
+            return getFrameCount();
+        }
+        int index = Arrays.binarySearch(decompressedOffsets, decompressedOffset);
+        if (index < 0) {
+            return -index - 2;
+        }
+        // skip over any empty frames starting at the same offset
+        while (decompressedOffsets[index + 1] == decompressedOffset) {
+            index++;
+        }
+        return index;
+    }
+
+    private void checkFrame(int frame)
+    {
+        if (frame < 0 || frame >= getFrameCount()) {
+            throw new IndexOutOfBoundsException(format("frame %s is not in [0, %s)", frame, getFrameCount()));
+        }
+    }
+}
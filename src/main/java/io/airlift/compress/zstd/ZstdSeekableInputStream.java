@@ -0,0 +1,252 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.airlift.compress.zstd;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.SeekableByteChannel;
+
+import static io.airlift.compress.zstd.Util.checkArgument;
+import static java.lang.Math.min;
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Reads a file in the zstd seekable format with random access. Seeking only
+ * decompresses from the start of the frame holding the new position, rather
+ * than from the start of the file.
+ */
+public class ZstdSeekableInputStream
+        extends InputStream
+{
+    private static final int DEFAULT_BUFFER_SIZE = 64 * 1024;
+
+    private final SeekableByteChannel channel;
+    private final ZstdSeekTable seekTable;
+    private final ZstdIncrementalFrameDecompressor decompressor;
+    private final int bufferSize;
+
+    // stream positioned at the start of the current frame, or null after a seek
+    private ZstdInputStream frameStream;
+    private long position;
+    private long streamPosition;
+
+    private byte[] singleByteOutputBuffer;
+    private byte[] skipBuffer;
+
+    private boolean closed;
+
+    /**
+     * @throws IOException if the channel doesn't end with a seek table
+     */
+    public ZstdSeekableInputStream(SeekableByteChannel channel)
+            throws IOException
+    {
+        this(channel, readSeekTable(channel), new ZstdIncrementalFrameDecompressor(), DEFAULT_BUFFER_SIZE);
+    }
+
+    /**
+     * Reads with a seek table already read from the channel and a caller-supplied
+     * decompressor, which must not be used by anything else until this stream is
+     * closed. Closing this stream closes the channel.
+     */
+    public ZstdSeekableInputStream(SeekableByteChannel channel, ZstdSeekTable seekTable, ZstdIncrementalFrameDecompressor decompressor, int bufferSize)
+    {
+        this.channel = requireNonNull(channel, "channel is null");
+        this.seekTable = requireNonNull(seekTable, "seekTable is null");
+        this.decompressor = requireNonNull(decompressor, "decompressor is null");
+        this.bufferSize = bufferSize;
+    }
+
+    private static ZstdSeekTable readSeekTable(SeekableByteChannel channel)
+            throws IOException
+    {
+        ZstdSeekTable seekTable = ZstdSeekTable.read(channel);
+        if (seekTable == null) {
+            throw new IOException("Not a seekable zstd file");
+        }
+        return seekTable;
+    }
+
+    public ZstdSeekTable getSeekTable()
+    {
+        return seekTable;
+    }
+
+    /**
+     * @return the total uncompressed size
+     */
+    public long size()
+    {
+        return seekTable.getDecompressedSize();
+    }
+
+    /**
+     * @return the current uncompressed position
+     */
+    public long position()
+    {
+        return position;
+    }
+
+    /**
+     * Moves to the given uncompressed position. Nothing is read until the next read,
+     * which decompresses from the start of the frame holding the position; seeking
+     * forward within the current frame reuses what has been decompressed so far.
+     */
+    public void seek(long position)
+            throws IOException
+    {
+        checkOpen();
+        checkArgument(position >= 0, "position is negative");
+        if (frameStream != null && (position < streamPosition || seekTable.getFrameIndex(position) != seekTable.getFrameIndex(streamPosition))) {
+            frameStream = null;
+        }
+        this.position = position;
+    }
+
+    @Override
+    public int read()
+            throws IOException
+    {
+        if (singleByteOutputBuffer == null) {
+            singleByteOutputBuffer = new byte[1];
+        }
+        int readSize = read(singleByteOutputBuffer, 0, 1);
+        if (readSize != 1) {
+            return -1;
+        }
+        return singleByteOutputBuffer[0] & 0xFF;
+    }
+
+    @Override
+    public int read(byte[] buffer, int offset, int length)
+            throws IOException
+    {
+        checkOpen();
+        if (length == 0) {
+            return 0;
+        }
+        if (position >= size()) {
+            return -1;
+        }
+        if (frameStream == null) {
+            int frame = seekTable.getFrameIndex(position);
+            long compressedOffset = seekTable.getCompressedOffset(frame);
+            channel.position(compressedOffset);
+            frameStream = new ZstdInputStream(new ChannelInputStream(seekTable.getTableOffset() - compressedOffset), decompressor, bufferSize);
+            streamPosition = seekTable.getDecompressedOffset(frame);
+        }
+        while (streamPosition < position) {
+            if (skipBuffer == null) {
+                skipBuffer = new byte[DEFAULT_BUFFER_SIZE];
+            }
+            int skipSize = frameStream.read(skipBuffer, 0, (int) min(skipBuffer.length, position - streamPosition));
+            if (skipSize < 0) {
+                throw new IOException("Not enough input bytes");
+            }
+            streamPosition += skipSize;
+        }
+
+        int readSize = frameStream.read(buffer, offset, (int) min(length, size() - position));
+        if (readSize < 0) {
+            throw new IOException("Not enough input bytes");
+        }
+        position += readSize;
+        streamPosition += readSize;
+        return readSize;
+    }
+
+    @Override
+    public long skip(long n)
+            throws IOException
+    {
+        checkOpen();
+        long skipped = min(max0(n), max0(size() - position));
+        seek(position + skipped);
+        return skipped;
+    }
+
+    private static long max0(long n)
+    {
+        return n < 0 ? 0 : n;
+    }
+
+    @Override
+    public int available()
+            throws IOException
+    {
+        if (closed || frameStream == null) {
+            return 0;
+        }
+        return frameStream.available();
+    }
+
+    @Override
+    public void close()
+            throws IOException
+    {
+        if (!closed) {
+            closed = true;
+            frameStream = null;
+            channel.close();
+        }
+    }
+
+    private void checkOpen()
+            throws IOException
+    {
+        if (closed) {
+            throw new IOException("Stream is closed");
+        }
+    }
+
+    /**
+     * Reads the compressed frames from the channel's current position, stopping at
+     * the seek table. Doesn't close the channel, as it outlives each frame stream.
+     */
+    private class ChannelInputStream
+            extends InputStream
+    {
+        private long remaining;
+
+        ChannelInputStream(long remaining)
+        {
+            this.remaining = remaining;
+        }
+
+        @Override
+        public int read()
+                throws IOException
+        {
+            byte[] buffer = new byte[1];
+            return read(buffer, 0, 1) == 1 ? buffer[0] & 0xFF : -1;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length)
+                throws IOException
+        {
+            if (remaining <= 0) {
+                return -1;
+            }
+            int readSize = channel.read(ByteBuffer.wrap(buffer, offset, (int) min(length, remaining)));
+            if (readSize > 0) {
+                remaining -= readSize;
+            }
+            return readSize;
+        }
+    }
+}
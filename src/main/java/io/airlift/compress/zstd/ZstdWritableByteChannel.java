@@ -0,0 +1,101 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.airlift.compress.zstd;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.WritableByteChannel;
+
+import static io.airlift.compress.zstd.MemoryAccess.MEMORY;
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Compresses heap or direct buffers to a channel, in the same format as
+ * {@link ZstdOutputStream}. Direct buffers are copied straight into the
+ * compression window, without going through a temporary array.
+ * <p>
+ * The target channel must be blocking.
+ */
+public class ZstdWritableByteChannel
+        implements WritableByteChannel
+{
+    private final ZstdOutputStream output;
+
+    private boolean closed;
+
+    public ZstdWritableByteChannel(WritableByteChannel channel)
+            throws IOException
+    {
+        this(channel, new CompressionContext(), 0);
+    }
+
+    /**
+     * Compresses with a caller-supplied context, which is reset first; see
+     * {@link ZstdOutputStream#ZstdOutputStream(java.io.OutputStream, CompressionContext, int)}
+     * for {@code maxFrameSize}.
+     */
+    public ZstdWritableByteChannel(WritableByteChannel channel, CompressionContext context, int maxFrameSize)
+            throws IOException
+    {
+        this.output = new ZstdOutputStream(Channels.newOutputStream(requireNonNull(channel, "channel is null")), context, maxFrameSize);
+    }
+
+    @Override
+    public int write(ByteBuffer input)
+            throws IOException
+    {
+        if (closed) {
+            throw new ClosedChannelException();
+        }
+
+        int length = input.remaining();
+        if (input.isDirect()) {
+            output.write(MEMORY.getBase(input), MEMORY.getAddress(input) + input.position(), length);
+            input.position(input.limit());
+        }
+        else if (input.hasArray()) {
+            output.write(input.array(), input.arrayOffset() + input.position(), length);
+            input.position(input.limit());
+        }
+        else {
+            // read-only heap buffers don't give access to their array
+            byte[] copy = new byte[length];
+            input.get(copy);
+            output.write(copy);
+        }
+        return length;
+    }
+
+    @Override
+    public boolean isOpen()
+    {
+        return !closed;
+    }
+
+    /**
+     * Finishes the stream and closes the underlying channel.
+     */
+    @Override
+    public void close()
+            throws IOException
+    {
+        if (!closed) {
+            closed = true;
+            output.close();
+        }
+    }
+}
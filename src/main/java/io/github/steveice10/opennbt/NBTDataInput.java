@@ -0,0 +1,254 @@
+/*
+ * Copyright (C) 2013-2017 Steveice10, 2018 - 2023 Una Thompson (unascribed)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies
+ * of the Software, and to permit persons to whom the Software is furnished to do
+ * so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package io.github.steveice10.opennbt;
+
+import java.io.Closeable;
+import java.io.DataInput;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UTFDataFormatException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+
+/**
+ * A buffered {@link DataInput} that can read either byte order, decoding
+ * multi-byte values straight out of its buffer rather than a byte at a time.
+ * <p>
+ * Reads ahead of what has been asked for, so the underlying stream should
+ * not be used for anything else afterward.
+ */
+public class NBTDataInput implements DataInput, Closeable {
+	private static final int BUFFER_SIZE = 8192;
+	
+	private static final VarHandle SHORT_BE = MethodHandles.byteArrayViewVarHandle(short[].class, ByteOrder.BIG_ENDIAN);
+	private static final VarHandle SHORT_LE = MethodHandles.byteArrayViewVarHandle(short[].class, ByteOrder.LITTLE_ENDIAN);
+	private static final VarHandle INT_BE = MethodHandles.byteArrayViewVarHandle(int[].class, ByteOrder.BIG_ENDIAN);
+	private static final VarHandle INT_LE = MethodHandles.byteArrayViewVarHandle(int[].class, ByteOrder.LITTLE_ENDIAN);
+	private static final VarHandle LONG_BE = MethodHandles.byteArrayViewVarHandle(long[].class, ByteOrder.BIG_ENDIAN);
+	private static final VarHandle LONG_LE = MethodHandles.byteArrayViewVarHandle(long[].class, ByteOrder.LITTLE_ENDIAN);
+
+	private final InputStream in;
+	private final boolean bigEndian;
+	private final byte[] buf = new byte[BUFFER_SIZE];
+	private int pos;
+	private int limit;
+
+	public NBTDataInput(InputStream in, ByteOrder order) {
+		this.in = in;
+		this.bigEndian = order == ByteOrder.BIG_ENDIAN;
+	}
+
+	public ByteOrder getByteOrder() {
+		return bigEndian ? ByteOrder.BIG_ENDIAN : ByteOrder.LITTLE_ENDIAN;
+	}
+
+	/**
+	 * Make sure at least {@code n} bytes are in the buffer, which must be no
+	 * more than its size.
+	 */
+	private void require(int n) throws IOException {
+		if (limit-pos >= n) return;
+		System.arraycopy(buf, pos, buf, 0, limit-pos);
+		limit -= pos;
+		pos = 0;
+		while (limit < n) {
+			int read = in.read(buf, limit, buf.length-limit);
+			if (read < 0) throw new EOFException();
+			limit += read;
+		}
+	}
+
+	@Override
+	public void readFully(byte[] b) throws IOException {
+		readFully(b, 0, b.length);
+	}
+
+	@Override
+	public void readFully(byte[] b, int off, int len) throws IOException {
+		if (len < 0) throw new IndexOutOfBoundsException();
+		int buffered = Math.min(len, limit-pos);
+		System.arraycopy(buf, pos, b, off, buffered);
+		pos += buffered;
+		off += buffered;
+		len -= buffered;
+		// anything bigger than what's buffered is read directly
+		while (len > 0) {
+			int read = in.read(b, off, len);
+			if (read < 0) throw new EOFException();
+			off += read;
+			len -= read;
+		}
+	}
+
+	@Override
+	public int skipBytes(int n) throws IOException {
+		int buffered = Math.max(0, Math.min(n, limit-pos));
+		pos += buffered;
+		int total = buffered;
+		while (total < n) {
+			long skipped = in.skip(n-total);
+			if (skipped <= 0) {
+				// skip is allowed to give up early; make sure we're really at the end
+				if (in.read() < 0) break;
+				skipped = 1;
+			}
+			total += skipped;
+		}
+		return total;
+	}
+
+	@Override
+	public boolean readBoolean() throws IOException {
+		return readByte() != 0;
+	}
+
+	@Override
+	public byte readByte() throws IOException {
+		if (pos == limit) require(1);
+		return buf[pos++];
+	}
+
+	@Override
+	public int readUnsignedByte() throws IOException {
+		return readByte() & 0xFF;
+	}
+
+	@Override
+	public short readShort() throws IOException {
+		require(2);
+		short s = bigEndian ? (short)SHORT_BE.get(buf, pos) : (short)SHORT_LE.get(buf, pos);
+		pos += 2;
+		return s;
+	}
+
+	@Override
+	public int readUnsignedShort() throws IOException {
+		return readShort() & 0xFFFF;
+	}
+
+	@Override
+	public char readChar() throws IOException {
+		return (char)readShort();
+	}
+
+	@Override
+	public int readInt() throws IOException {
+		require(4);
+		int i = bigEndian ? (int)INT_BE.get(buf, pos) : (int)INT_LE.get(buf, pos);
+		pos += 4;
+		return i;
+	}
+
+	@Override
+	public long readLong() throws IOException {
+		require(8);
+		long l = bigEndian ? (long)LONG_BE.get(buf, pos) : (long)LONG_LE.get(buf, pos);
+		pos += 8;
+		return l;
+	}
+
+	@Override
+	public float readFloat() throws IOException {
+		return Float.intBitsToFloat(readInt());
+	}
+
+	@Override
+	public double readDouble() throws IOException {
+		return Double.longBitsToDouble(readLong());
+	}
+
+	@Override
+	public String readLine() throws IOException {
+		throw new UnsupportedOperationException("Use readUTF.");
+	}
+
+	/**
+	 * Reads a string in Java's modified UTF-8, as used by NBT. Four-byte
+	 * sequences are also accepted, as some little-endian writers use
+	 * standard UTF-8.
+	 */
+	@Override
+	public String readUTF() throws IOException {
+		int len = readUnsignedShort();
+		byte[] bytes;
+		int off;
+		if (len <= buf.length) {
+			require(len);
+			bytes = buf;
+			off = pos;
+			pos += len;
+		} else {
+			bytes = new byte[len];
+			off = 0;
+			readFully(bytes);
+		}
+		return decodeUTF(bytes, off, len);
+	}
+
+	private static String decodeUTF(byte[] bytes, int off, int len) throws UTFDataFormatException {
+		char[] chars = new char[len];
+		int end = off+len;
+		int i = off;
+		int count = 0;
+		// nearly every string in NBT is ASCII
+		while (i < end && bytes[i] >= 0) {
+			chars[count++] = (char)bytes[i++];
+		}
+		while (i < end) {
+			int a = bytes[i++] & 0xFF;
+			if (a < 0x80) {
+				chars[count++] = (char)a;
+			} else if ((a & 0xE0) == 0xC0) {
+				if (i+1 > end) throw new UTFDataFormatException("malformed input: partial character at end");
+				int b = bytes[i++];
+				if ((b & 0xC0) != 0x80) throw new UTFDataFormatException("malformed input around byte "+(i-off));
+				chars[count++] = (char)(((a & 0x1F) << 6) | (b & 0x3F));
+			} else if ((a & 0xF0) == 0xE0) {
+				if (i+2 > end) throw new UTFDataFormatException("malformed input: partial character at end");
+				int b = bytes[i++];
+				int c = bytes[i++];
+				if ((b & 0xC0) != 0x80 || (c & 0xC0) != 0x80) throw new UTFDataFormatException("malformed input around byte "+(i-off));
+				chars[count++] = (char)(((a & 0x0F) << 12) | ((b & 0x3F) << 6) | (c & 0x3F));
+			} else if ((a & 0xF8) == 0xF0) {
+				if (i+3 > end) throw new UTFDataFormatException("malformed input: partial character at end");
+				int b = bytes[i++];
+				int c = bytes[i++];
+				int d = bytes[i++];
+				if ((b & 0xC0) != 0x80 || (c & 0xC0) != 0x80 || (d & 0xC0) != 0x80) throw new UTFDataFormatException("malformed input around byte "+(i-off));
+				int cp = ((a & 0x07) << 18) | ((b & 0x3F) << 12) | ((c & 0x3F) << 6) | (d & 0x3F);
+				chars[count++] = Character.highSurrogate(cp);
+				chars[count++] = Character.lowSurrogate(cp);
+			} else {
+				throw new UTFDataFormatException("malformed input around byte "+(i-off));
+			}
+		}
+		return new String(chars, 0, count);
+	}
+
+	@Override
+	public void close() throws IOException {
+		in.close();
+	}
+}
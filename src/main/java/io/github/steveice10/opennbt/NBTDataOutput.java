@@ -0,0 +1,218 @@
+/*
+ * Copyright (C) 2013-2017 Steveice10, 2018 - 2023 Una Thompson (unascribed)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies
+ * of the Software, and to permit persons to whom the Software is furnished to do
+ * so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package io.github.steveice10.opennbt;
+
+import java.io.Closeable;
+import java.io.DataOutput;
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UTFDataFormatException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+
+/**
+ * A buffered {@link DataOutput} that can write either byte order, encoding
+ * multi-byte values straight into its buffer rather than a byte at a time.
+ * <p>
+ * Nothing reaches the underlying stream until the buffer fills or this is
+ * flushed, so remember to {@link #flush} it once done.
+ */
+public class NBTDataOutput implements DataOutput, Flushable, Closeable {
+	private static final int BUFFER_SIZE = 8192;
+	
+	private static final VarHandle SHORT_BE = MethodHandles.byteArrayViewVarHandle(short[].class, ByteOrder.BIG_ENDIAN);
+	private static final VarHandle SHORT_LE = MethodHandles.byteArrayViewVarHandle(short[].class, ByteOrder.LITTLE_ENDIAN);
+	private static final VarHandle INT_BE = MethodHandles.byteArrayViewVarHandle(int[].class, ByteOrder.BIG_ENDIAN);
+	private static final VarHandle INT_LE = MethodHandles.byteArrayViewVarHandle(int[].class, ByteOrder.LITTLE_ENDIAN);
+	private static final VarHandle LONG_BE = MethodHandles.byteArrayViewVarHandle(long[].class, ByteOrder.BIG_ENDIAN);
+	private static final VarHandle LONG_LE = MethodHandles.byteArrayViewVarHandle(long[].class, ByteOrder.LITTLE_ENDIAN);
+
+	private final OutputStream out;
+	private final boolean bigEndian;
+	private final byte[] buf = new byte[BUFFER_SIZE];
+	private int pos;
+
+	public NBTDataOutput(OutputStream out, ByteOrder order) {
+		this.out = out;
+		this.bigEndian = order == ByteOrder.BIG_ENDIAN;
+	}
+
+	public ByteOrder getByteOrder() {
+		return bigEndian ? ByteOrder.BIG_ENDIAN : ByteOrder.LITTLE_ENDIAN;
+	}
+
+	/**
+	 * Make sure there's room for at least {@code n} more bytes in the
+	 * buffer, which must be no more than its size.
+	 */
+	private void reserve(int n) throws IOException {
+		if (buf.length-pos < n) {
+			flushBuffer();
+		}
+	}
+
+	private void flushBuffer() throws IOException {
+		if (pos > 0) {
+			out.write(buf, 0, pos);
+			pos = 0;
+		}
+	}
+
+	@Override
+	public void write(int b) throws IOException {
+		reserve(1);
+		buf[pos++] = (byte)b;
+	}
+
+	@Override
+	public void write(byte[] b) throws IOException {
+		write(b, 0, b.length);
+	}
+
+	@Override
+	public void write(byte[] b, int off, int len) throws IOException {
+		if (len > buf.length-pos) {
+			flushBuffer();
+			if (len >= buf.length) {
+				// no sense copying it through the buffer
+				out.write(b, off, len);
+				return;
+			}
+		}
+		System.arraycopy(b, off, buf, pos, len);
+		pos += len;
+	}
+
+	@Override
+	public void writeBoolean(boolean v) throws IOException {
+		write(v ? 1 : 0);
+	}
+
+	@Override
+	public void writeByte(int v) throws IOException {
+		write(v);
+	}
+
+	@Override
+	public void writeShort(int v) throws IOException {
+		reserve(2);
+		if (bigEndian) {
+			SHORT_BE.set(buf, pos, (short)v);
+		} else {
+			SHORT_LE.set(buf, pos, (short)v);
+		}
+		pos += 2;
+	}
+
+	@Override
+	public void writeChar(int v) throws IOException {
+		writeShort(v);
+	}
+
+	@Override
+	public void writeInt(int v) throws IOException {
+		reserve(4);
+		if (bigEndian) {
+			INT_BE.set(buf, pos, v);
+		} else {
+			INT_LE.set(buf, pos, v);
+		}
+		pos += 4;
+	}
+
+	@Override
+	public void writeLong(long v) throws IOException {
+		reserve(8);
+		if (bigEndian) {
+			LONG_BE.set(buf, pos, v);
+		} else {
+			LONG_LE.set(buf, pos, v);
+		}
+		pos += 8;
+	}
+
+	@Override
+	public void writeFloat(float v) throws IOException {
+		writeInt(Float.floatToIntBits(v));
+	}
+
+	@Override
+	public void writeDouble(double v) throws IOException {
+		writeLong(Double.doubleToLongBits(v));
+	}
+
+	@Override
+	public void writeBytes(String s) throws IOException {
+		for (int i = 0; i < s.length(); i++) {
+			write(s.charAt(i));
+		}
+	}
+
+	@Override
+	public void writeChars(String s) throws IOException {
+		for (int i = 0; i < s.length(); i++) {
+			writeChar(s.charAt(i));
+		}
+	}
+
+	/**
+	 * Writes a string in Java's modified UTF-8, as used by NBT.
+	 */
+	@Override
+	public void writeUTF(String s) throws IOException {
+		int len = NBTIO.getUTFLength(s);
+		if (len > 65535) throw new UTFDataFormatException("encoded string too long: "+len+" bytes");
+		writeShort(len);
+		for (int i = 0; i < s.length(); i++) {
+			char c = s.charAt(i);
+			reserve(3);
+			if (c != 0 && c < 0x80) {
+				buf[pos++] = (byte)c;
+			} else if (c < 0x800) {
+				buf[pos++] = (byte)(0xC0 | (c >> 6));
+				buf[pos++] = (byte)(0x80 | (c & 0x3F));
+			} else {
+				buf[pos++] = (byte)(0xE0 | (c >> 12));
+				buf[pos++] = (byte)(0x80 | ((c >> 6) & 0x3F));
+				buf[pos++] = (byte)(0x80 | (c & 0x3F));
+			}
+		}
+	}
+
+	@Override
+	public void flush() throws IOException {
+		flushBuffer();
+		out.flush();
+	}
+
+	@Override
+	public void close() throws IOException {
+		try {
+			flushBuffer();
+		} finally {
+			out.close();
+		}
+	}
+}
@@ -23,22 +23,20 @@
 package io.github.steveice10.opennbt;
 
 import java.io.DataInput;
-import java.io.DataInputStream;
 import java.io.DataOutput;
-import java.io.DataOutputStream;
 import java.io.EOFException;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
-import java.io.FilterInputStream;
-import java.io.FilterOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.ByteOrder;
 import java.util.zip.GZIPInputStream;
 import java.util.zip.GZIPOutputStream;
 
 import io.github.steveice10.opennbt.tag.NBTCompound;
+import io.github.steveice10.opennbt.tag.NBTList;
 import io.github.steveice10.opennbt.tag.NBTTag;
 
 /**
@@ -185,7 +183,79 @@ public class NBTIO {
 	 * @throws java.io.IOException If an I/O error occurs.
 	 */
 	public static NBTTag readTag(InputStream in, boolean littleEndian) throws IOException {
-		return readTag((DataInput)(littleEndian ? new LittleEndianDataInputStream(in) : new DataInputStream(in)));
+		return readTag(new NBTDataInput(in, littleEndian ? ByteOrder.LITTLE_ENDIAN : ByteOrder.BIG_ENDIAN));
+	}
+
+	/**
+	 * Reads an NBT tag, deduplicating identical subtrees.
+	 *
+	 * @param in		   Input stream to read from.
+	 * @param littleEndian Whether to read little endian NBT.
+	 * @param interner	   Interner to deduplicate against, or null to not.
+	 * @return The read tag, or null if the tag is an end tag.
+	 * @throws java.io.IOException If an I/O error occurs.
+	 */
+	public static NBTTag readTag(InputStream in, boolean littleEndian, NBTInterner interner) throws IOException {
+		return readTag(new NBTDataInput(in, littleEndian ? ByteOrder.LITTLE_ENDIAN : ByteOrder.BIG_ENDIAN), interner);
+	}
+
+	/**
+	 * Reads an NBT tag, deduplicating identical subtrees. Tags that were
+	 * deduplicated are shared, and must be unshared before being modified.
+	 * Each compound and list is deduplicated as soon as it's been read, so
+	 * duplicates are let go of during the read rather than after it.
+	 *
+	 * @param in	   Data input to read from.
+	 * @param interner Interner to deduplicate against, or null to not.
+	 * @return The read tag, or null if the tag is an end tag.
+	 * @throws java.io.IOException If an I/O error occurs.
+	 * @see NBTTag#share()
+	 */
+	public static NBTTag readTag(DataInput in, NBTInterner interner) throws IOException {
+		if (interner == null) return readTag(in);
+		int id = in.readUnsignedByte();
+		if(id == 0) {
+			return null;
+		}
+
+		String name = in.readUTF();
+		return readInterned(id, name, in, interner);
+	}
+
+	private static NBTTag readInterned(int id, String name, DataInput in, NBTInterner interner) throws IOException {
+		NBTTag tag;
+		if (id == 10) {
+			NBTCompound c = new NBTCompound(name);
+			try {
+				while (true) {
+					int childId = in.readUnsignedByte();
+					if (childId == 0) break;
+					String childName = in.readUTF();
+					c.put(readInterned(childId, childName, in, interner));
+				}
+			} catch (EOFException e) {
+				throw new IOException("Compound end marker not found", e);
+			}
+			tag = c;
+		} else if (id == 9) {
+			int elementId = in.readUnsignedByte();
+			Class<? extends NBTTag> type = null;
+			if (elementId != 0) {
+				type = NBTRegistry.classById(elementId);
+				if (type == null) throw new IOException("Unknown tag ID in NBTList "+elementId);
+			}
+			NBTList l = new NBTList(name, type);
+			int count = in.readInt();
+			for (int i = 0; i < count; i++) {
+				l.add(readInterned(elementId, "", in, interner));
+			}
+			tag = l;
+		} else {
+			tag = createTag(id, name);
+			tag.read(in);
+		}
+		// everything below this tag has already been through the interner
+		return interner.internRead(tag);
 	}
 
 	/**
@@ -202,16 +272,188 @@ public class NBTIO {
 		}
 
 		String name = in.readUTF();
-		NBTTag tag;
+		NBTTag tag = createTag(id, name);
+		tag.read(in);
+		return tag;
+	}
+
+	/**
+	 * Reads only the parts of an NBT tag matching the given selector.
+	 *
+	 * @param in		   Input stream to read from.
+	 * @param littleEndian Whether to read little endian NBT.
+	 * @param selector	   Paths to read, or null to read everything.
+	 * @return The read tag, or null if the tag is an end tag.
+	 * @throws java.io.IOException If an I/O error occurs.
+	 */
+	public static NBTTag readTag(InputStream in, boolean littleEndian, PathSelector selector) throws IOException {
+		return readTag(new NBTDataInput(in, littleEndian ? ByteOrder.LITTLE_ENDIAN : ByteOrder.BIG_ENDIAN), selector);
+	}
 
+	/**
+	 * Reads only the parts of an NBT tag matching the given selector.
+	 * Everything else is skipped over without being decoded, which is much
+	 * faster than reading the whole tag when only a few values are needed.
+	 *
+	 * @param in	   Data input to read from.
+	 * @param selector Paths to read, or null to read everything.
+	 * @return The read tag, or null if the tag is an end tag.
+	 * @throws java.io.IOException If an I/O error occurs.
+	 */
+	public static NBTTag readTag(DataInput in, PathSelector selector) throws IOException {
+		if (selector == null) return readTag(in);
+		int id = in.readUnsignedByte();
+		if(id == 0) {
+			return null;
+		}
+
+		String name = in.readUTF();
+		NBTTag tag = readSelected(id, name, in, selector.start());
+		// the root is always kept, even if nothing inside it was selected
+		return tag == null ? createTag(id, name) : tag;
+	}
+
+	private static NBTTag readSelected(int id, String name, DataInput in, PathSelector.Node[] states) throws IOException {
+		boolean array = id == 7 || id == 11 || id == 12;
+		if (PathSelector.isSelected(states) || (array && PathSelector.hasIndices(states))) {
+			NBTTag tag = createTag(id, name);
+			tag.read(in);
+			return tag;
+		}
+		if (id == 10) {
+			NBTCompound c = new NBTCompound(name);
+			while (true) {
+				int childId = in.readUnsignedByte();
+				if (childId == 0) break;
+				String childName = in.readUTF();
+				PathSelector.Node[] next = PathSelector.step(states, childName);
+				if (next.length == 0) {
+					skipPayload(childId, in);
+				} else {
+					NBTTag child = readSelected(childId, childName, in, next);
+					if (child != null) c.put(child);
+				}
+			}
+			return c;
+		} else if (id == 9) {
+			int elementId = in.readUnsignedByte();
+			NBTList l = new NBTList(name, elementId == 0 ? null : NBTRegistry.classById(elementId));
+			int count = in.readInt();
+			for (int i = 0; i < count; i++) {
+				PathSelector.Node[] next = PathSelector.step(states, i);
+				if (next.length == 0) {
+					skipPayload(elementId, in);
+				} else {
+					NBTTag child = readSelected(elementId, "", in, next);
+					if (child != null) {
+						PathSelector.padTo(l, i);
+						l.add(child);
+					}
+				}
+			}
+			return l;
+		}
+		// the path continues into something that can't contain anything
+		skipPayload(id, in);
+		return null;
+	}
+
+	/**
+	 * Skips over an NBT tag, including its type ID and name, without
+	 * decoding it.
+	 *
+	 * @param in Data input to read from.
+	 * @return The ID of the skipped tag, or 0 if the tag is an end tag.
+	 * @throws java.io.IOException If an I/O error occurs.
+	 */
+	public static int skipTag(DataInput in) throws IOException {
+		int id = in.readUnsignedByte();
+		if(id == 0) {
+			return 0;
+		}
+
+		skipFully(in, in.readUnsignedShort());
+		skipPayload(id, in);
+		return id;
+	}
+
+	/**
+	 * Skips over the payload of an NBT tag of the given type, without
+	 * decoding it. No tags, strings or arrays are created; fixed-size
+	 * values and arrays are skipped over in one step, and only the
+	 * structure of compounds and lists is read.
+	 *
+	 * @param id Type ID of the tag.
+	 * @param in Data input to read from.
+	 * @throws java.io.IOException If an I/O error occurs, or the type is
+	 * 		unknown.
+	 */
+	public static void skipPayload(int id, DataInput in) throws IOException {
+		int width = getPayloadWidth(id);
+		if (width > 0) {
+			skipFully(in, width);
+			return;
+		}
+		switch (id) {
+			case 7: skipFully(in, in.readInt()); break;
+			case 8: skipFully(in, in.readUnsignedShort()); break;
+			case 9: {
+				int elementId = in.readUnsignedByte();
+				int count = in.readInt();
+				int elementWidth = getPayloadWidth(elementId);
+				if (elementWidth > 0) {
+					skipFully(in, (long)count*elementWidth);
+				} else {
+					for (int i = 0; i < count; i++) {
+						skipPayload(elementId, in);
+					}
+				}
+				break;
+			}
+			case 10: {
+				while (skipTag(in) != 0) {}
+				break;
+			}
+			case 11: skipFully(in, in.readInt()*4L); break;
+			case 12: skipFully(in, in.readInt()*8L); break;
+			default: throw new IOException("Unknown tag ID "+id);
+		}
+	}
+
+	/**
+	 * @return the size of the payload of tags with the given type ID, or
+	 * 		-1 if they vary in size
+	 */
+	private static int getPayloadWidth(int id) {
+		switch (id) {
+			case 1: return 1;
+			case 2: return 2;
+			case 3: case 5: return 4;
+			case 4: case 6: return 8;
+			default: return -1;
+		}
+	}
+
+	private static void skipFully(DataInput in, long n) throws IOException {
+		if (n < 0) throw new IOException("Negative length "+n);
+		while (n > 0) {
+			int skipped = in.skipBytes((int)Math.min(n, Integer.MAX_VALUE));
+			if (skipped <= 0) {
+				// skipBytes gives up at the end of input, but so might a slow
+				// stream; readByte will tell the difference
+				in.readByte();
+				skipped = 1;
+			}
+			n -= skipped;
+		}
+	}
+
+	private static NBTTag createTag(int id, String name) throws IOException {
 		try {
-			tag = NBTRegistry.createInstance(id, name);
+			return NBTRegistry.createInstance(id, name);
 		} catch(Exception e) {
 			throw new IOException("Failed to create tag.", e);
 		}
-
-		tag.read(in);
-		return tag;
 	}
 
 	/**
@@ -234,7 +476,9 @@ public class NBTIO {
 	 * @throws java.io.IOException If an I/O error occurs.
 	 */
 	public static void writeTag(OutputStream out, NBTTag tag, boolean littleEndian) throws IOException {
-		writeTag((DataOutput) (littleEndian ? new LittleEndianDataOutputStream(out) : new DataOutputStream(out)), tag);
+		NBTDataOutput dout = new NBTDataOutput(out, littleEndian ? ByteOrder.LITTLE_ENDIAN : ByteOrder.BIG_ENDIAN);
+		writeTag(dout, tag);
+		dout.flush();
 	}
 
 	/**
@@ -254,267 +498,36 @@ public class NBTIO {
 		}
 	}
 
-	public static class LittleEndianDataInputStream extends FilterInputStream implements DataInput {
-		public LittleEndianDataInputStream(InputStream in) {
-			super(in);
-		}
-
-		@Override
-		public int read(byte[] b) throws IOException {
-			return this.in.read(b, 0, b.length);
-
-		}
-
-		@Override
-		public int read(byte[] b, int off, int len) throws IOException {
-			return this.in.read(b, off, len);
-		}
-
-		@Override
-		public void readFully(byte[] b) throws IOException {
-			this.readFully(b, 0, b.length);
-		}
-
-		@Override
-		public void readFully(byte[] b, int off, int len) throws IOException {
-			if(len < 0) {
-				throw new IndexOutOfBoundsException();
-			} else {
-				int read;
-				for(int pos = 0; pos < len; pos += read) {
-					read = this.in.read(b, off + pos, len - pos);
-					if(read < 0) {
-						throw new EOFException();
-					}
-				}
-			}
-		}
-
-		@Override
-		public int skipBytes(int n) throws IOException {
-			int total = 0;
-			int skipped = 0;
-			while(total < n && (skipped = (int) this.in.skip(n - total)) > 0) {
-				total += skipped;
-			}
-
-			return total;
-		}
-
-		@Override
-		public boolean readBoolean() throws IOException {
-			int val = this.in.read();
-			if(val < 0) {
-				throw new EOFException();
-			}
-
-			return val != 0;
-		}
-
-		@Override
-		public byte readByte() throws IOException {
-			int val = this.in.read();
-			if(val < 0) {
-				throw new EOFException();
-			}
-
-			return (byte) val;
-		}
-
-		@Override
-		public int readUnsignedByte() throws IOException {
-			int val = this.in.read();
-			if(val < 0) {
-				throw new EOFException();
-			}
-
-			return val;
-		}
-
-		@Override
-		public short readShort() throws IOException {
-			int b1 = this.in.read();
-			int b2 = this.in.read();
-			if((b1 | b2) < 0) {
-				throw new EOFException();
-			}
-
-			return (short) (b1 | (b2 << 8));
-		}
-
-		@Override
-		public int readUnsignedShort() throws IOException {
-			int b1 = this.in.read();
-			int b2 = this.in.read();
-			if((b1 | b2) < 0) {
-				throw new EOFException();
-			}
-
-			return b1 | (b2 << 8);
-		}
-
-		@Override
-		public char readChar() throws IOException {
-			int b1 = this.in.read();
-			int b2 = this.in.read();
-			if((b1 | b2) < 0) {
-				throw new EOFException();
-			}
-
-			return (char) (b1 | (b2 << 8));
-		}
-
-		@Override
-		public int readInt() throws IOException {
-			int b1 = this.in.read();
-			int b2 = this.in.read();
-			int b3 = this.in.read();
-			int b4 = this.in.read();
-			if((b1 | b2 | b3 | b4) < 0) {
-				throw new EOFException();
-			}
-
-			return b1 | (b2 << 8) | (b3 << 16) | (b4 << 24);
-		}
-
-		@Override
-		public long readLong() throws IOException {
-			long b1 = this.in.read();
-			long b2 = this.in.read();
-			long b3 = this.in.read();
-			long b4 = this.in.read();
-			long b5 = this.in.read();
-			long b6 = this.in.read();
-			long b7 = this.in.read();
-			long b8 = this.in.read();
-			if((b1 | b2 | b3 | b4 | b5 | b6 | b7 | b8) < 0) {
-				throw new EOFException();
-			}
-
-			return b1 | (b2 << 8) | (b3 << 16) | (b4 << 24) | (b5 << 32) | (b6 << 40) | (b7 << 48) | (b8 << 56);
-		}
-
-		@Override
-		public float readFloat() throws IOException {
-			return Float.intBitsToFloat(this.readInt());
-		}
-
-		@Override
-		public double readDouble() throws IOException {
-			return Double.longBitsToDouble(this.readLong());
-		}
-
-		@Override
-		public String readLine() throws IOException {
-			throw new UnsupportedOperationException("Use readUTF.");
-		}
-
-		@Override
-		public String readUTF() throws IOException {
-			byte[] bytes = new byte[this.readUnsignedShort()];
-			this.readFully(bytes);
-
-			return new String(bytes, "UTF-8");
-		}
+	/**
+	 * Calculates the number of bytes {@link #writeTag(DataOutput, NBTTag)}
+	 * would write for the given tag, without serializing it.
+	 *
+	 * @param tag Tag to measure.
+	 * @return The size of the tag, including its type ID and name.
+	 */
+	public static long getSerializedSize(NBTTag tag) {
+		if (tag == null) return 1;
+		return 3+getUTFLength(tag.getName())+tag.getPayloadSize();
 	}
 
-	public static class LittleEndianDataOutputStream extends FilterOutputStream implements DataOutput {
-		public LittleEndianDataOutputStream(OutputStream out) {
-			super(out);
-		}
-
-		@Override
-		public synchronized void write(int b) throws IOException {
-			this.out.write(b);
-		}
-
-		@Override
-		public synchronized void write(byte[] b, int off, int len) throws IOException {
-			this.out.write(b, off, len);
-		}
-
-		@Override
-		public void flush() throws IOException {
-			this.out.flush();
-		}
-
-		@Override
-		public void writeBoolean(boolean b) throws IOException {
-			this.out.write(b ? 1 : 0);
-		}
-
-		@Override
-		public void writeByte(int b) throws IOException {
-			this.out.write(b);
-		}
-
-		@Override
-		public void writeShort(int s) throws IOException {
-			this.out.write(s & 0xFF);
-			this.out.write((s >>> 8) & 0xFF);
-		}
-
-		@Override
-		public void writeChar(int c) throws IOException {
-			this.out.write(c & 0xFF);
-			this.out.write((c >>> 8) & 0xFF);
-		}
-
-		@Override
-		public void writeInt(int i) throws IOException {
-			this.out.write(i & 0xFF);
-			this.out.write((i >>> 8) & 0xFF);
-			this.out.write((i >>> 16) & 0xFF);
-			this.out.write((i >>> 24) & 0xFF);
-		}
-
-		@Override
-		public void writeLong(long l) throws IOException {
-			this.out.write((int) (l & 0xFF));
-			this.out.write((int) ((l >>> 8) & 0xFF));
-			this.out.write((int) ((l >>> 16) & 0xFF));
-			this.out.write((int) ((l >>> 24) & 0xFF));
-			this.out.write((int) ((l >>> 32) & 0xFF));
-			this.out.write((int) ((l >>> 40) & 0xFF));
-			this.out.write((int) ((l >>> 48) & 0xFF));
-			this.out.write((int) ((l >>> 56) & 0xFF));
-		}
-
-		@Override
-		public void writeFloat(float f) throws IOException {
-			this.writeInt(Float.floatToIntBits(f));
-		}
-
-		@Override
-		public void writeDouble(double d) throws IOException {
-			this.writeLong(Double.doubleToLongBits(d));
-		}
-
-		@Override
-		public void writeBytes(String s) throws IOException {
-			int len = s.length();
-			for(int index = 0; index < len; index++) {
-				this.out.write((byte) s.charAt(index));
-			}
-		}
-
-		@Override
-		public void writeChars(String s) throws IOException {
-			int len = s.length();
-			for(int index = 0; index < len; index++) {
-				char c = s.charAt(index);
-				this.out.write(c & 0xFF);
-				this.out.write((c >>> 8) & 0xFF);
+	/**
+	 * Calculates the length of the given string in the modified UTF-8
+	 * encoding used by {@link DataOutput#writeUTF}, not including the
+	 * length prefix.
+	 *
+	 * @param str String to measure.
+	 * @return The encoded length of the string.
+	 */
+	public static int getUTFLength(String str) {
+		int len = str.length();
+		for (int i = 0; i < str.length(); i++) {
+			char c = str.charAt(i);
+			if (c >= 0x0800) {
+				len += 2;
+			} else if (c >= 0x80 || c == 0) {
+				len++;
 			}
 		}
-
-		@Override
-		public void writeUTF(String s) throws IOException {
-			byte[] bytes = s.getBytes("UTF-8");
-
-			this.writeShort(bytes.length);
-			this.write(bytes);
-		}
+		return len;
 	}
-	
 }
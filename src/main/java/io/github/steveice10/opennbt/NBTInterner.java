@@ -0,0 +1,167 @@
+/*
+ * Copyright (C) 2013-2017 Steveice10, 2018 - 2023 Una Thompson (unascribed)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies
+ * of the Software, and to permit persons to whom the Software is furnished to do
+ * so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package io.github.steveice10.opennbt;
+
+import java.util.Map;
+
+import com.google.common.collect.Maps;
+
+import io.github.steveice10.opennbt.tag.NBTCompound;
+import io.github.steveice10.opennbt.tag.NBTList;
+import io.github.steveice10.opennbt.tag.NBTTag;
+
+/**
+ * Deduplicates tags that are written as identical bytes, so that every place they appear refers to a
+ * single {@link NBTTag#share shared} instance. Files with lots of repeated
+ * structure, such as inventories and block entity lists, take up much less
+ * memory this way.
+ * <p>
+ * An interner can be used for any number of trees, which will then share
+ * tags with each other too.
+ */
+public class NBTInterner {
+	/**
+	 * The default size limit, in bytes, for tags to be deduplicated.
+	 */
+	public static final int DEFAULT_MAX_SIZE = 256;
+	
+	private final Map<Key, NBTTag> pool = Maps.newHashMap();
+	private final long maxSize;
+
+	public NBTInterner() {
+		this(DEFAULT_MAX_SIZE);
+	}
+	
+	/**
+	 * @param maxSize the largest payload size, in bytes, of a tag that will
+	 * 		be deduplicated; bigger tags are rarely repeated and are more
+	 * 		expensive to compare
+	 */
+	public NBTInterner(long maxSize) {
+		this.maxSize = maxSize;
+	}
+	
+	/**
+	 * @return a new interner with the same size limit, which starts out
+	 * 		having seen everything this one has, for reading something that
+	 * 		may turn out not to be what it was thought to be
+	 */
+	public NBTInterner copy() {
+		NBTInterner copy = new NBTInterner(maxSize);
+		copy.pool.putAll(pool);
+		return copy;
+	}
+	
+	/**
+	 * Take on everything the given interner has seen, such as a
+	 * {@link #copy} after what it read turned out to be good.
+	 */
+	public void addAll(NBTInterner that) {
+		pool.putAll(that.pool);
+	}
+	
+	public long getMaxSize() {
+		return maxSize;
+	}
+	
+	/**
+	 * Deduplicate the given tag and its descendants against everything this
+	 * interner has seen so far. Children are replaced in place; the tag
+	 * itself is replaced by returning a different one.
+	 *
+	 * @return the tag to use in place of the given one, which will be shared
+	 * 		if it's small enough to be deduplicated
+	 */
+	public NBTTag intern(NBTTag tag) {
+		if (tag == null || tag.isShared()) return tag;
+		if (tag instanceof NBTCompound) {
+			NBTCompound c = (NBTCompound)tag;
+			for (String key : c.keySet().toArray(new String[c.size()])) {
+				NBTTag child = c.get(key);
+				NBTTag interned = intern(child);
+				if (interned != child) {
+					c.put(interned);
+				}
+			}
+		} else if (tag instanceof NBTList) {
+			NBTList l = (NBTList)tag;
+			for (int i = 0; i < l.size(); i++) {
+				NBTTag child = l.get(i);
+				NBTTag interned = intern(child);
+				if (interned != child) {
+					l.set(i, interned);
+				}
+			}
+		}
+		return internRead(tag);
+	}
+	
+	/**
+	 * Deduplicate just the given tag, whose descendants have already been
+	 * through this interner, as when interning a tree while it's read.
+	 */
+	NBTTag internRead(NBTTag tag) {
+		if (tag.isShared() || tag.getPayloadSize() > maxSize) return tag;
+		Key k = new Key(tag);
+		NBTTag existing = pool.get(k);
+		if (existing != null) return existing;
+		tag.share();
+		pool.put(k, tag);
+		return tag;
+	}
+	
+	/**
+	 * @return the number of distinct tags in the pool
+	 */
+	public int size() {
+		return pool.size();
+	}
+	
+	public void clear() {
+		pool.clear();
+	}
+	
+	private static final class Key {
+		private final NBTTag tag;
+		
+		public Key(NBTTag tag) {
+			this.tag = tag;
+		}
+		
+		@Override
+		public int hashCode() {
+			return tag.getName().hashCode()*31+tag.hashCode();
+		}
+		
+		@Override
+		public boolean equals(Object obj) {
+			if (!(obj instanceof Key)) return false;
+			NBTTag that = ((Key)obj).tag;
+			// equal isn't enough, as the shared tag will be written in place
+			// of this one: compounds have to keep their order, and -0.0 its
+			// sign. NBTTag equality doesn't care about names, but compounds do
+			return tag.getName().equals(that.getName()) && tag.encodesSameAs(that);
+		}
+	}
+	
+}
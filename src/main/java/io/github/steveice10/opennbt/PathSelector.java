@@ -0,0 +1,253 @@
+/*
+ * Copyright (C) 2013-2017 Steveice10, 2018 - 2023 Una Thompson (unascribed)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies
+ * of the Software, and to permit persons to whom the Software is furnished to do
+ * so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package io.github.steveice10.opennbt;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Map;
+
+import com.google.common.collect.Maps;
+
+import io.github.steveice10.opennbt.tag.NBTCompound;
+import io.github.steveice10.opennbt.tag.NBTList;
+import io.github.steveice10.opennbt.tag.NBTTag;
+import io.github.steveice10.opennbt.tag.array.NBTByteArray;
+import io.github.steveice10.opennbt.tag.array.NBTIntArray;
+import io.github.steveice10.opennbt.tag.array.NBTLongArray;
+
+/**
+ * A set of paths to pick out of a tree, such as {@code /Data/Player/Inventory}
+ * or {@code /Level/Entities[*]/id}. Paths start at the root tag, whatever its
+ * name, and are made of compound names separated by slashes, with list
+ * indices in square brackets; {@code *} in place of a name or an index
+ * matches any. A backslash escapes the character after it.
+ * <p>
+ * Selecting a path keeps the tag there along with everything below it, and
+ * the compounds and lists leading to it, containing only what was selected.
+ * Containers a path leads through are kept even if what it leads to doesn't
+ * exist, so lists selected with {@code [*]} keep their length.
+ * <p>
+ * Selected list elements keep their original indices: elements before the
+ * last selected one that weren't selected themselves are kept as empty
+ * placeholders, new tags of the list's element type with their default
+ * value, and elements after it are left out. So {@code /Level/Entities[5]/id}
+ * results in a list of six compounds, the first five of them empty.
+ *
+ * @see NBTIO#readTag(java.io.DataInput, PathSelector)
+ */
+public class PathSelector {
+	static final Node[] NONE = new Node[0];
+	
+	static final class Node {
+		private final Map<String, Node> names = Maps.newHashMap();
+		private final Map<Integer, Node> indices = Maps.newHashMap();
+		private Node anyName;
+		private Node anyIndex;
+		private boolean selected;
+		
+		private boolean hasIndices() {
+			return anyIndex != null || !indices.isEmpty();
+		}
+	}
+	
+	private final Node root = new Node();
+	
+	public PathSelector(String... paths) {
+		for (String path : paths) {
+			add(path);
+		}
+	}
+	
+	/**
+	 * Select another path.
+	 *
+	 * @return this selector, for chaining
+	 * @throws IllegalArgumentException if the path is malformed
+	 */
+	public PathSelector add(String path) {
+		Node n = root;
+		StringBuilder seg = new StringBuilder();
+		boolean escaped = false;
+		boolean inIndex = false;
+		for (int i = 0; i <= path.length(); i++) {
+			char c = i == path.length() ? '/' : path.charAt(i);
+			if (escaped) {
+				seg.append(c);
+				escaped = false;
+			} else if (c == '\\') {
+				escaped = true;
+			} else if (inIndex) {
+				if (c == ']') {
+					n = index(n, seg.toString(), path);
+					seg.setLength(0);
+					inIndex = false;
+				} else if (c == '/' && i == path.length()) {
+					throw new IllegalArgumentException("Unclosed [ in "+path);
+				} else {
+					seg.append(c);
+				}
+			} else if (c == '/' || c == '[') {
+				if (seg.length() > 0) {
+					n = name(n, seg.toString());
+					seg.setLength(0);
+				}
+				inIndex = c == '[';
+			} else {
+				seg.append(c);
+			}
+		}
+		n.selected = true;
+		return this;
+	}
+	
+	private static Node name(Node n, String name) {
+		if ("*".equals(name)) {
+			if (n.anyName == null) n.anyName = new Node();
+			return n.anyName;
+		}
+		return n.names.computeIfAbsent(name, k -> new Node());
+	}
+	
+	private static Node index(Node n, String index, String path) {
+		if ("*".equals(index)) {
+			if (n.anyIndex == null) n.anyIndex = new Node();
+			return n.anyIndex;
+		}
+		int i;
+		try {
+			i = Integer.parseInt(index.trim());
+		} catch (NumberFormatException e) {
+			i = -1;
+		}
+		if (i < 0) {
+			throw new IllegalArgumentException(index+" is not a valid list index in "+path);
+		}
+		return n.indices.computeIfAbsent(i, k -> new Node());
+	}
+	
+	/**
+	 * Pick the selected paths out of an already loaded tree. The given tree
+	 * is left alone; selected tags are copied.
+	 *
+	 * @return the selected parts of the given tag, or null if it doesn't
+	 * 		contain any of them
+	 */
+	public NBTTag select(NBTTag tag) {
+		if (tag == null) return null;
+		return select(tag, start());
+	}
+	
+	private NBTTag select(NBTTag tag, Node[] states) {
+		if (isSelected(states) || (isArray(tag) && hasIndices(states))) {
+			return tag.copy();
+		}
+		if (tag instanceof NBTCompound) {
+			NBTCompound in = (NBTCompound)tag;
+			NBTCompound out = new NBTCompound(tag.getName());
+			for (NBTTag child : in) {
+				Node[] next = step(states, child.getName());
+				if (next.length == 0) continue;
+				NBTTag selected = select(child, next);
+				if (selected != null) out.put(selected);
+			}
+			return out;
+		} else if (tag instanceof NBTList) {
+			NBTList in = (NBTList)tag;
+			NBTList out = new NBTList(tag.getName(), in.getElementType());
+			for (int i = 0; i < in.size(); i++) {
+				Node[] next = step(states, i);
+				if (next.length == 0) continue;
+				NBTTag selected = select(in.get(i), next);
+				if (selected != null) {
+					try {
+						padTo(out, i);
+					} catch (IOException e) {
+						throw new UncheckedIOException(e);
+					}
+					out.add(selected);
+				}
+			}
+			return out;
+		}
+		return null;
+	}
+	
+	/**
+	 * Fill the given list with placeholders up to the given size, so the
+	 * next element added to it lands at its original index.
+	 */
+	static void padTo(NBTList list, int size) throws IOException {
+		while (list.size() < size) {
+			list.add(NBTRegistry.createInstance(list.getElementType(), ""));
+		}
+	}
+	
+	private static boolean isArray(NBTTag tag) {
+		return tag instanceof NBTByteArray || tag instanceof NBTIntArray || tag instanceof NBTLongArray;
+	}
+	
+	Node[] start() {
+		return new Node[] { root };
+	}
+	
+	static Node[] step(Node[] states, String name) {
+		Node[] out = NONE;
+		for (Node n : states) {
+			out = append(out, n.names.get(name));
+			out = append(out, n.anyName);
+		}
+		return out;
+	}
+	
+	static Node[] step(Node[] states, int index) {
+		Node[] out = NONE;
+		for (Node n : states) {
+			out = append(out, n.indices.get(index));
+			out = append(out, n.anyIndex);
+		}
+		return out;
+	}
+	
+	private static Node[] append(Node[] arr, Node n) {
+		if (n == null) return arr;
+		Node[] out = new Node[arr.length+1];
+		System.arraycopy(arr, 0, out, 0, arr.length);
+		out[arr.length] = n;
+		return out;
+	}
+	
+	static boolean isSelected(Node[] states) {
+		for (Node n : states) {
+			if (n.selected) return true;
+		}
+		return false;
+	}
+	
+	static boolean hasIndices(Node[] states) {
+		for (Node n : states) {
+			if (n.hasIndices()) return true;
+		}
+		return false;
+	}
+	
+}
@@ -69,27 +69,50 @@ public class NBTCompound extends NBTTag implements NBTParent {
 		return (T) this.map.get(tagName);
 	}
 
+	/**
+	 * Swap the child with the given name for a private copy if it's
+	 * {@link NBTTag#share shared}, so that it can be modified.
+	 *
+	 * @return the child, or null if there is no child with the given name
+	 */
+	public <T extends NBTTag> T unshare(String tagName) {
+		NBTTag t = this.map.get(tagName);
+		if (t == null || !t.isShared()) return (T) t;
+		checkMutable();
+		NBTTag copy = t.copy();
+		// the contents are the same, so there's no need to mark dirty
+		this.map.put(tagName, copy);
+		copy.setParent(this);
+		return (T) copy;
+	}
+
 	public <T extends NBTTag> T put(T tag) {
+		checkMutable();
 		T t = (T) this.map.put(tag.getName(), tag);
 		tag.setParent(this);
 		if (t != null) {
 			t.setParent(null);
 		}
+		markDirty();
 		return t;
 	}
 
 	public <T extends NBTTag> T remove(String tagName) {
+		checkMutable();
 		T t = (T) this.map.remove(tagName);
 		if (t != null) {
 			t.setParent(null);
+			markDirty();
 		}
 		return t;
 	}
 	
 	@Override
 	public boolean remove(NBTTag tag) {
+		checkMutable();
 		if (this.map.remove(tag.getName(), tag)) {
 			tag.setParent(null);
+			markDirty();
 			return true;
 		}
 		return false;
@@ -110,10 +133,12 @@ public class NBTCompound extends NBTTag implements NBTParent {
 
 	@Override
 	public void clear() {
+		checkMutable();
 		for (NBTTag tag : map.values()) {
 			tag.setParent(null);
 		}
 		this.map.clear();
+		markDirty();
 	}
 
 	@Override
@@ -147,6 +172,34 @@ public class NBTCompound extends NBTTag implements NBTParent {
 		}
 		out.writeByte(0);
 	}
+	
+	@Override
+	protected long computePayloadSize() {
+		long size = 1;
+		for (NBTTag tag : this.map.values()) {
+			size += NBTIO.getSerializedSize(tag);
+		}
+		return size;
+	}
+	
+	@Override
+	protected long computeContentHash() {
+		long sum = 0;
+		// compound equality doesn't care about order, so neither can this
+		for (NBTTag tag : this.map.values()) {
+			sum += mixHash(hashName(tag.getName()), tag.getContentHash());
+		}
+		return mixHash(10, sum);
+	}
+
+	@Override
+	public NBTCompound copy() {
+		NBTCompound copy = new NBTCompound(getName());
+		for (NBTTag tag : this.map.values()) {
+			copy.put(tag.isShared() ? tag : tag.copy());
+		}
+		return copy;
+	}
     
 	@Override
 	public void destringify(StringifiedNBTReader in) throws IOException {
@@ -198,10 +251,22 @@ public class NBTCompound extends NBTTag implements NBTParent {
 	protected boolean equalsChecked(NBTTag that) {
 		return Objects.equal(this.map, ((NBTCompound)that).map);
 	}
+	
+	@Override
+	protected boolean encodesSameAsChecked(NBTTag that) {
+		Map<String, NBTTag> other = ((NBTCompound)that).map;
+		if (this.map.size() != other.size()) return false;
+		Iterator<NBTTag> iter = other.values().iterator();
+		for (NBTTag tag : this.map.values()) {
+			NBTTag thatTag = iter.next();
+			if (!tag.getName().equals(thatTag.getName()) || !tag.encodesSameAs(thatTag)) return false;
+		}
+		return true;
+	}
 
 	@Override
 	public int hashCode() {
-		return this.map.hashCode();
+		return Long.hashCode(getContentHash());
 	}
 
 	@Override
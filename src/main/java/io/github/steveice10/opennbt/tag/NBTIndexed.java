@@ -22,6 +22,8 @@
 
 package io.github.steveice10.opennbt.tag;
 
+import java.util.Collection;
+
 public interface NBTIndexed extends NBTParent {
 
 	<T extends NBTTag> T get(int index);
@@ -29,6 +31,29 @@ public interface NBTIndexed extends NBTParent {
 	boolean add(int idx, NBTTag tag);
 	NBTTag set(int idx, NBTTag tag);
 	
+	/**
+	 * Insert all of the given tags at the given index in one step, rather
+	 * than shifting the rest of this tag's elements once per tag. Nothing
+	 * is added unless every tag can be.
+	 * 
+	 * @throws IllegalArgumentException if any of the tags isn't of a type
+	 * 		this tag can hold
+	 */
+	boolean addAll(int idx, Collection<? extends NBTTag> tags);
+	default boolean addAll(Collection<? extends NBTTag> tags) {
+		return addAll(size(), tags);
+	}
+	/**
+	 * Remove the elements from {@code from}, inclusive, to {@code to},
+	 * exclusive.
+	 */
+	void removeRange(int from, int to);
+	/**
+	 * Set the elements from {@code from}, inclusive, to {@code to},
+	 * exclusive, to the value of the given tag.
+	 */
+	void fill(int from, int to, NBTTag tag);
+	
 	Class<? extends NBTTag> getElementType();
 	
 }
@@ -25,11 +25,13 @@ package io.github.steveice10.opennbt.tag;
 import java.io.DataInput;
 import java.io.DataOutput;
 import java.io.IOException;
+import java.util.Collection;
 import java.util.Iterator;
 import java.util.List;
 
 import com.google.common.base.Joiner;
 import com.google.common.base.Objects;
+import com.google.common.base.Preconditions;
 import com.google.common.collect.Iterators;
 import com.google.common.collect.Lists;
 
@@ -92,16 +94,19 @@ public class NBTList extends NBTTag implements NBTParent, NBTIndexed {
 	 */
 	@Override
 	public boolean add(int idx, NBTTag tag) throws IllegalArgumentException {
+		checkMutable();
 		if (tag == null) return false;
 		checkOrAdoptType(tag);
 
 		this.list.add(idx, tag);
 		tag.setParent(this);
+		markDirty();
 		return true;
 	}
 	
 	@Override
 	public NBTTag set(int idx, NBTTag tag) throws IllegalArgumentException {
+		checkMutable();
 		if (tag == null) return null;
 		checkOrAdoptType(tag);
 		
@@ -110,9 +115,59 @@ public class NBTList extends NBTTag implements NBTParent, NBTIndexed {
 		if (old != null) {
 			old.setParent(null);
 		}
+		markDirty();
 		return old;
 	}
 
+	@Override
+	public boolean addAll(int idx, Collection<? extends NBTTag> tags) throws IllegalArgumentException {
+		checkMutable();
+		// check everything that can fail up front, so a bad index or tag
+		// leaves the list exactly as it was
+		Preconditions.checkPositionIndex(idx, size());
+		Class<? extends NBTTag> newType = this.type;
+		for (NBTTag tag : tags) {
+			if (tag == null) return false;
+			if (newType == null) {
+				newType = tag.getClass();
+			} else if (tag.getClass() != newType) {
+				throw new IllegalArgumentException("Attempted to add an "+tag.getClass().getSimpleName()+" to a NBTList of type "+newType.getSimpleName());
+			}
+			if (!tag.isShared() && tag.getParent() != null && tag.getParent() != this) {
+				throw new IllegalStateException("Tag already has a parent, it must be removed from its old parent first");
+			}
+		}
+		if (tags.isEmpty()) return false;
+		this.type = newType;
+		
+		this.list.addAll(idx, tags);
+		for (NBTTag tag : tags) {
+			tag.setParent(this);
+		}
+		markDirty();
+		return true;
+	}
+	
+	/**
+	 * Sets every element in the given range to a copy of the given tag.
+	 * The tag itself is not added to this list.
+	 */
+	@Override
+	public void fill(int from, int to, NBTTag tag) throws IllegalArgumentException {
+		checkMutable();
+		Preconditions.checkPositionIndexes(from, to, size());
+		if (from == to) return;
+		checkOrAdoptType(tag);
+		
+		for (int i = from; i < to; i++) {
+			// shared tags can go in any number of slots as they are
+			NBTTag copy = tag.isShared() ? tag : tag.copy();
+			copy.setParent(this);
+			this.list.set(i, copy).setParent(null);
+		}
+		markDirty();
+	}
+
 	private void checkOrAdoptType(NBTTag tag) {
 		// If empty list, use this as tag type.
 		if (this.type == null) {
@@ -130,23 +185,38 @@ public class NBTList extends NBTTag implements NBTParent, NBTIndexed {
 	 */
 	@Override
 	public boolean remove(NBTTag tag) {
-		boolean b = this.list.remove(tag);
-		if (b) {
+		checkMutable();
+		// by identity, as other elements may be equal to it
+		int i = indexOf(tag);
+		if (i == -1) return false;
+		remove(i);
+		return true;
+	}
+	
+	@Override
+	public void removeRange(int from, int to) {
+		checkMutable();
+		Preconditions.checkPositionIndexes(from, to, size());
+		List<NBTTag> range = this.list.subList(from, to);
+		for (NBTTag tag : range) {
 			tag.setParent(null);
-			if (this.isEmpty()) {
-				this.type = null;
-			}
 		}
-		return b;
+		range.clear();
+		if (this.isEmpty()) {
+			this.type = null;
+		}
+		markDirty();
 	}
 	
 	public <T extends NBTTag> T remove(int index) {
+		checkMutable();
 		T t = (T) this.list.remove(index);
 		if (t != null) {
 			t.setParent(null);
 			if (this.isEmpty()) {
 				this.type = null;
 			}
+			markDirty();
 		}
 		return t;
 	}
@@ -163,6 +233,23 @@ public class NBTList extends NBTTag implements NBTParent, NBTIndexed {
 		return (T) this.list.get(index);
 	}
 
+	/**
+	 * Swap the element at the given index for a private copy if it's
+	 * {@link NBTTag#share shared}, so that it can be modified.
+	 *
+	 * @return the element at the given index
+	 */
+	public <T extends NBTTag> T unshare(int index) {
+		NBTTag t = this.list.get(index);
+		if (!t.isShared()) return (T) t;
+		checkMutable();
+		NBTTag copy = t.copy();
+		// the contents are the same, so there's no need to mark dirty
+		this.list.set(index, copy);
+		copy.setParent(this);
+		return (T) copy;
+	}
+
 	/**
 	 * Gets the number of tags in this list tag.
 	 *
@@ -180,11 +267,13 @@ public class NBTList extends NBTTag implements NBTParent, NBTIndexed {
 	
 	@Override
 	public void clear() {
+		checkMutable();
 		for (NBTTag tag : list) {
 			tag.setParent(null);
 		}
 		this.list.clear();
 		this.type = null;
+		markDirty();
 	}
 	
 	public int indexOf(NBTTag tag) {
@@ -239,6 +328,33 @@ public class NBTList extends NBTTag implements NBTParent, NBTIndexed {
 			tag.write(out);
 		}
 	}
+	
+	@Override
+	protected long computePayloadSize() {
+		long size = 5;
+		for (NBTTag tag : this.list) {
+			size += tag.getPayloadSize();
+		}
+		return size;
+	}
+
+	@Override
+	protected long computeContentHash() {
+		long hash = mixHash(9, this.type == null ? 0 : NBTRegistry.idForClass(this.type));
+		for (NBTTag tag : this.list) {
+			hash = mixHash(hash, tag.getContentHash());
+		}
+		return hash;
+	}
+
+	@Override
+	public NBTList copy() {
+		NBTList copy = new NBTList(getName(), this.type);
+		for (NBTTag tag : this.list) {
+			copy.add(tag.isShared() ? tag : tag.copy());
+		}
+		return copy;
+	}
 
 	@Override
 	public void destringify(StringifiedNBTReader in) throws IOException {
@@ -283,10 +399,20 @@ public class NBTList extends NBTTag implements NBTParent, NBTIndexed {
 		return this.type == ((NBTList)that).type
 				&& Objects.equal(this.list, ((NBTList)that).list);
 	}
+	
+	@Override
+	protected boolean encodesSameAsChecked(NBTTag that) {
+		List<NBTTag> other = ((NBTList)that).list;
+		if (this.type != ((NBTList)that).type || this.list.size() != other.size()) return false;
+		for (int i = 0; i < this.list.size(); i++) {
+			if (!this.list.get(i).encodesSameAs(other.get(i))) return false;
+		}
+		return true;
+	}
 
 	@Override
 	public int hashCode() {
-		return this.list.hashCode();
+		return Long.hashCode(getContentHash());
 	}
 
 	@Override
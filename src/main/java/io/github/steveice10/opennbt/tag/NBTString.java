@@ -25,8 +25,11 @@ package io.github.steveice10.opennbt.tag;
 import java.io.DataInput;
 import java.io.DataOutput;
 import java.io.IOException;
+import com.google.common.base.Charsets;
 import com.google.common.base.Objects;
 
+import io.airlift.compress.zstd.XxHash64;
+import io.github.steveice10.opennbt.NBTIO;
 import io.github.steveice10.opennbt.SNBTIO.StringifiedNBTReader;
 import io.github.steveice10.opennbt.SNBTIO.StringifiedNBTWriter;
 
@@ -48,7 +51,9 @@ public class NBTString extends NBTTag implements Comparable<NBTString> {
 	}
 
 	public void setValue(String value) {
+		checkMutable();
 		this.value = value;
+		markDirty();
 	}
 	
 	@Override
@@ -60,6 +65,21 @@ public class NBTString extends NBTTag implements Comparable<NBTString> {
 	public void write(DataOutput out) throws IOException {
 		out.writeUTF(this.value);
 	}
+	
+	@Override
+	protected long computePayloadSize() {
+		return 2+NBTIO.getUTFLength(this.value);
+	}
+
+	@Override
+	protected long computeContentHash() {
+		return new XxHash64(8).update(this.value.getBytes(Charsets.UTF_8)).hash();
+	}
+
+	@Override
+	public NBTString copy() {
+		return new NBTString(getName(), this.value);
+	}
 
 	@Override
 	public void destringify(StringifiedNBTReader in) throws IOException {
@@ -22,10 +22,21 @@
 
 package io.github.steveice10.opennbt.tag;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.DataInput;
+import java.io.DataInputStream;
 import java.io.DataOutput;
+import java.io.DataOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteOrder;
 
+import io.airlift.compress.zstd.XxHash64;
+import io.github.steveice10.opennbt.NBTDataOutput;
+import io.github.steveice10.opennbt.NBTIO;
+import io.github.steveice10.opennbt.NBTRegistry;
 import io.github.steveice10.opennbt.SNBTIO.StringifiedNBTReader;
 import io.github.steveice10.opennbt.SNBTIO.StringifiedNBTWriter;
 
@@ -36,6 +47,10 @@ import io.github.steveice10.opennbt.SNBTIO.StringifiedNBTWriter;
 public abstract class NBTTag {
 	private String name;
 	private NBTParent parent;
+	private long payloadSize = -1;
+	private long contentHash;
+	private boolean contentHashValid;
+	private boolean shared;
 
 	public NBTTag(String name) {
 		this.name = name;
@@ -45,11 +60,18 @@ public abstract class NBTTag {
 		return this.name;
 	}
 	
+	/**
+	 * @return the parent of this tag, or null if it has none or is
+	 * 		{@link #share shared}
+	 */
 	public final NBTParent getParent() {
 		return parent;
 	}
 	
 	protected final void setParent(NBTParent parent) {
+		// shared tags can be in any number of places at once, so they don't
+		// get to have just one parent
+		if (shared) return;
 		if (this.parent != null && parent != null && parent != this.parent) {
 			throw new IllegalStateException("Tag already has a parent, it must be removed from its old parent first");
 		}
@@ -62,6 +84,164 @@ public abstract class NBTTag {
 		}
 	}
 	
+	/**
+	 * Freeze this tag and all of its descendants, allowing it to be put in
+	 * any number of parents at once. Shared tags don't know their parent,
+	 * and throw if they're modified; use {@link NBTCompound#unshare} or
+	 * {@link NBTList#unshare} to swap one for a private copy first.
+	 */
+	public final void share() {
+		if (shared) return;
+		// array elements are made up on demand, so there's nothing to share
+		if (this instanceof NBTCompound || this instanceof NBTList) {
+			for (NBTTag child : (NBTParent)this) {
+				child.share();
+			}
+		}
+		// these can't change anymore, so there's no better time
+		getPayloadSize();
+		getContentHash();
+		shared = true;
+		parent = null;
+	}
+	
+	public final boolean isShared() {
+		return shared;
+	}
+	
+	/**
+	 * Must be called by anything that modifies a tag, before it does so.
+	 */
+	protected final void checkMutable() {
+		if (shared) {
+			throw new IllegalStateException("Tag is shared, a private copy must be swapped in for it before it can be modified");
+		}
+	}
+	
+	/**
+	 * @return an unshared copy of this tag with the same name and no parent.
+	 * 		Shared descendants are reused rather than copied
+	 */
+	public NBTTag copy() {
+		try {
+			ByteArrayOutputStream baos = new ByteArrayOutputStream();
+			write(new DataOutputStream(baos));
+			NBTTag tag = NBTRegistry.createInstance(getClass(), getName());
+			tag.read(new DataInputStream(new ByteArrayInputStream(baos.toByteArray())));
+			return tag;
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+	
+	/**
+	 * @return the number of bytes {@link #write} will produce for this tag,
+	 * 		remembered until this tag or one of its descendants is modified
+	 */
+	public final long getPayloadSize() {
+		if (payloadSize < 0) {
+			payloadSize = computePayloadSize();
+		}
+		return payloadSize;
+	}
+	
+	protected abstract long computePayloadSize();
+	
+	/**
+	 * @return a 64-bit hash of this tag's contents, not including its name.
+	 * 		Equal tags always have equal content hashes. Remembered for
+	 * 		parents until they or one of their descendants is modified
+	 */
+	public final long getContentHash() {
+		if (contentHashValid) return contentHash;
+		long hash = computeContentHash();
+		// leaves are cheap to hash, and array element flyweights can have
+		// their value changed out from under them, so only parents remember
+		if (this instanceof NBTParent) {
+			contentHash = hash;
+			contentHashValid = true;
+		}
+		return hash;
+	}
+	
+	/**
+	 * Hashes the payload as written by {@link #write}, which is correct for
+	 * any tag whose equality is the same as that of its encoding. Parents
+	 * should override this to combine the hashes of their children, and
+	 * other tags to hash their value directly, which is much cheaper.
+	 */
+	protected long computeContentHash() {
+		XxHash64 hasher = new XxHash64(NBTRegistry.idForClass(getClass()));
+		NBTDataOutput out = new NBTDataOutput(new OutputStream() {
+			private final byte[] one = new byte[1];
+			
+			@Override
+			public void write(int b) {
+				one[0] = (byte)b;
+				hasher.update(one);
+			}
+			
+			@Override
+			public void write(byte[] b, int off, int len) {
+				hasher.update(b, off, len);
+			}
+		}, ByteOrder.BIG_ENDIAN);
+		try {
+			write(out);
+			out.flush();
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+		return hasher.hash();
+	}
+	
+	/**
+	 * @return a 64-bit hash of the given tag name's modified UTF-8 encoding,
+	 * 		the same bytes it's written to a file as
+	 */
+	protected static long hashName(String name) {
+		byte[] buf = new byte[NBTIO.getUTFLength(name)];
+		int pos = 0;
+		for (int i = 0; i < name.length(); i++) {
+			char c = name.charAt(i);
+			if (c != 0 && c < 0x80) {
+				buf[pos++] = (byte)c;
+			} else if (c < 0x800) {
+				buf[pos++] = (byte)(0xC0 | (c >> 6));
+				buf[pos++] = (byte)(0x80 | (c & 0x3F));
+			} else {
+				buf[pos++] = (byte)(0xE0 | (c >> 12));
+				buf[pos++] = (byte)(0x80 | ((c >> 6) & 0x3F));
+				buf[pos++] = (byte)(0x80 | (c & 0x3F));
+			}
+		}
+		return new XxHash64().update(buf).hash();
+	}
+	
+	/**
+	 * Mixes the given value into a running content hash.
+	 */
+	protected static long mixHash(long hash, long value) {
+		return XxHash64.hash((hash*0x9E3779B185EBCA87L)^value);
+	}
+	
+	/**
+	 * Forget anything remembered about the contents of this tag and its
+	 * ancestors. Must be called by anything that modifies a tag.
+	 */
+	protected final void markDirty() {
+		payloadSize = -1;
+		contentHashValid = false;
+		NBTTag t = (NBTTag)getParent();
+		// a parent never remembers anything its children have forgotten, so
+		// we can stop as soon as we reach one that has nothing to forget
+		while (t != null && (t.payloadSize >= 0 || t.contentHashValid)) {
+			t.payloadSize = -1;
+			t.contentHashValid = false;
+			t = (NBTTag)t.getParent();
+		}
+	}
+	
 	public abstract String stringValue();
 
 	public abstract void read(DataInput in) throws IOException;
@@ -84,10 +264,36 @@ public abstract class NBTTag {
 		if (obj == null) return false;
 		if (this == obj) return true;
 		if (obj.getClass() != this.getClass()) return false;
+		// hashes are remembered for parents, so this usually saves a deep comparison
+		if (this instanceof NBTParent && getContentHash() != ((NBTTag)obj).getContentHash()) return false;
 		return equalsChecked((NBTTag)obj);
 	}
 	
 	protected abstract boolean equalsChecked(NBTTag that);
+	
+	/**
+	 * Stricter than {@link #equals}: compounds must have their children in
+	 * the same order, and floating point values the same bits, so that
+	 * {@code -0.0} and {@code 0.0} differ. Like equality, this tag's own
+	 * name isn't compared, but the names of its descendants are.
+	 *
+	 * @return {@code true} if the given tag's payload is written as exactly
+	 * 		the same bytes as this one's
+	 */
+	public final boolean encodesSameAs(NBTTag that) {
+		if (this == that) return true;
+		if (that == null || that.getClass() != this.getClass()) return false;
+		if (this instanceof NBTParent && getContentHash() != that.getContentHash()) return false;
+		return encodesSameAsChecked(that);
+	}
+	
+	/**
+	 * Equality is the same as that of the encoding for most tags, so this
+	 * defaults to {@link #equalsChecked}.
+	 */
+	protected boolean encodesSameAsChecked(NBTTag that) {
+		return equalsChecked(that);
+	}
 	@Override
 	public abstract int hashCode();
 	@Override
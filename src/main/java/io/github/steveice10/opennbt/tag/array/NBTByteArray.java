@@ -25,21 +25,31 @@ package io.github.steveice10.opennbt.tag.array;
 import java.io.DataInput;
 import java.io.DataOutput;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.Iterator;
+import java.util.Objects;
+import java.util.function.IntConsumer;
+import java.util.function.IntUnaryOperator;
 
 import com.google.common.collect.AbstractIterator;
-import com.google.common.primitives.Bytes;
 
+import io.airlift.compress.zstd.XxHash64;
 import io.github.steveice10.opennbt.SNBTIO.StringifiedNBTReader;
 import io.github.steveice10.opennbt.SNBTIO.StringifiedNBTWriter;
 import io.github.steveice10.opennbt.tag.NBTParent;
 import io.github.steveice10.opennbt.tag.NBTTag;
+import io.github.steveice10.opennbt.tag.array.support.ByteCursor;
 import io.github.steveice10.opennbt.tag.array.support.NBTFakeByte;
 import io.github.steveice10.opennbt.tag.number.NBTByte;
 
 public class NBTByteArray extends NBTArray implements NBTParent {
+	// may be larger than size, so appends and inserts don't need to
+	// reallocate every time
 	private byte[] value;
+	private int size;
 
 	public NBTByteArray(String name) {
 		this(name, new byte[0]);
@@ -48,40 +58,203 @@ public class NBTByteArray extends NBTArray implements NBTParent {
 	public NBTByteArray(String name, byte[] value) {
 		super(name);
 		this.value = value;
+		this.size = value.length;
 	}
 
 	public byte[] getValue() {
-		return this.value.clone();
+		return Arrays.copyOf(this.value, this.size);
 	}
 
 	public void setValue(byte[] value) {
+		checkMutable();
 		if (value == null) return;
 		this.value = value.clone();
+		this.size = value.length;
+		markDirty();
 	}
 
 	public byte getValue(int index) {
+		Objects.checkIndex(index, this.size);
 		return this.value[index];
 	}
 
 	public void setValue(int index, byte value) {
+		checkMutable();
+		Objects.checkIndex(index, this.size);
 		this.value[index] = value;
+		markDirty();
+	}
+	
+	/**
+	 * @return a read-only view of this array's contents that shares
+	 * 		storage with it, rather than a copy
+	 */
+	public ByteBuffer asReadOnlyBuffer() {
+		return ByteBuffer.wrap(this.value, 0, this.size).slice().asReadOnlyBuffer();
+	}
+	
+	/**
+	 * Pass every element of this array to the given action in order,
+	 * without copying or boxing them. Bytes are passed
+	 * sign-extended, as with {@link #getValue(int)}.
+	 */
+	public void forEachValue(IntConsumer action) {
+		for (int i = 0; i < this.size; i++) {
+			action.accept(this.value[i]);
+		}
+	}
+	
+	public void copyTo(byte[] dest, int destOff) {
+		copyTo(0, dest, destOff, this.size);
+	}
+	
+	public void copyTo(int srcOff, byte[] dest, int destOff, int len) {
+		Objects.checkFromIndexSize(srcOff, len, this.size);
+		System.arraycopy(this.value, srcOff, dest, destOff, len);
+	}
+	
+	public void copyTo(OutputStream out) throws IOException {
+		// never hand the stream our own array, as it could hold onto or
+		// change it; a chunk at a time keeps the copy small
+		byte[] buf = new byte[Math.min(this.size, 8192)];
+		for (int i = 0; i < this.size; i += buf.length) {
+			int len = Math.min(buf.length, this.size-i);
+			System.arraycopy(this.value, i, buf, 0, len);
+			out.write(buf, 0, len);
+		}
+	}
+	
+	/**
+	 * Insert the given values at the given index, moving everything from
+	 * that index onward along to make room.
+	 */
+	public void addAll(int idx, byte[] values) {
+		checkMutable();
+		Objects.checkIndex(idx, this.size+1);
+		makeRoom(idx, values.length);
+		System.arraycopy(values, 0, this.value, idx, values.length);
+		markDirty();
+	}
+	
+	public void fill(int from, int to, byte value) {
+		checkMutable();
+		Objects.checkFromToIndex(from, to, this.size);
+		Arrays.fill(this.value, from, to, value);
+		markDirty();
+	}
+	
+	/**
+	 * Replace every element of this array with the result of passing it to
+	 * the given operator, without copying or boxing them. Bytes are passed
+	 * sign-extended, and results are truncated back to a byte.
+	 */
+	public void replaceAll(IntUnaryOperator operator) {
+		checkMutable();
+		for (int i = 0; i < this.size; i++) {
+			this.value[i] = (byte)operator.applyAsInt(this.value[i]);
+		}
+		markDirty();
+	}
+	
+	/**
+	 * @return a new cursor positioned before the first element of this
+	 * 		array
+	 */
+	public ByteCursor cursor() {
+		return cursor(0);
+	}
+	
+	/**
+	 * @return a new cursor positioned before the element at the given index
+	 * 		of this array
+	 */
+	public ByteCursor cursor(int from) {
+		Objects.checkIndex(from, size+1);
+		return new ByteCursor() {
+			private int idx = from-1;
+			
+			@Override
+			public boolean next() {
+				if (idx+1 >= size) return false;
+				idx++;
+				return true;
+			}
+			
+			@Override
+			public int index() {
+				return idx;
+			}
+			
+			@Override
+			public byte get() {
+				return getValue(idx);
+			}
+			
+			@Override
+			public void set(byte value) {
+				setValue(idx, value);
+			}
+		};
+	}
+	
+	/**
+	 * Open up a gap of the given length at the given index, growing the
+	 * backing array geometrically if it's out of room.
+	 */
+	private void makeRoom(int idx, int count) {
+		int newSize = this.size+count;
+		if (newSize > this.value.length) {
+			int capacity = this.value.length+(this.value.length >> 1)+8;
+			if (capacity < newSize || capacity < 0) {
+				capacity = newSize;
+			}
+			byte[] grown = new byte[capacity];
+			System.arraycopy(this.value, 0, grown, 0, idx);
+			System.arraycopy(this.value, idx, grown, idx+count, this.size-idx);
+			this.value = grown;
+		} else {
+			System.arraycopy(this.value, idx, this.value, idx+count, this.size-idx);
+		}
+		this.size = newSize;
 	}
 	
 	@Override
 	public String stringValue() {
-		return Arrays.toString(value);
+		StringBuilder sb = new StringBuilder("[");
+		for (int i = 0; i < this.size; i++) {
+			if (i > 0) sb.append(", ");
+			sb.append(this.value[i]);
+		}
+		sb.append(']');
+		return sb.toString();
 	}
 
 	@Override
 	public void read(DataInput in) throws IOException {
 		this.value = new byte[in.readInt()];
+		this.size = this.value.length;
 		in.readFully(this.value);
 	}
 
 	@Override
 	public void write(DataOutput out) throws IOException {
-		out.writeInt(this.value.length);
-		out.write(this.value);
+		out.writeInt(this.size);
+		out.write(this.value, 0, this.size);
+	}
+	
+	@Override
+	protected long computePayloadSize() {
+		return 4+this.size;
+	}
+	
+	@Override
+	protected long computeContentHash() {
+		return new XxHash64(7).update(this.value, 0, this.size).hash();
+	}
+
+	@Override
+	public NBTByteArray copy() {
+		return new NBTByteArray(getName(), getValue());
 	}
 
 	@Override
@@ -89,6 +262,7 @@ public class NBTByteArray extends NBTArray implements NBTParent {
 		String s = in.readUntil(true, ']');
 		String[] valueStrings = s.substring(s.indexOf(';') + 1, s.length() - 1).replaceAll(" ", "").split(",");
 		value = new byte[valueStrings.length];
+		size = value.length;
 		for (int i = 0; i < value.length; i++) {
 			value[i] = Byte.parseByte(valueStrings[i]);
 		}
@@ -97,8 +271,8 @@ public class NBTByteArray extends NBTArray implements NBTParent {
 	@Override
 	public void stringify(StringifiedNBTWriter out, boolean linebreak, int depth) throws IOException {
 		StringBuilder sb = new StringBuilder("[B; ");
-		for (byte b : value) {
-			sb.append(b);
+		for (int i = 0; i < size; i++) {
+			sb.append(value[i]);
 			sb.append(',');
 			sb.append(' ');
 		}
@@ -106,20 +280,26 @@ public class NBTByteArray extends NBTArray implements NBTParent {
 		sb.append(']');
 		out.append(sb.toString());
 	}
-
+	
 	@Override
 	protected boolean equalsChecked(NBTTag that) {
-		return Arrays.equals(this.value, ((NBTByteArray)that).value);
+		NBTByteArray other = (NBTByteArray)that;
+		return Arrays.equals(this.value, 0, this.size, other.value, 0, other.size);
 	}
 
 	@Override
 	public int hashCode() {
-		return Arrays.hashCode(this.value);
+		// same as Arrays.hashCode, but only over the used part of the array
+		int result = 1;
+		for (int i = 0; i < this.size; i++) {
+			result = 31 * result + this.value[i];
+		}
+		return result;
 	}
 
 	@Override
 	public String toString() {
-		return "NBTByteArray"+Arrays.toString(this.value);
+		return "NBTByteArray"+stringValue();
 	}
 	
 	@Override
@@ -135,7 +315,7 @@ public class NBTByteArray extends NBTArray implements NBTParent {
 			@Override
 			protected NBTTag computeNext() {
 				idx++;
-				if (idx >= value.length) return endOfData();
+				if (idx >= size) return endOfData();
 				return new NBTFakeByte(NBTByteArray.this, idx);
 			}
 		};
@@ -143,17 +323,20 @@ public class NBTByteArray extends NBTArray implements NBTParent {
 	
 	@Override
 	public NBTFakeByte get(int idx) {
-		if (idx < 0 || idx >= value.length) throw new ArrayIndexOutOfBoundsException(idx);
+		if (idx < 0 || idx >= size) throw new ArrayIndexOutOfBoundsException(idx);
 		return new NBTFakeByte(this, idx);
 	}
 	
 	@Override
 	public boolean add(int idx, NBTTag tag) {
+		checkMutable();
 		if (tag instanceof NBTByte) {
-			byte[] lhs = Arrays.copyOfRange(value, 0, idx);
-			byte[] mid = new byte[] {((NBTByte) tag).byteValue()};
-			byte[] rhs = Arrays.copyOfRange(value, idx, value.length);
-			value = Bytes.concat(lhs, mid, rhs);
+			// read it first, as it may be one of our own fakes
+			byte v = ((NBTByte) tag).byteValue();
+			Objects.checkIndex(idx, size+1);
+			makeRoom(idx, 1);
+			value[idx] = v;
+			markDirty();
 			return true;
 		}
 		return false;
@@ -161,51 +344,83 @@ public class NBTByteArray extends NBTArray implements NBTParent {
 	
 	@Override
 	public boolean add(NBTTag tag) {
-		if (tag instanceof NBTByte) {
-			value = Arrays.copyOf(value, value.length+1);
-			value[value.length-1] = ((NBTByte) tag).byteValue();
-			return true;
+		return add(size, tag);
+	}
+	
+	@Override
+	public boolean addAll(int idx, Collection<? extends NBTTag> tags) {
+		byte[] values = new byte[tags.size()];
+		int i = 0;
+		for (NBTTag tag : tags) {
+			if (tag == null) return false;
+			if (!(tag instanceof NBTByte)) {
+				throw new IllegalArgumentException("Attempted to add an "+tag.getClass().getSimpleName()+" to a NBTByteArray");
+			}
+			values[i++] = ((NBTByte) tag).byteValue();
 		}
-		return false;
+		addAll(idx, values);
+		return values.length > 0;
 	}
 	
 	@Override
 	public NBTTag set(int idx, NBTTag tag) {
+		checkMutable();
 		if (tag instanceof NBTByte) {
+			Objects.checkIndex(idx, size);
 			byte orig = value[idx];
 			value[idx] = ((NBTByte) tag).byteValue();
+			markDirty();
 			return new NBTByte("", orig);
 		}
 		throw new ClassCastException(tag.getClass().getSimpleName()+" is not NBTByte");
 	}
+	
+	@Override
+	public void fill(int from, int to, NBTTag tag) {
+		if (tag instanceof NBTByte) {
+			fill(from, to, ((NBTByte) tag).byteValue());
+			return;
+		}
+		throw new ClassCastException(tag.getClass().getSimpleName()+" is not NBTByte");
+	}
 
 	@Override
 	public boolean remove(NBTTag tag) {
 		if (tag instanceof NBTFakeByte) {
 			NBTFakeByte nfb = (NBTFakeByte)tag;
 			if (nfb.getParent() == this) {
-				byte[] lhs = Arrays.copyOfRange(value, 0, nfb.getIndex());
-				byte[] rhs = Arrays.copyOfRange(value, nfb.getIndex()+1, value.length);
-				value = Bytes.concat(lhs, rhs);
+				removeRange(nfb.getIndex(), nfb.getIndex()+1);
 				return true;
 			}
 		}
 		return false;
 	}
+	
+	@Override
+	public void removeRange(int from, int to) {
+		checkMutable();
+		Objects.checkFromToIndex(from, to, size);
+		System.arraycopy(value, to, value, from, size-to);
+		size -= to-from;
+		markDirty();
+	}
 
 	@Override
 	public int size() {
-		return value.length;
+		return size;
 	}
 
 	@Override
 	public boolean isEmpty() {
-		return value.length == 0;
+		return size == 0;
 	}
 
 	@Override
 	public void clear() {
+		checkMutable();
 		value = new byte[0];
+		size = 0;
+		markDirty();
 	}
 	
 }
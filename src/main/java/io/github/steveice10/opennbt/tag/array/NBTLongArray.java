@@ -25,21 +25,31 @@ package io.github.steveice10.opennbt.tag.array;
 import java.io.DataInput;
 import java.io.DataOutput;
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.LongBuffer;
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.Iterator;
+import java.util.Objects;
+import java.util.function.LongConsumer;
+import java.util.function.LongUnaryOperator;
 
 import com.google.common.collect.AbstractIterator;
-import com.google.common.primitives.Longs;
 
+import io.airlift.compress.zstd.XxHash64;
 import io.github.steveice10.opennbt.SNBTIO.StringifiedNBTReader;
 import io.github.steveice10.opennbt.SNBTIO.StringifiedNBTWriter;
 import io.github.steveice10.opennbt.tag.NBTParent;
 import io.github.steveice10.opennbt.tag.NBTTag;
+import io.github.steveice10.opennbt.tag.array.support.LongCursor;
 import io.github.steveice10.opennbt.tag.array.support.NBTFakeLong;
 import io.github.steveice10.opennbt.tag.number.NBTLong;
 
 public class NBTLongArray extends NBTArray implements NBTParent {
+	// may be larger than size, so appends and inserts don't need to
+	// reallocate every time
 	private long[] value;
+	private int size;
 
 	public NBTLongArray(String name) {
 		this(name, new long[0]);
@@ -48,51 +58,212 @@ public class NBTLongArray extends NBTArray implements NBTParent {
 	public NBTLongArray(String name, long[] value) {
 		super(name);
 		this.value = value;
+		this.size = value.length;
 	}
 
 	public long[] getValue() {
-		return this.value.clone();
+		return Arrays.copyOf(this.value, this.size);
 	}
 
 	public void setValue(long[] value) {
+		checkMutable();
 		if (value == null) return;
 		this.value = value.clone();
+		this.size = value.length;
+		markDirty();
 	}
 
 	public long getValue(int index) {
+		Objects.checkIndex(index, this.size);
 		return this.value[index];
 	}
 
 	public void setValue(int index, long value) {
+		checkMutable();
+		Objects.checkIndex(index, this.size);
 		this.value[index] = value;
+		markDirty();
+	}
+	
+	/**
+	 * @return a read-only view of this array's contents that shares
+	 * 		storage with it, rather than a copy
+	 */
+	public LongBuffer asReadOnlyBuffer() {
+		return LongBuffer.wrap(this.value, 0, this.size).slice().asReadOnlyBuffer();
+	}
+	
+	/**
+	 * Pass every element of this array to the given action in order,
+	 * without copying or boxing them.
+	 */
+	public void forEachValue(LongConsumer action) {
+		for (int i = 0; i < this.size; i++) {
+			action.accept(this.value[i]);
+		}
+	}
+	
+	public void copyTo(long[] dest, int destOff) {
+		copyTo(0, dest, destOff, this.size);
+	}
+	
+	public void copyTo(int srcOff, long[] dest, int destOff, int len) {
+		Objects.checkFromIndexSize(srcOff, len, this.size);
+		System.arraycopy(this.value, srcOff, dest, destOff, len);
+	}
+	
+	/**
+	 * Insert the given values at the given index, moving everything from
+	 * that index onward along to make room.
+	 */
+	public void addAll(int idx, long[] values) {
+		checkMutable();
+		Objects.checkIndex(idx, this.size+1);
+		makeRoom(idx, values.length);
+		System.arraycopy(values, 0, this.value, idx, values.length);
+		markDirty();
+	}
+	
+	public void fill(int from, int to, long value) {
+		checkMutable();
+		Objects.checkFromToIndex(from, to, this.size);
+		Arrays.fill(this.value, from, to, value);
+		markDirty();
+	}
+	
+	/**
+	 * Replace every element of this array with the result of passing it to
+	 * the given operator, without copying or boxing them.
+	 */
+	public void replaceAll(LongUnaryOperator operator) {
+		checkMutable();
+		for (int i = 0; i < this.size; i++) {
+			this.value[i] = operator.applyAsLong(this.value[i]);
+		}
+		markDirty();
+	}
+	
+	/**
+	 * @return a new cursor positioned before the first element of this
+	 * 		array
+	 */
+	public LongCursor cursor() {
+		return cursor(0);
+	}
+	
+	/**
+	 * @return a new cursor positioned before the element at the given index
+	 * 		of this array
+	 */
+	public LongCursor cursor(int from) {
+		Objects.checkIndex(from, size+1);
+		return new LongCursor() {
+			private int idx = from-1;
+			
+			@Override
+			public boolean next() {
+				if (idx+1 >= size) return false;
+				idx++;
+				return true;
+			}
+			
+			@Override
+			public int index() {
+				return idx;
+			}
+			
+			@Override
+			public long get() {
+				return getValue(idx);
+			}
+			
+			@Override
+			public void set(long value) {
+				setValue(idx, value);
+			}
+		};
+	}
+	
+	/**
+	 * Open up a gap of the given length at the given index, growing the
+	 * backing array geometrically if it's out of room.
+	 */
+	private void makeRoom(int idx, int count) {
+		int newSize = this.size+count;
+		if (newSize > this.value.length) {
+			int capacity = this.value.length+(this.value.length >> 1)+8;
+			if (capacity < newSize || capacity < 0) {
+				capacity = newSize;
+			}
+			long[] grown = new long[capacity];
+			System.arraycopy(this.value, 0, grown, 0, idx);
+			System.arraycopy(this.value, idx, grown, idx+count, this.size-idx);
+			this.value = grown;
+		} else {
+			System.arraycopy(this.value, idx, this.value, idx+count, this.size-idx);
+		}
+		this.size = newSize;
 	}
 	
 	@Override
 	public String stringValue() {
-		return Arrays.toString(value);
+		StringBuilder sb = new StringBuilder("[");
+		for (int i = 0; i < this.size; i++) {
+			if (i > 0) sb.append(", ");
+			sb.append(this.value[i]);
+		}
+		sb.append(']');
+		return sb.toString();
 	}
 
 	@Override
 	public void read(DataInput in) throws IOException {
 		this.value = new long[in.readInt()];
-		for (int i = 0; i < this.value.length; i++) {
+		this.size = this.value.length;
+		for (int i = 0; i < this.size; i++) {
 			this.value[i] = in.readLong();
 		}
 	}
 
 	@Override
 	public void write(DataOutput out) throws IOException {
-		out.writeInt(this.value.length);
-		for (int i = 0; i < this.value.length; i++) {
+		out.writeInt(this.size);
+		for (int i = 0; i < this.size; i++) {
 			out.writeLong(this.value[i]);
 		}
 	}
+	
+	@Override
+	protected long computePayloadSize() {
+		return 4+(long)this.size*8;
+	}
+	
+	@Override
+	protected long computeContentHash() {
+		XxHash64 hasher = new XxHash64(12);
+		// hashed a chunk at a time, rather than copying the whole array
+		ByteBuffer chunk = ByteBuffer.allocate(8192);
+		LongBuffer view = chunk.asLongBuffer();
+		for (int i = 0; i < this.size; i += view.capacity()) {
+			int len = Math.min(view.capacity(), this.size-i);
+			view.clear();
+			view.put(this.value, i, len);
+			hasher.update(chunk.array(), 0, len*8);
+		}
+		return hasher.hash();
+	}
+
+	@Override
+	public NBTLongArray copy() {
+		return new NBTLongArray(getName(), getValue());
+	}
 
 	@Override
 	public void destringify(StringifiedNBTReader in) throws IOException {
 		String s = in.readUntil(true, ']');
 		String[] valueStrings = s.substring(s.indexOf(';') + 1, s.length() - 1).replaceAll(" ", "").split(",");
 		value = new long[valueStrings.length];
+		size = value.length;
 		for (int i = 0; i < value.length; i++) {
 			value[i] = Long.parseLong(valueStrings[i]);
 		}
@@ -101,8 +272,8 @@ public class NBTLongArray extends NBTArray implements NBTParent {
 	@Override
 	public void stringify(StringifiedNBTWriter out, boolean linebreak, int depth) throws IOException {
 		StringBuilder sb = new StringBuilder("[L; ");
-		for (long b : value) {
-			sb.append(b);
+		for (int i = 0; i < size; i++) {
+			sb.append(value[i]);
 			sb.append(',');
 			sb.append(' ');
 		}
@@ -113,17 +284,23 @@ public class NBTLongArray extends NBTArray implements NBTParent {
 	
 	@Override
 	protected boolean equalsChecked(NBTTag that) {
-		return Arrays.equals(this.value, ((NBTLongArray)that).value);
+		NBTLongArray other = (NBTLongArray)that;
+		return Arrays.equals(this.value, 0, this.size, other.value, 0, other.size);
 	}
 
 	@Override
 	public int hashCode() {
-		return Arrays.hashCode(this.value);
+		// same as Arrays.hashCode, but only over the used part of the array
+		int result = 1;
+		for (int i = 0; i < this.size; i++) {
+			result = 31 * result + Long.hashCode(this.value[i]);
+		}
+		return result;
 	}
 
 	@Override
 	public String toString() {
-		return "NBTLongArray"+Arrays.toString(this.value);
+		return "NBTLongArray"+stringValue();
 	}
 	
 	@Override
@@ -139,7 +316,7 @@ public class NBTLongArray extends NBTArray implements NBTParent {
 			@Override
 			protected NBTTag computeNext() {
 				idx++;
-				if (idx >= value.length) return endOfData();
+				if (idx >= size) return endOfData();
 				return new NBTFakeLong(NBTLongArray.this, idx);
 			}
 		};
@@ -147,17 +324,20 @@ public class NBTLongArray extends NBTArray implements NBTParent {
 	
 	@Override
 	public NBTFakeLong get(int idx) {
-		if (idx < 0 || idx >= value.length) throw new ArrayIndexOutOfBoundsException(idx);
+		if (idx < 0 || idx >= size) throw new ArrayIndexOutOfBoundsException(idx);
 		return new NBTFakeLong(this, idx);
 	}
 	
 	@Override
 	public boolean add(int idx, NBTTag tag) {
+		checkMutable();
 		if (tag instanceof NBTLong) {
-			long[] lhs = Arrays.copyOfRange(value, 0, idx);
-			long[] mid = new long[] {((NBTLong) tag).longValue()};
-			long[] rhs = Arrays.copyOfRange(value, idx, value.length);
-			value = Longs.concat(lhs, mid, rhs);
+			// read it first, as it may be one of our own fakes
+			long v = ((NBTLong) tag).longValue();
+			Objects.checkIndex(idx, size+1);
+			makeRoom(idx, 1);
+			value[idx] = v;
+			markDirty();
 			return true;
 		}
 		return false;
@@ -165,51 +345,83 @@ public class NBTLongArray extends NBTArray implements NBTParent {
 	
 	@Override
 	public boolean add(NBTTag tag) {
-		if (tag instanceof NBTLong) {
-			value = Arrays.copyOf(value, value.length+1);
-			value[value.length-1] = ((NBTLong) tag).longValue();
-			return true;
+		return add(size, tag);
+	}
+	
+	@Override
+	public boolean addAll(int idx, Collection<? extends NBTTag> tags) {
+		long[] values = new long[tags.size()];
+		int i = 0;
+		for (NBTTag tag : tags) {
+			if (tag == null) return false;
+			if (!(tag instanceof NBTLong)) {
+				throw new IllegalArgumentException("Attempted to add an "+tag.getClass().getSimpleName()+" to a NBTLongArray");
+			}
+			values[i++] = ((NBTLong) tag).longValue();
 		}
-		return false;
+		addAll(idx, values);
+		return values.length > 0;
 	}
 	
 	@Override
 	public NBTTag set(int idx, NBTTag tag) {
+		checkMutable();
 		if (tag instanceof NBTLong) {
+			Objects.checkIndex(idx, size);
 			long orig = value[idx];
 			value[idx] = ((NBTLong) tag).longValue();
+			markDirty();
 			return new NBTLong("", orig);
 		}
 		throw new ClassCastException(tag.getClass().getSimpleName()+" is not NBTLong");
 	}
+	
+	@Override
+	public void fill(int from, int to, NBTTag tag) {
+		if (tag instanceof NBTLong) {
+			fill(from, to, ((NBTLong) tag).longValue());
+			return;
+		}
+		throw new ClassCastException(tag.getClass().getSimpleName()+" is not NBTLong");
+	}
 
 	@Override
 	public boolean remove(NBTTag tag) {
 		if (tag instanceof NBTFakeLong) {
 			NBTFakeLong nfb = (NBTFakeLong)tag;
 			if (nfb.getParent() == this) {
-				long[] lhs = Arrays.copyOfRange(value, 0, nfb.getIndex());
-				long[] rhs = Arrays.copyOfRange(value, nfb.getIndex()+1, value.length);
-				value = Longs.concat(lhs, rhs);
+				removeRange(nfb.getIndex(), nfb.getIndex()+1);
 				return true;
 			}
 		}
 		return false;
 	}
+	
+	@Override
+	public void removeRange(int from, int to) {
+		checkMutable();
+		Objects.checkFromToIndex(from, to, size);
+		System.arraycopy(value, to, value, from, size-to);
+		size -= to-from;
+		markDirty();
+	}
 
 	@Override
 	public int size() {
-		return value.length;
+		return size;
 	}
 
 	@Override
 	public boolean isEmpty() {
-		return value.length == 0;
+		return size == 0;
 	}
 
 	@Override
 	public void clear() {
+		checkMutable();
 		value = new long[0];
+		size = 0;
+		markDirty();
 	}
 	
 }
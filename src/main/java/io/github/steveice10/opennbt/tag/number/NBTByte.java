@@ -60,7 +60,9 @@ public class NBTByte extends NBTNumber implements Comparable<NBTByte> {
 	@Override public String stringValue() { return Byte.toString(this.getValue()); }
 	
 	public void setValue(byte value) {
+		checkMutable();
 		this.value = value;
+		markDirty();
 	}
 
 	@Override
@@ -72,6 +74,21 @@ public class NBTByte extends NBTNumber implements Comparable<NBTByte> {
 	public void write(DataOutput out) throws IOException {
 		out.writeByte(this.getValue());
 	}
+	
+	@Override
+	protected long computePayloadSize() {
+		return 1;
+	}
+
+	@Override
+	protected long computeContentHash() {
+		return mixHash(1, getValue());
+	}
+
+	@Override
+	public NBTByte copy() {
+		return new NBTByte(getName(), getValue());
+	}
 
 	@Override
 	public void destringify(StringifiedNBTReader in) throws IOException {
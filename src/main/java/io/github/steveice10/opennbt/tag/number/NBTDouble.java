@@ -56,7 +56,9 @@ public final class NBTDouble extends NBTNumber implements Comparable<NBTDouble>
 	@Override public String stringValue() { return Double.toString(this.value); }
 
 	public void setValue(double value) {
+		checkMutable();
 		this.value = value;
+		markDirty();
 	}
 
 	@Override
@@ -68,6 +70,22 @@ public final class NBTDouble extends NBTNumber implements Comparable<NBTDouble>
 	public void write(DataOutput out) throws IOException {
 		out.writeDouble(this.value);
 	}
+	
+	@Override
+	protected long computePayloadSize() {
+		return 8;
+	}
+
+	@Override
+	protected long computeContentHash() {
+		// 0.0 == -0.0, so they need to hash the same
+		return mixHash(6, value == 0 ? 0 : Double.doubleToLongBits(value));
+	}
+
+	@Override
+	public NBTDouble copy() {
+		return new NBTDouble(getName(), this.value);
+	}
 
 	@Override
 	public void destringify(StringifiedNBTReader in) throws IOException {
@@ -93,6 +111,11 @@ public final class NBTDouble extends NBTNumber implements Comparable<NBTDouble>
 	protected boolean equalsChecked(NBTTag that) {
 		return this.value == ((NBTDouble)that).value;
 	}
+	
+	@Override
+	protected boolean encodesSameAsChecked(NBTTag that) {
+		return Double.doubleToRawLongBits(this.value) == Double.doubleToRawLongBits(((NBTDouble)that).value);
+	}
 
 	@Override
 	public int hashCode() {
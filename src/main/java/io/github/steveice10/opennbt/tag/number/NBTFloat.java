@@ -56,7 +56,9 @@ public final class NBTFloat extends NBTNumber implements Comparable<NBTFloat> {
 	@Override public String stringValue() { return Float.toString(this.value); }
 
 	public void setValue(float value) {
+		checkMutable();
 		this.value = value;
+		markDirty();
 	}
 
 	@Override
@@ -68,6 +70,22 @@ public final class NBTFloat extends NBTNumber implements Comparable<NBTFloat> {
 	public void write(DataOutput out) throws IOException {
 		out.writeFloat(this.value);
 	}
+	
+	@Override
+	protected long computePayloadSize() {
+		return 4;
+	}
+
+	@Override
+	protected long computeContentHash() {
+		// 0.0 == -0.0, so they need to hash the same
+		return mixHash(5, value == 0 ? 0 : Float.floatToIntBits(value));
+	}
+
+	@Override
+	public NBTFloat copy() {
+		return new NBTFloat(getName(), this.value);
+	}
 
 	@Override
 	public void destringify(StringifiedNBTReader in) throws IOException {
@@ -93,6 +111,11 @@ public final class NBTFloat extends NBTNumber implements Comparable<NBTFloat> {
 	protected boolean equalsChecked(NBTTag that) {
 		return this.value == ((NBTFloat)that).value;
 	}
+	
+	@Override
+	protected boolean encodesSameAsChecked(NBTTag that) {
+		return Float.floatToRawIntBits(this.value) == Float.floatToRawIntBits(((NBTFloat)that).value);
+	}
 
 	@Override
 	public int hashCode() {
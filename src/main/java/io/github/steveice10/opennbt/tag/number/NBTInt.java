@@ -60,7 +60,9 @@ public class NBTInt extends NBTNumber implements Comparable<NBTInt> {
 	@Override public String stringValue() { return Integer.toString(this.getValue()); }
 
 	public void setValue(int value) {
+		checkMutable();
 		this.value = value;
+		markDirty();
 	}
 
 	@Override
@@ -72,6 +74,21 @@ public class NBTInt extends NBTNumber implements Comparable<NBTInt> {
 	public void write(DataOutput out) throws IOException {
 		out.writeInt(this.getValue());
 	}
+	
+	@Override
+	protected long computePayloadSize() {
+		return 4;
+	}
+
+	@Override
+	protected long computeContentHash() {
+		return mixHash(3, getValue());
+	}
+
+	@Override
+	public NBTInt copy() {
+		return new NBTInt(getName(), getValue());
+	}
 
 	@Override
 	public void destringify(StringifiedNBTReader in) throws IOException {
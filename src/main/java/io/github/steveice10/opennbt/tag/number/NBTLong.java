@@ -60,7 +60,9 @@ public class NBTLong extends NBTNumber implements Comparable<NBTLong> {
 	@Override public String stringValue() { return Long.toString(this.getValue()); }
 
 	public void setValue(long value) {
+		checkMutable();
 		this.value = value;
+		markDirty();
 	}
 
 	@Override
@@ -72,6 +74,21 @@ public class NBTLong extends NBTNumber implements Comparable<NBTLong> {
 	public void write(DataOutput out) throws IOException {
 		out.writeLong(this.getValue());
 	}
+	
+	@Override
+	protected long computePayloadSize() {
+		return 8;
+	}
+
+	@Override
+	protected long computeContentHash() {
+		return mixHash(4, getValue());
+	}
+
+	@Override
+	public NBTLong copy() {
+		return new NBTLong(getName(), getValue());
+	}
 
 	@Override
 	public void destringify(StringifiedNBTReader in) throws IOException {
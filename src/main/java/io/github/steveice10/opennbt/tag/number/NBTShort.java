@@ -56,7 +56,9 @@ public final class NBTShort extends NBTNumber implements Comparable<NBTShort> {
 	@Override public String stringValue() { return Short.toString(this.value); }
 
 	public void setValue(short value) {
+		checkMutable();
 		this.value = value;
+		markDirty();
 	}
 
 	@Override
@@ -68,6 +70,21 @@ public final class NBTShort extends NBTNumber implements Comparable<NBTShort> {
 	public void write(DataOutput out) throws IOException {
 		out.writeShort(this.value);
 	}
+	
+	@Override
+	protected long computePayloadSize() {
+		return 2;
+	}
+
+	@Override
+	protected long computeContentHash() {
+		return mixHash(2, value);
+	}
+
+	@Override
+	public NBTShort copy() {
+		return new NBTShort(getName(), this.value);
+	}
 
 	@Override
 	public void destringify(StringifiedNBTReader in) throws IOException {
@@ -0,0 +1,79 @@
+/*
+ * unbted - Una's NBT Editor
+ * Copyright (C) 2018 - 2023 Una Thompson (unascribed)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package com.unascribed.nbted;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import org.junit.jupiter.api.Test;
+
+import io.github.steveice10.opennbt.tag.NBTCompound;
+import io.github.steveice10.opennbt.tag.NBTList;
+import io.github.steveice10.opennbt.tag.array.NBTByteArray;
+import io.github.steveice10.opennbt.tag.array.NBTIntArray;
+import io.github.steveice10.opennbt.tag.number.NBTDouble;
+import io.github.steveice10.opennbt.tag.number.NBTInt;
+
+public class CommandProcessorTest {
+
+	private static NBTCompound sample() {
+		NBTCompound root = new NBTCompound("");
+		root.put(new NBTIntArray("ints", new int[] { 1, 2, 3, 4, 5 }));
+		root.put(new NBTByteArray("bytes", new byte[] { 1, 2, 3, 4, 5 }));
+		NBTList list = new NBTList("list");
+		for (int i = 1; i <= 5; i++) {
+			list.add(new NBTInt("", i));
+		}
+		root.put(list);
+		root.put(new NBTDouble("zero", -0.0));
+		return root;
+	}
+	
+	@Test
+	public void rmAllArrayElements() throws Exception {
+		CommandProcessor cp = new CommandProcessor(sample(), null, null);
+		cp.execute("rm", "/ints[*]");
+		NBTCompound root = (NBTCompound)cp.getRoot();
+		assertEquals(0, ((NBTIntArray)root.get("ints")).size());
+		// the other tags are untouched
+		assertEquals(5, ((NBTByteArray)root.get("bytes")).size());
+		assertEquals(5, ((NBTList)root.get("list")).size());
+	}
+	
+	@Test
+	public void rmAllListElements() throws Exception {
+		CommandProcessor cp = new CommandProcessor(sample(), null, null);
+		cp.execute("rm", "/list[*]");
+		NBTCompound root = (NBTCompound)cp.getRoot();
+		assertEquals(0, ((NBTList)root.get("list")).size());
+		assertEquals(5, ((NBTIntArray)root.get("ints")).size());
+	}
+	
+	@Test
+	public void settingZeroOverNegativeZeroCanBeUndone() throws Exception {
+		CommandProcessor cp = new CommandProcessor(sample(), null, null);
+		cp.execute("set", "/zero", "0.0");
+		assertEquals(Double.doubleToRawLongBits(0.0),
+				Double.doubleToRawLongBits(((NBTDouble)((NBTCompound)cp.getRoot()).get("zero")).doubleValue()));
+		cp.execute("undo");
+		assertEquals(Double.doubleToRawLongBits(-0.0),
+				Double.doubleToRawLongBits(((NBTDouble)((NBTCompound)cp.getRoot()).get("zero")).doubleValue()));
+	}
+	
+}
@@ -0,0 +1,136 @@
+/*
+ * unbted - Una's NBT Editor
+ * Copyright (C) 2018 - 2023 Una Thompson (unascribed)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package com.unascribed.nbted;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+import com.unascribed.nbted.TagDiff.Change;
+import com.unascribed.nbted.TagDiff.Kind;
+
+import io.github.steveice10.opennbt.tag.NBTCompound;
+import io.github.steveice10.opennbt.tag.NBTString;
+import io.github.steveice10.opennbt.tag.number.NBTInt;
+
+public class TagDiffTest {
+
+	/**
+	 * A string whose content hash is the same no matter its value, to stand
+	 * in for a real collision.
+	 */
+	private static class CollidingString extends NBTString {
+		
+		public CollidingString(String name, String value) {
+			super(name, value);
+		}
+		
+		@Override
+		protected long computeContentHash() {
+			return 0;
+		}
+		
+	}
+	
+	/**
+	 * Likewise for compounds, which are skipped on a matching hash.
+	 */
+	private static class CollidingCompound extends NBTCompound {
+		
+		public CollidingCompound(String name) {
+			super(name);
+		}
+		
+		@Override
+		protected long computeContentHash() {
+			return 0;
+		}
+		
+	}
+	
+	@Test
+	public void collidingNamesAreDifferent() {
+		// "Aa" and "BB" have the same String.hashCode
+		NBTCompound a = new NBTCompound("");
+		a.put(new NBTInt("Aa", 1));
+		NBTCompound b = new NBTCompound("");
+		b.put(new NBTInt("BB", 1));
+		List<Change> changes = TagDiff.diff(a, b);
+		assertEquals(2, changes.size());
+		assertEquals(Kind.REMOVED, changes.get(0).kind);
+		assertEquals("/Aa", changes.get(0).getPath());
+		assertEquals(Kind.ADDED, changes.get(1).kind);
+		assertEquals("/BB", changes.get(1).getPath());
+	}
+	
+	@Test
+	public void verifyingDoesNotTrustMatchingHashes() {
+		NBTCompound a = new NBTCompound("");
+		a.put(new CollidingString("s", "foo"));
+		NBTCompound b = new NBTCompound("");
+		b.put(new CollidingString("s", "bar"));
+		List<Change> changes = TagDiff.diff(a, b, true);
+		assertEquals(1, changes.size());
+		assertEquals(Kind.CHANGED, changes.get(0).kind);
+		assertEquals("/s", changes.get(0).getPath());
+	}
+	
+	@Test
+	public void matchingCompoundHashIsTrustedUnlessVerifying() {
+		NBTCompound a = new NBTCompound("");
+		NBTCompound ca = new CollidingCompound("c");
+		ca.put(new NBTInt("i", 1));
+		a.put(ca);
+		NBTCompound b = new NBTCompound("");
+		NBTCompound cb = new CollidingCompound("c");
+		cb.put(new NBTInt("i", 2));
+		b.put(cb);
+		assertTrue(TagDiff.diff(a, b).isEmpty());
+		List<Change> changes = TagDiff.diff(a, b, true);
+		assertEquals(1, changes.size());
+		assertEquals("/c/i", changes.get(0).getPath());
+	}
+	
+	@Test
+	public void pathsAreEscaped() {
+		NBTCompound a = new NBTCompound("");
+		a.put(new NBTInt("a/b[*]", 1));
+		NBTCompound b = new NBTCompound("");
+		b.put(new NBTInt("a/b[*]", 2));
+		List<Change> changes = TagDiff.diff(a, b);
+		assertEquals(1, changes.size());
+		assertEquals("/a\\/b\\[\\*\\]", changes.get(0).getPath());
+	}
+	
+	@Test
+	public void equalTreesHaveNoChanges() {
+		NBTCompound a = new NBTCompound("");
+		a.put(new NBTInt("Aa", 1));
+		a.put(new CollidingString("s", "foo"));
+		NBTCompound b = new NBTCompound("");
+		b.put(new NBTInt("Aa", 1));
+		b.put(new CollidingString("s", "foo"));
+		assertTrue(TagDiff.diff(a, b).isEmpty());
+	}
+	
+}
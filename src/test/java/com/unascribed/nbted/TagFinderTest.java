@@ -0,0 +1,60 @@
+/*
+ * unbted - Una's NBT Editor
+ * Copyright (C) 2018 - 2023 Una Thompson (unascribed)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package com.unascribed.nbted;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+import io.github.steveice10.opennbt.tag.NBTCompound;
+import io.github.steveice10.opennbt.tag.NBTList;
+import io.github.steveice10.opennbt.tag.NBTTag;
+import io.github.steveice10.opennbt.tag.number.NBTInt;
+
+public class TagFinderTest {
+
+	@Test
+	public void foundPathsLeadBackToTheirTags() {
+		String[] names = { ".", "..", "*", "**", "a/b", "x[k=v]", "[*]", "\\", ".a", "a." };
+		NBTCompound root = new NBTCompound("");
+		NBTCompound inner = new NBTCompound("..");
+		NBTList list = new NBTList(".");
+		for (String name : names) {
+			root.put(new NBTInt(name, 1));
+			NBTCompound c = new NBTCompound("");
+			c.put(new NBTInt(name, 2));
+			list.add(c);
+			inner.put(new NBTInt(name, 3));
+		}
+		root.put(inner);
+		root.put(list);
+		List<String> found = new TagFinder().find(root);
+		// the compound and list take the place of the ints named . and ..
+		assertEquals(1+names.length*4, found.size());
+		for (String path : found) {
+			List<NBTTag> resolved = NBTPath.compile(path).evaluate(root);
+			assertEquals(1, resolved.size());
+			assertEquals(path, TagFinder.toPath(TagDiff.pathOf(resolved.get(0))));
+		}
+	}
+	
+}
@@ -0,0 +1,96 @@
+/*
+ * Copyright (C) 2013-2017 Steveice10, 2018 - 2023 Una Thompson (unascribed)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies
+ * of the Software, and to permit persons to whom the Software is furnished to do
+ * so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package io.github.steveice10.opennbt;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+import org.junit.jupiter.api.Test;
+
+import io.github.steveice10.opennbt.tag.NBTCompound;
+import io.github.steveice10.opennbt.tag.NBTList;
+import io.github.steveice10.opennbt.tag.number.NBTDouble;
+import io.github.steveice10.opennbt.tag.number.NBTInt;
+
+public class NBTInternerTest {
+
+	private static byte[] write(NBTCompound tag) throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		NBTIO.writeTag(out, tag);
+		return out.toByteArray();
+	}
+	
+	private static NBTList motion(double... values) {
+		NBTList l = new NBTList("Motion");
+		for (double d : values) {
+			l.add(new NBTDouble("", d));
+		}
+		return l;
+	}
+	
+	private static NBTCompound pos(String first, String second) {
+		NBTCompound c = new NBTCompound("pos");
+		c.put(new NBTInt(first, 1));
+		c.put(new NBTInt(second, 2));
+		return c;
+	}
+	
+	@Test
+	public void internedReadWritesTheSameBytes() throws IOException {
+		NBTCompound root = new NBTCompound("");
+		NBTList entities = new NBTList("Entities");
+		NBTCompound a = new NBTCompound("");
+		a.put(motion(0.0, 0.0));
+		a.put(pos("x", "y"));
+		NBTCompound b = new NBTCompound("");
+		b.put(motion(-0.0, 0.0));
+		b.put(pos("y", "x"));
+		entities.add(a);
+		entities.add(b);
+		root.put(entities);
+		byte[] bytes = write(root);
+		
+		NBTCompound read = (NBTCompound)NBTIO.readTag(new ByteArrayInputStream(bytes), false, new NBTInterner());
+		assertArrayEquals(bytes, write(read));
+		NBTList readEntities = read.get("Entities");
+		NBTCompound readB = (NBTCompound)readEntities.get(1);
+		NBTList readMotion = readB.get("Motion");
+		assertEquals(Double.doubleToRawLongBits(-0.0), Double.doubleToRawLongBits(((NBTDouble)readMotion.get(0)).doubleValue()));
+		assertNotSame(((NBTCompound)readEntities.get(0)).get("pos"), readB.get("pos"));
+	}
+	
+	@Test
+	public void identicalTagsAreShared() {
+		NBTInterner interner = new NBTInterner();
+		NBTList a = (NBTList)interner.intern(motion(-0.0, 1.0));
+		NBTList b = (NBTList)interner.intern(motion(-0.0, 1.0));
+		assertSame(a, b);
+	}
+	
+}